@@ -24,9 +24,17 @@ import junit.framework.TestCase;
 import org.xcmis.renditions.impl.ImageRenditionProvider;
 import org.xcmis.spi.BaseContentStream;
 import org.xcmis.spi.ContentStream;
+import org.xcmis.spi.RenditionCache;
+import org.xcmis.spi.RenditionContentStream;
+import org.xcmis.spi.RenditionGenerator;
 import org.xcmis.spi.utils.MimeType;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class RenditionsTest extends TestCase
 {
@@ -80,6 +88,141 @@ public class RenditionsTest extends TestCase
       }
    }
 
+   public void testRenditionCache() throws Exception
+   {
+      RenditionCache cache = new RenditionCache(20);
+      MimeType mime = new MimeType("image", "png");
+      RenditionContentStream out =
+         cache.put("doc1", "token1", "stream1", new RenditionContentStream(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10},
+            "thumb", mime, "cmis:thumbnail", 10, 20));
+      assertEquals(10, readAll(out.getStream()).length);
+      assertEquals(10, cache.getMemSize());
+
+      RenditionContentStream cached = cache.get("doc1", "token1", "stream1");
+      assertNotNull(cached);
+      assertEquals(10, readAll(cached.getStream()).length);
+      assertEquals("cmis:thumbnail", cached.getKind());
+      assertEquals(10, cached.getHeight());
+      assertEquals(20, cached.getWidth());
+      // Other change token means content was updated.
+      assertNull(cache.get("doc1", "token2", "stream1"));
+
+      cache.put("doc2", "token1", "stream1", new RenditionContentStream(new byte[15], "thumb", mime, "cmis:thumbnail"));
+      // Least recently used rendition must be evicted.
+      assertNull(cache.get("doc1", "token1", "stream1"));
+      assertNotNull(cache.get("doc2", "token1", "stream1"));
+      assertEquals(15, cache.getMemSize());
+
+      cache.invalidate("doc2");
+      assertNull(cache.get("doc2", "token1", "stream1"));
+      assertEquals(0, cache.getMemSize());
+      assertEquals(0, cache.size());
+   }
+
+   public void testRenditionCacheSpool() throws Exception
+   {
+      File dir = new File(System.getProperty("java.io.tmpdir"), "rendition-cache-" + System.currentTimeMillis());
+      RenditionCache cache = new RenditionCache(10, dir, 100);
+      MimeType mime = new MimeType("image", "png");
+      try
+      {
+         cache.put("doc1", null, "stream1", new RenditionContentStream(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, "thumb",
+            mime, "cmis:thumbnail"));
+         cache.put("doc2", null, "stream1", new RenditionContentStream(new byte[8], "thumb", mime, "cmis:thumbnail"));
+         assertEquals(8, cache.getMemSize());
+         assertEquals(8, cache.getDiskSize());
+         assertEquals(1, dir.list().length);
+
+         RenditionContentStream cached = cache.get("doc1", null, "stream1");
+         assertNotNull(cached);
+         byte[] content = readAll(cached.getStream());
+         assertEquals(8, content.length);
+         assertEquals(8, content[7]);
+         // doc1 moved back to memory, doc2 spooled.
+         assertEquals(8, cache.getMemSize());
+         assertEquals(8, cache.getDiskSize());
+         assertEquals(1, dir.list().length);
+
+         cache.clear();
+         assertEquals(0, dir.list().length);
+      }
+      finally
+      {
+         cache.clear();
+         dir.delete();
+      }
+   }
+
+   public void testRenditionGenerator() throws Exception
+   {
+      RenditionGenerator generator = new RenditionGenerator(1, 1, 5000);
+      final CountDownLatch started = new CountDownLatch(1);
+      final CountDownLatch release = new CountDownLatch(1);
+      final AtomicInteger runs = new AtomicInteger();
+      try
+      {
+         assertTrue(generator.submit("doc1", "token1", "stream1", new Runnable()
+         {
+            public void run()
+            {
+               started.countDown();
+               try
+               {
+                  release.await();
+               }
+               catch (InterruptedException e)
+               {
+                  Thread.currentThread().interrupt();
+               }
+               runs.incrementAndGet();
+            }
+         }));
+         started.await();
+         Runnable counter = new Runnable()
+         {
+            public void run()
+            {
+               runs.incrementAndGet();
+            }
+         };
+         assertTrue(generator.submit("doc2", "token1", "stream1", counter));
+         // The same rendition is already in queue.
+         assertTrue(generator.submit("doc2", "token1", "stream1", counter));
+         assertEquals(1, generator.getQueueDepth());
+         // Queue is full.
+         assertFalse(generator.submit("doc3", "token1", "stream1", counter));
+         assertEquals(1, generator.getRejectedCount());
+
+         release.countDown();
+         for (int i = 0; i < 100 && generator.getCompletedCount() < 2; i++)
+         {
+            Thread.sleep(50);
+         }
+         // Not scheduled rendition.
+         assertFalse(generator.await("doc3", "token1", "stream1"));
+         assertEquals(2, runs.get());
+         assertEquals(2, generator.getSubmittedCount());
+      }
+      finally
+      {
+         release.countDown();
+         generator.shutdown();
+      }
+   }
+
+   private static byte[] readAll(InputStream in) throws IOException
+   {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[1024];
+      int r;
+      while ((r = in.read(buf)) != -1)
+      {
+         out.write(buf, 0, r);
+      }
+      in.close();
+      return out.toByteArray();
+   }
+
    @Override
    protected void tearDown() throws Exception
    {
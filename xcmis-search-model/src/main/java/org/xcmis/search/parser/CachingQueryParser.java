@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.search.parser;
+
+import org.xcmis.search.InvalidQueryException;
+import org.xcmis.search.model.Query;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link QueryParser} which keeps results of parsing of recently used
+ * statements. Parsing does not depend on schema, so cached queries never
+ * become stale. Queries are immutable and may be shared.
+ */
+public class CachingQueryParser implements QueryParser
+{
+   /**
+    * Default max number of cached queries.
+    */
+   public static final int DEFAULT_SIZE = 100;
+
+   private final QueryParser parser;
+
+   private final Map<String, Query> queries;
+
+   /**
+    * @param parser parser of statements which are not cached yet
+    * @param size max number of cached queries
+    */
+   public CachingQueryParser(QueryParser parser, final int size)
+   {
+      this.parser = parser;
+      this.queries = new LinkedHashMap<String, Query>(16, 0.75f, true)
+      {
+         private static final long serialVersionUID = 1L;
+
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<String, Query> eldest)
+         {
+            return size() > size;
+         }
+      };
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public String getLanguage()
+   {
+      return parser.getLanguage();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public Query parseQuery(String statement) throws InvalidQueryException
+   {
+      synchronized (queries)
+      {
+         Query query = queries.get(statement);
+         if (query != null)
+         {
+            return query;
+         }
+      }
+      // Parse outside of lock, statement may be parsed twice by concurrent callers.
+      Query query = parser.parseQuery(statement);
+      synchronized (queries)
+      {
+         queries.put(statement, query);
+      }
+      return query;
+   }
+}
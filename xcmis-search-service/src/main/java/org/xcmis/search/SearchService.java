@@ -30,14 +30,20 @@ import org.xcmis.search.content.command.query.ProcessQueryCommand;
 import org.xcmis.search.content.interceptors.ContentReaderInterceptor;
 import org.xcmis.search.content.interceptors.InterceptorChain;
 import org.xcmis.search.content.interceptors.QueryProcessorInterceptor;
+import org.xcmis.search.content.interceptors.QueryResultCacheInterceptor;
 import org.xcmis.search.content.interceptors.QueryableIndexStorage;
 import org.xcmis.search.model.Query;
 import org.xcmis.search.query.QueryExecutionException;
+import org.xcmis.search.query.QueryResultCache;
+import org.xcmis.search.query.QueryStatisticsCollector;
 import org.xcmis.search.query.Searcher;
 import org.xcmis.search.query.optimize.CriteriaBasedOptimizer;
+import org.xcmis.search.query.plan.QueryPlanCache;
 import org.xcmis.search.query.plan.SimplePlaner;
 import org.xcmis.search.result.ScoredRow;
+import org.xcmis.spi.utils.Logger;
 
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
@@ -47,12 +53,16 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+
 /**
  * Main entry point to the search service.
  * 
  */
 public class SearchService implements Startable, ContentModificationListener, Searcher
 {
+   private static final Logger LOG = Logger.getLogger(SearchService.class);
 
    /**
     * Configuration of search service.
@@ -66,6 +76,33 @@ public class SearchService implements Startable, ContentModificationListener, Se
     */
    private final InvocationContext defaultInvocationContext;
 
+   /**
+    * Statistics of executed queries.
+    */
+   private final QueryStatisticsCollector queryStatistics;
+
+   /**
+    * Cache of query plans, <code>null</code> if plans are not cached.
+    */
+   private final QueryPlanCache queryPlans;
+
+   /**
+    * Cache of query results, <code>null</code> if results are not cached.
+    */
+   private final QueryResultCache queryResults;
+
+   /**
+    * Name of {@link #queryStatistics} MBean, <code>null</code> if MBean is not
+    * registered.
+    */
+   private ObjectName queryStatisticsName;
+
+   /**
+    * Name of {@link #queryResults} MBean, <code>null</code> if MBean is not
+    * registered.
+    */
+   private ObjectName queryResultsName;
+
    /**
     * @param configuration
     *           SearchServiceConfiguration
@@ -79,10 +116,26 @@ public class SearchService implements Startable, ContentModificationListener, Se
       this.interceptorChain = new InterceptorChain(configuration.getContentReader());
       this.defaultInvocationContext = configuration;
 
+      this.queryStatistics =
+         new QueryStatisticsCollector(configuration.getSlowQueryThreshold(), configuration.getMaxQueryShapes());
+
+      this.queryPlans =
+         configuration.getQueryPlanCacheSize() > 0 ? new QueryPlanCache(configuration.getQueryPlanCacheSize()) : null;
+
       addQueryableIndexStorageInterceptor(interceptorChain);
 
       interceptorChain.addBeforeInterceptor(new QueryProcessorInterceptor(new SimplePlaner(),
-         new CriteriaBasedOptimizer()), QueryableIndexStorage.class);
+         new CriteriaBasedOptimizer(), configuration.getJoinMaxInMemoryRows(), configuration.getJoinSpoolDirectory(),
+         queryStatistics, queryPlans), QueryableIndexStorage.class);
+
+      this.queryResults =
+         configuration.getQueryResultCacheSize() > 0 ? new QueryResultCache(configuration.getQueryResultCacheSize())
+            : null;
+      if (queryResults != null)
+      {
+         interceptorChain.addBeforeInterceptor(new QueryResultCacheInterceptor(queryResults),
+            QueryProcessorInterceptor.class);
+      }
 
    }
 
@@ -146,6 +199,18 @@ public class SearchService implements Startable, ContentModificationListener, Se
       }
    }
 
+   /**
+    * Drop cached query plans. Must be called each time when schema is changed,
+    * e.g. when type is added or removed.
+    */
+   public void invalidateQueryPlans()
+   {
+      if (queryPlans != null)
+      {
+         queryPlans.invalidate();
+      }
+   }
+
    /**
     * @see org.xcmis.search.Startable#start()
     */
@@ -153,6 +218,7 @@ public class SearchService implements Startable, ContentModificationListener, Se
    public void start()
    {
       interceptorChain.start();
+      registerMBeans();
    }
 
    /**
@@ -160,9 +226,80 @@ public class SearchService implements Startable, ContentModificationListener, Se
     */
    public void stop()
    {
+      unregisterMBeans();
       interceptorChain.stop();
    }
 
+   /**
+    * @return statistics of queries executed by this service
+    */
+   public QueryStatisticsCollector getQueryStatistics()
+   {
+      return queryStatistics;
+   }
+
+   /**
+    * @return cache of query results or <code>null</code> if results are not
+    *         cached
+    */
+   public QueryResultCache getQueryResultCache()
+   {
+      return queryResults;
+   }
+
+   private synchronized void registerMBeans()
+   {
+      if (queryStatisticsName == null)
+      {
+         queryStatisticsName = registerMBean(queryStatistics, "QueryStatistics");
+      }
+      if (queryResults != null && queryResultsName == null)
+      {
+         queryResultsName = registerMBean(queryResults, "QueryResultCache");
+      }
+   }
+
+   private synchronized void unregisterMBeans()
+   {
+      unregisterMBean(queryStatisticsName);
+      queryStatisticsName = null;
+      unregisterMBean(queryResultsName);
+      queryResultsName = null;
+   }
+
+   private ObjectName registerMBean(Object mbean, String type)
+   {
+      try
+      {
+         ObjectName name =
+            new ObjectName("org.xcmis.search:type=" + type + ",service="
+               + Integer.toHexString(System.identityHashCode(this)));
+         ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, name);
+         return name;
+      }
+      catch (JMException e)
+      {
+         LOG.warn("Unable to register " + type + " MBean. " + e.getMessage());
+         return null;
+      }
+   }
+
+   private void unregisterMBean(ObjectName name)
+   {
+      if (name == null)
+      {
+         return;
+      }
+      try
+      {
+         ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+      }
+      catch (JMException e)
+      {
+         LOG.warn("Unable to unregister " + name + " MBean. " + e.getMessage());
+      }
+   }
+
    /**
     * @see org.xcmis.search.content.ContentModificationListener#update(org.xcmis.search.content.ContentEntry,
     *      java.lang.String)
@@ -22,6 +22,7 @@ import org.apache.tika.config.TikaConfig;
 import org.apache.tika.exception.TikaException;
 import org.apache.tika.mime.MimeTypeException;
 import org.xcmis.search.content.interceptors.QueryableIndexStorage;
+import org.xcmis.search.lucene.index.TextExtractor;
 
 import java.io.IOException;
 
@@ -61,6 +62,32 @@ public class IndexConfiguration
     */
    private final String queryableIndexStorage;
 
+   /**
+    * Number of threads which extract text of binary values.
+    */
+   private int textExtractorWorkers = Runtime.getRuntime().availableProcessors();
+
+   /**
+    * Max number of characters extracted from one binary value.
+    */
+   private int maxExtractedTextLength = TextExtractor.DEFAULT_MAX_TEXT_LENGTH;
+
+   /**
+    * Max time in milliseconds of text extraction from one binary value.
+    */
+   private long textExtractionTimeout = TextExtractor.DEFAULT_TIMEOUT;
+
+   /**
+    * Max number of extracted texts cached by content hash.
+    */
+   private int extractedTextCacheSize = TextExtractor.DEFAULT_CACHE_SIZE;
+
+   /**
+    * Index n-grams of string values to speed up LIKE with wildcards on both
+    * sides.
+    */
+   private boolean nGramIndexing;
+
    /**
     * In memory index storage with default Tika configuration
     * 
@@ -147,4 +174,92 @@ public class IndexConfiguration
       return tikaConfiguration;
    }
 
+   /**
+    * @return number of threads which extract text of binary values
+    */
+   public int getTextExtractorWorkers()
+   {
+      return textExtractorWorkers;
+   }
+
+   /**
+    * @param textExtractorWorkers number of threads which extract text of
+    *        binary values
+    */
+   public void setTextExtractorWorkers(int textExtractorWorkers)
+   {
+      this.textExtractorWorkers = textExtractorWorkers;
+   }
+
+   /**
+    * @return max number of characters extracted from one binary value
+    */
+   public int getMaxExtractedTextLength()
+   {
+      return maxExtractedTextLength;
+   }
+
+   /**
+    * @param maxExtractedTextLength max number of characters extracted from
+    *        one binary value, zero or negative value means no limit
+    */
+   public void setMaxExtractedTextLength(int maxExtractedTextLength)
+   {
+      this.maxExtractedTextLength = maxExtractedTextLength;
+   }
+
+   /**
+    * @return max time in milliseconds of text extraction from one binary
+    *         value
+    */
+   public long getTextExtractionTimeout()
+   {
+      return textExtractionTimeout;
+   }
+
+   /**
+    * @param textExtractionTimeout max time in milliseconds of text extraction
+    *        from one binary value, zero or negative value means no timeout
+    */
+   public void setTextExtractionTimeout(long textExtractionTimeout)
+   {
+      this.textExtractionTimeout = textExtractionTimeout;
+   }
+
+   /**
+    * @return max number of extracted texts cached by content hash
+    */
+   public int getExtractedTextCacheSize()
+   {
+      return extractedTextCacheSize;
+   }
+
+   /**
+    * @param extractedTextCacheSize max number of extracted texts cached by
+    *        content hash, zero or negative value disables cache
+    */
+   public void setExtractedTextCacheSize(int extractedTextCacheSize)
+   {
+      this.extractedTextCacheSize = extractedTextCacheSize;
+   }
+
+   /**
+    * @return <code>true</code> if n-grams of string values are indexed
+    */
+   public boolean isNGramIndexing()
+   {
+      return nGramIndexing;
+   }
+
+   /**
+    * @param nGramIndexing <code>true</code> to index n-grams of string values
+    *        and keep values in index, it makes LIKE with wildcards on both
+    *        sides cheap but index bigger. Index must be rebuilt after change
+    *        of this option
+    */
+   public void setNGramIndexing(boolean nGramIndexing)
+   {
+      this.nGramIndexing = nGramIndexing;
+   }
+
 }
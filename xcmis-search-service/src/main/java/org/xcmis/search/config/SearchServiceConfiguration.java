@@ -21,10 +21,16 @@ package org.xcmis.search.config;
 import org.xcmis.search.content.Schema;
 import org.xcmis.search.content.command.InvocationContext;
 import org.xcmis.search.content.interceptors.ContentReaderInterceptor;
+import org.xcmis.search.content.interceptors.QueryProcessorInterceptor;
 import org.xcmis.search.lucene.content.VirtualTableResolver;
+import org.xcmis.search.query.QueryResultCache;
+import org.xcmis.search.query.QueryStatisticsCollector;
+import org.xcmis.search.query.plan.QueryPlanCache;
 import org.xcmis.search.value.NameConverter;
 import org.xcmis.search.value.PathSplitter;
 
+import java.io.File;
+
 /**
  * Configuration of search service.
  */
@@ -41,6 +47,36 @@ public class SearchServiceConfiguration extends InvocationContext
     */
    private final IndexConfiguration indexConfiguration;
 
+   /**
+    * Max number of rows in hash table of hash join.
+    */
+   private int joinMaxInMemoryRows = QueryProcessorInterceptor.DEFAULT_JOIN_MAX_IN_MEMORY_ROWS;
+
+   /**
+    * Directory for rows of join which are not kept in memory.
+    */
+   private File joinSpoolDirectory;
+
+   /**
+    * Queries which take more then this number of milliseconds are logged.
+    */
+   private long slowQueryThreshold = -1;
+
+   /**
+    * Max number of different query shapes for which statistics is kept.
+    */
+   private int maxQueryShapes = QueryStatisticsCollector.DEFAULT_MAX_SHAPES;
+
+   /**
+    * Max number of cached plans of queries.
+    */
+   private int queryPlanCacheSize = QueryPlanCache.DEFAULT_SIZE;
+
+   /**
+    * Max size of cached results of queries in bytes.
+    */
+   private long queryResultCacheSize = QueryResultCache.DEFAULT_MAX_SIZE;
+
    public SearchServiceConfiguration(Schema schema, VirtualTableResolver tableResolver,
       ContentReaderInterceptor contentReader, IndexConfiguration indexConfiguration)
    {
@@ -70,4 +106,117 @@ public class SearchServiceConfiguration extends InvocationContext
       return indexConfiguration;
    }
 
+   /**
+    * @return max number of rows in hash table of hash join
+    */
+   public int getJoinMaxInMemoryRows()
+   {
+      return joinMaxInMemoryRows;
+   }
+
+   /**
+    * Set max number of rows in hash table of hash join. Rows of build side
+    * above this number are spooled to disk and joined by blocks. It bounds
+    * only the hash table: rows of each side are still read from index in
+    * memory before they are buffered, merge join keeps both sides in memory
+    * and number of joined rows is not limited.
+    *
+    * @param joinMaxInMemoryRows max number of rows in hash table of hash join
+    */
+   public void setJoinMaxInMemoryRows(int joinMaxInMemoryRows)
+   {
+      this.joinMaxInMemoryRows = joinMaxInMemoryRows;
+   }
+
+   /**
+    * @return directory for rows of join which are not kept in memory, if
+    *         <code>null</code> then default temporary directory is used
+    */
+   public File getJoinSpoolDirectory()
+   {
+      return joinSpoolDirectory;
+   }
+
+   /**
+    * @param joinSpoolDirectory directory for rows of join which are not kept
+    *        in memory
+    */
+   public void setJoinSpoolDirectory(File joinSpoolDirectory)
+   {
+      this.joinSpoolDirectory = joinSpoolDirectory;
+   }
+
+   /**
+    * @return slow query threshold in milliseconds, negative value means slow
+    *         query log is disabled
+    */
+   public long getSlowQueryThreshold()
+   {
+      return slowQueryThreshold;
+   }
+
+   /**
+    * @param slowQueryThreshold queries which take more then this number of
+    *        milliseconds are logged together with execution plan, negative
+    *        value disables slow query log
+    */
+   public void setSlowQueryThreshold(long slowQueryThreshold)
+   {
+      this.slowQueryThreshold = slowQueryThreshold;
+   }
+
+   /**
+    * @return max number of different query shapes for which statistics is
+    *         kept
+    */
+   public int getMaxQueryShapes()
+   {
+      return maxQueryShapes;
+   }
+
+   /**
+    * @param maxQueryShapes max number of different query shapes for which
+    *        statistics is kept, queries of other shapes are counted together
+    */
+   public void setMaxQueryShapes(int maxQueryShapes)
+   {
+      this.maxQueryShapes = maxQueryShapes;
+   }
+
+   /**
+    * @return max number of cached plans of queries, not positive value means
+    *         plans are not cached
+    */
+   public int getQueryPlanCacheSize()
+   {
+      return queryPlanCacheSize;
+   }
+
+   /**
+    * @param queryPlanCacheSize max number of cached plans of queries, not
+    *        positive value disables cache
+    */
+   public void setQueryPlanCacheSize(int queryPlanCacheSize)
+   {
+      this.queryPlanCacheSize = queryPlanCacheSize;
+   }
+
+   /**
+    * @return max size of cached results of queries in bytes, not positive
+    *         value means results are not cached
+    */
+   public long getQueryResultCacheSize()
+   {
+      return queryResultCacheSize;
+   }
+
+   /**
+    * @param queryResultCacheSize max size of cached results of queries in
+    *        bytes, not positive value disables cache
+    */
+   public void setQueryResultCacheSize(long queryResultCacheSize)
+   {
+      this.queryResultCacheSize = queryResultCacheSize;
+   }
+
 }
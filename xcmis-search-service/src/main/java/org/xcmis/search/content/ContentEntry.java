@@ -40,6 +40,11 @@ public class ContentEntry
     */
    private final String[] parentIdentifiers;
 
+   /**
+    * An array of identifiers of all ancestors of entry.
+    */
+   private final String[] ancestorIdentifiers;
+
    /**
     *  Entry identifier.
     */
@@ -51,6 +56,10 @@ public class ContentEntry
    private final Property[] properties;
 
    /**
+    * Create entry which ancestors are not known. Direct parents are
+    * considered as all ancestors of such entry, see
+    * {@link #getAncestorIdentifiers()}.
+    *
     * @param name String name
     * @param tableNames String[]
     * @param identifier String
@@ -59,6 +68,21 @@ public class ContentEntry
     */
    public ContentEntry(String name, String[] tableNames, String identifer, String[] parentIdentifiers,
       Property[] properties)
+   {
+      this(name, tableNames, identifer, parentIdentifiers, parentIdentifiers, properties);
+   }
+
+   /**
+    * @param name String name
+    * @param tableNames String[]
+    * @param identifier String
+    * @param parentIdentifiers String[]
+    * @param ancestorIdentifiers String[] identifiers of all ancestors include
+    *        parents
+    * @param properties Property[]
+    */
+   public ContentEntry(String name, String[] tableNames, String identifer, String[] parentIdentifiers,
+      String[] ancestorIdentifiers, Property[] properties)
    {
       Validate.notNull(name, "The value argument may not be null");
       Validate.notEmpty(tableNames, "The tableNames may not be empty");
@@ -67,6 +91,7 @@ public class ContentEntry
       this.tableNames = tableNames;
       this.identifier = identifer;
       this.parentIdentifiers = parentIdentifiers;
+      this.ancestorIdentifiers = ancestorIdentifiers;
       this.properties = properties;
    }
 
@@ -94,6 +119,18 @@ public class ContentEntry
       return parentIdentifiers;
    }
 
+   /**
+    * Identifiers of all ancestors of entry. Used for answering descendant
+    * constraints without traversing of hierarchy, so must be updated for
+    * entry and all its descendants when entry is moved.
+    *
+    * @return the ancestorIdentifiers
+    */
+   public String[] getAncestorIdentifiers()
+   {
+      return ancestorIdentifiers;
+   }
+
    /**
     * @return the identifier
     */
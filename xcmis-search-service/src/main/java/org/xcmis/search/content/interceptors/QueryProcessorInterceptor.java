@@ -20,30 +20,68 @@ package org.xcmis.search.content.interceptors;
 
 import org.apache.commons.lang.NotImplementedException;
 import org.apache.commons.lang.Validate;
+import org.xcmis.search.Visitors;
+import org.xcmis.search.content.ContentEntry;
+import org.xcmis.search.content.Property;
+import org.xcmis.search.content.Property.BinaryValue;
+import org.xcmis.search.content.Property.ContentValue;
 import org.xcmis.search.content.command.InvocationContext;
 import org.xcmis.search.content.command.query.ExecuteSelectorCommand;
 import org.xcmis.search.content.command.query.ProcessQueryCommand;
+import org.xcmis.search.content.command.read.GetContentEntryCommand;
 import org.xcmis.search.model.Limit;
 import org.xcmis.search.model.Query;
+import org.xcmis.search.model.constraint.And;
+import org.xcmis.search.model.constraint.Comparison;
 import org.xcmis.search.model.constraint.Constraint;
+import org.xcmis.search.model.constraint.FullTextSearch;
+import org.xcmis.search.model.constraint.Or;
+import org.xcmis.search.model.constraint.PropertyExistence;
+import org.xcmis.search.model.operand.PropertyValue;
+import org.xcmis.search.model.ordering.Order;
 import org.xcmis.search.model.ordering.Ordering;
+import org.xcmis.search.model.source.SelectorName;
+import org.xcmis.search.model.source.join.ChildNodeJoinCondition;
+import org.xcmis.search.model.source.join.DescendantNodeJoinCondition;
+import org.xcmis.search.model.source.join.EquiJoinCondition;
+import org.xcmis.search.model.source.join.JoinCondition;
+import org.xcmis.search.model.source.join.JoinType;
+import org.xcmis.search.model.source.join.SameNodeJoinCondition;
 import org.xcmis.search.query.QueryExecutionContext;
 import org.xcmis.search.query.QueryExecutionExceptions;
+import org.xcmis.search.query.QueryStatisticsCollector;
 import org.xcmis.search.query.Statistics;
+import org.xcmis.search.query.join.KeyedRow;
+import org.xcmis.search.query.join.RowJoiner;
+import org.xcmis.search.query.join.SpillableRowBuffer;
+import org.xcmis.search.query.plan.JoinAlgorithm;
 import org.xcmis.search.query.plan.Optimizer;
 import org.xcmis.search.query.plan.QueryExecutionPlan;
 import org.xcmis.search.query.plan.QueryExecutionPlaner;
+import org.xcmis.search.query.plan.QueryPlanCache;
+import org.xcmis.search.query.plan.QueryPlanCache.ParameterizedQuery;
 import org.xcmis.search.query.plan.QueryExecutionPlan.JoinExecutionPlan;
 import org.xcmis.search.query.plan.QueryExecutionPlan.LimitExecutionPlan;
+import org.xcmis.search.query.plan.QueryExecutionPlan.NestedExecutionPlan;
 import org.xcmis.search.query.plan.QueryExecutionPlan.ProjectExecutionPlan;
 import org.xcmis.search.query.plan.QueryExecutionPlan.SelectorExecutionPlan;
 import org.xcmis.search.query.plan.QueryExecutionPlan.SortExecutionPlan;
+import org.xcmis.search.query.plan.QueryExecutionPlan.SourceExecutionPlan;
 import org.xcmis.search.query.plan.QueryExecutionPlan.WhereExecutionPlan;
+import org.xcmis.search.result.QueryResultList;
 import org.xcmis.search.result.ScoredRow;
 
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A query engine that is able to execute formal queries expressed in the
@@ -55,6 +93,33 @@ public class QueryProcessorInterceptor extends CommandInterceptor
 
    private final Optimizer optimizer;
 
+   /**
+    * Default max number of rows in hash table of hash join.
+    */
+   public static final int DEFAULT_JOIN_MAX_IN_MEMORY_ROWS = 10000;
+
+   /**
+    * Max number of rows in hash table of hash join. Other rows of build side
+    * are spooled to disk. It does not bound rows read from index, merge join
+    * and joined rows.
+    */
+   private final int joinMaxInMemoryRows;
+
+   /**
+    * Directory for rows of join spooled to disk.
+    */
+   private final File joinSpoolDirectory;
+
+   /**
+    * Collector of statistics of executed queries, may be <code>null</code>.
+    */
+   private final QueryStatisticsCollector statisticsCollector;
+
+   /**
+    * Cache of optimized plans, may be <code>null</code>.
+    */
+   private final QueryPlanCache planCache;
+
    /**
     * Create a new query engine given the {@link QueryExecutionPlaner planner},
     * {@link Optimizer optimizer}, {@link QueryProcessor processor}.
@@ -69,11 +134,67 @@ public class QueryProcessorInterceptor extends CommandInterceptor
     *            if the processor reference is null
     */
    public QueryProcessorInterceptor(QueryExecutionPlaner planner, Optimizer optimizer)
+   {
+      this(planner, optimizer, DEFAULT_JOIN_MAX_IN_MEMORY_ROWS, null, null);
+   }
+
+   /**
+    * Create a new query engine.
+    * 
+    * @param planner
+    *           the planner that should be used to generate canonical query
+    *           plans for the queries;
+    * @param optimizer
+    *           the optimizer that should be used to optimize the canonical
+    *           query plan
+    * @param joinMaxInMemoryRows
+    *           max number of rows in hash table of hash join, see
+    *           {@link org.xcmis.search.config.SearchServiceConfiguration#setJoinMaxInMemoryRows(int)}
+    * @param joinSpoolDirectory
+    *           directory for rows of join which are not kept in memory, if
+    *           <code>null</code> then default temporary directory is used
+    * @param statisticsCollector
+    *           collector of statistics of executed queries, may be
+    *           <code>null</code>
+    */
+   public QueryProcessorInterceptor(QueryExecutionPlaner planner, Optimizer optimizer, int joinMaxInMemoryRows,
+      File joinSpoolDirectory, QueryStatisticsCollector statisticsCollector)
+   {
+      this(planner, optimizer, joinMaxInMemoryRows, joinSpoolDirectory, statisticsCollector, null);
+   }
+
+   /**
+    * Create a new query engine.
+    * 
+    * @param planner
+    *           the planner that should be used to generate canonical query
+    *           plans for the queries;
+    * @param optimizer
+    *           the optimizer that should be used to optimize the canonical
+    *           query plan
+    * @param joinMaxInMemoryRows
+    *           max number of rows in hash table of hash join, see
+    *           {@link org.xcmis.search.config.SearchServiceConfiguration#setJoinMaxInMemoryRows(int)}
+    * @param joinSpoolDirectory
+    *           directory for rows of join which are not kept in memory, if
+    *           <code>null</code> then default temporary directory is used
+    * @param statisticsCollector
+    *           collector of statistics of executed queries, may be
+    *           <code>null</code>
+    * @param planCache
+    *           cache of optimized plans, if <code>null</code> then plan is
+    *           created for each query
+    */
+   public QueryProcessorInterceptor(QueryExecutionPlaner planner, Optimizer optimizer, int joinMaxInMemoryRows,
+      File joinSpoolDirectory, QueryStatisticsCollector statisticsCollector, QueryPlanCache planCache)
    {
       super();
       this.planner = planner;
       this.optimizer = optimizer;
-
+      this.joinMaxInMemoryRows = joinMaxInMemoryRows;
+      this.joinSpoolDirectory = joinSpoolDirectory;
+      this.statisticsCollector = statisticsCollector;
+      this.planCache = planCache;
    }
 
    /**
@@ -114,36 +235,99 @@ public class QueryProcessorInterceptor extends CommandInterceptor
       Validate.notNull(context, "The context argument may not be null");
       Validate.notNull(query, "The query argument may not be null");
 
+      if (planCache != null)
+      {
+         return executeCached(ctx, context, query);
+      }
+
       // Create the plan ...
-      long start = System.currentTimeMillis();
+      long start = System.nanoTime();
       QueryExecutionPlan executionPlan = planner.createPlan(context, query);
-      long duration = System.currentTimeMillis() - start;
-      Statistics stats = new Statistics(duration);
+      Statistics stats = new Statistics().withPlanningTime(System.nanoTime() - start, TimeUnit.NANOSECONDS);
       if (!context.getExecutionExceptions().hasProblems())
       {
          // Optimize the plan ...
-         start = System.currentTimeMillis();
+         start = System.nanoTime();
          QueryExecutionPlan optimizedPlan = optimizer.optimize(context, executionPlan);
-
-         duration = System.currentTimeMillis() - start;
-         stats = stats.withOptimizationTime(duration);
+         stats = stats.withOptimizationTime(System.nanoTime() - start, TimeUnit.NANOSECONDS);
          if (!context.getExecutionExceptions().hasProblems())
          {
+            return executePlan(ctx, context, query, stats, optimizedPlan);
+         }
+      }
+      return new QueryResultList(Collections.<ScoredRow> emptyList(), stats);
+   }
 
-            // Execute the plan ...
-            try
-            {
-               start = System.currentTimeMillis();
-               return execute(ctx, context, query, stats, optimizedPlan);
-            }
-            finally
-            {
-               duration = System.currentTimeMillis() - start;
-               stats = stats.withOptimizationTime(duration);
-            }
+   /**
+    * Execute the supplied query by cached plan, plan is created if it is not
+    * cached yet. Literals of query are passed to plan as bind variables and
+    * limit of query is added on top of plan.
+    */
+   private List<ScoredRow> executeCached(InvocationContext ctx, QueryExecutionContext context, Query query)
+   {
+      ParameterizedQuery parameterized = QueryPlanCache.parameterize(query);
+      if (!parameterized.getValues().isEmpty())
+      {
+         Map<String, Object> variables = new HashMap<String, Object>();
+         if (context.getVariables() != null)
+         {
+            variables.putAll(context.getVariables());
+         }
+         variables.putAll(parameterized.getValues());
+         context = new QueryExecutionContext(context.getSchema(), context.getExecutionExceptions(), variables);
+      }
+
+      Statistics stats = new Statistics();
+      QueryExecutionPlan plan = planCache.get(parameterized.getQuery());
+      if (plan == null)
+      {
+         long generation = planCache.getGeneration();
+         long start = System.nanoTime();
+         QueryExecutionPlan executionPlan = planner.createPlan(context, parameterized.getQuery());
+         stats = stats.withPlanningTime(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+         if (context.getExecutionExceptions().hasProblems())
+         {
+            return new QueryResultList(Collections.<ScoredRow> emptyList(), stats);
          }
+         start = System.nanoTime();
+         plan = optimizer.optimize(context, executionPlan);
+         stats = stats.withOptimizationTime(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+         if (context.getExecutionExceptions().hasProblems())
+         {
+            return new QueryResultList(Collections.<ScoredRow> emptyList(), stats);
+         }
+         planCache.put(parameterized.getQuery(), plan, generation);
+      }
+      if (!query.getLimits().isUnlimited())
+      {
+         // Limit is always the top node of plan.
+         LimitExecutionPlan limitPlan = new LimitExecutionPlan(plan);
+         limitPlan.setLimit(query.getLimits());
+         plan = limitPlan;
       }
-      return Collections.emptyList();
+      return executePlan(ctx, context, query, stats, plan);
+   }
+
+   /**
+    * Execute the supplied query by optimized plan and collect statistics.
+    */
+   private List<ScoredRow> executePlan(InvocationContext ctx, QueryExecutionContext context, Query query,
+      Statistics stats, QueryExecutionPlan optimizedPlan)
+   {
+      // Execute the plan ...
+      long start = System.nanoTime();
+      List<ScoredRow> rows = execute(ctx, context, query, stats, optimizedPlan);
+      stats = stats.withExecutionTime(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+      if (rows == null)
+      {
+         rows = Collections.emptyList();
+      }
+      if (statisticsCollector != null)
+      {
+         statisticsCollector.record(query, stats, optimizedPlan, rows.size());
+      }
+      int totalCount = rows instanceof QueryResultList ? ((QueryResultList)rows).getTotalCount() : rows.size();
+      return new QueryResultList(rows, stats, totalCount);
    }
 
    /**
@@ -195,17 +379,15 @@ public class QueryProcessorInterceptor extends CommandInterceptor
                return new SelectorExecuteableComponent(this, ((SelectorExecutionPlan)nextPlan), projectPlan,
                   constraintsPlan, sortPlan, limitPlan);
             case JOIN :
-               JoinExecutionPlan joinPlan = (JoinExecutionPlan)nextPlan;
-               QueryExecuteableComponent left = createQueryExecuteableComponent(joinPlan.getLeftPlan());
-               QueryExecuteableComponent right = createQueryExecuteableComponent(joinPlan.getRightPlan());
-               return new JoinExecutionComponent(this, joinPlan, left, right, projectPlan, constraintsPlan, sortPlan,
-                  limitPlan);
+               return new JoinExecutionComponent(this, (JoinExecutionPlan)nextPlan, projectPlan, constraintsPlan,
+                  sortPlan, limitPlan);
             default :
                throw new NotImplementedException("Execution for plan " + queryExecutionPlan.getType().toString()
                   + " not implemented");
          }
 
-         nextPlan = nextPlan.next();
+         // Plan may be cached, walk through it without changing it.
+         nextPlan = nextPlan instanceof NestedExecutionPlan ? ((NestedExecutionPlan)nextPlan).getChildPlan() : null;
       }
       while (nextPlan != null);
       return null;
@@ -369,6 +551,39 @@ public class QueryProcessorInterceptor extends CommandInterceptor
       }
    }
 
+   /**
+    * Values of row of one side of join which are compared with values of
+    * other side.
+    */
+   private static final class JoinKey
+   {
+      private static final int IDENTIFIER = 0;
+
+      private static final int PARENTS = 1;
+
+      private static final int ANCESTORS = 2;
+
+      private static final int PROPERTY = 3;
+
+      private final SelectorName selector;
+
+      private final int source;
+
+      private final String propertyName;
+
+      JoinKey(SelectorName selector, int source, String propertyName)
+      {
+         this.selector = selector;
+         this.source = source;
+         this.propertyName = propertyName;
+      }
+   }
+
+   /**
+    * Execution component for join plan. Constraints and orderings are pushed
+    * down to side of join they reference, both sides are executed
+    * independently and joined with hash join or merge join.
+    */
    private class JoinExecutionComponent extends QueryExecuteableComponent
    {
 
@@ -381,21 +596,30 @@ public class QueryProcessorInterceptor extends CommandInterceptor
        * @param limitPlan
        */
       public JoinExecutionComponent(CommandInterceptor interceptor, JoinExecutionPlan joinPlan,
-         QueryExecuteableComponent left, QueryExecuteableComponent right, ProjectExecutionPlan projectPlan,
-         List<WhereExecutionPlan> constraintsPlan, SortExecutionPlan sortPlan, LimitExecutionPlan limitPlan)
+         ProjectExecutionPlan projectPlan, List<WhereExecutionPlan> constraintsPlan, SortExecutionPlan sortPlan,
+         LimitExecutionPlan limitPlan)
       {
          super(interceptor, projectPlan, constraintsPlan, sortPlan, limitPlan);
          this.joinPlan = joinPlan;
       }
 
       /**
-       * 
+       *
        * @see org.xcmis.search.content.interceptors.QueryProcessorInterceptor.QueryExecuteableComponent#executeComponent(org.xcmis.search.query.QueryExecutionContext)
        */
       @Override
       public List<ScoredRow> executeComponent(InvocationContext ctx, QueryExecutionContext context)
       {
-         throw new NotImplementedException("Method not implemented");
+         try
+         {
+            List<ScoredRow> rows = join(ctx, context);
+            return rows == null ? null : applyLimit(rows);
+         }
+         catch (Throwable e)
+         {
+            context.getExecutionExceptions().addException(e);
+         }
+         return null;
       }
 
       /**
@@ -406,5 +630,349 @@ public class QueryProcessorInterceptor extends CommandInterceptor
          return joinPlan;
       }
 
+      private List<ScoredRow> join(InvocationContext ctx, QueryExecutionContext context) throws Throwable
+      {
+         SourceExecutionPlan leftPlan = joinPlan.getLeftPlan();
+         SourceExecutionPlan rightPlan = joinPlan.getRightPlan();
+         JoinType joinType = joinPlan.getJoinType();
+
+         List<WhereExecutionPlan> leftConstraints = new ArrayList<WhereExecutionPlan>();
+         List<WhereExecutionPlan> rightConstraints = new ArrayList<WhereExecutionPlan>();
+         for (WhereExecutionPlan where : getConstraintsPlan())
+         {
+            if (leftPlan.getSelectors().containsAll(where.getSelectors()))
+            {
+               leftConstraints.add(where);
+               if (joinType == JoinType.RIGHT_OUTER)
+               {
+                  joinType = toInnerJoin(where.getConstraint(), leftPlan.getSelectors());
+               }
+            }
+            else if (rightPlan.getSelectors().containsAll(where.getSelectors()))
+            {
+               rightConstraints.add(where);
+               if (joinType == JoinType.LEFT_OUTER)
+               {
+                  joinType = toInnerJoin(where.getConstraint(), rightPlan.getSelectors());
+               }
+            }
+            else
+            {
+               throw new NotImplementedException("Constraint " + where.getConstraint()
+                  + " which references both sides of join is not supported");
+            }
+         }
+
+         List<Ordering> orderings = getOrder();
+         Set<SelectorName> orderingSelectors = new HashSet<SelectorName>();
+         for (Ordering ordering : orderings)
+         {
+            orderingSelectors.addAll(Visitors.getSelectorsReferencedBy(ordering));
+         }
+         boolean orderedLeft = !orderings.isEmpty() && leftPlan.getSelectors().containsAll(orderingSelectors);
+         boolean orderedRight =
+            !orderings.isEmpty() && !orderedLeft && rightPlan.getSelectors().containsAll(orderingSelectors);
+         if (!orderings.isEmpty() && !orderedLeft && !orderedRight)
+         {
+            throw new NotImplementedException("Ordering which references both sides of join is not supported");
+         }
+
+         JoinKey[] keys = getJoinKeys(leftPlan);
+         List<Ordering> leftOrderings = orderedLeft ? orderings : Collections.<Ordering> emptyList();
+         List<Ordering> rightOrderings = orderedRight ? orderings : Collections.<Ordering> emptyList();
+
+         // Merge join: both sides are read from index in order of join columns.
+         boolean merge =
+            joinPlan.getJoinAlgorithm() == JoinAlgorithm.MERGE && orderings.size() == 1
+               && keys[0].source == JoinKey.PROPERTY && keys[1].source == JoinKey.PROPERTY;
+         if (merge)
+         {
+            Order order = orderings.get(0).getOrder();
+            leftOrderings =
+               Collections.singletonList(new Ordering(new PropertyValue(keys[0].selector, keys[0].propertyName),
+                  order));
+            rightOrderings =
+               Collections.singletonList(new Ordering(new PropertyValue(keys[1].selector, keys[1].propertyName),
+                  order));
+         }
+
+         RowJoiner joiner = new RowJoiner(joinType, joinMaxInMemoryRows);
+         SpillableRowBuffer left = new SpillableRowBuffer(joinMaxInMemoryRows, joinSpoolDirectory);
+         SpillableRowBuffer right = new SpillableRowBuffer(joinMaxInMemoryRows, joinSpoolDirectory);
+         try
+         {
+            if (merge)
+            {
+               // Merge join reads both sides in memory.
+               List<KeyedRow> leftRows = getKeyedRows(ctx, fetchSide(ctx, context, leftPlan, leftConstraints,
+                  leftOrderings), keys[0]);
+               if (leftRows == null)
+               {
+                  return null;
+               }
+               List<KeyedRow> rightRows = getKeyedRows(ctx, fetchSide(ctx, context, rightPlan, rightConstraints,
+                  rightOrderings), keys[1]);
+               if (rightRows == null)
+               {
+                  return null;
+               }
+               List<ScoredRow> result =
+                  joiner.mergeJoin(leftRows, rightRows, orderings.get(0).getOrder() == Order.DESCENDING);
+               if (result != null)
+               {
+                  return result;
+               }
+               // Index order differs from order of values, use hash join.
+               orderedLeft = true;
+               for (KeyedRow row : leftRows)
+               {
+                  left.add(row);
+               }
+               leftRows = null;
+               for (KeyedRow row : rightRows)
+               {
+                  right.add(row);
+               }
+               rightRows = null;
+            }
+            else
+            {
+               // Rows of each side are moved to buffer before other side is
+               // read, so at most one side is kept in memory as list.
+               if (!fill(left, fetchSide(ctx, context, leftPlan, leftConstraints, leftOrderings), ctx, keys[0]))
+               {
+                  return null;
+               }
+               if (!fill(right, fetchSide(ctx, context, rightPlan, rightConstraints, rightOrderings), ctx, keys[1]))
+               {
+                  return null;
+               }
+            }
+
+            // Side which must keep its order is probe side, otherwise hash
+            // table is built for smaller side.
+            boolean buildLeft = orderedRight || (!orderedLeft && left.size() <= right.size());
+            return joiner.hashJoin(left, right, buildLeft);
+         }
+         finally
+         {
+            left.close();
+            right.close();
+         }
+      }
+
+      /**
+       * Read rows of one side of join.
+       *
+       * @return rows or <code>null</code> if execution failed
+       */
+      private List<ScoredRow> fetchSide(InvocationContext ctx, QueryExecutionContext context,
+         SourceExecutionPlan plan, List<WhereExecutionPlan> constraints, List<Ordering> orderings)
+      {
+         return createSideComponent(plan, constraints, orderings).executeComponent(ctx, context);
+      }
+
+      /**
+       * Move rows of one side of join to buffer.
+       *
+       * @return <code>false</code> if there are no rows because execution
+       *         failed
+       */
+      private boolean fill(SpillableRowBuffer buffer, List<ScoredRow> rows, InvocationContext ctx, JoinKey key)
+         throws Throwable
+      {
+         if (rows == null)
+         {
+            return false;
+         }
+         for (ScoredRow row : rows)
+         {
+            buffer.add(KeyedRow.create(row, getKeyValues(ctx, row, key)));
+         }
+         return true;
+      }
+
+      /**
+       * Get keys of left and right side of join.
+       */
+      private JoinKey[] getJoinKeys(SourceExecutionPlan leftPlan)
+      {
+         JoinCondition condition = joinPlan.getJoinCondition();
+         JoinKey first;
+         JoinKey second;
+         SelectorName firstSelector;
+         if (condition instanceof EquiJoinCondition)
+         {
+            EquiJoinCondition equiJoin = (EquiJoinCondition)condition;
+            firstSelector = equiJoin.getSelector1Name();
+            first = new JoinKey(firstSelector, JoinKey.PROPERTY, equiJoin.getProperty1Name());
+            second = new JoinKey(equiJoin.getSelector2Name(), JoinKey.PROPERTY, equiJoin.getProperty2Name());
+         }
+         else if (condition instanceof ChildNodeJoinCondition)
+         {
+            ChildNodeJoinCondition childJoin = (ChildNodeJoinCondition)condition;
+            firstSelector = childJoin.getParentSelectorName();
+            first = new JoinKey(firstSelector, JoinKey.IDENTIFIER, null);
+            second = new JoinKey(childJoin.getChildSelectorName(), JoinKey.PARENTS, null);
+         }
+         else if (condition instanceof DescendantNodeJoinCondition)
+         {
+            DescendantNodeJoinCondition descendantJoin = (DescendantNodeJoinCondition)condition;
+            firstSelector = descendantJoin.getAncestorSelectorName();
+            first = new JoinKey(firstSelector, JoinKey.IDENTIFIER, null);
+            second = new JoinKey(descendantJoin.getDescendantSelectorName(), JoinKey.ANCESTORS, null);
+         }
+         else if (condition instanceof SameNodeJoinCondition
+            && ((SameNodeJoinCondition)condition).getSelector2Path() == null)
+         {
+            SameNodeJoinCondition sameJoin = (SameNodeJoinCondition)condition;
+            firstSelector = sameJoin.getSelector1Name();
+            first = new JoinKey(firstSelector, JoinKey.IDENTIFIER, null);
+            second = new JoinKey(sameJoin.getSelector2Name(), JoinKey.IDENTIFIER, null);
+         }
+         else
+         {
+            throw new NotImplementedException("Join condition " + condition + " is not supported");
+         }
+         return leftPlan.getSelectors().contains(firstSelector) ? new JoinKey[]{first, second} : new JoinKey[]{
+            second, first};
+      }
+
+      private List<KeyedRow> getKeyedRows(InvocationContext ctx, List<ScoredRow> rows, JoinKey key) throws Throwable
+      {
+         if (rows == null)
+         {
+            return null;
+         }
+         List<KeyedRow> keyedRows = new ArrayList<KeyedRow>(rows.size());
+         for (ScoredRow row : rows)
+         {
+            keyedRows.add(KeyedRow.create(row, getKeyValues(ctx, row, key)));
+         }
+         return keyedRows;
+      }
+
+      /**
+       * Get values of join condition from row. Values are read from content
+       * entry of row if need.
+       */
+      private Collection<?> getKeyValues(InvocationContext ctx, ScoredRow row, JoinKey key) throws Throwable
+      {
+         String identifier = row.getNodeIdentifer(key.selector.getName());
+         if (identifier == null)
+         {
+            return null;
+         }
+         if (key.source == JoinKey.IDENTIFIER)
+         {
+            return Collections.singletonList(identifier);
+         }
+         ContentEntry entry =
+            (ContentEntry)getInterceptor().invokeNextInterceptor(ctx, new GetContentEntryCommand(identifier));
+         if (entry == null)
+         {
+            return null;
+         }
+         switch (key.source)
+         {
+            case JoinKey.PARENTS :
+               return entry.getParentIdentifiers() == null ? null : Arrays.asList(entry.getParentIdentifiers());
+            case JoinKey.ANCESTORS :
+               return entry.getAncestorIdentifiers() == null ? null : Arrays.asList(entry.getAncestorIdentifiers());
+            default :
+               List<Object> values = new ArrayList<Object>();
+               if (entry.getProperties() != null)
+               {
+                  for (Property<?> property : entry.getProperties())
+                  {
+                     if (key.propertyName.equals(property.getName()) && property.getValue() != null)
+                     {
+                        for (ContentValue<?> value : property.getValue())
+                        {
+                           if (!(value instanceof BinaryValue) && value.getValue() != null)
+                           {
+                              values.add(value.getValue());
+                           }
+                        }
+                     }
+                  }
+               }
+               return values;
+         }
+      }
+
+      /**
+       * Create component which executes one side of join.
+       */
+      private QueryExecuteableComponent createSideComponent(SourceExecutionPlan plan,
+         List<WhereExecutionPlan> constraints, List<Ordering> orderings)
+      {
+         SortExecutionPlan sortPlan = null;
+         if (!orderings.isEmpty())
+         {
+            sortPlan = new SortExecutionPlan(plan);
+            sortPlan.setOrderings(orderings);
+         }
+         if (plan.getType() == QueryExecutionPlan.Type.JOIN)
+         {
+            return new JoinExecutionComponent(getInterceptor(), (JoinExecutionPlan)plan, null, constraints,
+               sortPlan, null);
+         }
+         return new SelectorExecuteableComponent(getInterceptor(), (SelectorExecutionPlan)plan, null, constraints,
+            sortPlan, null);
+      }
+
+      /**
+       * WHERE constraint on side of outer join which may be null filters out
+       * rows with null values, so such join is the same as inner join.
+       */
+      private JoinType toInnerJoin(Constraint constraint, Set<SelectorName> innerSelectors)
+      {
+         if (!isNullRejecting(constraint, innerSelectors))
+         {
+            throw new NotImplementedException("Constraint " + constraint
+               + " on optional side of outer join is not supported");
+         }
+         return JoinType.INNER;
+      }
+
+      /**
+       * Check is constraint false for rows where selectors of optional side of
+       * outer join are null. Only comparison, property existence and full
+       * text search on optional side are known to be such constraints, e.g.
+       * NOT and IS NULL are true for null rows.
+       */
+      private boolean isNullRejecting(Constraint constraint, Set<SelectorName> innerSelectors)
+      {
+         if (constraint instanceof And)
+         {
+            return isNullRejecting(((And)constraint).getLeft(), innerSelectors)
+               || isNullRejecting(((And)constraint).getRight(), innerSelectors);
+         }
+         if (constraint instanceof Or)
+         {
+            return isNullRejecting(((Or)constraint).getLeft(), innerSelectors)
+               && isNullRejecting(((Or)constraint).getRight(), innerSelectors);
+         }
+         if (constraint instanceof Comparison || constraint instanceof PropertyExistence
+            || constraint instanceof FullTextSearch)
+         {
+            Set<SelectorName> selectors = Visitors.getSelectorsReferencedBy(constraint);
+            return !selectors.isEmpty() && innerSelectors.containsAll(selectors);
+         }
+         return false;
+      }
+
+      private List<ScoredRow> applyLimit(List<ScoredRow> rows)
+      {
+         Limit limit = getLimit();
+         if (limit.isUnlimited())
+         {
+            return rows;
+         }
+         int from = Math.min(limit.getOffset(), rows.size());
+         int to = (int)Math.min((long)from + limit.getRowLimit(), rows.size());
+         return new QueryResultList(new ArrayList<ScoredRow>(rows.subList(from, to)), null, rows.size());
+      }
    }
 }
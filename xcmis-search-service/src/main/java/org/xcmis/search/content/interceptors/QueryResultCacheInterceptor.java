@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.search.content.interceptors;
+
+import org.xcmis.search.content.command.InvocationContext;
+import org.xcmis.search.content.command.index.ModifyIndexCommand;
+import org.xcmis.search.content.command.query.ProcessQueryCommand;
+import org.xcmis.search.query.QueryResultCache;
+import org.xcmis.search.result.ScoredRow;
+
+import java.util.List;
+
+/**
+ * Answers repeated queries from {@link QueryResultCache}. Cache is dropped
+ * each time when index is changed by {@link ModifyIndexCommand}.
+ */
+public class QueryResultCacheInterceptor extends CommandInterceptor
+{
+   private final QueryResultCache cache;
+
+   /**
+    * @param cache cache of query results
+    */
+   public QueryResultCacheInterceptor(QueryResultCache cache)
+   {
+      super();
+      this.cache = cache;
+   }
+
+   /**
+    * @see org.xcmis.search.content.interceptors.AbstractVisitor#visitProcessQueryCommand(org.xcmis.search.content.command.InvocationContext,
+    *      org.xcmis.search.content.command.query.ProcessQueryCommand)
+    */
+   @Override
+   @SuppressWarnings("unchecked")
+   public Object visitProcessQueryCommand(InvocationContext ctx, ProcessQueryCommand command) throws Throwable
+   {
+      List<ScoredRow> rows = cache.get(command.getQuery(), command.getBindVariablesValues());
+      if (rows != null)
+      {
+         return rows;
+      }
+      long generation = cache.getGeneration();
+      rows = (List<ScoredRow>)invokeNextInterceptor(ctx, command);
+      if (rows != null)
+      {
+         cache.put(command.getQuery(), command.getBindVariablesValues(), rows, generation);
+      }
+      return rows;
+   }
+
+   /**
+    * @see org.xcmis.search.content.interceptors.AbstractVisitor#visitModifyIndexCommand(org.xcmis.search.content.command.InvocationContext,
+    *      org.xcmis.search.content.command.index.ModifyIndexCommand)
+    */
+   @Override
+   public Object visitModifyIndexCommand(InvocationContext ctx, ModifyIndexCommand command) throws Throwable
+   {
+      try
+      {
+         return invokeNextInterceptor(ctx, command);
+      }
+      finally
+      {
+         // Index may be partially changed even if modification failed.
+         cache.invalidate();
+      }
+   }
+}
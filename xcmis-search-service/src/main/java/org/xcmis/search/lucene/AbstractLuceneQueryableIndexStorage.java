@@ -21,6 +21,7 @@ package org.xcmis.search.lucene;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -30,10 +31,12 @@ import org.apache.commons.lang.Validate;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FieldCache;
 import org.apache.lucene.search.FieldDoc;
-import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
@@ -67,6 +70,7 @@ import org.xcmis.search.model.operand.PropertyValue;
 import org.xcmis.search.model.operand.UpperCase;
 import org.xcmis.search.model.ordering.Order;
 import org.xcmis.search.model.ordering.Ordering;
+import org.xcmis.search.result.QueryResultList;
 import org.xcmis.search.result.ScoredRow;
 import org.xcmis.search.value.NameConverter;
 import org.xcmis.search.value.PathSplitter;
@@ -149,9 +153,23 @@ public abstract class AbstractLuceneQueryableIndexStorage extends QueryableIndex
 
    public Query getConstrainQuery(Constraint constraint, Map<String, Object> bindVariablesValues)
       throws VisitException, IndexException
+   {
+      Searcher searcher = acquireSearcher();
+      try
+      {
+         return getConstrainQuery(constraint, bindVariablesValues, searcher.getIndexReader());
+      }
+      finally
+      {
+         releaseSearcher(searcher);
+      }
+   }
+
+   private Query getConstrainQuery(Constraint constraint, Map<String, Object> bindVariablesValues,
+      IndexReader indexReader) throws VisitException
    {
       LuceneQueryBuilder luceneQueryBuilder =
-         new LuceneQueryBuilder(getIndexReader(), nameConverter, pathSplitter, bindVariablesValues, indexConfuguration);
+         new LuceneQueryBuilder(indexReader, nameConverter, pathSplitter, bindVariablesValues, indexConfuguration);
       Visitors.visit(constraint, luceneQueryBuilder);
       return luceneQueryBuilder.getQuery();
    }
@@ -165,49 +183,48 @@ public abstract class AbstractLuceneQueryableIndexStorage extends QueryableIndex
    {
 
       List<ScoredRow> resultNodes = new ArrayList<ScoredRow>();
-      Query query = (Query)ctx.getTableResolver().resolve(command.getSelector().getName(), true);
-      if (command.getConstrains().size() > 0)
+      int totalHits = 0;
+      // Shared searcher, constraints are built against the same readers it
+      // searches.
+      Searcher searcher = acquireSearcher();
+      try
       {
-         BooleanQuery booleanQuery = new BooleanQuery();
-
-         for (Constraint constrain : command.getConstrains())
+         Query query = (Query)ctx.getTableResolver().resolve(command.getSelector().getName(), true);
+         if (command.getConstrains().size() > 0)
          {
-            booleanQuery.add(getConstrainQuery(constrain, command.getBindVariablesValues()), Occur.MUST);
-         }
+            BooleanQuery booleanQuery = new BooleanQuery();
 
-         booleanQuery.add(query, Occur.MUST);
-         query = booleanQuery;
-      }
-      // Open writer
+            for (Constraint constrain : command.getConstrains())
+            {
+               booleanQuery.add(getConstrainQuery(constrain, command.getBindVariablesValues(), searcher
+                  .getIndexReader()), Occur.MUST);
+            }
 
-      IndexSearcher searcher = null;
-      try
-      {
-         // get result
-         IndexReader indexReader = getIndexReader();
-         if (indexReader != null)
-         {
-            searcher = new Searcher(indexReader);
+            booleanQuery.add(query, Occur.MUST);
+            query = booleanQuery;
+         }
 
-            // query
-            Limit limit = command.getLimit();
-            int hits = Math.min(MAX_FETCH_SIZE, limit.getOffset() + limit.getRowLimit());
-            TopFieldDocs topDocs = searcher.search(query, null, hits, getSort(command.getOrderings()));
+         // query
+         Limit limit = command.getLimit();
+         // Offset plus unlimited row limit must not overflow.
+         int hits = (int)Math.min(MAX_FETCH_SIZE, (long)limit.getOffset() + limit.getRowLimit());
+         TopFieldDocs topDocs = searcher.search(query, null, hits, getSort(command.getOrderings(), searcher
+            .getIndexReader()));
+         totalHits = topDocs.totalHits;
 
-            resultNodes = new LinkedList<ScoredRow>();
-            for (int i = limit.getOffset(); i < topDocs.scoreDocs.length; i++)
+         resultNodes = new LinkedList<ScoredRow>();
+         for (int i = limit.getOffset(); i < topDocs.scoreDocs.length; i++)
+         {
+            // get identifiers
+            final Document doc = searcher.doc(topDocs.scoreDocs[i].doc, new UUIDFieldSelector());
+            final String id = doc.get(FieldNames.UUID);
+            final FieldDoc fieldDoc = (FieldDoc) topDocs.scoreDocs[i];
+            Float score = Float.NaN;
+            if(fieldDoc.fields[0] instanceof Float)
             {
-               // get identifiers
-               final Document doc = searcher.doc(topDocs.scoreDocs[i].doc, new UUIDFieldSelector());
-               final String id = doc.get(FieldNames.UUID);
-               final FieldDoc fieldDoc = (FieldDoc) topDocs.scoreDocs[i];
-               Float score = Float.NaN;
-               if(fieldDoc.fields[0] instanceof Float)
-               {
-                   score = (Float) fieldDoc.fields[0];
-               }
-               resultNodes.add(new ScoredRow(command.getAlias().getName(), id, score));
+                score = (Float) fieldDoc.fields[0];
             }
+            resultNodes.add(new ScoredRow(command.getAlias().getName(), id, score));
          }
       }
       catch (final CorruptIndexException e)
@@ -220,19 +237,11 @@ public abstract class AbstractLuceneQueryableIndexStorage extends QueryableIndex
       }
       finally
       {
-         try
-         {
-            if (searcher != null)
-            {
-               searcher.close();
-            }
-         }
-         catch (final IOException e)
-         {
-            throw new IndexException(e.getLocalizedMessage(), e);
-         }
+         releaseSearcher(searcher);
       }
-      return resultNodes;
+      // Total number of hits lets caller page through result without
+      // fetching rows before requested window.
+      return new QueryResultList(resultNodes, null, totalHits);
    }
 
    /**
@@ -243,10 +252,12 @@ public abstract class AbstractLuceneQueryableIndexStorage extends QueryableIndex
    public Object visitModifyIndexCommand(InvocationContext ctx, ModifyIndexCommand command) throws Throwable
    {
       Map<String, Document> addedDocuments = new HashMap<String, Document>();
-      // indexing content
-      for (ContentEntry entry : command.getAddedDocuments())
+      // indexing content, binary values of all entries are parsed in parallel
+      List<ContentEntry> entries = command.getAddedDocuments();
+      Iterator<Document> documents = nodeIndexer.createDocuments(entries).iterator();
+      for (ContentEntry entry : entries)
       {
-         addedDocuments.put(entry.getIdentifier(), nodeIndexer.createDocument(entry));
+         addedDocuments.put(entry.getIdentifier(), documents.next());
       }
 
       LuceneIndexTransaction indexTransaction =
@@ -260,6 +271,24 @@ public abstract class AbstractLuceneQueryableIndexStorage extends QueryableIndex
     */
    protected abstract IndexReader getIndexReader() throws IndexException;
 
+   /**
+    * Get searcher over current state of index. Searcher is shared between
+    * queries and must be released with {@link #releaseSearcher(Searcher)}
+    * instead of closing.
+    * 
+    * @return searcher
+    * @throws IndexException
+    */
+   protected abstract Searcher acquireSearcher() throws IndexException;
+
+   /**
+    * Release searcher obtained from {@link #acquireSearcher()}.
+    * 
+    * @param searcher searcher
+    * @throws IndexException
+    */
+   protected abstract void releaseSearcher(Searcher searcher) throws IndexException;
+
    /**
     * @param indexTransaction
     * @return
@@ -273,15 +302,17 @@ public abstract class AbstractLuceneQueryableIndexStorage extends QueryableIndex
     * Return lucene sorter by list of orderings.
     * 
     * @param list
+    * @param indexReader reader which is searched, it tells which properties
+    *           have numeric fields
     * @return
     * @throws VisitException
     */
-   private Sort getSort(List<Ordering> list) throws VisitException
+   private Sort getSort(List<Ordering> list, IndexReader indexReader) throws VisitException
    {
       if (list.size() > 0)
       {
          SortField[] fields = new SortField[list.size()];
-         SortFieldVisitor sortVisitor = new SortFieldVisitor();
+         SortFieldVisitor sortVisitor = new SortFieldVisitor(indexReader);
          int i = 0;
          for (Ordering ordering : list)
          {
@@ -297,10 +328,17 @@ public abstract class AbstractLuceneQueryableIndexStorage extends QueryableIndex
    private class SortFieldVisitor extends Visitors.AbstractModelVisitor
    {
 
+      private final IndexReader indexReader;
+
       private Order order;
 
       private SortField sortField;
 
+      SortFieldVisitor(IndexReader indexReader)
+      {
+         this.indexReader = indexReader;
+      }
+
       public SortField getSortField()
       {
          return sortField;
@@ -376,10 +414,56 @@ public abstract class AbstractLuceneQueryableIndexStorage extends QueryableIndex
       @Override
       public void visit(PropertyValue node) throws VisitException
       {
-        //AUTO mode was removed since version 3.0. Therefore we will used STRING type as sort type.
-         sortField =
-            new SortField(FieldNames.createPropertyFieldName(node.getPropertyName()), 
-                    SortField.STRING, order == Order.DESCENDING);
+         // Documents without property are sorted first in ascending order and
+         // last in descending one, as they are by string sort.
+         String longField = FieldNames.createLongFieldName(node.getPropertyName());
+         String numericField = FieldNames.createNumericFieldName(node.getPropertyName());
+         if (hasField(longField))
+         {
+            // integers are sorted by values cached in array of longs
+            sortField =
+               new SortField(longField, FieldCache.NUMERIC_UTILS_LONG_PARSER, order == Order.DESCENDING)
+                  .setMissingValue(Long.MIN_VALUE);
+         }
+         else if (hasField(numericField))
+         {
+            // decimals and dates are sorted by values cached in array of doubles
+            sortField =
+               new SortField(numericField, FieldCache.NUMERIC_UTILS_DOUBLE_PARSER, order == Order.DESCENDING)
+                  .setMissingValue(Double.NEGATIVE_INFINITY);
+         }
+         else
+         {
+            //AUTO mode was removed since version 3.0. Therefore we will used STRING type as sort type.
+            sortField =
+               new SortField(FieldNames.createPropertyFieldName(node.getPropertyName()), 
+                       SortField.STRING, order == Order.DESCENDING);
+         }
+      }
+
+      /**
+       * @param field field name
+       * @return <code>true</code> if at least one term of field is indexed
+       * @throws VisitException if index can't be read
+       */
+      private boolean hasField(String field) throws VisitException
+      {
+         try
+         {
+            TermEnum terms = indexReader.terms(new Term(field, ""));
+            try
+            {
+               return terms.term() != null && field.equals(terms.term().field());
+            }
+            finally
+            {
+               terms.close();
+            }
+         }
+         catch (IOException e)
+         {
+            throw new VisitException(e.getLocalizedMessage());
+         }
       }
 
       /**
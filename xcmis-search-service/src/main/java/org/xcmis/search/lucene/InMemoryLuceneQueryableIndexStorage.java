@@ -54,6 +54,11 @@ public class InMemoryLuceneQueryableIndexStorage extends AbstractLuceneQueryable
 
    private IndexReader indexReader;
 
+   /**
+    * Shared searcher over {@link #ramDirectory}.
+    */
+   private final SearcherManager searcherManager;
+
    /**
     * @param serviceConfuguration
     * @throws IndexException
@@ -63,6 +68,13 @@ public class InMemoryLuceneQueryableIndexStorage extends AbstractLuceneQueryable
       super(serviceConfuguration);
       this.ramDirectory = new RAMDirectory();
       initDirectory();
+      this.searcherManager = new SearcherManager(new SearcherManager.IndexReaderSource()
+      {
+         public IndexReader[] getIndexReaders() throws IndexException
+         {
+            return new IndexReader[]{getIndexReader()};
+         }
+      });
    }
 
    /**
@@ -87,7 +99,7 @@ public class InMemoryLuceneQueryableIndexStorage extends AbstractLuceneQueryable
     * @see org.xcmis.search.lucene.AbstractLuceneQueryableIndexStorage#getIndexReader()
     */
    @Override
-   protected IndexReader getIndexReader() throws IndexException
+   protected synchronized IndexReader getIndexReader() throws IndexException
    {
       try
       {
@@ -98,7 +110,10 @@ public class InMemoryLuceneQueryableIndexStorage extends AbstractLuceneQueryable
          }
          else if (!this.indexReader.isCurrent())
          {
-            this.indexReader = this.indexReader.reopen();
+            IndexReader oldReader = this.indexReader;
+            this.indexReader = oldReader.reopen();
+            // Searchers which still use old reader hold references to it.
+            oldReader.close();
          }
       }
       catch (CorruptIndexException e)
@@ -112,6 +127,24 @@ public class InMemoryLuceneQueryableIndexStorage extends AbstractLuceneQueryable
       return indexReader;
    }
 
+   /**
+    * @see org.xcmis.search.lucene.AbstractLuceneQueryableIndexStorage#acquireSearcher()
+    */
+   @Override
+   protected Searcher acquireSearcher() throws IndexException
+   {
+      return searcherManager.acquire();
+   }
+
+   /**
+    * @see org.xcmis.search.lucene.AbstractLuceneQueryableIndexStorage#releaseSearcher(org.xcmis.search.lucene.Searcher)
+    */
+   @Override
+   protected void releaseSearcher(Searcher searcher) throws IndexException
+   {
+      searcherManager.release(searcher);
+   }
+
    /**
     * @throws IndexException
     * @see org.xcmis.search.lucene.AbstractLuceneQueryableIndexStorage#save(org.xcmis.search.lucene.index.LuceneIndexTransaction)
@@ -139,6 +172,7 @@ public class InMemoryLuceneQueryableIndexStorage extends AbstractLuceneQueryable
 
          writer.commit();
          writer.close();
+         searcherManager.invalidate();
       }
       catch (CorruptIndexException e)
       {
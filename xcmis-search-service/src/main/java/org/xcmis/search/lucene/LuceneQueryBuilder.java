@@ -18,6 +18,9 @@
  */
 package org.xcmis.search.lucene;
 
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
@@ -33,16 +36,16 @@ import org.antlr.runtime.ANTLRStringStream;
 import org.antlr.runtime.CharStream;
 import org.antlr.runtime.CommonTokenStream;
 import org.antlr.runtime.RecognitionException;
-import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.Validate;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
-import org.apache.lucene.document.DateTools;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.NumericRangeQuery;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TermRangeQuery;
@@ -58,14 +61,14 @@ import org.xcmis.search.antlr.FullTextLexer;
 import org.xcmis.search.antlr.FullTextParser;
 import org.xcmis.search.config.IndexConfiguration;
 import org.xcmis.search.lucene.content.ErrorReporterImpl;
-import org.xcmis.search.lucene.index.ExtendedNumberTools;
 import org.xcmis.search.lucene.index.FieldNames;
 import org.xcmis.search.lucene.index.IndexException;
-import org.xcmis.search.lucene.search.CaseInsensitiveRangeQuery;
+import org.xcmis.search.lucene.index.LuceneIndexer;
 import org.xcmis.search.lucene.search.CaseInsensitiveRegexCapImpl;
-import org.xcmis.search.lucene.search.CaseInsensitiveTermQuery;
 import org.xcmis.search.lucene.search.ChildTraversingQueryNode;
 import org.xcmis.search.lucene.search.DescendantQueryNode;
+import org.xcmis.search.lucene.search.LikeTermQuery;
+import org.xcmis.search.lucene.search.StoredValueLikeQuery;
 import org.xcmis.search.model.Limit;
 import org.xcmis.search.model.column.Column;
 import org.xcmis.search.model.constraint.And;
@@ -112,6 +115,10 @@ public class LuceneQueryBuilder implements QueryObjectModelVisitor
 
    public static final char LIKE_MATCH_ZERO_OR_MORE_CHAR = '%';
 
+   private static final BigDecimal MIN_LONG = BigDecimal.valueOf(Long.MIN_VALUE);
+
+   private static final BigDecimal MAX_LONG = BigDecimal.valueOf(Long.MAX_VALUE);
+
    private Stack<Object> queryBuilderStack;
 
    private Map<String, Object> bindVariablesValues;
@@ -129,6 +136,12 @@ public class LuceneQueryBuilder implements QueryObjectModelVisitor
 
    private final IndexConfiguration indexConfiguration;
 
+   /**
+    * <code>true</code> if case insensitive operand is UPPER, it is compared
+    * with uppercased values, otherwise with lowercased values.
+    */
+   private boolean upperCaseSearch;
+
    /**
     * @param indexReader 
     * @param nameConverter 
@@ -215,10 +228,9 @@ public class LuceneQueryBuilder implements QueryObjectModelVisitor
       String parentPath = node.getParentPath();
       if (parentPath.charAt(0) == '[')
       {
-         //uuid based absolute path
-         Query parentQuery = new TermQuery(new Term(FieldNames.UUID, parentPath.substring(1, parentPath.length() - 1)));
-         Query childNodeQuery = new ChildTraversingQueryNode(parentQuery, false);
-         queryBuilderStack.push(childNodeQuery);
+         //uuid based absolute path, direct children have parent uuid in index
+         queryBuilderStack.push(new TermQuery(new Term(FieldNames.PARENT, parentPath.substring(1,
+            parentPath.length() - 1))));
 
       }
       else
@@ -297,10 +309,9 @@ public class LuceneQueryBuilder implements QueryObjectModelVisitor
       String parentPath = node.getAncestorPath();
       if (parentPath.charAt(0) == '[')
       {
-         //uuid based absolute path
-         Query parentQuery = new TermQuery(new Term(FieldNames.UUID, parentPath.substring(1, parentPath.length() - 1)));
-         Query childNodeQuery = new ChildTraversingQueryNode(parentQuery, true);
-         queryBuilderStack.push(childNodeQuery);
+         //uuid based absolute path, all descendants have ancestor uuid in index
+         queryBuilderStack.push(new TermQuery(new Term(FieldNames.ANCESTOR, parentPath.substring(1,
+            parentPath.length() - 1))));
       }
       else
       {
@@ -507,16 +518,22 @@ public class LuceneQueryBuilder implements QueryObjectModelVisitor
       Validate.isTrue(queryBuilderStack.peek() instanceof Boolean, "Stack should contains caseInsensitiveSearch flag");
       boolean caseInsensitiveSearch = (Boolean)queryBuilderStack.pop();
 
-      final String value = (String)queryBuilderStack.peek();
-      if (!caseInsensitiveSearch && !StringUtils.isAllLowerCase(value))
+      queryBuilderStack.push(new Boolean(true));
+      boolean outerUpperCaseSearch = upperCaseSearch;
+      if (!caseInsensitiveSearch)
       {
-         // search nothing because static value in different case
-         queryBuilderStack.push(new BooleanQuery());
+         // outermost function defines case of compared values
+         upperCaseSearch = false;
+      }
+      try
+      {
+         // push dynamic query to stack;
+         Visitors.visit(node.getOperand(), this);
+      }
+      finally
+      {
+         upperCaseSearch = outerUpperCaseSearch;
       }
-
-      queryBuilderStack.push(new Boolean(true));
-      // push dynamic query to stack;
-      Visitors.visit(node.getOperand(), this);
    }
 
    /**
@@ -627,14 +644,15 @@ public class LuceneQueryBuilder implements QueryObjectModelVisitor
       String staticStingValue = (String)queryBuilderStack.pop();
 
       Term staticValueTerm = new Term(FieldNames.LABEL, staticStingValue);
+      // UPPER and LOWER compare static value with uppercased or lowercased labels
+      Term caseTerm = createCaseTerm(FieldNames.LABEL, staticStingValue);
 
       switch (operator)
       {
          case EQUAL_TO :
             if (caseInsensitiveSearch)
             {
-               queryBuilderStack.push(new CaseInsensitiveTermQuery(new Term(FieldNames.LABEL, staticStingValue
-                  .toLowerCase())));
+               queryBuilderStack.push(new TermQuery(caseTerm));
             }
             else
             {
@@ -648,8 +666,7 @@ public class LuceneQueryBuilder implements QueryObjectModelVisitor
             // property not equal to
             if (caseInsensitiveSearch)
             {
-               booleanQuery.add(new CaseInsensitiveTermQuery(staticValueTerm), BooleanClause.Occur.MUST_NOT);
-
+               booleanQuery.add(new TermQuery(caseTerm), BooleanClause.Occur.MUST_NOT);
             }
             else
             {
@@ -660,8 +677,7 @@ public class LuceneQueryBuilder implements QueryObjectModelVisitor
          case GREATER_THAN :
             if (caseInsensitiveSearch)
             {
-               queryBuilderStack.push(new CaseInsensitiveRangeQuery(staticValueTerm.field(), 
-                       staticValueTerm.text().toLowerCase(), null, false, false));
+               queryBuilderStack.push(new TermRangeQuery(caseTerm.field(), caseTerm.text(), null, false, false));
             }
             else
             {
@@ -673,8 +689,7 @@ public class LuceneQueryBuilder implements QueryObjectModelVisitor
 
             if (caseInsensitiveSearch)
             {
-               queryBuilderStack.push(new CaseInsensitiveRangeQuery(staticValueTerm.field(), 
-                       staticValueTerm.text().toLowerCase(), null, true, true));
+               queryBuilderStack.push(new TermRangeQuery(caseTerm.field(), caseTerm.text(), null, true, true));
             }
             else
             {
@@ -685,8 +700,7 @@ public class LuceneQueryBuilder implements QueryObjectModelVisitor
          case LESS_THAN :
             if (caseInsensitiveSearch)
             {
-               queryBuilderStack.push(new CaseInsensitiveRangeQuery(staticValueTerm.field(),
-                       null, staticValueTerm.text().toUpperCase(), false, false));
+               queryBuilderStack.push(new TermRangeQuery(caseTerm.field(), null, caseTerm.text(), false, false));
             }
             else
             {
@@ -697,8 +711,7 @@ public class LuceneQueryBuilder implements QueryObjectModelVisitor
          case LESS_THAN_OR_EQUAL_TO :
             if (caseInsensitiveSearch)
             {
-               queryBuilderStack.push(new CaseInsensitiveRangeQuery(staticValueTerm.field(), 
-                       null, staticValueTerm.text().toUpperCase(), true, true));
+               queryBuilderStack.push(new TermRangeQuery(caseTerm.field(), null, caseTerm.text(), true, true));
             }
             else
             {
@@ -716,13 +729,7 @@ public class LuceneQueryBuilder implements QueryObjectModelVisitor
             }
             else
             {
-               final String term = likePatternToRegex(likeExpression);
-               RegexQuery query = new RegexQuery(new Term(FieldNames.LABEL, term));
-               if (caseInsensitiveSearch)
-               {
-                  (query).setRegexImplementation(new CaseInsensitiveRegexCapImpl());
-               }
-               queryBuilderStack.push(query);
+               queryBuilderStack.push(createLikeQuery(FieldNames.LABEL, likeExpression, caseInsensitiveSearch, true));
             }
 
             break;
@@ -815,39 +822,32 @@ public class LuceneQueryBuilder implements QueryObjectModelVisitor
          "Stack should contains static value. But found " + queryBuilderStack.peek().getClass().getCanonicalName());
       staticValue = queryBuilderStack.pop();
 
-      String staticStingValue = null;
-      //convert static value to string
-      //TODO check cast system
-      if (staticValue instanceof String)
+      // numbers and dates are compared by trie encoded numeric field
+      if (LuceneIndexer.toNumericValue(staticValue) != null)
       {
-         staticStingValue = (String)staticValue;
-      }
-      else if (staticValue instanceof Double)
-      {
-         staticStingValue = ExtendedNumberTools.doubleToString((Double)staticValue);
-      }
-      else if (staticValue instanceof Long)
-      {
-         staticStingValue = NumericUtils.longToPrefixCoded((Long)staticValue);
-      }
-      else if (staticValue instanceof Calendar)
-      {
-         staticStingValue = DateTools.dateToString(((Calendar)staticValue).getTime(), DateTools.Resolution.MILLISECOND);
-      }
-      else if (staticValue instanceof Boolean)
-      {
-         staticStingValue = staticValue.toString();
+         queryBuilderStack.push(createNumericQuery(node.getPropertyName(), operator, staticValue));
+         return;
       }
 
+      //convert static value to string
+      String staticStingValue = staticValue.toString();
+
       Term propertyValueTerm = new Term(FieldNames.createPropertyFieldName(node.getPropertyName()), staticStingValue);
       TermQuery propertyValueQuery = new TermQuery(propertyValueTerm);
       Term maxFildValue = new Term(FieldNames.createPropertyFieldName(node.getPropertyName()), "\uFFFF");
+      // UPPER and LOWER compare static value with uppercased or lowercased
+      // values of string properties
+      if (caseInsensitiveSearch && !(staticValue instanceof String))
+      {
+         caseInsensitiveSearch = false;
+      }
+      Term caseTerm = caseInsensitiveSearch ? createCaseTerm(node.getPropertyName(), staticStingValue) : null;
       switch (operator)
       {
          case EQUAL_TO :
             if (caseInsensitiveSearch)
             {
-               queryBuilderStack.push(new CaseInsensitiveTermQuery(propertyValueTerm));
+               queryBuilderStack.push(new TermQuery(caseTerm));
             }
             else
             {
@@ -863,7 +863,7 @@ public class LuceneQueryBuilder implements QueryObjectModelVisitor
             // property not equal to
             if (caseInsensitiveSearch)
             {
-               notEqualQuery.add(new CaseInsensitiveTermQuery(propertyValueTerm), BooleanClause.Occur.MUST_NOT);
+               notEqualQuery.add(new TermQuery(caseTerm), BooleanClause.Occur.MUST_NOT);
             }
             else
             {
@@ -875,8 +875,8 @@ public class LuceneQueryBuilder implements QueryObjectModelVisitor
          case GREATER_THAN :
             if (caseInsensitiveSearch)
             {
-               queryBuilderStack.push(new CaseInsensitiveRangeQuery(FieldNames.createPropertyFieldName(node.getPropertyName()), 
-                       propertyValueTerm.text(), maxFildValue.text(), false, false));
+               queryBuilderStack.push(new TermRangeQuery(caseTerm.field(), caseTerm.text(), maxFildValue
+                  .text(), false, false));
             }
             else
             {
@@ -888,8 +888,8 @@ public class LuceneQueryBuilder implements QueryObjectModelVisitor
 
             if (caseInsensitiveSearch)
             {
-               queryBuilderStack.push(new CaseInsensitiveRangeQuery(FieldNames.createPropertyFieldName(node.getPropertyName()), 
-                       propertyValueTerm.text(), maxFildValue.text(), true, true));
+               queryBuilderStack.push(new TermRangeQuery(caseTerm.field(), caseTerm.text(), maxFildValue
+                  .text(), true, true));
             }
             else
             {
@@ -900,8 +900,7 @@ public class LuceneQueryBuilder implements QueryObjectModelVisitor
          case LESS_THAN :
             if (caseInsensitiveSearch)
             {
-               queryBuilderStack.push(new CaseInsensitiveRangeQuery(FieldNames.createPropertyFieldName(node.getPropertyName()), 
-                       "", propertyValueTerm.text(), false, false));
+               queryBuilderStack.push(new TermRangeQuery(caseTerm.field(), "", caseTerm.text(), false, false));
             }
             else
             {
@@ -912,8 +911,7 @@ public class LuceneQueryBuilder implements QueryObjectModelVisitor
          case LESS_THAN_OR_EQUAL_TO :
             if (caseInsensitiveSearch)
             {
-               queryBuilderStack.push(new CaseInsensitiveRangeQuery(FieldNames.createPropertyFieldName(node.getPropertyName()), 
-                       "", propertyValueTerm.text(), true, true));
+               queryBuilderStack.push(new TermRangeQuery(caseTerm.field(), "", caseTerm.text(), true, true));
             }
             else
             {
@@ -930,14 +928,8 @@ public class LuceneQueryBuilder implements QueryObjectModelVisitor
             }
             else
             {
-               final String term = likePatternToRegex(staticStingValue);
-               Query likeQuery =
-                  new RegexQuery(new Term(FieldNames.createPropertyFieldName(node.getPropertyName()), term));
-               if (caseInsensitiveSearch)
-               {
-                  ((RegexQuery)likeQuery).setRegexImplementation(new CaseInsensitiveRegexCapImpl());
-               }
-               queryBuilderStack.push(likeQuery);
+               queryBuilderStack.push(createLikeQuery(node.getPropertyName(), staticStingValue,
+                  caseInsensitiveSearch, indexConfiguration.isNGramIndexing()));
             }
 
             break;
@@ -947,6 +939,181 @@ public class LuceneQueryBuilder implements QueryObjectModelVisitor
 
    }
 
+   /**
+    * Create query which compares trie encoded values of numeric or date
+    * property with static value. Integer properties are indexed as longs and
+    * other ones as doubles, query is built for each encoding found in index.
+    * 
+    * @param propertyName property name
+    * @param operator comparison operator
+    * @param value static number or date
+    * @return numeric range query
+    * @throws VisitException if operator can't be applied to numbers
+    */
+   private Query createNumericQuery(String propertyName, Operator operator, Object value) throws VisitException
+   {
+      if (operator == Operator.NOT_EQUAL_TO)
+      {
+         final BooleanQuery notEqualQuery = new BooleanQuery();
+         // property exists
+         notEqualQuery.add(new TermQuery(new Term(FieldNames.PROPERTIES_SET, propertyName)),
+            BooleanClause.Occur.SHOULD);
+         // property not equal to
+         notEqualQuery.add(createNumericQuery(propertyName, Operator.EQUAL_TO, value), BooleanClause.Occur.MUST_NOT);
+         return notEqualQuery;
+      }
+
+      final String doubleField = FieldNames.createNumericFieldName(propertyName);
+      final String longField = FieldNames.createLongFieldName(propertyName);
+      if (!hasField(longField))
+      {
+         return createDoubleRangeQuery(doubleField, operator, LuceneIndexer.toNumericValue(value));
+      }
+      final Query longQuery = createLongRangeQuery(longField, operator, value);
+      if (!hasField(doubleField))
+      {
+         return longQuery;
+      }
+      final BooleanQuery query = new BooleanQuery();
+      query.add(longQuery, BooleanClause.Occur.SHOULD);
+      query.add(createDoubleRangeQuery(doubleField, operator, LuceneIndexer.toNumericValue(value)),
+         BooleanClause.Occur.SHOULD);
+      return query;
+   }
+
+   /**
+    * @param field name of field with trie encoded doubles
+    * @param operator comparison operator except NOT_EQUAL_TO
+    * @param value static value converted by
+    *           {@link LuceneIndexer#toNumericValue(Object)}
+    * @return double range query
+    * @throws VisitException if operator can't be applied to numbers
+    */
+   private Query createDoubleRangeQuery(String field, Operator operator, Double value) throws VisitException
+   {
+      final int step = LuceneIndexer.NUMERIC_PRECISION_STEP;
+      switch (operator)
+      {
+         case EQUAL_TO :
+            return NumericRangeQuery.newDoubleRange(field, step, value, value, true, true);
+         case GREATER_THAN :
+            return NumericRangeQuery.newDoubleRange(field, step, value, null, false, true);
+         case GREATER_THAN_OR_EQUAL_TO :
+            return NumericRangeQuery.newDoubleRange(field, step, value, null, true, true);
+         case LESS_THAN :
+            return NumericRangeQuery.newDoubleRange(field, step, null, value, true, false);
+         case LESS_THAN_OR_EQUAL_TO :
+            return NumericRangeQuery.newDoubleRange(field, step, null, value, true, true);
+         default :
+            throw new VisitException("Invalid operator " + operator + " for numeric value");
+      }
+   }
+
+   /**
+    * Static value may be fractional or out of long range, so bounds are
+    * rounded to the nearest longs which satisfy the comparison.
+    * 
+    * @param field name of field with trie encoded longs
+    * @param operator comparison operator except NOT_EQUAL_TO
+    * @param value static number or date
+    * @return long range query, query without clauses if nothing can match
+    * @throws VisitException if operator can't be applied to numbers
+    */
+   private Query createLongRangeQuery(String field, Operator operator, Object value) throws VisitException
+   {
+      final BigDecimal number = toBigDecimal(value);
+      if (number == null)
+      {
+         // NaN is not equal to any number
+         return new BooleanQuery();
+      }
+      final BigDecimal ceiling = number.setScale(0, RoundingMode.CEILING);
+      final BigDecimal floor = number.setScale(0, RoundingMode.FLOOR);
+      BigDecimal lower = null;
+      BigDecimal upper = null;
+      switch (operator)
+      {
+         case EQUAL_TO :
+            lower = ceiling;
+            upper = floor;
+            break;
+         case GREATER_THAN :
+            lower = floor.add(BigDecimal.ONE);
+            break;
+         case GREATER_THAN_OR_EQUAL_TO :
+            lower = ceiling;
+            break;
+         case LESS_THAN :
+            upper = ceiling.subtract(BigDecimal.ONE);
+            break;
+         case LESS_THAN_OR_EQUAL_TO :
+            upper = floor;
+            break;
+         default :
+            throw new VisitException("Invalid operator " + operator + " for numeric value");
+      }
+      if ((lower != null && lower.compareTo(MAX_LONG) > 0) || (upper != null && upper.compareTo(MIN_LONG) < 0)
+         || (lower != null && upper != null && lower.compareTo(upper) > 0))
+      {
+         return new BooleanQuery();
+      }
+      final Long min = lower == null || lower.compareTo(MIN_LONG) <= 0 ? null : lower.longValue();
+      final Long max = upper == null || upper.compareTo(MAX_LONG) >= 0 ? null : upper.longValue();
+      return NumericRangeQuery.newLongRange(field, LuceneIndexer.NUMERIC_PRECISION_STEP, min, max, true, true);
+   }
+
+   /**
+    * @param value static number or date
+    * @return exact value, infinities are replaced by numbers out of long
+    *         range, null for NaN
+    */
+   private BigDecimal toBigDecimal(Object value)
+   {
+      if (value instanceof Long)
+      {
+         return BigDecimal.valueOf((Long)value);
+      }
+      if (value instanceof Calendar)
+      {
+         return BigDecimal.valueOf(((Calendar)value).getTimeInMillis());
+      }
+      final double doubleValue = ((Number)value).doubleValue();
+      if (Double.isNaN(doubleValue))
+      {
+         return null;
+      }
+      if (Double.isInfinite(doubleValue))
+      {
+         return doubleValue > 0 ? MAX_LONG.add(BigDecimal.ONE) : MIN_LONG.subtract(BigDecimal.ONE);
+      }
+      return new BigDecimal(doubleValue);
+   }
+
+   /**
+    * @param field field name
+    * @return true if index contains at least one term of field
+    * @throws VisitException if index can't be read
+    */
+   private boolean hasField(String field) throws VisitException
+   {
+      try
+      {
+         TermEnum terms = indexReader.terms(new Term(field, ""));
+         try
+         {
+            return terms.term() != null && field.equals(terms.term().field());
+         }
+         finally
+         {
+            terms.close();
+         }
+      }
+      catch (IOException e)
+      {
+         throw new VisitException(e.getLocalizedMessage());
+      }
+   }
+
    /**
     * @see org.xcmis.search.QueryObjectModelVisitor#visit(org.xcmis.search.model.Query)
     */
@@ -1010,17 +1177,22 @@ public class LuceneQueryBuilder implements QueryObjectModelVisitor
       Validate.isTrue(queryBuilderStack.peek() instanceof Boolean, "Stack should contains caseInsensitiveSearch flag");
       boolean caseInsensitiveSearch = (Boolean)queryBuilderStack.pop();
 
-      final String value = (String)queryBuilderStack.peek();
-      if (!caseInsensitiveSearch && !StringUtils.isAllUpperCase(value))
+      queryBuilderStack.push(new Boolean(true));
+      boolean outerUpperCaseSearch = upperCaseSearch;
+      if (!caseInsensitiveSearch)
       {
-         // search nothing because static value in different case
-         queryBuilderStack.push(new BooleanQuery());
+         // outermost function defines case of compared values
+         upperCaseSearch = true;
+      }
+      try
+      {
+         // push dynamic query to stack;
+         Visitors.visit(node.getOperand(), this);
+      }
+      finally
+      {
+         upperCaseSearch = outerUpperCaseSearch;
       }
-
-      queryBuilderStack.push(new Boolean(true));
-      // push dynamic query to stack;
-      Visitors.visit(node.getOperand(), this);
-
    }
 
    /**
@@ -1038,6 +1210,125 @@ public class LuceneQueryBuilder implements QueryObjectModelVisitor
       return fildsSet;
    }
 
+   /**
+    * @param name property name or {@link FieldNames#LABEL}
+    * @param value static value, it is compared as is
+    * @return term of field with uppercased values if operand is UPPER or with
+    *         lowercased values otherwise
+    */
+   private Term createCaseTerm(String name, String value)
+   {
+      return new Term(createCaseFieldName(name), value);
+   }
+
+   private String createCaseFieldName(String name)
+   {
+      return upperCaseSearch ? FieldNames.createUpperCaseFieldName(name) : FieldNames.createLowerCaseFieldName(name);
+   }
+
+   /**
+    * Create query for LIKE comparison. Pattern with leading literal is checked
+    * only against terms with this prefix, pattern with trailing literal
+    * against reversed values with reversed suffix. Other patterns are checked
+    * against stored values of documents found by n-grams of literals of
+    * pattern if n-grams are indexed, otherwise against all terms of field.
+    * Pattern of UPPER (LOWER) operand is matched as is against uppercased
+    * (lowercased) values, they are not reversed.
+    * 
+    * @param name property name or {@link FieldNames#LABEL}
+    * @param likePattern LIKE pattern
+    * @param caseInsensitiveSearch if <code>true</code> operand is UPPER or
+    *           LOWER
+    * @param storedValues if <code>true</code> values are stored in index
+    * @return query
+    */
+   private Query createLikeQuery(String name, String likePattern, boolean caseInsensitiveSearch,
+      boolean storedValues)
+   {
+      String storedField = FieldNames.LABEL.equals(name) ? name : FieldNames.createPropertyFieldName(name);
+      String field = storedField;
+      String reversedField = FieldNames.createReversedFieldName(name);
+      if (caseInsensitiveSearch)
+      {
+         field = createCaseFieldName(name);
+         reversedField = null;
+      }
+      String regex = likePatternToRegex(likePattern);
+      List<String> literals = splitLikePattern(likePattern);
+      String prefix = literals.get(0);
+      String suffix = literals.get(literals.size() - 1);
+      if (literals.size() == 1)
+      {
+         // no wildcards
+         return new TermQuery(new Term(field, prefix));
+      }
+      if (prefix.length() > 0)
+      {
+         return new LikeTermQuery(field, prefix, regex, false);
+      }
+      if (suffix.length() > 0 && reversedField != null)
+      {
+         return new LikeTermQuery(reversedField, LuceneIndexer.reverse(suffix), regex, true);
+      }
+      if (storedValues && indexConfiguration.isNGramIndexing())
+      {
+         BooleanQuery nGramsQuery = new BooleanQuery();
+         String nGramField = FieldNames.createNGramFieldName(name);
+         for (String literal : literals)
+         {
+            for (String nGram : LuceneIndexer.createNGrams(literal))
+            {
+               nGramsQuery.add(new TermQuery(new Term(nGramField, nGram)), BooleanClause.Occur.MUST);
+            }
+         }
+         if (nGramsQuery.clauses().size() > 0)
+         {
+            return new StoredValueLikeQuery(nGramsQuery, storedField, regex, caseInsensitiveSearch
+               ? (upperCaseSearch ? StoredValueLikeQuery.ValueCase.UPPER : StoredValueLikeQuery.ValueCase.LOWER)
+               : StoredValueLikeQuery.ValueCase.AS_IS);
+         }
+      }
+      return new LikeTermQuery(field, "", regex, false);
+   }
+
+   /**
+    * Split LIKE pattern to literals separated by wildcards. First (last)
+    * literal is empty if pattern starts (ends) with wildcard.
+    * 
+    * @param pattern LIKE pattern
+    * @return unescaped literals, single literal if pattern has no wildcards
+    */
+   private List<String> splitLikePattern(final String pattern)
+   {
+      List<String> literals = new ArrayList<String>();
+      StringBuilder literal = new StringBuilder();
+      boolean escaped = false;
+      for (int i = 0; i < pattern.length(); i++)
+      {
+         char c = pattern.charAt(i);
+         if (escaped)
+         {
+            literal.append(c);
+            escaped = false;
+         }
+         else if (c == LIKE_ESCAPE_CHAR)
+         {
+            escaped = true;
+         }
+         else if (c == LIKE_MATCH_ONE_CHAR || c == LIKE_MATCH_ZERO_OR_MORE_CHAR)
+         {
+            literals.add(literal.toString());
+            literal.setLength(0);
+         }
+         else
+         {
+            literal.append(c);
+         }
+      }
+      literals.add(literal.toString());
+      return literals;
+   }
+
    /**
     * Transform Like pattern to regular expression.
     * 
@@ -93,6 +93,24 @@ public class LuceneQueryableIndexStorage extends AbstractLuceneQueryableIndexSto
       return indexDataManager.getIndexReader();
    }
 
+   /**
+    * @see org.xcmis.search.lucene.AbstractLuceneQueryableIndexStorage#acquireSearcher()
+    */
+   @Override
+   protected Searcher acquireSearcher() throws IndexException
+   {
+      return indexDataManager.acquireSearcher();
+   }
+
+   /**
+    * @see org.xcmis.search.lucene.AbstractLuceneQueryableIndexStorage#releaseSearcher(org.xcmis.search.lucene.Searcher)
+    */
+   @Override
+   protected void releaseSearcher(Searcher searcher) throws IndexException
+   {
+      indexDataManager.releaseSearcher(searcher);
+   }
+
    protected Document getDocument(String uuid, IndexReader reader) throws IndexException
    {
 
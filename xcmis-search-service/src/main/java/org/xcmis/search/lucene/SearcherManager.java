@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.search.lucene;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiReader;
+import org.xcmis.search.lucene.index.IndexException;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps one {@link Searcher} over current state of index which is shared by
+ * all queries. Owner of index calls {@link #invalidate()} after each change of
+ * index, new searcher is opened by the first {@link #acquire()} after that.
+ * Searchers are reference counted: searcher obtained from {@link #acquire()}
+ * stays usable until it is passed to {@link #release(Searcher)}, even if it
+ * is replaced by newer one in meantime. Acquiring of up to date searcher does
+ * not take any lock.
+ */
+public class SearcherManager
+{
+   /**
+    * Source of readers over current state of index.
+    */
+   public interface IndexReaderSource
+   {
+      /**
+       * Get readers over current state of index. Source keeps ownership of
+       * readers, manager takes its own references to them.
+       *
+       * @return readers, never empty
+       * @throws IndexException if readers can't be opened
+       */
+      IndexReader[] getIndexReaders() throws IndexException;
+   }
+
+   /**
+    * Searcher over readers of one generation of index.
+    */
+   private static final class ManagedSearcher extends Searcher
+   {
+      private final long generation;
+
+      /**
+       * Number of references to searcher. One reference is held by manager
+       * while searcher is current one.
+       */
+      private final AtomicInteger references = new AtomicInteger(1);
+
+      ManagedSearcher(IndexReader reader, long generation)
+      {
+         super(reader);
+         this.generation = generation;
+      }
+
+      boolean tryIncRef()
+      {
+         for (;;)
+         {
+            int count = references.get();
+            if (count <= 0)
+            {
+               return false;
+            }
+            if (references.compareAndSet(count, count + 1))
+            {
+               return true;
+            }
+         }
+      }
+
+      void decRef() throws IOException
+      {
+         if (references.decrementAndGet() == 0)
+         {
+            getIndexReader().decRef();
+         }
+      }
+   }
+
+   private final IndexReaderSource source;
+
+   /**
+    * Generation of index, incremented on each change.
+    */
+   private final AtomicLong generation = new AtomicLong();
+
+   private volatile ManagedSearcher current;
+
+   /**
+    * Lock to open new searcher. It is not used when current searcher is up to
+    * date.
+    */
+   private final Object refreshLock = new Object();
+
+   /**
+    * @param source source of readers over current state of index
+    */
+   public SearcherManager(IndexReaderSource source)
+   {
+      this.source = source;
+   }
+
+   /**
+    * Get searcher over current state of index. Searcher must be released with
+    * {@link #release(Searcher)} after use and must not be closed.
+    *
+    * @return searcher
+    * @throws IndexException if searcher can't be opened
+    */
+   public Searcher acquire() throws IndexException
+   {
+      for (;;)
+      {
+         ManagedSearcher searcher = current;
+         if (searcher == null || searcher.generation != generation.get())
+         {
+            searcher = refresh();
+         }
+         // Fails only if searcher was replaced and released concurrently.
+         if (searcher.tryIncRef())
+         {
+            return searcher;
+         }
+      }
+   }
+
+   /**
+    * Release searcher obtained from {@link #acquire()}.
+    *
+    * @param searcher searcher
+    * @throws IndexException if searcher was last user of readers and they
+    *         can't be closed
+    */
+   public void release(Searcher searcher) throws IndexException
+   {
+      try
+      {
+         ((ManagedSearcher)searcher).decRef();
+      }
+      catch (IOException e)
+      {
+         throw new IndexException(e.getLocalizedMessage(), e);
+      }
+   }
+
+   /**
+    * Notify manager that index was changed. Current searcher is replaced by
+    * next {@link #acquire()}.
+    */
+   public void invalidate()
+   {
+      generation.incrementAndGet();
+   }
+
+   /**
+    * Release current searcher. Readers are closed when all acquired searchers
+    * are released.
+    *
+    * @throws IndexException if readers can't be closed
+    */
+   public void close() throws IndexException
+   {
+      synchronized (refreshLock)
+      {
+         ManagedSearcher searcher = current;
+         current = null;
+         if (searcher != null)
+         {
+            release(searcher);
+         }
+      }
+   }
+
+   private ManagedSearcher refresh() throws IndexException
+   {
+      synchronized (refreshLock)
+      {
+         // Read generation before readers, so change made while readers are
+         // opened causes one more refresh.
+         long gen = generation.get();
+         ManagedSearcher searcher = current;
+         if (searcher != null && searcher.generation == gen)
+         {
+            return searcher;
+         }
+         ManagedSearcher newSearcher = new ManagedSearcher(openReader(), gen);
+         current = newSearcher;
+         if (searcher != null)
+         {
+            release(searcher);
+         }
+         return newSearcher;
+      }
+   }
+
+   private IndexReader openReader() throws IndexException
+   {
+      IndexReader[] readers = source.getIndexReaders();
+      if (readers.length == 1)
+      {
+         readers[0].incRef();
+         return readers[0];
+      }
+      // Not closing sub readers means taking references to them.
+      return new MultiReader(readers, false);
+   }
+}
@@ -27,6 +27,8 @@ import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.RAMDirectory;
 import org.xcmis.search.config.IndexConfiguration;
 import org.xcmis.search.config.IndexConfigurationException;
+import org.xcmis.search.lucene.Searcher;
+import org.xcmis.search.lucene.SearcherManager;
 import org.xcmis.search.lucene.index.merge.AggregatePolicy;
 import org.xcmis.search.lucene.index.merge.DocumentCountAggregatePolicy;
 import org.xcmis.search.lucene.index.merge.MaxCandidatsCountAggrigatePolicy;
@@ -107,6 +109,11 @@ public class CacheableIndexDataManager extends LocalIndexDataManagerProxy
     * */
    private final Object updateMonitor = new Object();
 
+   /**
+    * Shared searcher over memory chains and persisted index.
+    */
+   private final SearcherManager searcherManager;
+
    /**
     * @throws IndexConfigurationException
     * @throws IndexException
@@ -128,6 +135,13 @@ public class CacheableIndexDataManager extends LocalIndexDataManagerProxy
       persistentAggregationPolicy.setMinDocuments4Dir(100);
       persistentAggregationPolicy.setMinAggregateTime(1 * 1000);
       persistentAggregationPolicy.setMinModificationTime(3 * 1000);
+      searcherManager = new SearcherManager(new SearcherManager.IndexReaderSource()
+      {
+         public IndexReader[] getIndexReaders() throws IndexException
+         {
+            return CacheableIndexDataManager.this.getIndexReaders();
+         }
+      });
       scheduleFlushTask();
 
    }
@@ -173,6 +187,7 @@ public class CacheableIndexDataManager extends LocalIndexDataManagerProxy
             }
          }
       }
+      searcherManager.invalidate();
       return null;
    }
 
@@ -248,50 +263,72 @@ public class CacheableIndexDataManager extends LocalIndexDataManagerProxy
    @Override
    public IndexReader getIndexReader() throws IndexException
    {
+      final IndexReader[] readers = getIndexReaders();
+      return readers.length == 1 ? readers[0] : new MultiReader(readers);
+   }
 
+   /**
+    * Get searcher over current state of index. Searcher is shared between
+    * queries and must be released with {@link #releaseSearcher(Searcher)}.
+    * 
+    * @return searcher
+    * @throws IndexException
+    */
+   public Searcher acquireSearcher() throws IndexException
+   {
+      return searcherManager.acquire();
+   }
+
+   /**
+    * Release searcher obtained from {@link #acquireSearcher()}.
+    * 
+    * @param searcher searcher
+    * @throws IndexException
+    */
+   public void releaseSearcher(Searcher searcher) throws IndexException
+   {
+      searcherManager.release(searcher);
+   }
+
+   /**
+    * Notify shared searcher that index was changed.
+    */
+   protected void invalidateSearcher()
+   {
+      searcherManager.invalidate();
+   }
+
+   /**
+    * Get readers of memory chains and persisted index.
+    * 
+    * @return readers, never empty
+    * @throws IndexException
+    */
+   private IndexReader[] getIndexReaders() throws IndexException
+   {
       synchronized (memoryChains)
       {
          synchronized (updateMonitor)
          {
-            IndexReader result = super.getIndexReader();
-
-            if (memoryChains.size() > 0)
+            final List<IndexReader> readers = new ArrayList<IndexReader>(memoryChains.size() + 1);
+            for (final LuceneIndexDataManager chain : memoryChains)
             {
-               final List<IndexReader> readers = new ArrayList<IndexReader>(memoryChains.size());
-               final Iterator<LuceneIndexDataManager> it = memoryChains.iterator();
-
-               while (it.hasNext())
+               final IndexReader indexReader = chain.getIndexReader();
+               if (indexReader != null)
                {
-                  final LuceneIndexDataManager chain = it.next();
-
-                  final IndexReader indexReader = chain.getIndexReader();
-                  if (indexReader != null)
-                  {
-                     readers.add(indexReader);
-                  }
-
+                  readers.add(indexReader);
                }
-               if (result != null)
-               {
-                  readers.add(result);
-               }
-               if (readers.size() > 1)
-               {
-                  final IndexReader[] indexReaders = new IndexReader[readers.size()];
-                  result = new MultiReader(readers.toArray(indexReaders));
-               }
-               else if (readers.size() == 1)
-               {
-                  result = readers.get(0);
-               }
-               else
+            }
+            // Readers of persisted indexes are taken one by one: reader
+            // returned by super.getIndexReader() may be new MultiReader which
+            // nobody would close.
+            readers.addAll(getPersistedIndexReaders());
+            if (readers.size() == 0)
+            {
+               if (memoryChains.size() > 0)
                {
                   throw new IndexReaderNotFoundException("No readers found");
                }
-
-            }
-            if (result == null)
-            {
                try
                {
                   RAMDirectory directory = new RAMDirectory();
@@ -299,18 +336,16 @@ public class CacheableIndexDataManager extends LocalIndexDataManagerProxy
                      new IndexWriter.MaxFieldLength(IndexWriter.DEFAULT_MAX_FIELD_LENGTH);
                   IndexWriter iw = new IndexWriter(directory, new SimpleAnalyzer(), true, fieldLength);
                   iw.close();
-                  result = IndexReader.open(directory);
+                  readers.add(IndexReader.open(directory));
                }
                catch (IOException e)
                {
                   throw new IndexException("Unable to initialize index: empty index ");
                }
-
             }
-            return result;
+            return readers.toArray(new IndexReader[readers.size()]);
          }
       }
-
    }
 
    /**
@@ -364,6 +399,16 @@ public class CacheableIndexDataManager extends LocalIndexDataManagerProxy
       lastFlushTime = System.currentTimeMillis();
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void start()
+   {
+      super.start();
+      searcherManager.invalidate();
+   }
+
    @Override
    public long getLastModifedTime()
    {
@@ -401,6 +446,7 @@ public class CacheableIndexDataManager extends LocalIndexDataManagerProxy
          {
             super.save(changes);
          }
+         searcherManager.invalidate();
       }
       aggregate(memoryChains);
       return null;
@@ -427,9 +473,10 @@ public class CacheableIndexDataManager extends LocalIndexDataManagerProxy
          {
             flushTask.cancel();
          }
-         // clear canceled tasks
+         // clear canceled tasks, timer is shared by all indexes and is not
+         // canceled
          FLUSH_TIMER.purge();
-         FLUSH_TIMER.cancel();
+         searcherManager.close();
       }
       catch (final ConcurrentModificationException e)
       {
@@ -461,6 +508,7 @@ public class CacheableIndexDataManager extends LocalIndexDataManagerProxy
 
             }
             memoryChains.clear();
+            searcherManager.invalidate();
             lastFlushTime = System.currentTimeMillis();
          }
       }
@@ -59,12 +59,54 @@ public class FieldNames
     */
    public static final String LENGTH_PREFIX = "LENGTH:";
 
+   /**
+    * Prefix for all field names that contain reversed values of properties.
+    * Terms are not tokenized.
+    */
+   public static final String REVERSED_PREFIX = "REV:";
+
+   /**
+    * Prefix for all field names that contain lowercased values of properties.
+    * Terms are not tokenized.
+    */
+   public static final String LOWERCASE_PREFIX = "LOWER:";
+
+   /**
+    * Prefix for all field names that contain uppercased values of properties.
+    * Terms are not tokenized.
+    */
+   public static final String UPPERCASE_PREFIX = "UPPER:";
+
+   /**
+    * Prefix for all field names that contain lowercased n-grams of values of
+    * properties. Each n-gram is separate term.
+    */
+   public static final String NGRAM_PREFIX = "NGRAM:";
+
+   /**
+    * Prefix for all field names that contain trie encoded double values of
+    * decimal and date properties.
+    */
+   public static final String NUMERIC_PREFIX = "NUM:";
+
+   /**
+    * Prefix for all field names that contain trie encoded long values of
+    * integer properties.
+    */
+   public static final String LONG_PREFIX = "LONG:";
+
    /**
     * Name of the field that contains the UUID of the parent node. Terms are
     * stored and but not tokenized.
     */
    public static final String PARENT = "_:PARENT".intern();
 
+   /**
+    * Name of the field that contains the UUIDs of all ancestors of the node.
+    * Terms are not stored and not tokenized, only indexed.
+    */
+   public static final String ANCESTOR = "_:ANCESTOR".intern();
+
    /**
     * Name of the field that contains the label of the node. Terms are not
     * tokenized.
@@ -116,6 +158,79 @@ public class FieldNames
       return fieldName.substring(0, idx + 1) + FieldNames.LENGTH_PREFIX + fieldName.substring(idx + 1);
    }
 
+   /**
+    * Returns name of field with reversed values of property or label.
+    * 
+    * @param fieldName the property name or {@link #LABEL}
+    * @return reversed values field name
+    */
+   public static String createReversedFieldName(String fieldName)
+   {
+      int idx = fieldName.indexOf(':');
+      return fieldName.substring(0, idx + 1) + FieldNames.REVERSED_PREFIX + fieldName.substring(idx + 1);
+   }
+
+   /**
+    * Returns name of field with lowercased values of property or label.
+    * 
+    * @param fieldName the property name or {@link #LABEL}
+    * @return lowercased values field name
+    */
+   public static String createLowerCaseFieldName(String fieldName)
+   {
+      int idx = fieldName.indexOf(':');
+      return fieldName.substring(0, idx + 1) + FieldNames.LOWERCASE_PREFIX + fieldName.substring(idx + 1);
+   }
+
+   /**
+    * Returns name of field with uppercased values of property or label.
+    * 
+    * @param fieldName the property name or {@link #LABEL}
+    * @return uppercased values field name
+    */
+   public static String createUpperCaseFieldName(String fieldName)
+   {
+      int idx = fieldName.indexOf(':');
+      return fieldName.substring(0, idx + 1) + FieldNames.UPPERCASE_PREFIX + fieldName.substring(idx + 1);
+   }
+
+   /**
+    * Returns name of field with n-grams of values of property or label.
+    * 
+    * @param fieldName the property name or {@link #LABEL}
+    * @return n-grams field name
+    */
+   public static String createNGramFieldName(String fieldName)
+   {
+      int idx = fieldName.indexOf(':');
+      return fieldName.substring(0, idx + 1) + FieldNames.NGRAM_PREFIX + fieldName.substring(idx + 1);
+   }
+
+   /**
+    * Returns name of field with trie encoded double values of decimal or date
+    * property.
+    * 
+    * @param fieldName the property name
+    * @return numeric values field name
+    */
+   public static String createNumericFieldName(String fieldName)
+   {
+      int idx = fieldName.indexOf(':');
+      return fieldName.substring(0, idx + 1) + FieldNames.NUMERIC_PREFIX + fieldName.substring(idx + 1);
+   }
+
+   /**
+    * Returns name of field with trie encoded long values of integer property.
+    * 
+    * @param fieldName the property name
+    * @return long values field name
+    */
+   public static String createLongFieldName(String fieldName)
+   {
+      int idx = fieldName.indexOf(':');
+      return fieldName.substring(0, idx + 1) + FieldNames.LONG_PREFIX + fieldName.substring(idx + 1);
+   }
+
    /**
     * Returns a named value for use as a term in the index. The named value is of
     * the form: <code>fieldName</code> + '\uFFFF' + value
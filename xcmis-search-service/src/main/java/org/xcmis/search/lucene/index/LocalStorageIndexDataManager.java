@@ -188,44 +188,17 @@ public class LocalStorageIndexDataManager implements LuceneIndexDataManager, Ind
       IndexReader result = null;
       if (chains.size() > 0)
       {
-         synchronized (chains)
+         final List<IndexReader> readers = getPersistedIndexReaders();
+         if (readers.size() > 1)
          {
-            if (chains.size() > 0)
-            {
-               final List<IndexReader> readers = new ArrayList<IndexReader>(chains.size());
-               final Iterator<PersistedIndex> it = chains.iterator();
-
-               while (it.hasNext())
-               {
-                  final LuceneIndexDataManager chain = it.next();
-
-                  final IndexReader indexReader = chain.getIndexReader();
-                  if (indexReader != null)
-                  {
-                     readers.add(indexReader);
-                  }
-
-               }
-               if (result != null)
-               {
-                  readers.add(result);
-               }
-               if (readers.size() > 1)
-               {
-                  final IndexReader[] indexReaders = new IndexReader[readers.size()];
-                  result = new MultiReader(readers.toArray(indexReaders));
-               }
-               else if (readers.size() == 1)
-               {
-                  result = readers.get(0);
-               }
-               else
-               {
-                  throw new RuntimeException("No readers found");
-               }
-            }
+            final IndexReader[] indexReaders = new IndexReader[readers.size()];
+            result = new MultiReader(readers.toArray(indexReaders));
          }
-         if (result == null)
+         else if (readers.size() == 1)
+         {
+            result = readers.get(0);
+         }
+         else
          {
             throw new RuntimeException("No readers found");
          }
@@ -233,6 +206,30 @@ public class LocalStorageIndexDataManager implements LuceneIndexDataManager, Ind
       return result;
    }
 
+   /**
+    * Get readers of persisted indexes. Unlike {@link #getIndexReader()} no
+    * new reader is created, readers stay owned by indexes.
+    * 
+    * @return readers of persisted indexes, may be empty
+    * @throws IndexException
+    */
+   protected List<IndexReader> getPersistedIndexReaders() throws IndexException
+   {
+      synchronized (chains)
+      {
+         final List<IndexReader> readers = new ArrayList<IndexReader>(chains.size());
+         for (final LuceneIndexDataManager chain : chains)
+         {
+            final IndexReader indexReader = chain.getIndexReader();
+            if (indexReader != null)
+            {
+               readers.add(indexReader);
+            }
+         }
+         return readers;
+      }
+   }
+
    public long getLastModifedTime()
    {
       return 0;
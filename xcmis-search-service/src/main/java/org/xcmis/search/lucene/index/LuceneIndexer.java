@@ -19,60 +19,119 @@
 package org.xcmis.search.lucene.index;
 
 import org.apache.commons.lang.NotImplementedException;
-import org.apache.lucene.document.DateTools;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.NumberTools;
+import org.apache.lucene.document.NumericField;
 import org.apache.lucene.document.Field.Index;
 import org.apache.lucene.document.Field.Store;
-import org.apache.tika.exception.TikaException;
-import org.apache.tika.metadata.Metadata;
+import org.apache.lucene.util.NumericUtils;
 import org.apache.tika.parser.AutoDetectParser;
-import org.apache.tika.sax.BodyContentHandler;
 import org.xcmis.search.config.IndexConfiguration;
 import org.xcmis.search.content.ContentEntry;
 import org.xcmis.search.content.ContentIndexer;
 import org.xcmis.search.content.Property;
 import org.xcmis.search.content.Property.BinaryValue;
 import org.xcmis.search.content.Property.ContentValue;
-import org.xcmis.spi.utils.Logger;
-import org.xml.sax.SAXException;
+import org.xcmis.search.value.PropertyType;
 
-import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
 
 /**
  * Create {@link Document} from {@link ContentEntry}
  */
 public class LuceneIndexer implements ContentIndexer<Document>
 {
+   /**
+    * Version of set of fields created for content entry. Index created with
+    * other version must be rebuilt. Must be incremented by each change of
+    * fields, versions are:
+    * <ul>
+    * <li>no version - index without ancestor, reversed and n-gram fields</li>
+    * <li>2 - ancestor ids, reversed and n-gram values, lowercased values</li>
+    * <li>3 - trie encoded numeric and date values</li>
+    * <li>4 - uppercased values</li>
+    * <li>5 - integers indexed as longs</li>
+    * </ul>
+    */
+   public static final int INDEX_FORMAT_VERSION = 5;
 
-   private final IndexConfiguration indexConfiguration;
-
-   private final AutoDetectParser parser;
+   /**
+    * Length of indexed n-grams.
+    */
+   public static final int NGRAM_SIZE = 3;
 
    /**
-    * Class logger.
+    * Precision step of trie encoded numeric and date fields.
     */
-   private static final Logger LOG = Logger.getLogger(LuceneIndexer.class);
+   public static final int NUMERIC_PRECISION_STEP = NumericUtils.PRECISION_STEP_DEFAULT;
+
+   private final IndexConfiguration indexConfiguration;
+
+   private final TextExtractor textExtractor;
 
    /**
-    * @param extractor
+    * @param indexConfiguration index configuration
     */
    public LuceneIndexer(IndexConfiguration indexConfiguration)
    {
       super();
-      this.parser = new AutoDetectParser(indexConfiguration.getTikaConfiguration());
+      this.textExtractor =
+         new TextExtractor(new AutoDetectParser(indexConfiguration.getTikaConfiguration()), indexConfiguration
+            .getTextExtractorWorkers(), indexConfiguration.getMaxExtractedTextLength(), indexConfiguration
+            .getTextExtractionTimeout(), indexConfiguration.getExtractedTextCacheSize());
       this.indexConfiguration = indexConfiguration;
    }
 
+   /**
+    * @return extractor of text of binary values
+    */
+   public TextExtractor getTextExtractor()
+   {
+      return textExtractor;
+   }
+
    /**
     * 
     * @see org.xcmis.search.content.ContentIndexer#createDocument(org.xcmis.search.content.ContentEntry)
     */
    public Document createDocument(ContentEntry contentEntry)
+   {
+      return createDocuments(Collections.singletonList(contentEntry)).get(0);
+   }
+
+   /**
+    * Create documents for several content entries. Text of binary values of
+    * all entries is extracted in parallel.
+    * 
+    * @param contentEntries content entries
+    * @return documents in order of entries
+    */
+   public List<Document> createDocuments(Collection<ContentEntry> contentEntries)
+   {
+      Map<BinaryValue, Future<String>> extractions = new IdentityHashMap<BinaryValue, Future<String>>();
+      for (ContentEntry contentEntry : contentEntries)
+      {
+         submitExtractions(contentEntry, extractions);
+      }
+      List<Document> documents = new ArrayList<Document>(contentEntries.size());
+      for (ContentEntry contentEntry : contentEntries)
+      {
+         documents.add(createDocument(contentEntry, extractions));
+      }
+      return documents;
+   }
+
+   private Document createDocument(ContentEntry contentEntry, Map<BinaryValue, Future<String>> extractions)
    {
       final Document doc = new Document();
 
@@ -101,6 +160,17 @@ public class LuceneIndexer implements ContentIndexer<Document>
             doc.add(new Field(FieldNames.LABEL, contentEntry.getName(), Field.Store.YES,
                Field.Index.NOT_ANALYZED_NO_NORMS, Field.TermVector.NO));
          }
+         addShadowFields(doc, FieldNames.LABEL, contentEntry.getName());
+         //ancestor uuids
+         String[] ancestorIdentifiers = contentEntry.getAncestorIdentifiers();
+         if (ancestorIdentifiers != null)
+         {
+            for (int i = 0; i < ancestorIdentifiers.length; i++)
+            {
+               doc.add(new Field(FieldNames.ANCESTOR, ancestorIdentifiers[i], Field.Store.NO,
+                  Field.Index.NOT_ANALYZED_NO_NORMS, Field.TermVector.NO));
+            }
+         }
       }
       //table names
       for (int i = 0; i < contentEntry.getTableNames().length; i++)
@@ -114,89 +184,58 @@ public class LuceneIndexer implements ContentIndexer<Document>
          Property property = contentEntry.getProperties()[i];
          if (isIndexed(property.getName()))
          {
-            addProperty(doc, property);
+            addProperty(doc, property, extractions);
          }
       }
       return doc;
    }
 
    /**
-    * Extract content of binary value.
+    * Schedule text extraction of binary values of entry.
     * 
-    * @param doc
-    * @param propName
-    * @param data
+    * @param contentEntry content entry
+    * @param extractions pending extractions by value
     */
-   private void addBinaryProperty(final Document doc, String propName, BinaryValue data)
+   @SuppressWarnings("unchecked")
+   private void submitExtractions(ContentEntry contentEntry, Map<BinaryValue, Future<String>> extractions)
    {
-
-      if (data.getMimeType() != null)
+      for (Property property : contentEntry.getProperties())
       {
-
-         if (parser != null)
+         if (property.getType() == PropertyType.BINARY && isIndexed(property.getName()))
          {
-            final InputStream is = data.getValue();
-
-            try
+            Collection<ContentValue> data = property.getValue();
+            for (ContentValue value : data)
             {
-               Metadata metadata = new Metadata();
-               metadata.set(Metadata.CONTENT_TYPE, data.getMimeType());
-               if (data.getEncoding() != null)
-               {
-                  metadata.set(Metadata.CONTENT_ENCODING, data.getEncoding());
-               }
-
-               BodyContentHandler handler = new BodyContentHandler();
-               parser.parse(is, handler, metadata);
-
-               final Field f =
-                  new Field(FieldNames.createFullTextFieldName(propName), handler.toString(), Field.Store.NO,
-                     Field.Index.ANALYZED, Field.TermVector.NO);
-               doc.add(f);
-            }
-            catch (IOException e)
-            {
-               // no data - no index
-               if (LOG.isDebugEnabled())
-               {
-                  LOG.warn("Binary value indexer IO error " + e, e);
-               }
-            }
-            catch (SAXException e)
-            {
-               // no data - no index
-               if (LOG.isDebugEnabled())
-               {
-                  LOG.warn("Binary value indexer IO error " + e, e);
-               }
-            }
-            catch (TikaException e)
-            { // no data - no index
-               if (LOG.isDebugEnabled())
+               Future<String> extraction = textExtractor.submit((BinaryValue)value);
+               if (extraction != null)
                {
-                  LOG.warn("Binary value indexer IO error " + e, e);
-               }
-            }
-            finally
-            {
-               if (is != null)
-               {
-                  try
-                  {
-                     is.close();
-                  }
-                  catch (IOException e)
-                  {
-                     if (LOG.isDebugEnabled())
-                     {
-                        LOG.warn("Binary value indexer IO error " + e, e);
-                     }
-                  }
+                  extractions.put((BinaryValue)value, extraction);
                }
             }
          }
       }
+   }
 
+   /**
+    * Add extracted content of binary value.
+    * 
+    * @param doc
+    * @param propName
+    * @param extraction
+    */
+   private void addBinaryProperty(final Document doc, String propName, Future<String> extraction)
+   {
+      if (extraction != null)
+      {
+         String text = textExtractor.getText(extraction);
+         if (text != null)
+         {
+            final Field f =
+               new Field(FieldNames.createFullTextFieldName(propName), text, Field.Store.NO, Field.Index.ANALYZED,
+                  Field.TermVector.NO);
+            doc.add(f);
+         }
+      }
    }
 
    /**
@@ -216,9 +255,9 @@ public class LuceneIndexer implements ContentIndexer<Document>
    }
 
    /**
-    * Adds the calendar value to the document as the named field. The calendar
-    * value is converted to an indexable string value using the
-    * {@link DateTools} class.
+    * Adds the calendar value to the document as the numeric field. The
+    * calendar value is indexed as number of milliseconds, see
+    * {@link #toNumericValue(Object)}.
     * 
     * @param doc
     *           The document to which to add the field
@@ -230,14 +269,11 @@ public class LuceneIndexer implements ContentIndexer<Document>
    private void addCalendarValue(final Document doc, final String fieldName, final Calendar value)
    {
 
-      doc.add(createFieldWithoutNorms(fieldName, DateTools.dateToString(value.getTime(),
-         DateTools.Resolution.MILLISECOND), false));
+      addNumericValue(doc, fieldName, toNumericValue(value));
    }
 
    /**
-    * Adds the double value to the document as the named field. The double value
-    * is converted to an indexable string value using the {@link DoubleField}
-    * class.
+    * Adds the double value to the document as the numeric field.
     * 
     * @param doc
     *           The document to which to add the field
@@ -248,7 +284,7 @@ public class LuceneIndexer implements ContentIndexer<Document>
     */
    private void addDoubleValue(final Document doc, final String fieldName, final Double doubleValue)
    {
-      doc.add(createFieldWithoutNorms(fieldName, ExtendedNumberTools.doubleToString(doubleValue), false));
+      addNumericValue(doc, fieldName, doubleValue);
    }
 
    /**
@@ -269,9 +305,8 @@ public class LuceneIndexer implements ContentIndexer<Document>
    }
 
    /**
-    * Adds the long value to the document as the named field. The long value is
-    * converted to an indexable string value using the {@link NumberTools}
-    * class.
+    * Adds the long value to the document as the long numeric field. Long
+    * values are not converted to doubles, so values above 2^53 stay distinct.
     * 
     * @param doc
     *           The document to which to add the field
@@ -282,8 +317,24 @@ public class LuceneIndexer implements ContentIndexer<Document>
     */
    private void addLongValue(final Document doc, final String fieldName, final Long longValue)
    {
+      doc.add(new NumericField(FieldNames.createLongFieldName(fieldName), NUMERIC_PRECISION_STEP, Field.Store.NO,
+         true).setLongValue(longValue));
+   }
 
-      doc.add(createFieldWithoutNorms(fieldName, NumberTools.longToString(longValue), false));
+   /**
+    * Adds trie encoded value, it is used by range queries and sorting.
+    * 
+    * @param doc
+    *           The document to which to add the field
+    * @param fieldName
+    *           The property name
+    * @param value
+    *           The value
+    */
+   private void addNumericValue(final Document doc, final String fieldName, final double value)
+   {
+      doc.add(new NumericField(FieldNames.createNumericFieldName(fieldName), NUMERIC_PRECISION_STEP, Field.Store.NO,
+         true).setDoubleValue(value));
    }
 
    /**
@@ -309,11 +360,14 @@ public class LuceneIndexer implements ContentIndexer<Document>
     *           the doc
     * @param propertyData
     *           the property data
+    * @param extractions
+    *           pending text extractions of binary values
     * @throws RepositoryException
     *            the repository exception
     */
    @SuppressWarnings("unchecked")
-   private void addProperty(final Document doc, final Property propertyData)
+   private void addProperty(final Document doc, final Property propertyData,
+      Map<BinaryValue, Future<String>> extractions)
    {
       final String propName = propertyData.getName();
 
@@ -325,7 +379,7 @@ public class LuceneIndexer implements ContentIndexer<Document>
          switch (propertyData.getType())
          {
             case BINARY :
-               addBinaryProperty(doc, propName, ((BinaryValue)value));
+               addBinaryProperty(doc, propName, extractions.get(value));
                break;
             case BOOLEAN :
                //property marked as boolean so it should be possible to convert it to boolean
@@ -396,8 +450,10 @@ public class LuceneIndexer implements ContentIndexer<Document>
    private void addStringValue(final Document doc, final String fieldName, final String stringValue,
       final boolean tokenized)
    {
-      // simple String
-      doc.add(createFieldWithoutNorms(fieldName, stringValue, false));
+      // simple String, it is stored if n-grams are indexed since LIKE checks
+      // stored values of documents found by n-grams
+      doc.add(createFieldWithoutNorms(fieldName, stringValue, indexConfiguration.isNGramIndexing()));
+      addShadowFields(doc, fieldName, stringValue);
       if (tokenized)
       {
          if (stringValue.length() != 0)
@@ -409,6 +465,124 @@ public class LuceneIndexer implements ContentIndexer<Document>
       }
    }
 
+   /**
+    * Adds lowercased value used by LOWER, uppercased value used by UPPER,
+    * reversed value and, if enabled, n-grams of value which are used by LIKE
+    * with leading and with both leading and trailing wildcards.
+    * 
+    * @param doc
+    *           The document to which to add the fields
+    * @param fieldName
+    *           The name of property or {@link FieldNames#LABEL}
+    * @param stringValue
+    *           The value
+    */
+   private void addShadowFields(final Document doc, final String fieldName, final String stringValue)
+   {
+      doc.add(new Field(FieldNames.createLowerCaseFieldName(fieldName), toLowerCase(stringValue), Field.Store.NO,
+         Field.Index.NOT_ANALYZED_NO_NORMS, Field.TermVector.NO));
+      doc.add(new Field(FieldNames.createUpperCaseFieldName(fieldName), toUpperCase(stringValue), Field.Store.NO,
+         Field.Index.NOT_ANALYZED_NO_NORMS, Field.TermVector.NO));
+      doc.add(new Field(FieldNames.createReversedFieldName(fieldName), reverse(stringValue), Field.Store.NO,
+         Field.Index.NOT_ANALYZED_NO_NORMS, Field.TermVector.NO));
+      if (indexConfiguration.isNGramIndexing())
+      {
+         String nGramFieldName = FieldNames.createNGramFieldName(fieldName);
+         for (String nGram : createNGrams(stringValue))
+         {
+            doc.add(new Field(nGramFieldName, nGram, Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS,
+               Field.TermVector.NO));
+         }
+      }
+   }
+
+   /**
+    * @param value string
+    * @return string with characters in reverse order
+    */
+   public static String reverse(String value)
+   {
+      return new StringBuilder(value).reverse().toString();
+   }
+
+   /**
+    * Split string to distinct n-grams of {@link #NGRAM_SIZE} characters of
+    * string lowercased by {@link #toLowerCase(String)}.
+    * 
+    * @param value string
+    * @return n-grams, empty if string is shorter than n-gram
+    */
+   public static Set<String> createNGrams(String value)
+   {
+      if (value.length() < NGRAM_SIZE)
+      {
+         return Collections.emptySet();
+      }
+      String lowerCase = toLowerCase(value);
+      Set<String> nGrams = new LinkedHashSet<String>();
+      for (int i = 0; i + NGRAM_SIZE <= lowerCase.length(); i++)
+      {
+         nGrams.add(lowerCase.substring(i, i + NGRAM_SIZE));
+      }
+      return nGrams;
+   }
+
+   /**
+    * Convert value of numeric or date property to value of numeric field.
+    * Calendars are converted to number of milliseconds.
+    * 
+    * @param value value of property or static value of query
+    * @return numeric value or <code>null</code> if value is not number or
+    *         calendar
+    */
+   public static Double toNumericValue(Object value)
+   {
+      if (value instanceof Calendar)
+      {
+         return Double.valueOf(((Calendar)value).getTimeInMillis());
+      }
+      if (value instanceof Number)
+      {
+         return Double.valueOf(((Number)value).doubleValue());
+      }
+      return null;
+   }
+
+   /**
+    * Lowercase string as it is done for shadow fields. Characters are
+    * lowercased one by one and independently of locale, so length of string is
+    * not changed and lowercased part of string is part of lowercased string.
+    * 
+    * @param value string
+    * @return lowercased string
+    */
+   public static String toLowerCase(String value)
+   {
+      char[] chars = value.toCharArray();
+      for (int i = 0; i < chars.length; i++)
+      {
+         chars[i] = Character.toLowerCase(chars[i]);
+      }
+      return new String(chars);
+   }
+
+   /**
+    * Uppercase string as it is done for shadow fields, see
+    * {@link #toLowerCase(String)}.
+    * 
+    * @param value string
+    * @return uppercased string
+    */
+   public static String toUpperCase(String value)
+   {
+      char[] chars = value.toCharArray();
+      for (int i = 0; i < chars.length; i++)
+      {
+         chars[i] = Character.toUpperCase(chars[i]);
+      }
+      return new String(chars);
+   }
+
    /**
     * Creates a document field name as prefixed <code>fieldName</code> with the
     * value of <code>
@@ -109,6 +109,7 @@ public class LuceneIndexingService extends TransactionableIndexDataManager
                   writer.commit();
                   writer.optimize();
                   writer.close();
+                  invalidateSearcher();
                }
                catch (final CorruptIndexException e)
                {
@@ -25,8 +25,14 @@ import org.xcmis.search.config.IndexConfigurationException;
 import org.xcmis.search.lucene.IndexRecoveryTool;
 import org.xcmis.spi.utils.Logger;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -45,6 +51,12 @@ public class StartableIndexingService extends LuceneIndexingService
     */
    private static final String REINDEX_RUN = "reindexProcessing";
 
+   /**
+    * File name. File contains format of index, index is rebuilt if format is
+    * different from current one or file does not exist.
+    */
+   private static final String INDEX_FORMAT = "indexFormat";
+
    /** ChangesLog Buffer (used for saves before start). */
    private List<IndexTransaction<Document>> changesLogBuffer = new ArrayList<IndexTransaction<Document>>();
 
@@ -54,6 +66,9 @@ public class StartableIndexingService extends LuceneIndexingService
    /** The index restore service. */
    private final IndexRecoveryTool indexRecoveryTool;
 
+   /** Format of index created by current version and configuration. */
+   private final String indexFormat;
+
    /** Is started flag. */
    private boolean isStarted = false;
 
@@ -71,6 +86,8 @@ public class StartableIndexingService extends LuceneIndexingService
       super(configuration, indexRecoveryTool);
       this.indexRecoveryTool = indexRecoveryTool;
       this.indexDir = new File(configuration.getIndexDir());
+      this.indexFormat =
+         LuceneIndexer.INDEX_FORMAT_VERSION + (configuration.isNGramIndexing() ? "-ngram" : "");
       if (!indexDir.exists() && !indexDir.mkdirs())
       {
          throw new IndexException("Fail to create index directory : " + indexDir.getAbsolutePath());
@@ -144,7 +161,8 @@ public class StartableIndexingService extends LuceneIndexingService
    /**
     * Do we need restore index.
     * 
-    * @return <code>true</code> if index not exist or restore was interrupted.
+    * @return <code>true</code> if index not exist, restore was interrupted or
+    *         index has old format.
     * @throws IndexException
     *            if index read exception occurs.
     */
@@ -156,7 +174,16 @@ public class StartableIndexingService extends LuceneIndexingService
          return true;
       }
       final File flag = new File(indexDir, StartableIndexingService.REINDEX_RUN);
-      return flag.exists();
+      if (flag.exists())
+      {
+         return true;
+      }
+      if (!indexFormat.equals(readIndexFormat()))
+      {
+         LOG.info("Index format is changed, index will be rebuilt.");
+         return true;
+      }
+      return false;
 
    }
 
@@ -189,6 +216,8 @@ public class StartableIndexingService extends LuceneIndexingService
 
       indexRecoveryTool.recoverAll();
 
+      writeIndexFormat();
+
       if (!flag.delete())
       {
          throw new IOException("Can't remove reindex flag.");
@@ -204,4 +233,53 @@ public class StartableIndexingService extends LuceneIndexingService
          LOG.info("Restore index finished.");
       }
    }
+
+   /**
+    * @return format of existing index or <code>null</code> if it is unknown
+    */
+   private String readIndexFormat()
+   {
+      final File file = new File(indexDir, StartableIndexingService.INDEX_FORMAT);
+      if (!file.exists())
+      {
+         return null;
+      }
+      try
+      {
+         BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+         try
+         {
+            return reader.readLine();
+         }
+         finally
+         {
+            reader.close();
+         }
+      }
+      catch (IOException e)
+      {
+         LOG.warn("Unable to read index format. " + e.getMessage());
+         return null;
+      }
+   }
+
+   /**
+    * Remember format of rebuilt index.
+    * 
+    * @throws IOException if format file was not written.
+    */
+   private void writeIndexFormat() throws IOException
+   {
+      Writer writer =
+         new OutputStreamWriter(new FileOutputStream(new File(indexDir, StartableIndexingService.INDEX_FORMAT)),
+            "UTF-8");
+      try
+      {
+         writer.write(indexFormat);
+      }
+      finally
+      {
+         writer.close();
+      }
+   }
 }
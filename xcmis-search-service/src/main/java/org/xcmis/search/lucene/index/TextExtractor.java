@@ -0,0 +1,554 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.search.lucene.index;
+
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.BodyContentHandler;
+import org.apache.tika.sax.WriteOutContentHandler;
+import org.xcmis.search.content.Property.BinaryValue;
+import org.xcmis.spi.utils.Logger;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Extracts text of binary values with Tika parser. Values are parsed by pool
+ * of worker threads, so content of several documents is parsed in parallel.
+ * Extracted text of one value is limited to configured number of characters,
+ * the rest of text is not indexed. Parsing of value which takes longer than
+ * configured timeout is cancelled and value is not indexed. Worker which is
+ * still busy with cancelled value is replaced by new one until it is done.
+ * Text of recently parsed content is cached by content hash, so the same
+ * content is not parsed once again.
+ */
+public class TextExtractor
+{
+   /**
+    * Default max number of characters extracted from one value.
+    */
+   public static final int DEFAULT_MAX_TEXT_LENGTH = 100 * 1000;
+
+   /**
+    * Default max time in milliseconds of parsing one value.
+    */
+   public static final long DEFAULT_TIMEOUT = 30 * 1000L;
+
+   /**
+    * Default max number of cached texts.
+    */
+   public static final int DEFAULT_CACHE_SIZE = 100;
+
+   /**
+    * Content longer than this is parsed directly from stream and its text is
+    * not cached. Cached content must be read in memory to get its hash.
+    */
+   static final long MAX_CACHED_CONTENT_LENGTH = 4 * 1024 * 1024;
+
+   private static final Logger LOG = Logger.getLogger(TextExtractor.class);
+
+   private final class Extraction implements Callable<String>
+   {
+      private final BinaryValue value;
+
+      private volatile InputStream stream;
+
+      private volatile boolean timedOut;
+
+      Extraction(BinaryValue value)
+      {
+         this.value = value;
+      }
+
+      public String call() throws Exception
+      {
+         InputStream is = value.getValue();
+         stream = is;
+         try
+         {
+            String key = null;
+            long length = value.getLength();
+            if (cache != null && length >= 0 && length <= MAX_CACHED_CONTENT_LENGTH)
+            {
+               byte[] content = readContent(is, (int)length);
+               key = cacheKey(value.getMimeType(), content);
+               if (key != null)
+               {
+                  String text = getCachedText(key);
+                  if (text != null)
+                  {
+                     cacheHits.incrementAndGet();
+                     return text;
+                  }
+               }
+               is = new ByteArrayInputStream(content);
+            }
+            String text = parse(is);
+            if (key != null)
+            {
+               putCachedText(key, text);
+            }
+            return text;
+         }
+         catch (IOException e)
+         {
+            return failed(e);
+         }
+         catch (SAXException e)
+         {
+            return failed(e);
+         }
+         catch (TikaException e)
+         {
+            return failed(e);
+         }
+         finally
+         {
+            closeStream();
+         }
+      }
+
+      void closeStream()
+      {
+         InputStream is = stream;
+         if (is != null)
+         {
+            try
+            {
+               is.close();
+            }
+            catch (IOException e)
+            {
+               if (LOG.isDebugEnabled())
+               {
+                  LOG.warn("Binary value indexer IO error " + e, e);
+               }
+            }
+         }
+      }
+
+      private String parse(InputStream is) throws IOException, SAXException, TikaException
+      {
+         Metadata metadata = new Metadata();
+         metadata.set(Metadata.CONTENT_TYPE, value.getMimeType());
+         if (value.getEncoding() != null)
+         {
+            metadata.set(Metadata.CONTENT_ENCODING, value.getEncoding());
+         }
+         WriteOutContentHandler out = new WriteOutContentHandler(maxTextLength > 0 ? maxTextLength : -1);
+         try
+         {
+            ParseContext context = new ParseContext();
+            // Parse embedded documents as well.
+            context.set(Parser.class, parser);
+            parser.parse(is, new BodyContentHandler(out), metadata, context);
+         }
+         catch (SAXException e)
+         {
+            if (!out.isWriteLimitReached(e))
+            {
+               throw e;
+            }
+            truncated.incrementAndGet();
+         }
+         extracted.incrementAndGet();
+         return out.toString();
+      }
+
+      private String failed(Exception e)
+      {
+         // Stream of timed out value is closed by waiting thread, error is expected.
+         if (!timedOut)
+         {
+            skipped.incrementAndGet();
+            // no data - no index
+            if (LOG.isDebugEnabled())
+            {
+               LOG.warn("Binary value indexer IO error " + e, e);
+            }
+         }
+         return null;
+      }
+   }
+
+   private final class Task extends FutureTask<String>
+   {
+      private final Extraction extraction;
+
+      /**
+       * Time when worker started parsing, zero while task waits in queue.
+       */
+      private volatile long started;
+
+      /**
+       * Guarded by {@link TextExtractor#poolLock}.
+       */
+      private boolean finished;
+
+      /**
+       * Guarded by {@link TextExtractor#poolLock}.
+       */
+      private boolean abandoned;
+
+      Task(Extraction extraction)
+      {
+         super(extraction);
+         this.extraction = extraction;
+      }
+
+      @Override
+      public void run()
+      {
+         started = System.currentTimeMillis();
+         try
+         {
+            super.run();
+         }
+         finally
+         {
+            synchronized (poolLock)
+            {
+               finished = true;
+               if (abandoned)
+               {
+                  resizePool(-1);
+               }
+            }
+         }
+      }
+   }
+
+   private final Parser parser;
+
+   private final int maxTextLength;
+
+   private final long timeout;
+
+   private final ThreadPoolExecutor executor;
+
+   private final Object poolLock = new Object();
+
+   /**
+    * Cache of extracted text by content hash, <code>null</code> if caching is
+    * disabled.
+    */
+   private final Map<String, String> cache;
+
+   private final AtomicLong extracted = new AtomicLong();
+
+   private final AtomicLong truncated = new AtomicLong();
+
+   private final AtomicLong skipped = new AtomicLong();
+
+   private final AtomicLong timeouts = new AtomicLong();
+
+   private final AtomicLong cacheHits = new AtomicLong();
+
+   /**
+    * @param parser Tika parser, must be thread safe
+    * @param workers number of worker threads
+    * @param maxTextLength max number of characters extracted from one value,
+    *        zero or negative value means no limit
+    * @param timeout max time in milliseconds of parsing one value, zero or
+    *        negative value means no timeout
+    * @param cacheSize max number of cached texts, zero or negative value
+    *        disables cache
+    */
+   public TextExtractor(Parser parser, int workers, int maxTextLength, long timeout, final int cacheSize)
+   {
+      if (workers <= 0)
+      {
+         throw new IllegalArgumentException("Number of workers must be positive.");
+      }
+      this.parser = parser;
+      this.maxTextLength = maxTextLength;
+      this.timeout = timeout;
+      this.cache = cacheSize > 0 ? new LinkedHashMap<String, String>(16, 0.75f, true)
+      {
+         private static final long serialVersionUID = 1L;
+
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+         {
+            return size() > cacheSize;
+         }
+      } : null;
+      this.executor =
+         new ThreadPoolExecutor(workers, workers, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory()
+            {
+               private final AtomicInteger counter = new AtomicInteger();
+
+               public Thread newThread(Runnable r)
+               {
+                  Thread t = new Thread(r, "xcmis-text-extractor-" + counter.incrementAndGet());
+                  t.setDaemon(true);
+                  return t;
+               }
+            });
+      // Idle pool does not keep threads.
+      this.executor.allowCoreThreadTimeOut(true);
+   }
+
+   /**
+    * Schedule extraction of text of binary value. Stream of value is closed
+    * when extraction is done.
+    *
+    * @param value binary value
+    * @return pending extraction which should be passed to
+    *         {@link #getText(Future)}, <code>null</code> if value has no mime
+    *         type and can't be parsed
+    */
+   public Future<String> submit(BinaryValue value)
+   {
+      if (value.getMimeType() == null)
+      {
+         return null;
+      }
+      Task task = new Task(new Extraction(value));
+      executor.execute(task);
+      return task;
+   }
+
+   /**
+    * Wait for text of value. Parsing which is not done before timeout is
+    * cancelled.
+    *
+    * @param extraction pending extraction returned by {@link #submit(BinaryValue)}
+    * @return extracted text, <code>null</code> if value can't be parsed or
+    *         parsing is timed out
+    */
+   public String getText(Future<String> extraction)
+   {
+      Task task = (Task)extraction;
+      try
+      {
+         if (timeout <= 0)
+         {
+            return task.get();
+         }
+         for (;;)
+         {
+            // Time spent in queue is not counted.
+            long started = task.started;
+            long wait = started == 0 ? timeout : started + timeout - System.currentTimeMillis();
+            try
+            {
+               return task.get(Math.max(wait, 0), TimeUnit.MILLISECONDS);
+            }
+            catch (TimeoutException e)
+            {
+               started = task.started;
+               if (started != 0 && System.currentTimeMillis() - started >= timeout)
+               {
+                  abandon(task);
+               }
+            }
+         }
+      }
+      catch (CancellationException e)
+      {
+         return null;
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         task.cancel(true);
+         return null;
+      }
+      catch (ExecutionException e)
+      {
+         skipped.incrementAndGet();
+         LOG.error("Unable extract text. " + e.getCause().getMessage(), e.getCause());
+         return null;
+      }
+   }
+
+   /**
+    * Extract text of binary value and wait for result.
+    *
+    * @param value binary value
+    * @return extracted text, <code>null</code> if value can't be parsed or
+    *         parsing is timed out
+    * @see #submit(BinaryValue)
+    * @see #getText(Future)
+    */
+   public String extract(BinaryValue value)
+   {
+      Future<String> extraction = submit(value);
+      return extraction == null ? null : getText(extraction);
+   }
+
+   /**
+    * @return number of parsed values, include truncated ones
+    */
+   public long getExtractedCount()
+   {
+      return extracted.get();
+   }
+
+   /**
+    * @return number of values which text was longer than limit
+    */
+   public long getTruncatedCount()
+   {
+      return truncated.get();
+   }
+
+   /**
+    * @return number of values which were not indexed because of parse error
+    *         or timeout
+    */
+   public long getSkippedCount()
+   {
+      return skipped.get();
+   }
+
+   /**
+    * @return number of values which were not indexed because of timeout
+    */
+   public long getTimeoutCount()
+   {
+      return timeouts.get();
+   }
+
+   /**
+    * @return number of values which text was taken from cache
+    */
+   public long getCacheHitCount()
+   {
+      return cacheHits.get();
+   }
+
+   /**
+    * @return number of values waiting for parsing
+    */
+   public int getQueueDepth()
+   {
+      return executor.getQueue().size();
+   }
+
+   private void abandon(Task task)
+   {
+      // Parser may ignore interruption, stream is closed to break it.
+      task.extraction.timedOut = true;
+      if (!task.cancel(true))
+      {
+         // Done just now.
+         task.extraction.timedOut = false;
+         return;
+      }
+      task.extraction.closeStream();
+      timeouts.incrementAndGet();
+      skipped.incrementAndGet();
+      LOG.warn("Text extraction of " + task.extraction.value.getMimeType() + " content is not done in " + timeout
+         + " ms, content is not indexed.");
+      synchronized (poolLock)
+      {
+         if (!task.finished)
+         {
+            // Worker is still busy with cancelled value, start one more.
+            task.abandoned = true;
+            resizePool(1);
+         }
+      }
+   }
+
+   private void resizePool(int delta)
+   {
+      if (delta > 0)
+      {
+         executor.setMaximumPoolSize(executor.getMaximumPoolSize() + delta);
+         executor.setCorePoolSize(executor.getCorePoolSize() + delta);
+      }
+      else
+      {
+         executor.setCorePoolSize(executor.getCorePoolSize() + delta);
+         executor.setMaximumPoolSize(executor.getMaximumPoolSize() + delta);
+      }
+   }
+
+   private String getCachedText(String key)
+   {
+      synchronized (cache)
+      {
+         return cache.get(key);
+      }
+   }
+
+   private void putCachedText(String key, String text)
+   {
+      synchronized (cache)
+      {
+         cache.put(key, text);
+      }
+   }
+
+   private static byte[] readContent(InputStream is, int length) throws IOException
+   {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(length, 32));
+      byte[] buf = new byte[8192];
+      int r;
+      while ((r = is.read(buf)) != -1)
+      {
+         out.write(buf, 0, r);
+      }
+      return out.toByteArray();
+   }
+
+   private static String cacheKey(String mimeType, byte[] content)
+   {
+      try
+      {
+         byte[] hash = MessageDigest.getInstance("SHA-1").digest(content);
+         StringBuilder key = new StringBuilder(mimeType.length() + 1 + hash.length * 2);
+         key.append(mimeType).append(':');
+         for (byte b : hash)
+         {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+         }
+         return key.toString();
+      }
+      catch (NoSuchAlgorithmException e)
+      {
+         return null;
+      }
+   }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.search.lucene.search;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.FilteredTermEnum;
+import org.apache.lucene.search.MultiTermQuery;
+import org.apache.lucene.util.ToStringUtils;
+import org.xcmis.search.lucene.index.LuceneIndexer;
+
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+/**
+ * Matches terms of field which start with prefix and match regular expression.
+ * Only terms which start with prefix are enumerated, so LIKE pattern with
+ * leading literal does not cost scan of all terms of field. If field contains
+ * reversed values then terms are reversed back before they are matched
+ * against regular expression.
+ */
+public class LikeTermQuery extends MultiTermQuery
+{
+   private static final long serialVersionUID = -3722553468451209836L;
+
+   private final String field;
+
+   private final String prefix;
+
+   private final String regex;
+
+   private final boolean reversed;
+
+   /**
+    * @param field field name
+    * @param prefix prefix of terms, empty string means all terms of field
+    * @param regex regular expression which original value must match
+    * @param reversed if <code>true</code> field contains reversed values
+    */
+   public LikeTermQuery(String field, String prefix, String regex, boolean reversed)
+   {
+      this.field = field;
+      this.prefix = prefix;
+      this.regex = regex;
+      this.reversed = reversed;
+   }
+
+   @Override
+   protected FilteredTermEnum getEnum(IndexReader reader) throws IOException
+   {
+      return new LikeTermEnum(reader);
+   }
+
+   private class LikeTermEnum extends FilteredTermEnum
+   {
+      private final String field;
+
+      private final Pattern pattern;
+
+      private boolean endEnum;
+
+      public LikeTermEnum(IndexReader reader) throws IOException
+      {
+         super();
+         Term start = new Term(LikeTermQuery.this.field, prefix);
+         this.field = start.field();
+         this.pattern = Pattern.compile(regex);
+         setEnum(reader.terms(start));
+      }
+
+      @Override
+      public float difference()
+      {
+         return 1.0f;
+      }
+
+      @Override
+      protected boolean endEnum()
+      {
+         return endEnum;
+      }
+
+      @Override
+      protected boolean termCompare(Term term)
+      {
+         // Terms are sorted, all terms with prefix are together.
+         if (field != term.field() || !term.text().startsWith(prefix))
+         {
+            endEnum = true;
+            return false;
+         }
+         String value = reversed ? LuceneIndexer.reverse(term.text()) : term.text();
+         return pattern.matcher(value).matches();
+      }
+   }
+
+   @Override
+   public String toString(String field)
+   {
+      StringBuilder buffer = new StringBuilder();
+      if (!this.field.equals(field))
+      {
+         buffer.append(this.field).append(':');
+      }
+      buffer.append(prefix).append('~').append(regex);
+      buffer.append(ToStringUtils.boost(getBoost()));
+      return buffer.toString();
+   }
+
+   @Override
+   public int hashCode()
+   {
+      int hash = super.hashCode();
+      hash = 31 * hash + field.hashCode();
+      hash = 31 * hash + prefix.hashCode();
+      hash = 31 * hash + regex.hashCode();
+      return 31 * hash + (reversed ? 1 : 0);
+   }
+
+   @Override
+   public boolean equals(Object obj)
+   {
+      if (!super.equals(obj))
+      {
+         return false;
+      }
+      LikeTermQuery other = (LikeTermQuery)obj;
+      return field.equals(other.field) && prefix.equals(other.prefix) && regex.equals(other.regex)
+         && reversed == other.reversed;
+   }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.search.lucene.search;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Searcher;
+import org.apache.lucene.search.Weight;
+import org.xcmis.search.lucene.index.LuceneIndexer;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Matches documents found by candidates query which have stored value of field
+ * that matches regular expression. Used to check documents found by n-grams of
+ * LIKE pattern, only candidates are loaded.
+ */
+public class StoredValueLikeQuery extends Query
+{
+   private static final long serialVersionUID = 2270581563524186014L;
+
+   /**
+    * Conversion of stored values before match.
+    */
+   public enum ValueCase {
+      /** Values are matched as is. */
+      AS_IS,
+      /** Values are lowercased by {@link LuceneIndexer#toLowerCase(String)}. */
+      LOWER,
+      /** Values are uppercased by {@link LuceneIndexer#toUpperCase(String)}. */
+      UPPER;
+
+      String convert(String value)
+      {
+         switch (this)
+         {
+            case LOWER :
+               return LuceneIndexer.toLowerCase(value);
+            case UPPER :
+               return LuceneIndexer.toUpperCase(value);
+            default :
+               return value;
+         }
+      }
+   }
+
+   private final Query candidates;
+
+   private final String field;
+
+   private final String regex;
+
+   private final ValueCase valueCase;
+
+   /**
+    * @param candidates query which finds superset of matched documents
+    * @param field stored field
+    * @param regex regular expression which at least one value of field must
+    *        match
+    * @param valueCase conversion of values before match
+    */
+   public StoredValueLikeQuery(Query candidates, String field, String regex, ValueCase valueCase)
+   {
+      this.candidates = candidates;
+      this.field = field;
+      this.regex = regex;
+      this.valueCase = valueCase;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void extractTerms(Set terms)
+   {
+      candidates.extractTerms(terms);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Query rewrite(IndexReader reader) throws IOException
+   {
+      Query rewritten = candidates.rewrite(reader);
+      if (rewritten == candidates)
+      {
+         return this;
+      }
+      return new StoredValueLikeQuery(rewritten, field, regex, valueCase);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Weight createWeight(Searcher searcher) throws IOException
+   {
+      return new StoredValueLikeWeight(candidates.createWeight(searcher));
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String toString(String field)
+   {
+      return "(StoredValueLikeQuery:" + candidates.toString(field) + " " + this.field + "~" + regex + ")";
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int hashCode()
+   {
+      int hash = super.hashCode();
+      hash = 31 * hash + candidates.hashCode();
+      hash = 31 * hash + field.hashCode();
+      hash = 31 * hash + regex.hashCode();
+      return 31 * hash + valueCase.hashCode();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean equals(Object obj)
+   {
+      if (!super.equals(obj))
+      {
+         return false;
+      }
+      StoredValueLikeQuery other = (StoredValueLikeQuery)obj;
+      return candidates.equals(other.candidates) && field.equals(other.field) && regex.equals(other.regex)
+         && valueCase == other.valueCase;
+   }
+
+   private class StoredValueLikeWeight extends Weight
+   {
+      private static final long serialVersionUID = -4613591512735003817L;
+
+      private final Weight candidatesWeight;
+
+      private final Pattern pattern;
+
+      public StoredValueLikeWeight(Weight candidatesWeight)
+      {
+         this.candidatesWeight = candidatesWeight;
+         this.pattern = Pattern.compile(regex);
+      }
+
+      @Override
+      public Explanation explain(IndexReader reader, int doc) throws IOException
+      {
+         return candidatesWeight.explain(reader, doc);
+      }
+
+      @Override
+      public Query getQuery()
+      {
+         return StoredValueLikeQuery.this;
+      }
+
+      @Override
+      public float getValue()
+      {
+         return candidatesWeight.getValue();
+      }
+
+      @Override
+      public void normalize(float norm)
+      {
+         candidatesWeight.normalize(norm);
+      }
+
+      @Override
+      public Scorer scorer(IndexReader reader, boolean scoreDocsInOrder, boolean topScorer) throws IOException
+      {
+         Scorer candidatesScorer = candidatesWeight.scorer(reader, true, false);
+         return candidatesScorer == null ? null : new StoredValueLikeScorer(this, candidatesScorer, reader, pattern);
+      }
+
+      @Override
+      public float sumOfSquaredWeights() throws IOException
+      {
+         return candidatesWeight.sumOfSquaredWeights();
+      }
+   }
+
+   private class StoredValueLikeScorer extends Scorer
+   {
+      private final Scorer candidatesScorer;
+
+      private final IndexReader reader;
+
+      private final Pattern pattern;
+
+      private final MapFieldSelector fieldSelector;
+
+      public StoredValueLikeScorer(Weight weight, Scorer candidatesScorer, IndexReader reader, Pattern pattern)
+      {
+         super(weight);
+         this.candidatesScorer = candidatesScorer;
+         this.reader = reader;
+         this.pattern = pattern;
+         this.fieldSelector = new MapFieldSelector(new String[]{field});
+      }
+
+      @Override
+      public int docID()
+      {
+         return candidatesScorer.docID();
+      }
+
+      @Override
+      public int nextDoc() throws IOException
+      {
+         return next(candidatesScorer.nextDoc());
+      }
+
+      @Override
+      public int advance(int target) throws IOException
+      {
+         return next(candidatesScorer.advance(target));
+      }
+
+      @Override
+      public float score() throws IOException
+      {
+         return candidatesScorer.score();
+      }
+
+      /**
+       * Skip candidates which values do not match pattern.
+       */
+      private int next(int doc) throws IOException
+      {
+         while (doc != NO_MORE_DOCS && !matches(doc))
+         {
+            doc = candidatesScorer.nextDoc();
+         }
+         return doc;
+      }
+
+      private boolean matches(int doc) throws IOException
+      {
+         Document document = reader.document(doc, fieldSelector);
+         String[] values = document.getValues(field);
+         if (values != null)
+         {
+            for (String value : values)
+            {
+               if (pattern.matcher(valueCase.convert(value)).matches())
+               {
+                  return true;
+               }
+            }
+         }
+         return false;
+      }
+   }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.search.query;
+
+import org.xcmis.search.model.Query;
+import org.xcmis.search.result.QueryResultList;
+import org.xcmis.search.result.ScoredRow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache of query results bounded by estimated size in bytes, least recently
+ * used results are evicted first. Results are keyed by query (including its
+ * limit) and values of bind variables. Each change of index starts new
+ * generation of cache and drops all cached results. Result is cached only if
+ * there was no change of index while query was executed.
+ */
+public class QueryResultCache implements QueryResultCacheMBean
+{
+   /**
+    * Default max size of cached results in bytes.
+    */
+   public static final long DEFAULT_MAX_SIZE = 8 * 1024 * 1024;
+
+   /** Estimated size of cache entry without rows. */
+   private static final int ENTRY_SIZE = 160;
+
+   /** Estimated size of row without node identifiers. */
+   private static final int ROW_SIZE = 96;
+
+   /** Estimated size of node identifier without its characters. */
+   private static final int NODE_SIZE = 72;
+
+   private static final class Key
+   {
+      private final Query query;
+
+      private final Map<String, Object> variables;
+
+      private final int hash;
+
+      Key(Query query, Map<String, Object> variables)
+      {
+         this.query = query;
+         this.variables =
+            variables == null || variables.isEmpty() ? Collections.<String, Object> emptyMap()
+               : new HashMap<String, Object>(variables);
+         this.hash = 31 * query.hashCode() + this.variables.hashCode();
+      }
+
+      @Override
+      public boolean equals(Object obj)
+      {
+         if (obj == this)
+         {
+            return true;
+         }
+         if (!(obj instanceof Key))
+         {
+            return false;
+         }
+         Key other = (Key)obj;
+         return hash == other.hash && query.equals(other.query) && variables.equals(other.variables);
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return hash;
+      }
+   }
+
+   private static final class Result
+   {
+      private final ScoredRow[] rows;
+
+      private final int totalCount;
+
+      private final long size;
+
+      Result(ScoredRow[] rows, int totalCount, long size)
+      {
+         this.rows = rows;
+         this.totalCount = totalCount;
+         this.size = size;
+      }
+   }
+
+   private final long maxSize;
+
+   /** Cached results in access order. Guarded by this. */
+   private final LinkedHashMap<Key, Result> results = new LinkedHashMap<Key, Result>(16, 0.75f, true);
+
+   /** Guarded by this. */
+   private long size;
+
+   /** Guarded by this. */
+   private long generation;
+
+   /** Guarded by this. */
+   private long hitCount;
+
+   /** Guarded by this. */
+   private long missCount;
+
+   /** Guarded by this. */
+   private long evictionCount;
+
+   /** Guarded by this. */
+   private long invalidationCount;
+
+   /**
+    * @param maxSize max size of cached results in bytes
+    */
+   public QueryResultCache(long maxSize)
+   {
+      this.maxSize = maxSize;
+   }
+
+   /**
+    * Get cached result of query. Each call gives new list which may be changed
+    * by caller.
+    *
+    * @param query query
+    * @param variables values of bind variables
+    * @return result or <code>null</code> if result is not cached
+    */
+   public synchronized List<ScoredRow> get(Query query, Map<String, Object> variables)
+   {
+      Result result = results.get(new Key(query, variables));
+      if (result == null)
+      {
+         missCount++;
+         return null;
+      }
+      hitCount++;
+      List<ScoredRow> rows = new ArrayList<ScoredRow>(result.rows.length);
+      Collections.addAll(rows, result.rows);
+      return new QueryResultList(rows, new Statistics(), result.totalCount);
+   }
+
+   /**
+    * @return current generation of cache, it must be obtained before query is
+    *         executed and passed to
+    *         {@link #put(Query, Map, List, long)}
+    */
+   public synchronized long getGeneration()
+   {
+      return generation;
+   }
+
+   /**
+    * Put result of query in cache. Result is not cached if index was changed
+    * after specified generation or if result is too big.
+    *
+    * @param query query
+    * @param variables values of bind variables
+    * @param rows result of query
+    * @param generation generation of cache before query was executed
+    */
+   public void put(Query query, Map<String, Object> variables, List<ScoredRow> rows, long generation)
+   {
+      // Estimate size outside of lock.
+      long resultSize = ENTRY_SIZE;
+      for (ScoredRow row : rows)
+      {
+         resultSize += ROW_SIZE;
+         for (String selectorName : row.getSelectorNames())
+         {
+            String id = row.getNodeIdentifer(selectorName);
+            resultSize += id == null ? 0 : NODE_SIZE + 2 * id.length();
+         }
+      }
+      if (resultSize > maxSize)
+      {
+         return;
+      }
+      int totalCount = rows instanceof QueryResultList ? ((QueryResultList)rows).getTotalCount() : rows.size();
+      Result result = new Result(rows.toArray(new ScoredRow[rows.size()]), totalCount, resultSize);
+      Key key = new Key(query, variables);
+
+      synchronized (this)
+      {
+         if (generation != this.generation)
+         {
+            return;
+         }
+         Result previous = results.put(key, result);
+         if (previous != null)
+         {
+            size -= previous.size;
+         }
+         size += resultSize;
+         for (Iterator<Result> iterator = results.values().iterator(); size > maxSize && iterator.hasNext();)
+         {
+            size -= iterator.next().size;
+            iterator.remove();
+            evictionCount++;
+         }
+      }
+   }
+
+   /**
+    * Drop all cached results and start new generation. Must be called each
+    * time when index is changed.
+    */
+   public synchronized void invalidate()
+   {
+      results.clear();
+      size = 0;
+      generation++;
+      invalidationCount++;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public synchronized long getHitCount()
+   {
+      return hitCount;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public synchronized long getMissCount()
+   {
+      return missCount;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public synchronized long getEvictionCount()
+   {
+      return evictionCount;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public synchronized long getInvalidationCount()
+   {
+      return invalidationCount;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public synchronized int getEntryCount()
+   {
+      return results.size();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public synchronized long getSize()
+   {
+      return size;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getMaxSize()
+   {
+      return maxSize;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public synchronized void reset()
+   {
+      results.clear();
+      size = 0;
+      generation++;
+      hitCount = 0;
+      missCount = 0;
+      evictionCount = 0;
+      invalidationCount = 0;
+   }
+}
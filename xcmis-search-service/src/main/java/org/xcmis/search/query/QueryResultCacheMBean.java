@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.search.query;
+
+/**
+ * JMX view of {@link QueryResultCache}.
+ */
+public interface QueryResultCacheMBean
+{
+   /**
+    * @return number of queries answered from cache
+    */
+   long getHitCount();
+
+   /**
+    * @return number of queries which were not found in cache
+    */
+   long getMissCount();
+
+   /**
+    * @return number of results removed from cache to free space for new ones
+    */
+   long getEvictionCount();
+
+   /**
+    * @return number of times cache was dropped because index was changed
+    */
+   long getInvalidationCount();
+
+   /**
+    * @return number of cached results
+    */
+   int getEntryCount();
+
+   /**
+    * @return estimated size of cached results in bytes
+    */
+   long getSize();
+
+   /**
+    * @return max size of cached results in bytes
+    */
+   long getMaxSize();
+
+   /**
+    * Drop all cached results and clear statistics.
+    */
+   void reset();
+}
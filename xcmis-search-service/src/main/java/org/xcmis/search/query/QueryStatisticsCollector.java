@@ -0,0 +1,454 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.search.query;
+
+import org.xcmis.search.VisitException;
+import org.xcmis.search.Visitors;
+import org.xcmis.search.model.Limit;
+import org.xcmis.search.model.Query;
+import org.xcmis.search.model.constraint.ChildNode;
+import org.xcmis.search.model.constraint.DescendantNode;
+import org.xcmis.search.model.constraint.FullTextSearch;
+import org.xcmis.search.model.constraint.SameNode;
+import org.xcmis.search.model.operand.Literal;
+import org.xcmis.search.query.plan.QueryExecutionPlan;
+import org.xcmis.spi.utils.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Aggregates {@link Statistics} of executed queries. Queries are grouped by
+ * shape: text of query where all literals, full text expressions, paths and
+ * limits are replaced by '?'. For each shape histogram of execution times is
+ * kept. Queries which take more then configured threshold are logged together
+ * with execution plan.
+ */
+public class QueryStatisticsCollector implements QueryStatisticsCollectorMBean
+{
+   private static final Logger LOG = Logger.getLogger(QueryStatisticsCollector.class);
+
+   /**
+    * Default max number of different shapes. Queries of other shapes are
+    * counted together.
+    */
+   public static final int DEFAULT_MAX_SHAPES = 500;
+
+   /**
+    * Shape of queries which are not counted separately because there are
+    * too many shapes.
+    */
+   static final String OTHER_SHAPE = "<other>";
+
+   /**
+    * Upper bounds of histogram buckets in milliseconds. Last bucket has no
+    * upper bound. Times themselves are collected in microseconds.
+    */
+   private static final long[] BUCKETS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+
+   /**
+    * Statistics of one query shape.
+    */
+   static final class ShapeStatistics
+   {
+      private final String shape;
+
+      private final AtomicLong count = new AtomicLong();
+
+      private final AtomicLong totalTime = new AtomicLong();
+
+      private final AtomicLong maxTime = new AtomicLong();
+
+      private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS.length + 1);
+
+      ShapeStatistics(String shape)
+      {
+         this.shape = shape;
+      }
+
+      void add(long micros)
+      {
+         count.incrementAndGet();
+         totalTime.addAndGet(micros);
+         updateMax(maxTime, micros);
+         int bucket = 0;
+         while (bucket < BUCKETS.length && micros >= BUCKETS[bucket] * 1000)
+         {
+            bucket++;
+         }
+         histogram.incrementAndGet(bucket);
+      }
+
+      /**
+       * Get upper bound of bucket which contains specified percentile.
+       *
+       * @param percent percentile
+       * @return upper bound of bucket in milliseconds or -1 if percentile
+       *         is in last bucket
+       */
+      long getPercentile(int percent)
+      {
+         long total = count.get();
+         long rank = (total * percent + 99) / 100;
+         long seen = 0;
+         for (int i = 0; i < BUCKETS.length; i++)
+         {
+            seen += histogram.get(i);
+            if (seen >= rank)
+            {
+               return BUCKETS[i];
+            }
+         }
+         return -1;
+      }
+
+      String getShape()
+      {
+         return shape;
+      }
+
+      long getCount()
+      {
+         return count.get();
+      }
+
+      double getTotalTime()
+      {
+         return toMillis(totalTime.get());
+      }
+
+      double getMaxTime()
+      {
+         return toMillis(maxTime.get());
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public String toString()
+      {
+         long c = count.get();
+         StringBuilder sb = new StringBuilder();
+         sb.append("count=").append(c);
+         sb.append(", total=").append(toMillis(totalTime.get())).append(" ms");
+         sb.append(", avg=").append(c == 0 ? 0 : toMillis(totalTime.get() / c)).append(" ms");
+         sb.append(", max=").append(toMillis(maxTime.get())).append(" ms");
+         appendPercentile(sb, 50);
+         appendPercentile(sb, 90);
+         appendPercentile(sb, 99);
+         sb.append(", shape=").append(shape);
+         return sb.toString();
+      }
+
+      private void appendPercentile(StringBuilder sb, int percent)
+      {
+         long bound = getPercentile(percent);
+         sb.append(", p").append(percent).append(bound < 0 ? ">=" : "<");
+         sb.append(bound < 0 ? BUCKETS[BUCKETS.length - 1] : bound).append(" ms");
+      }
+   }
+
+   /**
+    * Visitor which builds text of query without values.
+    */
+   private static class ShapeVisitor extends Visitors.ReadableVisitor
+   {
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public void visit(Literal literal)
+      {
+         append('?');
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public void visit(Limit limit)
+      {
+         append("LIMIT ?");
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public void visit(FullTextSearch fullText)
+      {
+         append("CONTAINS(");
+         append(fullText.getSelectorName());
+         if (fullText.getPropertyName() != null)
+         {
+            append('.');
+            append(fullText.getPropertyName());
+         }
+         append(",?)");
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public void visit(ChildNode child)
+      {
+         append("ISCHILDNODE(");
+         append(child.getSelectorName());
+         append(",?)");
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public void visit(DescendantNode descendant)
+      {
+         append("ISDESCENDANTNODE(");
+         append(descendant.getSelectorName());
+         append(",?)");
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public void visit(SameNode sameNode)
+      {
+         append("ISSAMENODE(");
+         append(sameNode.getSelectorName());
+         append(",?)");
+      }
+   }
+
+   private final int maxShapes;
+
+   private volatile long slowQueryThreshold;
+
+   private final ConcurrentMap<String, ShapeStatistics> shapes = new ConcurrentHashMap<String, ShapeStatistics>();
+
+   private final AtomicLong queryCount = new AtomicLong();
+
+   private final AtomicLong slowQueryCount = new AtomicLong();
+
+   private final AtomicLong totalTime = new AtomicLong();
+
+   private final AtomicLong maxTime = new AtomicLong();
+
+   /**
+    * @param slowQueryThreshold queries which take more then this number of
+    *        milliseconds are logged, negative value disables logging
+    * @param maxShapes max number of different query shapes
+    */
+   public QueryStatisticsCollector(long slowQueryThreshold, int maxShapes)
+   {
+      this.slowQueryThreshold = slowQueryThreshold;
+      this.maxShapes = maxShapes;
+   }
+
+   /**
+    * Add statistics of executed query.
+    *
+    * @param query executed query
+    * @param statistics statistics of query
+    * @param plan optimized execution plan of query
+    * @param rows number of result rows
+    */
+   public void record(Query query, Statistics statistics, QueryExecutionPlan plan, int rows)
+   {
+      long micros = Math.max(0, statistics.getTotalTime(TimeUnit.MICROSECONDS));
+      queryCount.incrementAndGet();
+      totalTime.addAndGet(micros);
+      updateMax(maxTime, micros);
+      getShapeStatistics(getShape(query)).add(micros);
+
+      long threshold = slowQueryThreshold;
+      if (threshold >= 0 && micros >= threshold * 1000)
+      {
+         slowQueryCount.incrementAndGet();
+         LOG.warn("Slow query " + statistics + ", rows " + rows + ": " + query + "\nExecution plan:\n" + plan);
+      }
+   }
+
+   /**
+    * Get shape of query.
+    *
+    * @param query query
+    * @return text of query without values
+    */
+   public static String getShape(Query query)
+   {
+      try
+      {
+         return Visitors.visit(query, new ShapeVisitor()).getString();
+      }
+      catch (VisitException e)
+      {
+         return query.toString();
+      }
+   }
+
+   /**
+    * Get statistics of query shape.
+    *
+    * @param shape shape of query, see {@link #getShape(Query)}
+    * @return statistics or <code>null</code> if there is no statistics for
+    *         such shape
+    */
+   ShapeStatistics findShapeStatistics(String shape)
+   {
+      return shapes.get(shape);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getQueryCount()
+   {
+      return queryCount.get();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getSlowQueryCount()
+   {
+      return slowQueryCount.get();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getSlowQueryThreshold()
+   {
+      return slowQueryThreshold;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void setSlowQueryThreshold(long millis)
+   {
+      this.slowQueryThreshold = millis;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public double getAverageTime()
+   {
+      long c = queryCount.get();
+      return c == 0 ? 0 : toMillis(totalTime.get() / c);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public double getMaxTime()
+   {
+      return toMillis(maxTime.get());
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public int getShapeCount()
+   {
+      return shapes.size();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public String[] getShapeStatistics()
+   {
+      List<ShapeStatistics> list = new ArrayList<ShapeStatistics>(shapes.values());
+      Collections.sort(list, new Comparator<ShapeStatistics>()
+      {
+         public int compare(ShapeStatistics s1, ShapeStatistics s2)
+         {
+            double t1 = s1.getTotalTime();
+            double t2 = s2.getTotalTime();
+            return t1 > t2 ? -1 : (t1 == t2 ? 0 : 1);
+         }
+      });
+      String[] result = new String[list.size()];
+      for (int i = 0; i < result.length; i++)
+      {
+         result[i] = list.get(i).toString();
+      }
+      return result;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void reset()
+   {
+      shapes.clear();
+      queryCount.set(0);
+      slowQueryCount.set(0);
+      totalTime.set(0);
+      maxTime.set(0);
+   }
+
+   private ShapeStatistics getShapeStatistics(String shape)
+   {
+      ShapeStatistics stats = shapes.get(shape);
+      if (stats == null)
+      {
+         if (shapes.size() >= maxShapes)
+         {
+            shape = OTHER_SHAPE;
+         }
+         stats = new ShapeStatistics(shape);
+         ShapeStatistics prev = shapes.putIfAbsent(shape, stats);
+         if (prev != null)
+         {
+            stats = prev;
+         }
+      }
+      return stats;
+   }
+
+   private static double toMillis(long micros)
+   {
+      return micros / 1000d;
+   }
+
+   private static void updateMax(AtomicLong max, long value)
+   {
+      for (;;)
+      {
+         long current = max.get();
+         if (value <= current || max.compareAndSet(current, value))
+         {
+            return;
+         }
+      }
+   }
+}
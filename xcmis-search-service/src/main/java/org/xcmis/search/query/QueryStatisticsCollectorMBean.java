@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.search.query;
+
+/**
+ * JMX view of {@link QueryStatisticsCollector}.
+ */
+public interface QueryStatisticsCollectorMBean
+{
+   /**
+    * @return number of executed queries
+    */
+   long getQueryCount();
+
+   /**
+    * @return number of queries which took more then slow query threshold
+    */
+   long getSlowQueryCount();
+
+   /**
+    * @return slow query threshold in milliseconds, negative value means slow
+    *         query log is disabled
+    */
+   long getSlowQueryThreshold();
+
+   /**
+    * @param millis slow query threshold in milliseconds, negative value
+    *        disables slow query log
+    */
+   void setSlowQueryThreshold(long millis);
+
+   /**
+    * @return average time of query in milliseconds
+    */
+   double getAverageTime();
+
+   /**
+    * @return max time of query in milliseconds
+    */
+   double getMaxTime();
+
+   /**
+    * @return number of different query shapes
+    */
+   int getShapeCount();
+
+   /**
+    * @return statistics of query shapes, the most expensive (by total time)
+    *         first
+    */
+   String[] getShapeStatistics();
+
+   /**
+    * Clear all statistics.
+    */
+   void reset();
+}
@@ -28,13 +28,13 @@ public class Statistics implements Comparable<Statistics>, Serializable
 
    protected static final Statistics EMPTY_STATISTICS = new Statistics();
 
-   private final long planningMillis;
+   private final long planningNanos;
 
-   private final long optimizationMillis;
+   private final long optimizationNanos;
 
-   private final long resultFormulationMillis;
+   private final long resultFormulationNanos;
 
-   private final long executionMillis;
+   private final long executionNanos;
 
    public Statistics()
    {
@@ -48,10 +48,25 @@ public class Statistics implements Comparable<Statistics>, Serializable
 
    public Statistics(long planningMillis, long optimizationMillis, long resultFormulationMillis, long executionMillis)
    {
-      this.planningMillis = planningMillis;
-      this.optimizationMillis = optimizationMillis;
-      this.resultFormulationMillis = resultFormulationMillis;
-      this.executionMillis = executionMillis;
+      this(planningMillis, optimizationMillis, resultFormulationMillis, executionMillis, TimeUnit.MILLISECONDS);
+   }
+
+   /**
+    * Times are kept in nanoseconds so that sub-millisecond queries are not
+    * recorded as 0.
+    * 
+    * @param planning the time required by planning
+    * @param optimization the time required by optimization
+    * @param resultFormulation the time required to formulate the results
+    * @param execution the time required to execute the query
+    * @param unit the time unit of all the values
+    */
+   public Statistics(long planning, long optimization, long resultFormulation, long execution, TimeUnit unit)
+   {
+      this.planningNanos = unit.toNanos(planning);
+      this.optimizationNanos = unit.toNanos(optimization);
+      this.resultFormulationNanos = unit.toNanos(resultFormulation);
+      this.executionNanos = unit.toNanos(execution);
    }
 
    /**
@@ -65,7 +80,7 @@ public class Statistics implements Comparable<Statistics>, Serializable
    {
       //can be < 0 in some systems. see CMIS-549
       //Validate.notNull(unit, "Unit should not be null");
-      return unit.convert(planningMillis, TimeUnit.MILLISECONDS);
+      return unit.convert(planningNanos, TimeUnit.NANOSECONDS);
    }
 
    /**
@@ -79,7 +94,7 @@ public class Statistics implements Comparable<Statistics>, Serializable
    {
       //can be < 0 in some systems. see CMIS-549
       //Validate.notNull(unit, "Unit should not be null");
-      return unit.convert(optimizationMillis, TimeUnit.MILLISECONDS);
+      return unit.convert(optimizationNanos, TimeUnit.NANOSECONDS);
    }
 
    /**
@@ -93,7 +108,7 @@ public class Statistics implements Comparable<Statistics>, Serializable
    {
       //can be < 0 in some systems. see CMIS-549
       //Validate.notNull(unit, "Unit should not be null");
-      return unit.convert(resultFormulationMillis, TimeUnit.MILLISECONDS);
+      return unit.convert(resultFormulationNanos, TimeUnit.NANOSECONDS);
    }
 
    /**
@@ -105,7 +120,7 @@ public class Statistics implements Comparable<Statistics>, Serializable
     */
    public long getExecutionTime(TimeUnit unit)
    {
-      return unit.convert(executionMillis, TimeUnit.MILLISECONDS);
+      return unit.convert(executionNanos, TimeUnit.NANOSECONDS);
    }
 
    /**
@@ -117,12 +132,12 @@ public class Statistics implements Comparable<Statistics>, Serializable
     */
    public long getTotalTime(TimeUnit unit)
    {
-      return unit.convert(totalTime(), TimeUnit.MILLISECONDS);
+      return unit.convert(totalTime(), TimeUnit.NANOSECONDS);
    }
 
    protected long totalTime()
    {
-      return planningMillis + optimizationMillis + resultFormulationMillis + executionMillis;
+      return planningNanos + optimizationNanos + resultFormulationNanos + executionNanos;
    }
 
    /**
@@ -136,7 +151,7 @@ public class Statistics implements Comparable<Statistics>, Serializable
    {
       //can be < 0 in some systems. see CMIS-549
       //Validate.isTrue(planningMillis >= 0, "planningMillis should be >=0");
-      return new Statistics(planningMillis, optimizationMillis, resultFormulationMillis, executionMillis);
+      return withPlanningTime(planningMillis, TimeUnit.MILLISECONDS);
    }
 
    /**
@@ -150,7 +165,7 @@ public class Statistics implements Comparable<Statistics>, Serializable
    {
       //can be < 0 in some systems. see CMIS-549
       //Validate.isTrue(optimizationMillis >= 0, "optimizationMillis should be >=0");
-      return new Statistics(planningMillis, optimizationMillis, resultFormulationMillis, executionMillis);
+      return withOptimizationTime(optimizationMillis, TimeUnit.MILLISECONDS);
    }
 
    /**
@@ -164,7 +179,7 @@ public class Statistics implements Comparable<Statistics>, Serializable
    {
       //can be < 0 in some systems. see CMIS-549
       //Validate.isTrue(resultFormulationMillis >= 0, "resultFormulationMillis should be >=0");
-      return new Statistics(planningMillis, optimizationMillis, resultFormulationMillis, executionMillis);
+      return withResultsFormulationTime(resultFormulationMillis, TimeUnit.MILLISECONDS);
    }
 
    /**
@@ -178,7 +193,7 @@ public class Statistics implements Comparable<Statistics>, Serializable
    {
       //can be < 0 in some systems. see CMIS-549
       //Validate.isTrue(executionMillis >= 0, "executionMillis should be >=0");
-      return new Statistics(planningMillis, optimizationMillis, resultFormulationMillis, executionMillis);
+      return withExecutionTime(executionMillis, TimeUnit.MILLISECONDS);
    }
 
    /**
@@ -194,8 +209,8 @@ public class Statistics implements Comparable<Statistics>, Serializable
       //can be < 0 in some systems. see CMIS-549
       //Validate.isTrue(planning >= 0, "planning should be >=0");
       //Validate.notNull(unit, "Unit should not be null");
-      long planningMillis = TimeUnit.NANOSECONDS.convert(planning, unit);
-      return new Statistics(planningMillis, optimizationMillis, resultFormulationMillis, executionMillis);
+      return new Statistics(unit.toNanos(planning), optimizationNanos, resultFormulationNanos, executionNanos,
+         TimeUnit.NANOSECONDS);
    }
 
    /**
@@ -211,8 +226,8 @@ public class Statistics implements Comparable<Statistics>, Serializable
       //can be < 0 in some systems. see CMIS-549
       //Validate.isTrue(optimization >= 0, "optimization should be >=0");
       //Validate.notNull(unit, "Unit should not be null");
-      long optimizationMillis = TimeUnit.NANOSECONDS.convert(optimization, unit);
-      return new Statistics(planningMillis, optimizationMillis, resultFormulationMillis, executionMillis);
+      return new Statistics(planningNanos, unit.toNanos(optimization), resultFormulationNanos, executionNanos,
+         TimeUnit.NANOSECONDS);
    }
 
    /**
@@ -229,8 +244,8 @@ public class Statistics implements Comparable<Statistics>, Serializable
       //Validate.isTrue(resultFormulation >= 0, "resultFormulation should be >=0");
       //Validate.notNull(unit, "Unit should not be null");
 
-      long resultFormulationMillis = TimeUnit.MILLISECONDS.convert(resultFormulation, unit);
-      return new Statistics(planningMillis, optimizationMillis, resultFormulationMillis, executionMillis);
+      return new Statistics(planningNanos, optimizationNanos, unit.toNanos(resultFormulation), executionNanos,
+         TimeUnit.NANOSECONDS);
    }
 
    /**
@@ -246,8 +261,8 @@ public class Statistics implements Comparable<Statistics>, Serializable
       //can be < 0 in some systems. see CMIS-549
       //Validate.isTrue(execution >= 0, "execution should be >=0");
       //Validate.notNull(unit, "Unit should not be null");
-      long executionMillis = TimeUnit.MILLISECONDS.convert(execution, unit);
-      return new Statistics(planningMillis, optimizationMillis, resultFormulationMillis, executionMillis);
+      return new Statistics(planningNanos, optimizationNanos, resultFormulationNanos, unit.toNanos(execution),
+         TimeUnit.NANOSECONDS);
    }
 
    /**
@@ -283,14 +298,14 @@ public class Statistics implements Comparable<Statistics>, Serializable
    {
       StringBuilder sb = new StringBuilder();
       readable(totalTime(), sb);
-      boolean first = false;
-      if (planningMillis != 0L)
+      boolean first = true;
+      if (planningNanos != 0L)
       {
          sb.append(" (plan=");
-         readable(planningMillis, sb);
+         readable(planningNanos, sb);
          first = false;
       }
-      if (optimizationMillis != 0L)
+      if (optimizationNanos != 0L)
       {
          if (first)
          {
@@ -302,9 +317,9 @@ public class Statistics implements Comparable<Statistics>, Serializable
             sb.append(" ,");
          }
          sb.append("opt=");
-         readable(optimizationMillis, sb);
+         readable(optimizationNanos, sb);
       }
-      if (resultFormulationMillis != 0L)
+      if (resultFormulationNanos != 0L)
       {
          if (first)
          {
@@ -316,9 +331,9 @@ public class Statistics implements Comparable<Statistics>, Serializable
             sb.append(" ,");
          }
          sb.append("res=");
-         readable(resultFormulationMillis, sb);
+         readable(resultFormulationNanos, sb);
       }
-      if (executionMillis != 0L)
+      if (executionNanos != 0L)
       {
          if (first)
          {
@@ -330,7 +345,7 @@ public class Statistics implements Comparable<Statistics>, Serializable
             sb.append(" ,");
          }
          sb.append("exec=");
-         readable(executionMillis, sb);
+         readable(executionNanos, sb);
       }
       if (!first)
       {
@@ -339,31 +354,16 @@ public class Statistics implements Comparable<Statistics>, Serializable
       return sb.toString();
    }
 
-   protected void readable(long millis, StringBuilder sb)
+   protected void readable(long nanos, StringBuilder sb)
    {
-      // 3210987654321
-      // XXXXXXXXXXXXX millis
-      // XXXXXXXXXX micros
-      // XXXXXXX millis
-      // XXXX seconds
-      //TODO check conversion
+      double millis = nanos / 1000000d;
       if (millis < 1000)
       {
-         sb.append(millis).append(" ns");
-      }
-      else if (millis < 1000000)
-      {
-         double value = millis / 1000d;
-         sb.append(FORMATTER.get().format(value)).append(" usec");
-      }
-      else if (millis < 1000000000)
-      {
-         double value = millis / 1000000d;
-         sb.append(FORMATTER.get().format(value)).append(" ms");
+         sb.append(FORMATTER.get().format(millis)).append(" ms");
       }
       else
       {
-         double value = millis / 1000000000d;
+         double value = millis / 1000d;
          sb.append(FORMATTER.get().format(value)).append(" sec");
       }
    }
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.search.query.join;
+
+import org.xcmis.search.result.ScoredRow;
+
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+
+/**
+ * Row of one side of join together with values of join condition. Two rows
+ * match if they have at least one equal key. Keys are normalized so values
+ * of different java types which represent the same value (e.g.
+ * {@link Integer} and {@link Long}) are equal.
+ */
+public class KeyedRow
+{
+   /**
+    * Empty keys. Row without keys never matches other rows.
+    */
+   static final Comparable<?>[] NO_KEYS = new Comparable<?>[0];
+
+   /**
+    * Row.
+    */
+   private final ScoredRow row;
+
+   /**
+    * Normalized keys.
+    */
+   private final Comparable<?>[] keys;
+
+   /**
+    * @param row row
+    * @param keys normalized keys, see {@link #normalize(Object)}
+    */
+   public KeyedRow(ScoredRow row, Comparable<?>[] keys)
+   {
+      this.row = row;
+      this.keys = keys == null ? NO_KEYS : keys;
+   }
+
+   /**
+    * Create row with keys built from raw values.
+    *
+    * @param row row
+    * @param values raw values of join condition, may be null
+    * @return keyed row
+    */
+   public static KeyedRow create(ScoredRow row, Collection<?> values)
+   {
+      if (values == null || values.isEmpty())
+      {
+         return new KeyedRow(row, NO_KEYS);
+      }
+      Comparable<?>[] keys = new Comparable<?>[values.size()];
+      int i = 0;
+      for (Object value : values)
+      {
+         Comparable<?> key = normalize(value);
+         if (key != null)
+         {
+            keys[i++] = key;
+         }
+      }
+      if (i < keys.length)
+      {
+         Comparable<?>[] matchable = new Comparable<?>[i];
+         System.arraycopy(keys, 0, matchable, 0, i);
+         keys = matchable;
+      }
+      return new KeyedRow(row, keys);
+   }
+
+   /**
+    * Normalize value to one of {@link String}, {@link BigDecimal},
+    * {@link Boolean} or {@link Date}.
+    *
+    * @param value value
+    * @return normalized value or <code>null</code> if value is NaN or
+    *         infinite number which never matches other values
+    */
+   public static Comparable<?> normalize(Object value)
+   {
+      if (value instanceof Double || value instanceof Float)
+      {
+         double d = ((Number)value).doubleValue();
+         if (Double.isNaN(d) || Double.isInfinite(d))
+         {
+            return null;
+         }
+      }
+      if (value instanceof Number)
+      {
+         BigDecimal decimal = new BigDecimal(value.toString());
+         // 1.0 and 1 must be equal.
+         return decimal.signum() == 0 ? BigDecimal.ZERO : decimal.stripTrailingZeros();
+      }
+      if (value instanceof Calendar)
+      {
+         return ((Calendar)value).getTime();
+      }
+      if (value instanceof Date || value instanceof Boolean || value instanceof String)
+      {
+         return (Comparable<?>)value;
+      }
+      return String.valueOf(value);
+   }
+
+   /**
+    * Compare normalized keys. Keys of different types are ordered by type.
+    *
+    * @param k1 first key
+    * @param k2 second key
+    * @return a negative integer, zero, or a positive integer as the first key
+    *         is less than, equal to, or greater than the second
+    */
+   @SuppressWarnings("unchecked")
+   static int compareKeys(Comparable<?> k1, Comparable<?> k2)
+   {
+      if (k1.getClass() != k2.getClass())
+      {
+         return k1.getClass().getName().compareTo(k2.getClass().getName());
+      }
+      return ((Comparable<Object>)k1).compareTo(k2);
+   }
+
+   /**
+    * @return the row
+    */
+   public ScoredRow getRow()
+   {
+      return row;
+   }
+
+   /**
+    * @return the keys
+    */
+   public Comparable<?>[] getKeys()
+   {
+      return keys;
+   }
+}
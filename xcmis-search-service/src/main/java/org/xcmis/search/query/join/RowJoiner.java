@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.search.query.join;
+
+import org.xcmis.search.model.source.join.JoinType;
+import org.xcmis.search.result.ScoredRow;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Joins two sets of {@link KeyedRow}s. Score of joined row is sum of scores
+ * of both rows.
+ * <p>
+ * Hash join builds hash table for one side (build side) and reads other side
+ * (probe side) once per hash table. If build side has more rows then
+ * <code>maxInMemoryRows</code> it is processed by blocks of
+ * <code>maxInMemoryRows</code> rows so size of hash table is bounded. Result
+ * rows keep order of probe side, unmatched rows of outer build side are added
+ * at the end. Only the hash table is bounded: both sides are given as
+ * {@link SpillableRowBuffer}s which are filled from lists read from index,
+ * and joined rows are collected in memory without limit.
+ * </p>
+ * <p>
+ * Merge join may be used when both sides are sorted by single join key in
+ * the same direction. Both sides are kept in memory. Result rows keep the
+ * order of join key.
+ * </p>
+ */
+public class RowJoiner
+{
+   /**
+    * Joined row together with index of probe row it is made from.
+    */
+   private static final class Match
+   {
+      final int probeIndex;
+
+      final ScoredRow row;
+
+      Match(int probeIndex, ScoredRow row)
+      {
+         this.probeIndex = probeIndex;
+         this.row = row;
+      }
+   }
+
+   private static final Comparator<Match> PROBE_ORDER = new Comparator<Match>()
+   {
+      public int compare(Match m1, Match m2)
+      {
+         return m1.probeIndex < m2.probeIndex ? -1 : (m1.probeIndex == m2.probeIndex ? 0 : 1);
+      }
+   };
+
+   private final JoinType joinType;
+
+   private final int maxInMemoryRows;
+
+   /**
+    * @param joinType type of join
+    * @param maxInMemoryRows max number of build rows in hash table
+    */
+   public RowJoiner(JoinType joinType, int maxInMemoryRows)
+   {
+      if (maxInMemoryRows <= 0)
+      {
+         throw new IllegalArgumentException("Max number of rows in memory must be positive.");
+      }
+      this.joinType = joinType;
+      this.maxInMemoryRows = maxInMemoryRows;
+   }
+
+   /**
+    * Join rows with hash join. At most <code>maxInMemoryRows</code> rows of
+    * build side are kept in hash table at once, returned list is not bounded.
+    *
+    * @param left rows of left side of join
+    * @param right rows of right side of join
+    * @param buildLeft if <code>true</code> then hash table is built for left
+    *        side otherwise for right side
+    * @return joined rows
+    * @throws IOException if spilled rows can't be read
+    */
+   public List<ScoredRow> hashJoin(SpillableRowBuffer left, SpillableRowBuffer right, boolean buildLeft)
+      throws IOException
+   {
+      SpillableRowBuffer build = buildLeft ? left : right;
+      SpillableRowBuffer probe = buildLeft ? right : left;
+      boolean outerBuild = joinType == (buildLeft ? JoinType.LEFT_OUTER : JoinType.RIGHT_OUTER);
+      boolean outerProbe = joinType == (buildLeft ? JoinType.RIGHT_OUTER : JoinType.LEFT_OUTER);
+
+      List<Match> matches = new ArrayList<Match>();
+      List<ScoredRow> unmatchedBuild = new ArrayList<ScoredRow>();
+      BitSet probeMatched = new BitSet(probe.size());
+      int blocks = 0;
+
+      Iterator<KeyedRow> buildRows = build.iterator();
+      while (buildRows.hasNext())
+      {
+         blocks++;
+         List<KeyedRow> block = new ArrayList<KeyedRow>();
+         Map<Object, List<Integer>> table = new HashMap<Object, List<Integer>>();
+         while (buildRows.hasNext() && block.size() < maxInMemoryRows)
+         {
+            KeyedRow row = buildRows.next();
+            Integer index = block.size();
+            block.add(row);
+            for (Comparable<?> key : row.getKeys())
+            {
+               List<Integer> rows = table.get(key);
+               if (rows == null)
+               {
+                  rows = new ArrayList<Integer>(1);
+                  table.put(key, rows);
+               }
+               rows.add(index);
+            }
+         }
+
+         BitSet buildMatched = new BitSet(block.size());
+         int probeIndex = 0;
+         for (Iterator<KeyedRow> probeRows = probe.iterator(); probeRows.hasNext(); probeIndex++)
+         {
+            KeyedRow probeRow = probeRows.next();
+            Comparable<?>[] keys = probeRow.getKeys();
+            // Row with few keys may match the same build row more then once.
+            BitSet joined = keys.length > 1 ? new BitSet() : null;
+            for (Comparable<?> key : keys)
+            {
+               List<Integer> rows = table.get(key);
+               if (rows == null)
+               {
+                  continue;
+               }
+               for (Integer index : rows)
+               {
+                  if (joined != null)
+                  {
+                     if (joined.get(index))
+                     {
+                        continue;
+                     }
+                     joined.set(index);
+                  }
+                  buildMatched.set(index);
+                  probeMatched.set(probeIndex);
+                  ScoredRow buildRow = block.get(index).getRow();
+                  matches.add(new Match(probeIndex, buildLeft ? merge(buildRow, probeRow.getRow()) : merge(
+                     probeRow.getRow(), buildRow)));
+               }
+            }
+         }
+
+         if (outerBuild)
+         {
+            for (int i = buildMatched.nextClearBit(0); i < block.size(); i = buildMatched.nextClearBit(i + 1))
+            {
+               unmatchedBuild.add(block.get(i).getRow());
+            }
+         }
+      }
+
+      if (outerProbe)
+      {
+         int probeIndex = 0;
+         for (Iterator<KeyedRow> probeRows = probe.iterator(); probeRows.hasNext(); probeIndex++)
+         {
+            KeyedRow probeRow = probeRows.next();
+            if (!probeMatched.get(probeIndex))
+            {
+               matches.add(new Match(probeIndex, probeRow.getRow()));
+            }
+         }
+      }
+
+      if (blocks > 1 || outerProbe)
+      {
+         // Restore order of probe side. Sort is stable so order of rows
+         // made from the same probe row is kept.
+         Collections.sort(matches, PROBE_ORDER);
+      }
+
+      List<ScoredRow> result = new ArrayList<ScoredRow>(matches.size() + unmatchedBuild.size());
+      for (Match match : matches)
+      {
+         result.add(match.row);
+      }
+      result.addAll(unmatchedBuild);
+      return result;
+   }
+
+   /**
+    * Join rows with merge join. Both sides must be sorted by join key in the
+    * same direction and each row must have exactly one key.
+    *
+    * @param left rows of left side of join
+    * @param right rows of right side of join
+    * @param descending <code>true</code> if rows are sorted in descending
+    *        order
+    * @return joined rows or <code>null</code> if rows are not sorted or have
+    *         not exactly one key, in this case other algorithm must be used
+    */
+   public List<ScoredRow> mergeJoin(List<KeyedRow> left, List<KeyedRow> right, boolean descending)
+   {
+      int direction = descending ? -1 : 1;
+      if (!isSorted(left, direction) || !isSorted(right, direction))
+      {
+         return null;
+      }
+      boolean outerLeft = joinType == JoinType.LEFT_OUTER;
+      boolean outerRight = joinType == JoinType.RIGHT_OUTER;
+
+      List<ScoredRow> result = new ArrayList<ScoredRow>();
+      int i = 0;
+      int j = 0;
+      while (i < left.size() && j < right.size())
+      {
+         Comparable<?> key = left.get(i).getKeys()[0];
+         int c = direction * KeyedRow.compareKeys(key, right.get(j).getKeys()[0]);
+         if (c < 0)
+         {
+            if (outerLeft)
+            {
+               result.add(left.get(i).getRow());
+            }
+            i++;
+         }
+         else if (c > 0)
+         {
+            if (outerRight)
+            {
+               result.add(right.get(j).getRow());
+            }
+            j++;
+         }
+         else
+         {
+            int leftEnd = groupEnd(left, i);
+            int rightEnd = groupEnd(right, j);
+            for (int l = i; l < leftEnd; l++)
+            {
+               for (int r = j; r < rightEnd; r++)
+               {
+                  result.add(merge(left.get(l).getRow(), right.get(r).getRow()));
+               }
+            }
+            i = leftEnd;
+            j = rightEnd;
+         }
+      }
+      for (; outerLeft && i < left.size(); i++)
+      {
+         result.add(left.get(i).getRow());
+      }
+      for (; outerRight && j < right.size(); j++)
+      {
+         result.add(right.get(j).getRow());
+      }
+      return result;
+   }
+
+   private static ScoredRow merge(ScoredRow left, ScoredRow right)
+   {
+      return ScoredRow.merge(left, right, left.getScore() + right.getScore());
+   }
+
+   private static int groupEnd(List<KeyedRow> rows, int start)
+   {
+      Comparable<?> key = rows.get(start).getKeys()[0];
+      int end = start + 1;
+      while (end < rows.size() && KeyedRow.compareKeys(key, rows.get(end).getKeys()[0]) == 0)
+      {
+         end++;
+      }
+      return end;
+   }
+
+   private static boolean isSorted(List<KeyedRow> rows, int direction)
+   {
+      Comparable<?> prev = null;
+      for (KeyedRow row : rows)
+      {
+         if (row.getKeys().length != 1)
+         {
+            return false;
+         }
+         Comparable<?> key = row.getKeys()[0];
+         if (prev != null && direction * KeyedRow.compareKeys(prev, key) > 0)
+         {
+            return false;
+         }
+         prev = key;
+      }
+      return true;
+   }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.search.query.join;
+
+import org.xcmis.search.result.ScoredRow;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Append-only buffer of {@link KeyedRow}s. First <code>maxInMemory</code> rows
+ * are kept in memory, all other rows are written in temporary file. Buffer
+ * may be iterated many times. Buffer must be closed after use to remove
+ * temporary file.
+ */
+public class SpillableRowBuffer
+{
+   private static final byte STRING = 0;
+
+   private static final byte NUMBER = 1;
+
+   private static final byte BOOLEAN = 2;
+
+   private static final byte DATE = 3;
+
+   private final int maxInMemory;
+
+   private final File spoolDirectory;
+
+   private final List<KeyedRow> memory;
+
+   private File file;
+
+   private DataOutputStream out;
+
+   private int size;
+
+   /**
+    * @param maxInMemory max number of rows kept in memory
+    * @param spoolDirectory directory for temporary file, if <code>null</code>
+    *        then default temporary directory is used
+    */
+   public SpillableRowBuffer(int maxInMemory, File spoolDirectory)
+   {
+      this.maxInMemory = maxInMemory;
+      this.spoolDirectory = spoolDirectory;
+      this.memory = new ArrayList<KeyedRow>(Math.min(maxInMemory, 1024));
+   }
+
+   /**
+    * Add row at the end of buffer.
+    *
+    * @param row row
+    * @throws IOException if row can't be written in temporary file
+    */
+   public void add(KeyedRow row) throws IOException
+   {
+      if (memory.size() < maxInMemory)
+      {
+         memory.add(row);
+      }
+      else
+      {
+         if (out == null)
+         {
+            file = File.createTempFile("join", null, spoolDirectory);
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+         }
+         write(out, row);
+      }
+      size++;
+   }
+
+   /**
+    * @return number of rows in buffer
+    */
+   public int size()
+   {
+      return size;
+   }
+
+   /**
+    * @return <code>true</code> if some rows are written on disk
+    */
+   public boolean isSpilled()
+   {
+      return file != null;
+   }
+
+   /**
+    * Get row from memory part of buffer.
+    *
+    * @param index index of row
+    * @return row
+    * @throws IndexOutOfBoundsException if row with specified index is not
+    *         in memory
+    */
+   public KeyedRow get(int index)
+   {
+      return memory.get(index);
+   }
+
+   /**
+    * Iterate over all rows in order they were added.
+    *
+    * @return iterator
+    * @throws IOException if temporary file can't be read
+    */
+   public Iterator<KeyedRow> iterator() throws IOException
+   {
+      final Iterator<KeyedRow> memoryIterator = memory.iterator();
+      if (file == null)
+      {
+         return memoryIterator;
+      }
+      out.flush();
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      final int spilled = size - memory.size();
+      return new Iterator<KeyedRow>()
+      {
+         private int read;
+
+         public boolean hasNext()
+         {
+            if (memoryIterator.hasNext())
+            {
+               return true;
+            }
+            if (read < spilled)
+            {
+               return true;
+            }
+            close(in);
+            return false;
+         }
+
+         public KeyedRow next()
+         {
+            if (memoryIterator.hasNext())
+            {
+               return memoryIterator.next();
+            }
+            if (read >= spilled)
+            {
+               throw new NoSuchElementException();
+            }
+            try
+            {
+               KeyedRow row = read(in);
+               read++;
+               return row;
+            }
+            catch (IOException e)
+            {
+               close(in);
+               throw new IllegalStateException("Unable read join buffer. " + e.getMessage(), e);
+            }
+         }
+
+         public void remove()
+         {
+            throw new UnsupportedOperationException();
+         }
+      };
+   }
+
+   /**
+    * Release all resources and remove temporary file.
+    */
+   public void close()
+   {
+      memory.clear();
+      if (out != null)
+      {
+         close(out);
+         out = null;
+      }
+      if (file != null)
+      {
+         if (!file.delete())
+         {
+            file.deleteOnExit();
+         }
+         file = null;
+      }
+   }
+
+   private static void write(DataOutputStream out, KeyedRow keyedRow) throws IOException
+   {
+      ScoredRow row = keyedRow.getRow();
+      String[] names = row.getSelectorNames();
+      out.writeFloat(row.getScore());
+      out.writeInt(names.length);
+      for (String name : names)
+      {
+         out.writeUTF(name);
+         String id = row.getNodeIdentifer(name);
+         out.writeBoolean(id != null);
+         if (id != null)
+         {
+            out.writeUTF(id);
+         }
+      }
+      Comparable<?>[] keys = keyedRow.getKeys();
+      out.writeInt(keys.length);
+      for (Comparable<?> key : keys)
+      {
+         if (key instanceof BigDecimal)
+         {
+            out.writeByte(NUMBER);
+            out.writeUTF(key.toString());
+         }
+         else if (key instanceof Boolean)
+         {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean)key);
+         }
+         else if (key instanceof Date)
+         {
+            out.writeByte(DATE);
+            out.writeLong(((Date)key).getTime());
+         }
+         else
+         {
+            out.writeByte(STRING);
+            out.writeUTF(key.toString());
+         }
+      }
+   }
+
+   private static KeyedRow read(DataInputStream in) throws IOException
+   {
+      float score = in.readFloat();
+      int namesCount = in.readInt();
+      Map<String, String> nodes = new LinkedHashMap<String, String>();
+      for (int i = 0; i < namesCount; i++)
+      {
+         String name = in.readUTF();
+         nodes.put(name, in.readBoolean() ? in.readUTF() : null);
+      }
+      int keysCount = in.readInt();
+      Comparable<?>[] keys = keysCount == 0 ? KeyedRow.NO_KEYS : new Comparable<?>[keysCount];
+      for (int i = 0; i < keysCount; i++)
+      {
+         byte type = in.readByte();
+         switch (type)
+         {
+            case NUMBER :
+               keys[i] = new BigDecimal(in.readUTF());
+               break;
+            case BOOLEAN :
+               keys[i] = in.readBoolean();
+               break;
+            case DATE :
+               keys[i] = new Date(in.readLong());
+               break;
+            case STRING :
+               keys[i] = in.readUTF();
+               break;
+            default :
+               throw new EOFException("Unknown key type " + type);
+         }
+      }
+      return new KeyedRow(new ScoredRow(nodes, score), keys);
+   }
+
+   private static void close(java.io.Closeable closeable)
+   {
+      try
+      {
+         closeable.close();
+      }
+      catch (IOException e)
+      {
+         // ignore
+      }
+   }
+}
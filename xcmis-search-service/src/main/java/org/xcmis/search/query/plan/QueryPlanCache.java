@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.search.query.plan;
+
+import org.xcmis.search.model.Limit;
+import org.xcmis.search.model.Query;
+import org.xcmis.search.model.constraint.And;
+import org.xcmis.search.model.constraint.Comparison;
+import org.xcmis.search.model.constraint.Constraint;
+import org.xcmis.search.model.constraint.Not;
+import org.xcmis.search.model.constraint.Or;
+import org.xcmis.search.model.operand.BindVariableName;
+import org.xcmis.search.model.operand.Literal;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of optimized execution plans, least recently used plans are
+ * evicted first. Literals of comparisons are replaced with bind variables and
+ * limit is removed before plan is looked up, so queries which differ only in
+ * values or paging share one plan. Cached plans are read only, they are
+ * shared by concurrent executions.
+ * <p>
+ * Plans depend on schema, cache must be invalidated each time when schema is
+ * changed.
+ */
+public class QueryPlanCache
+{
+   /**
+    * Default max number of cached plans.
+    */
+   public static final int DEFAULT_SIZE = 100;
+
+   /**
+    * Prefix of names of bind variables which replace literals.
+    */
+   public static final String LITERAL_PREFIX = "xcmis.literal.";
+
+   /**
+    * Query without literals and limit together with values of replaced
+    * literals.
+    */
+   public static final class ParameterizedQuery
+   {
+      private final Query query;
+
+      private final Map<String, Object> values;
+
+      ParameterizedQuery(Query query, Map<String, Object> values)
+      {
+         this.query = query;
+         this.values = values;
+      }
+
+      /**
+       * @return query without literals and limit, it is key of cached plan
+       */
+      public Query getQuery()
+      {
+         return query;
+      }
+
+      /**
+       * @return values of bind variables which replace literals
+       */
+      public Map<String, Object> getValues()
+      {
+         return values;
+      }
+   }
+
+   private final Map<Query, QueryExecutionPlan> plans;
+
+   /** Incremented each time cached plans are dropped. Guarded by plans. */
+   private long generation;
+
+   /**
+    * @param size max number of cached plans
+    */
+   public QueryPlanCache(final int size)
+   {
+      this.plans = new LinkedHashMap<Query, QueryExecutionPlan>(16, 0.75f, true)
+      {
+         private static final long serialVersionUID = 1L;
+
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<Query, QueryExecutionPlan> eldest)
+         {
+            return size() > size;
+         }
+      };
+   }
+
+   /**
+    * Replace literals of query with bind variables and remove limit.
+    *
+    * @param query query
+    * @return parameterized query
+    */
+   public static ParameterizedQuery parameterize(Query query)
+   {
+      Map<String, Object> values = new HashMap<String, Object>();
+      Constraint constraint = query.getConstraint() != null ? parameterize(query.getConstraint(), values) : null;
+      Query parameterized =
+         new Query(query.getSource(), constraint, query.getOrderings(), query.getColumns(), Limit.NONE);
+      return new ParameterizedQuery(parameterized, values.isEmpty() ? Collections.<String, Object> emptyMap()
+         : values);
+   }
+
+   /**
+    * Get cached plan of parameterized query.
+    *
+    * @param query parameterized query
+    * @return plan or <code>null</code> if plan is not cached
+    */
+   public QueryExecutionPlan get(Query query)
+   {
+      synchronized (plans)
+      {
+         return plans.get(query);
+      }
+   }
+
+   /**
+    * @return current generation of cached plans, it must be obtained before
+    *         plan is created and passed to
+    *         {@link #put(Query, QueryExecutionPlan, long)}
+    */
+   public long getGeneration()
+   {
+      synchronized (plans)
+      {
+         return generation;
+      }
+   }
+
+   /**
+    * Put plan in cache. Plan is not cached if cached plans were dropped after
+    * specified generation, it may be created against old schema.
+    *
+    * @param query parameterized query
+    * @param plan optimized plan of query
+    * @param generation generation of cached plans before plan was created
+    */
+   public void put(Query query, QueryExecutionPlan plan, long generation)
+   {
+      synchronized (plans)
+      {
+         if (generation == this.generation)
+         {
+            plans.put(query, plan);
+         }
+      }
+   }
+
+   /**
+    * Drop all cached plans.
+    */
+   public void invalidate()
+   {
+      synchronized (plans)
+      {
+         plans.clear();
+         generation++;
+      }
+   }
+
+   /**
+    * @return number of cached plans
+    */
+   public int size()
+   {
+      synchronized (plans)
+      {
+         return plans.size();
+      }
+   }
+
+   private static Constraint parameterize(Constraint constraint, Map<String, Object> values)
+   {
+      if (constraint instanceof And)
+      {
+         And and = (And)constraint;
+         return new And(parameterize(and.getLeft(), values), parameterize(and.getRight(), values));
+      }
+      if (constraint instanceof Or)
+      {
+         Or or = (Or)constraint;
+         return new Or(parameterize(or.getLeft(), values), parameterize(or.getRight(), values));
+      }
+      if (constraint instanceof Not)
+      {
+         return new Not(parameterize(((Not)constraint).getConstraint(), values));
+      }
+      if (constraint instanceof Comparison)
+      {
+         Comparison comparison = (Comparison)constraint;
+         if (comparison.getOperand2() instanceof Literal && ((Literal)comparison.getOperand2()).getValue() != null)
+         {
+            // Names depend only on position of literal in query.
+            String name = LITERAL_PREFIX + values.size();
+            values.put(name, ((Literal)comparison.getOperand2()).getValue());
+            return new Comparison(comparison.getOperand1(), comparison.getOperator(), new BindVariableName(name));
+         }
+      }
+      return constraint;
+   }
+}
@@ -29,11 +29,13 @@ import org.xcmis.search.model.Query;
 import org.xcmis.search.model.column.Column;
 import org.xcmis.search.model.constraint.And;
 import org.xcmis.search.model.constraint.Constraint;
+import org.xcmis.search.model.operand.PropertyValue;
 import org.xcmis.search.model.ordering.Ordering;
 import org.xcmis.search.model.source.Join;
 import org.xcmis.search.model.source.Selector;
 import org.xcmis.search.model.source.SelectorName;
 import org.xcmis.search.model.source.Source;
+import org.xcmis.search.model.source.join.EquiJoinCondition;
 import org.xcmis.search.query.QueryExecutionContext;
 import org.xcmis.search.query.plan.QueryExecutionPlan.JoinExecutionPlan;
 import org.xcmis.search.query.plan.QueryExecutionPlan.LimitExecutionPlan;
@@ -95,6 +97,7 @@ public class SimplePlaner implements QueryExecutionPlaner
          Map<SelectorName, Table> querySelectorsMap = new HashMap<SelectorName, Table>();
          //source
          QueryExecutionPlan plan = createSelectorPlan(context, query.getSource(), querySelectorsMap);
+         chooseJoinAlgorithm(query.getOrderings(), plan);
          //constrain
          plan = createConstrainPlan(context, query.getConstraint(), querySelectorsMap, plan);
          //columns
@@ -169,14 +172,17 @@ public class SimplePlaner implements QueryExecutionPlaner
          {
             JoinExecutionPlan joinPlan = new JoinExecutionPlan();
             joinPlan.setJoinType(node.getType());
-            joinPlan.setJoinAlgorithm(JoinAlgorithm.NESTED_LOOP);
+            joinPlan.setJoinAlgorithm(JoinAlgorithm.HASH);
             joinPlan.setJoinCondition(node.getJoinCondition());
             //left plan
             node.getLeft().accept(this);
             joinPlan.setLeftPlan((SourceExecutionPlan)stepsStack.pop());
+            joinPlan.addSelectors(joinPlan.getLeftPlan().getSelectors());
             //right plan
             node.getRight().accept(this);
             joinPlan.setRightPlan((SourceExecutionPlan)stepsStack.pop());
+            joinPlan.addSelectors(joinPlan.getRightPlan().getSelectors());
+            stepsStack.push(joinPlan);
 
          }
 
@@ -222,6 +228,38 @@ public class SimplePlaner implements QueryExecutionPlaner
       return stepsStack.pop();
    }
 
+   /**
+    * Use merge join if result of equi-join must be sorted by one of join
+    * columns. In this case both sides of join may be read from index in order
+    * of join columns and merged without hash table. All other joins use hash
+    * join.
+    *
+    * @param orderings list of orderings from the query
+    * @param executionPlan source plan
+    */
+   protected void chooseJoinAlgorithm(List<Ordering> orderings, QueryExecutionPlan executionPlan)
+   {
+      if (executionPlan.getType() != QueryExecutionPlan.Type.JOIN || orderings.size() != 1)
+      {
+         return;
+      }
+      JoinExecutionPlan joinPlan = (JoinExecutionPlan)executionPlan;
+      if (!(joinPlan.getJoinCondition() instanceof EquiJoinCondition)
+         || !(orderings.get(0).getOperand() instanceof PropertyValue))
+      {
+         return;
+      }
+      EquiJoinCondition condition = (EquiJoinCondition)joinPlan.getJoinCondition();
+      PropertyValue operand = (PropertyValue)orderings.get(0).getOperand();
+      if ((operand.getSelectorName().equals(condition.getSelector1Name()) && operand.getPropertyName().equals(
+         condition.getProperty1Name()))
+         || (operand.getSelectorName().equals(condition.getSelector2Name()) && operand.getPropertyName().equals(
+            condition.getProperty2Name())))
+      {
+         joinPlan.setJoinAlgorithm(JoinAlgorithm.MERGE);
+      }
+   }
+
    /**
     * populate SORT node at top of executionPlan. The SORT may be pushed down to a source (or sources) if possible by the optimizer.
     * 
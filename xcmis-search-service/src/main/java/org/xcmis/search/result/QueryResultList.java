@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.search.result;
+
+import org.xcmis.search.query.Statistics;
+
+import java.util.AbstractList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+
+/**
+ * Result rows of query together with {@link Statistics} of its execution.
+ * Rows are not copied, list is view of rows produced by query and may be
+ * sorted in place. If query has limit or offset then list contains only
+ * requested rows and {@link #getTotalCount()} gives number of all rows
+ * matched by query.
+ */
+public class QueryResultList extends AbstractList<ScoredRow>
+{
+   private final List<ScoredRow> rows;
+
+   private final Statistics statistics;
+
+   private final int totalCount;
+
+   /**
+    * @param rows result rows
+    * @param statistics statistics of query execution
+    */
+   public QueryResultList(List<ScoredRow> rows, Statistics statistics)
+   {
+      this(rows, statistics, rows.size());
+   }
+
+   /**
+    * @param rows result rows
+    * @param statistics statistics of query execution, may be
+    *        <code>null</code> if rows are not final result of query
+    * @param totalCount number of rows matched by query before limit and
+    *        offset are applied
+    */
+   public QueryResultList(List<ScoredRow> rows, Statistics statistics, int totalCount)
+   {
+      this.rows = rows;
+      this.statistics = statistics;
+      this.totalCount = totalCount;
+   }
+
+   /**
+    * @return statistics of query execution
+    */
+   public Statistics getStatistics()
+   {
+      return statistics;
+   }
+
+   /**
+    * @return number of rows matched by query before limit and offset are
+    *         applied
+    */
+   public int getTotalCount()
+   {
+      return totalCount;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public ScoredRow get(int index)
+   {
+      return rows.get(index);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public ScoredRow set(int index, ScoredRow row)
+   {
+      return rows.set(index, row);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Iterator<ScoredRow> iterator()
+   {
+      // Rows may be linked list, do not iterate over them by index.
+      return rows.iterator();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public ListIterator<ScoredRow> listIterator(int index)
+   {
+      return rows.listIterator(index);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int size()
+   {
+      return rows.size();
+   }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.search.lucene;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.apache.lucene.analysis.SimpleAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Before;
+import org.junit.Test;
+import org.xcmis.search.lucene.index.IndexException;
+
+import java.io.IOException;
+
+/**
+ * Test sharing and reference counting of searchers.
+ */
+public class SearcherManagerTest
+{
+   private RAMDirectory directory;
+
+   private IndexReader reader;
+
+   private int opened;
+
+   private SearcherManager manager;
+
+   @Before
+   public void beforeEach() throws Exception
+   {
+      directory = new RAMDirectory();
+      addDocument(true);
+      manager = new SearcherManager(new SearcherManager.IndexReaderSource()
+      {
+         public IndexReader[] getIndexReaders() throws IndexException
+         {
+            try
+            {
+               if (reader != null)
+               {
+                  reader.close();
+               }
+               reader = IndexReader.open(directory);
+               opened++;
+               return new IndexReader[]{reader};
+            }
+            catch (IOException e)
+            {
+               throw new IndexException(e.getLocalizedMessage(), e);
+            }
+         }
+      });
+   }
+
+   @Test
+   public void testSearcherIsShared() throws Exception
+   {
+      Searcher searcher1 = manager.acquire();
+      Searcher searcher2 = manager.acquire();
+      assertSame(searcher1, searcher2);
+      assertEquals(1, opened);
+      manager.release(searcher1);
+      manager.release(searcher2);
+   }
+
+   @Test
+   public void testInvalidate() throws Exception
+   {
+      Searcher old = manager.acquire();
+      addDocument(false);
+      manager.invalidate();
+
+      Searcher searcher = manager.acquire();
+      assertNotSame(old, searcher);
+      assertEquals(2, searcher.getIndexReader().numDocs());
+      // Old searcher is usable until it is released.
+      assertEquals(1, old.getIndexReader().numDocs());
+      manager.release(old);
+      assertEquals(0, old.getIndexReader().getRefCount());
+      manager.release(searcher);
+      assertEquals(2, opened);
+   }
+
+   @Test
+   public void testClose() throws Exception
+   {
+      Searcher searcher = manager.acquire();
+      manager.close();
+      assertEquals(1, searcher.getIndexReader().numDocs());
+      manager.release(searcher);
+      // Only reference of source is left.
+      assertEquals(1, searcher.getIndexReader().getRefCount());
+   }
+
+   private void addDocument(boolean create) throws IOException
+   {
+      IndexWriter writer =
+         new IndexWriter(directory, new SimpleAnalyzer(), create, IndexWriter.MaxFieldLength.UNLIMITED);
+      Document doc = new Document();
+      doc.add(new Field("id", "doc" + System.nanoTime(), Field.Store.YES, Field.Index.NOT_ANALYZED));
+      writer.addDocument(doc);
+      writer.close();
+   }
+}
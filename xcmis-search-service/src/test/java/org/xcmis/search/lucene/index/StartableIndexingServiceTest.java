@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.search.lucene.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.xcmis.search.config.IndexConfiguration;
+import org.xcmis.search.lucene.IndexRecoveryTool;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Test rebuild of index which has other format than current one.
+ */
+public class StartableIndexingServiceTest
+{
+   private File indexDir;
+
+   private File formatFile;
+
+   private IndexRecoveryTool recoveryTool;
+
+   private StartableIndexingService service;
+
+   @Before
+   public void setUp() throws Exception
+   {
+      indexDir = new File(System.getProperty("java.io.tmpdir"), "startable-indexing-service");
+      FileUtils.deleteQuietly(indexDir);
+      formatFile = new File(indexDir, "indexFormat");
+      recoveryTool = mock(IndexRecoveryTool.class);
+   }
+
+   @After
+   public void tearDown() throws Exception
+   {
+      FileUtils.deleteQuietly(indexDir);
+   }
+
+   @Test
+   public void testRebuildIndexOfOtherFormat() throws Exception
+   {
+      // recovery of empty index adds one document
+      recoverOneDocument();
+      start();
+      verify(recoveryTool, times(1)).recoverAll();
+      assertEquals(1, service.getDocumentCount());
+      assertEquals(String.valueOf(LuceneIndexer.INDEX_FORMAT_VERSION), FileUtils.readFileToString(formatFile));
+      service.stop();
+
+      // index of current format is kept
+      doNothing().when(recoveryTool).recoverAll();
+      start();
+      verify(recoveryTool, times(1)).recoverAll();
+      assertEquals(1, service.getDocumentCount());
+      service.stop();
+
+      // index of other format is rebuilt
+      FileUtils.writeStringToFile(formatFile, String.valueOf(LuceneIndexer.INDEX_FORMAT_VERSION - 1));
+      start();
+      verify(recoveryTool, times(2)).recoverAll();
+      assertEquals(String.valueOf(LuceneIndexer.INDEX_FORMAT_VERSION), FileUtils.readFileToString(formatFile));
+      service.stop();
+   }
+
+   @Test
+   public void testRebuildIndexWithoutFormat() throws Exception
+   {
+      recoverOneDocument();
+      start();
+      verify(recoveryTool, times(1)).recoverAll();
+      service.stop();
+
+      // index created before format was recorded has no ancestor, reversed
+      // and n-gram fields, so it is rebuilt
+      assertTrue(formatFile.delete());
+      doNothing().when(recoveryTool).recoverAll();
+      start();
+      verify(recoveryTool, times(2)).recoverAll();
+      assertEquals(String.valueOf(LuceneIndexer.INDEX_FORMAT_VERSION), FileUtils.readFileToString(formatFile));
+      service.stop();
+   }
+
+   private void recoverOneDocument() throws IndexException
+   {
+      doAnswer(new Answer<Object>()
+      {
+         public Object answer(InvocationOnMock invocation) throws Throwable
+         {
+            Document document = new Document();
+            document.add(new Field(FieldNames.UUID, "uuid1", Field.Store.YES, Field.Index.NOT_ANALYZED_NO_NORMS));
+            Map<String, Document> added = new HashMap<String, Document>();
+            added.put("uuid1", document);
+            service.save(new LuceneIndexTransaction(added, Collections.<String> emptySet()));
+            return null;
+         }
+      }).when(recoveryTool).recoverAll();
+   }
+
+   private void start() throws Exception
+   {
+      IndexConfiguration configuration = new IndexConfiguration(indexDir.getAbsolutePath(), "", "rootUuid");
+      service = new StartableIndexingService(configuration, recoveryTool);
+      service.start();
+   }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.search.lucene.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.parser.Parser;
+import org.apache.tika.sax.XHTMLContentHandler;
+import org.junit.Test;
+import org.xcmis.search.content.Property.BinaryValue;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test limits and caching of text extraction.
+ */
+public class TextExtractorTest
+{
+   /**
+    * Writes content as text. Content of type <code>text/slow</code> is never
+    * parsed till the end.
+    */
+   private static class TestParser implements Parser
+   {
+      private static final long serialVersionUID = 1L;
+
+      private final AtomicInteger parsed = new AtomicInteger();
+
+      public Set<MediaType> getSupportedTypes(ParseContext context)
+      {
+         return Collections.singleton(MediaType.TEXT_PLAIN);
+      }
+
+      public void parse(InputStream stream, ContentHandler handler, Metadata metadata, ParseContext context)
+         throws IOException, SAXException, TikaException
+      {
+         parsed.incrementAndGet();
+         if ("text/slow".equals(metadata.get(Metadata.CONTENT_TYPE)))
+         {
+            try
+            {
+               Thread.sleep(60 * 1000L);
+            }
+            catch (InterruptedException e)
+            {
+               throw new TikaException("Interrupted");
+            }
+         }
+         StringBuilder text = new StringBuilder();
+         int c;
+         while ((c = stream.read()) != -1)
+         {
+            text.append((char)c);
+         }
+         XHTMLContentHandler xhtml = new XHTMLContentHandler(handler, metadata);
+         xhtml.startDocument();
+         xhtml.element("p", text.toString());
+         xhtml.endDocument();
+      }
+   }
+
+   @Test
+   public void testExtract()
+   {
+      TestParser parser = new TestParser();
+      TextExtractor extractor = new TextExtractor(parser, 2, 100, 10000, 0);
+      assertEquals("hello", extractor.extract(value("hello", "text/plain")).trim());
+      assertNull(extractor.extract(value("hello", null)));
+      assertEquals(1, extractor.getExtractedCount());
+      assertEquals(0, extractor.getSkippedCount());
+   }
+
+   @Test
+   public void testTruncate()
+   {
+      TextExtractor extractor = new TextExtractor(new TestParser(), 1, 5, 10000, 0);
+      String text = extractor.extract(value("0123456789", "text/plain"));
+      assertEquals(5, text.length());
+      assertTrue("0123456789".startsWith(text.trim()));
+      assertEquals(1, extractor.getTruncatedCount());
+      assertEquals(1, extractor.getExtractedCount());
+   }
+
+   @Test
+   public void testTimeout()
+   {
+      TextExtractor extractor = new TextExtractor(new TestParser(), 1, 100, 200, 0);
+      Future<String> slow = extractor.submit(value("slow", "text/slow"));
+      // Waits in queue while only worker is busy with slow value.
+      Future<String> fast = extractor.submit(value("fast", "text/plain"));
+      assertNull(extractor.getText(slow));
+      assertEquals("fast", extractor.getText(fast).trim());
+      assertEquals(1, extractor.getTimeoutCount());
+      assertEquals(1, extractor.getSkippedCount());
+   }
+
+   @Test
+   public void testCache()
+   {
+      TestParser parser = new TestParser();
+      TextExtractor extractor = new TextExtractor(parser, 2, 100, 10000, 10);
+      assertEquals("hello", extractor.extract(value("hello", "text/plain")).trim());
+      assertEquals("hello", extractor.extract(value("hello", "text/plain")).trim());
+      assertEquals(1, parser.parsed.get());
+      assertEquals(1, extractor.getCacheHitCount());
+
+      // Different type may give different text.
+      extractor.extract(value("hello", "text/html"));
+      assertEquals(2, parser.parsed.get());
+   }
+
+   @Test
+   public void testParallel() throws Exception
+   {
+      TextExtractor extractor = new TextExtractor(new TestParser(), 4, 100, 10000, 0);
+      @SuppressWarnings("unchecked")
+      Future<String>[] extractions = new Future[10];
+      for (int i = 0; i < extractions.length; i++)
+      {
+         extractions[i] = extractor.submit(value("text" + i, "text/plain"));
+      }
+      for (int i = 0; i < extractions.length; i++)
+      {
+         assertEquals("text" + i, extractor.getText(extractions[i]).trim());
+      }
+      assertEquals(10, extractor.getExtractedCount());
+      assertEquals(0, extractor.getQueueDepth());
+   }
+
+   private static BinaryValue value(String content, String mimeType)
+   {
+      byte[] bytes = content.getBytes();
+      return new BinaryValue(new ByteArrayInputStream(bytes), mimeType, null, bytes.length);
+   }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.search.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xcmis.search.model.Query;
+import org.xcmis.search.result.QueryResultList;
+import org.xcmis.search.result.ScoredRow;
+import org.xcmis.search.value.CastSystem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Test cache of query results.
+ */
+public class QueryResultCacheTest
+{
+   private QueryBuilder builder;
+
+   @Before
+   public void beforeEach()
+   {
+      builder = new QueryBuilder(mock(CastSystem.class));
+   }
+
+   @Test
+   public void testGet()
+   {
+      QueryResultCache cache = new QueryResultCache(QueryResultCache.DEFAULT_MAX_SIZE);
+      Query query = builder.selectStar().from("table AS nodes").where().isChild("nodes", "/a").end().query();
+      Map<String, Object> variables = Collections.<String, Object> singletonMap("name", "value");
+
+      assertNull(cache.get(query, variables));
+      cache.put(query, variables, new QueryResultList(rows(3), null, 10), cache.getGeneration());
+
+      List<ScoredRow> rows = cache.get(query, variables);
+      assertNotNull(rows);
+      assertEquals(3, rows.size());
+      assertEquals("id0", rows.get(0).getNodeIdentifer("nodes"));
+      assertEquals(10, ((QueryResultList)rows).getTotalCount());
+      // Changes of result do not affect cache.
+      rows.set(0, rows.get(2));
+      assertEquals("id0", cache.get(query, variables).get(0).getNodeIdentifer("nodes"));
+
+      assertNull(cache.get(query, Collections.<String, Object> emptyMap()));
+      assertNull(cache.get(query.withLimit(1), variables));
+      assertEquals(2, cache.getHitCount());
+      assertEquals(3, cache.getMissCount());
+   }
+
+   @Test
+   public void testInvalidate()
+   {
+      QueryResultCache cache = new QueryResultCache(QueryResultCache.DEFAULT_MAX_SIZE);
+      Query query = builder.selectStar().from("table AS nodes").query();
+      long generation = cache.getGeneration();
+      cache.put(query, null, rows(1), generation);
+      assertEquals(1, cache.getEntryCount());
+
+      cache.invalidate();
+      assertEquals(0, cache.getEntryCount());
+      assertEquals(0, cache.getSize());
+      assertEquals(1, cache.getInvalidationCount());
+
+      // Result of query executed before index was changed is not cached.
+      cache.put(query, null, rows(1), generation);
+      assertNull(cache.get(query, null));
+   }
+
+   @Test
+   public void testMaxSize()
+   {
+      Query query1 = builder.selectStar().from("table AS nodes").where().isChild("nodes", "/a").end().query();
+      Query query2 = builder.selectStar().from("table AS nodes").where().isChild("nodes", "/b").end().query();
+      QueryResultCache cache = new QueryResultCache(1000);
+
+      cache.put(query1, null, rows(4), cache.getGeneration());
+      assertEquals(1, cache.getEntryCount());
+      cache.put(query2, null, rows(4), cache.getGeneration());
+      assertNull(cache.get(query1, null));
+      assertNotNull(cache.get(query2, null));
+      assertEquals(1, cache.getEvictionCount());
+      assertTrue(cache.getSize() <= 1000);
+
+      // Result which is bigger than cache is not cached.
+      cache.put(query1, null, rows(100), cache.getGeneration());
+      assertNull(cache.get(query1, null));
+      assertNotNull(cache.get(query2, null));
+   }
+
+   private List<ScoredRow> rows(int count)
+   {
+      List<ScoredRow> rows = new ArrayList<ScoredRow>();
+      for (int i = 0; i < count; i++)
+      {
+         rows.add(new ScoredRow("nodes", "id" + i, 1.0f));
+      }
+      return rows;
+   }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.search.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.mockito.Mockito.mock;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xcmis.search.model.Query;
+import org.xcmis.search.value.CastSystem;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test aggregation of query statistics by query shape.
+ */
+public class QueryStatisticsCollectorTest
+{
+   private QueryBuilder builder;
+
+   @Before
+   public void beforeEach()
+   {
+      builder = new QueryBuilder(mock(CastSystem.class));
+   }
+
+   @Test
+   public void testShapeWithoutValues()
+   {
+      Query query1 = builder.selectStar().from("table AS nodes").where().isChild("nodes", "/a").end().query();
+      Query query2 = builder.selectStar().from("table AS nodes").where().isChild("nodes", "/b/c").end().query();
+      assertEquals("SELECT * FROM table AS nodes WHERE ISCHILDNODE(nodes,?)", QueryStatisticsCollector
+         .getShape(query1));
+      assertEquals(QueryStatisticsCollector.getShape(query1), QueryStatisticsCollector.getShape(query2));
+
+      Query query3 = builder.selectStar().from("table AS nodes").where().search("nodes", "text").end().query();
+      assertEquals("SELECT * FROM table AS nodes WHERE CONTAINS(nodes,?)", QueryStatisticsCollector.getShape(query3));
+   }
+
+   @Test
+   public void testRecord()
+   {
+      QueryStatisticsCollector collector = new QueryStatisticsCollector(100, 10);
+      Query query1 = builder.selectStar().from("table AS nodes").where().isChild("nodes", "/a").end().query();
+      Query query2 = builder.selectStar().from("table AS nodes").where().isChild("nodes", "/b").end().query();
+      collector.record(query1, new Statistics(0L, 0L, 0L, 3L), null, 1);
+      collector.record(query2, new Statistics(1L, 0L, 0L, 150L), null, 1);
+
+      assertEquals(2, collector.getQueryCount());
+      assertEquals(1, collector.getSlowQueryCount());
+      assertEquals(151, collector.getMaxTime(), 0);
+      assertEquals(77, collector.getAverageTime(), 0);
+      assertEquals(1, collector.getShapeCount());
+
+      QueryStatisticsCollector.ShapeStatistics shape =
+         collector.findShapeStatistics(QueryStatisticsCollector.getShape(query1));
+      assertNotNull(shape);
+      assertEquals(2, shape.getCount());
+      assertEquals(154, shape.getTotalTime(), 0);
+      assertEquals(5, shape.getPercentile(50));
+      assertEquals(200, shape.getPercentile(99));
+
+      collector.reset();
+      assertEquals(0, collector.getQueryCount());
+      assertEquals(0, collector.getShapeCount());
+   }
+
+   @Test
+   public void testSubMillisecondQueries()
+   {
+      QueryStatisticsCollector collector = new QueryStatisticsCollector(-1, 10);
+      Query query = builder.selectStar().from("table").query();
+      collector.record(query, new Statistics().withPlanningTime(100, TimeUnit.MICROSECONDS).withExecutionTime(250,
+         TimeUnit.MICROSECONDS), null, 1);
+      collector.record(query, new Statistics().withExecutionTime(150, TimeUnit.MICROSECONDS), null, 1);
+
+      assertEquals(0.35, collector.getMaxTime(), 0);
+      assertEquals(0.25, collector.getAverageTime(), 0);
+      QueryStatisticsCollector.ShapeStatistics shape =
+         collector.findShapeStatistics(QueryStatisticsCollector.getShape(query));
+      assertEquals(0.5, shape.getTotalTime(), 0);
+      assertEquals(1, shape.getPercentile(99));
+   }
+
+   @Test
+   public void testMaxShapes()
+   {
+      QueryStatisticsCollector collector = new QueryStatisticsCollector(-1, 1);
+      collector.record(builder.selectStar().from("table1").query(), new Statistics(), null, 0);
+      collector.record(builder.selectStar().from("table2").query(), new Statistics(), null, 0);
+      collector.record(builder.selectStar().from("table3").query(), new Statistics(), null, 0);
+      assertEquals(0, collector.getSlowQueryCount());
+      assertEquals(2, collector.getShapeCount());
+      assertEquals(2, collector.findShapeStatistics(QueryStatisticsCollector.OTHER_SHAPE).getCount());
+   }
+}
@@ -16,6 +16,27 @@
  */
 package org.xcmis.search.query.content;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.commons.lang.NotImplementedException;
+import org.xcmis.search.InvalidQueryException;
+import org.xcmis.search.content.ContentEntry;
+import org.xcmis.search.content.command.InvocationContext;
+import org.xcmis.search.content.command.read.GetChildEntriesCommand;
+import org.xcmis.search.content.command.read.GetContentEntryCommand;
+import org.xcmis.search.content.command.read.GetUnfiledEntriesCommand;
+import org.xcmis.search.content.interceptors.ContentReaderInterceptor;
+import org.xcmis.search.model.Query;
+import org.xcmis.search.model.source.join.JoinType;
+import org.xcmis.search.query.QueryBuilder.JoinClause;
+import org.xcmis.search.query.QueryExecutionException;
+import org.xcmis.search.result.ScoredRow;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 /**
  * <code>AbstractJoinTest</code> provides utility methods for join related
@@ -24,242 +45,176 @@ package org.xcmis.search.query.content;
 public abstract class AbstractJoinTest extends AbstractQOMTest
 {
 
-   //   /**
-   //    * Name of the left selector.
-   //    */
-   //   protected static final String LEFT = "left";
-   //
-   //   /**
-   //    * Name of the right selector.
-   //    */
-   //   protected static final String RI//
-   //// /**
-   //// * Binds the given <code>value</code> to the variable named
-   //// * <code>var</code>.
-   //// *
-   //// * @param q     the query
-   //// * @param var   name of variable in query
-   //// * @param value value to bind
-   //// * @throws IllegalArgumentException if <code>var</code> is not a valid
-   //// *                                  variable in this query.
-   //// * @throws RepositoryException      if an error occurs.
-   //// */
-   ////protected void bindVariableValue(Query q, String var, Object value) throws RepositoryException
-   ////{
-   ////   q.bindValue(var, value);
-   ////}
-   ////
-   ////protected void checkResultOrder(QueryObjectModel qom, String[] selectorNames, Node[][] nodes)
-   ////   throws RepositoryException
-   ////{
-   ////   checkResultOrder(qom.execute(), selectorNames, nodes);
-   ////   checkResultOrder(qm.createQuery(qom.getStatement(), Query.JCR_SQL2).execute(), selectorNames, nodes);
-   ////}
-   ////
-   ////protected void checkResultOrder(QueryResult result, String[] selectorNames, Node[][] nodes)
-   ////   throws RepositoryException
-   ////{
-   ////   // collect rows
-   ////   List expectedPaths = new ArrayList();
-   ////   log.println("expected:");
-   ////   for (int i = 0; i < nodes.length; i++)
-   ////   {
-   ////      StringBuffer aggregatedPaths = new StringBuffer();
-   ////      for (int j = 0; j < nodes[i].length; j++)
-   ////      {
-   ////         aggregatedPaths.append(getPath(nodes[i][j]));
-   ////         aggregatedPaths.append("|");
-   ////      }
-   ////      expectedPaths.add(aggregatedPaths.toString());
-   ////      log.println(aggregatedPaths.toString());
-   ////   }
-   ////
-   ////   List resultPaths = new ArrayList();
-   ////   log.println("result:");
-   ////   for (RowIterator it = result.getRows(); it.hasNext();)
-   ////   {
-   ////      Row r = it.nextRow();
-   ////      StringBuffer aggregatedPaths = new StringBuffer();
-   ////      for (int i = 0; i < selectorNames.length; i++)
-   ////      {
-   ////         aggregatedPaths.append(getPath(r.getNode(selectorNames[i])));
-   ////         aggregatedPaths.append("|");
-   ////      }
-   ////      resultPaths.add(aggregatedPaths.toString());
-   ////      log.println(aggregatedPaths.toString());
-   ////   }
-   ////
-   ////   assertEquals("wrong result order", expectedPaths, resultPaths);
-   ////}
-   ////
-   /////**
-   //// * Checks the query object model by executing it directly and matching the
-   //// * result against the given <code>nodes</code>. Then the QOM is executed
-   //// * again using {@link QueryObjectModel#getStatement()} with {@link
-   //// * Query#JCR_SQL2}.
-   //// *
-   //// * @param qom   the query object model to check.
-   //// * @param nodes the result nodes.
-   //// * @throws RepositoryException if an error occurs while executing the
-   //// *                             query.
-   //// */
-   ////protected void checkQOM(QueryObjectModel qom, Node[] nodes) throws RepositoryException
-   ////{
-   ////   checkResult(qom.execute(), nodes);
-   ////   checkResult(qm.createQuery(qom.getStatement(), Query.JCR_SQL2).execute(), nodes);
-   ////}
-   ////
-   /////**
-   //// * Checks the query object model by executing it directly and matching the
-   //// * result against the given <code>nodes</code>. Then the QOM is executed
-   //// * again using {@link QueryObjectModel#getStatement()} with
-   //// * {@link Query#JCR_SQL2}.
-   //// *
-   //// * @param qom           the query object model to check.
-   //// * @param selectorNames the selector names of the qom.
-   //// * @param nodes         the result nodes.
-   //// * @throws RepositoryException if an error occurs while executing the
-   //// *                             query.
-   //// */
-   ////protected void checkQOM(QueryObjectModel qom, String[] selectorNames, Node[][] nodes) throws RepositoryException
-   ////{
-   ////   checkResult(qom.execute(), selectorNames, nodes);
-   ////   checkResult(qm.createQuery(qom.getStatement(), Query.JCR_SQL2).execute(), selectorNames, nodes);
-   ////}
-   ////
-   ////protected void checkResult(QueryResult result, String[] selectorNames, Node[][] nodes) throws RepositoryException
-   ////{
-   ////   // collect rows
-   ////   Set expectedPaths = new HashSet();
-   ////   log.println("expected:");
-   ////   for (int i = 0; i < nodes.length; i++)
-   ////   {
-   ////      StringBuffer aggregatedPaths = new StringBuffer();
-   ////      for (int j = 0; j < nodes[i].length; j++)
-   ////      {
-   ////         aggregatedPaths.append(getPath(nodes[i][j]));
-   ////         aggregatedPaths.append("|");
-   ////      }
-   ////      expectedPaths.add(aggregatedPaths.toString());
-   ////      log.println(aggregatedPaths.toString());
-   ////   }
-   ////
-   ////   Set resultPaths = new HashSet();
-   ////   log.println("result:");
-   ////   for (RowIterator it = result.getRows(); it.hasNext();)
-   ////   {
-   ////      Row r = it.nextRow();
-   ////      StringBuffer aggregatedPaths = new StringBuffer();
-   ////      for (int i = 0; i < selectorNames.length; i++)
-   ////      {
-   ////         aggregatedPaths.append(getPath(r.getNode(selectorNames[i])));
-   ////         aggregatedPaths.append("|");
-   ////      }
-   ////      resultPaths.add(aggregatedPaths.toString());
-   ////      log.println(aggregatedPaths.toString());
-   ////   }
-   ////
-   ////   // check if all expected are in result
-   ////   for (Iterator it = expectedPaths.iterator(); it.hasNext();)
-   ////   {
-   ////      String path = (String)it.next();
-   ////      assertTrue(path + " is not part of the result set", resultPaths.contains(path));
-   ////   }
-   ////   // check result does not contain more than expected
-   ////   for (Iterator it = resultPaths.iterator(); it.hasNext();)
-   ////   {
-   ////      String path = (String)it.next();
-   ////      assertTrue(path + " is not expected to be part of the result set", expectedPaths.contains(path));
-   ////   }
-   ////}
-   ////
-   /////**
-   //// * Returns the path of the <code>node</code> or an empty string if
-   //// * <code>node</code> is <code>null</code>.
-   //// *
-   //// * @param node a node or <code>null</code>.
-   //// * @return the path of the node or an empty string if <code>node</code> is
-   //// *         <code>null</code>.
-   //// * @throws RepositoryException if an error occurs while reading from the
-   //// *                             repository.
-   //// */
-   ////protected static String getPath(Node node) throws RepositoryException
-   ////{
-   ////   if (node != null)
-   ////   {
-   ////      return node.getPath();
-   ////   }
-   ////   else
-   ////   {
-   ////      return "";
-   ////   }
-   ////}
-   ////
-   /////**
-   //// * Calls back the <code>callable</code> first with the <code>qom</code> and
-   //// * then a JCR_SQL2 query created from {@link QueryObjectModel#getStatement()}.
-   //// *
-   //// * @param qom      a query object model.
-   //// * @param callable the callback.
-   //// * @throws RepositoryException if an error occurs.
-   //// */
-   ////protected void forQOMandSQL2(QueryObjectModel qom, Callable callable) throws RepositoryException
-   ////{
-   ////   List queries = new ArrayList();
-   ////   queries.add(qom);
-   ////   queries.add(qm.createQuery(qom.getStatement(), Query.JCR_SQL2));
-   ////   for (Iterator it = queries.iterator(); it.hasNext();)
-   ////   {
-   ////      callable.call((Query)it.next());
-   ////   }
-   ////}
-   //GHT = "right";
-   //
-   //   /**
-   //    * The selector names for the join.
-   //    */
-   //   protected static final String[] SELECTOR_NAMES = new String[]{LEFT, RIGHT};
-   //
-   //   //--------------------------< utilities >-----------------------------------
-   //
-   //   protected void checkQOM(QueryObjectModel qom, Node[][] nodes) throws RepositoryException
-   //   {
-   //      checkQOM(qom, SELECTOR_NAMES, nodes);
-   //   }
-   //
-   //   protected void checkResult(QueryResult result, Node[][] nodes) throws RepositoryException
-   //   {
-   //      checkResult(result, SELECTOR_NAMES, nodes);
-   //   }
-   //
-   //   protected QueryObjectModel createQuery(String joinType, JoinCondition condition) throws RepositoryException
-   //   {
-   //      return createQuery(joinType, condition, null, null);
-   //   }
-   //
-   //   protected QueryObjectModel createQuery(String joinType, JoinCondition condition, Constraint left, Constraint right)
-   //      throws RepositoryException
-   //   {
-   //      // only consider nodes under test root
-   //      Constraint constraint;
-   //      if (QueryObjectModelConstants.JCR_JOIN_TYPE_LEFT_OUTER.equals(joinType))
-   //      {
-   //         constraint = qf.descendantNode(LEFT, testRoot);
-   //      }
-   //      else
-   //      {
-   //         constraint = qf.descendantNode(RIGHT, testRoot);
-   //      }
-   //
-   //      if (left != null)
-   //      {
-   //         constraint = qf.and(constraint, left);
-   //      }
-   //      if (right != null)
-   //      {
-   //         constraint = qf.and(constraint, right);
-   //      }
-   //      Join join = qf.join(qf.selector(testNodeType, LEFT), qf.selector(testNodeType, RIGHT), joinType, condition);
-   //      return qf.createQuery(join, constraint, null, null);
-   //   }
+   /**
+    * Name of the left selector.
+    */
+   protected static final String LEFT = "left";
+
+   /**
+    * Name of the right selector.
+    */
+   protected static final String RIGHT = "right";
+
+   /**
+    * The selector names for the join.
+    */
+   protected static final String[] SELECTOR_NAMES = new String[]{LEFT, RIGHT};
+
+   /**
+    * Join reads parents, ancestors and properties of entries from content, so
+    * reader returns entries of test tree.
+    * 
+    * @see org.xcmis.search.query.content.AbstractQueryTest#createContentReader()
+    */
+   @Override
+   protected ContentReaderInterceptor createContentReader()
+   {
+      return new ContentReaderInterceptor()
+      {
+         @Override
+         public Object visitGetContentEntryCommand(InvocationContext ctx, GetContentEntryCommand command)
+            throws Throwable
+         {
+            for (ContentEntry entry : testRootNode.getTree())
+            {
+               if (entry.getIdentifier().equals(command.getEntryUuid()))
+               {
+                  return entry;
+               }
+            }
+            return null;
+         }
+
+         @Override
+         public Object visitChildEntriesCommand(InvocationContext ctx, GetChildEntriesCommand command)
+            throws Throwable
+         {
+            throw new NotImplementedException();
+         }
+
+         @Override
+         public Object visitGetUnfiledEntriesCommand(InvocationContext ctx, GetUnfiledEntriesCommand command)
+            throws Throwable
+         {
+            throw new NotImplementedException();
+         }
+      };
+   }
+
+   /**
+    * Start join of nodes of {@link #testNodeType} selected as {@link #LEFT}
+    * and {@link #RIGHT}.
+    * 
+    * @param joinType
+    *           type of join
+    * @return the component that must be used to complete the join
+    */
+   protected JoinClause join(JoinType joinType)
+   {
+      qf.from(testNodeType + " AS " + LEFT);
+      String right = testNodeType + " AS " + RIGHT;
+      if (joinType == JoinType.LEFT_OUTER)
+      {
+         return qf.leftOuterJoin(right);
+      }
+      if (joinType == JoinType.RIGHT_OUTER)
+      {
+         return qf.rightOuterJoin(right);
+      }
+      return qf.innerJoin(right);
+   }
+
+   /**
+    * Checks the query by executing it and matching the result against the
+    * given <code>nodes</code>. Order of rows is not checked.
+    * 
+    * @param query
+    *           the query to check
+    * @param nodes
+    *           the result nodes, rows of {@link #SELECTOR_NAMES}
+    */
+   protected void checkQOM(Query query, Node[][] nodes) throws QueryExecutionException, InvalidQueryException
+   {
+      List<ScoredRow> result = searchService.execute(query);
+      Set<String> expectedPaths = new HashSet<String>(toPaths(nodes));
+      Set<String> resultPaths = new HashSet<String>(toPaths(result));
+      assertEquals("Wrong row count.", nodes.length, result.size());
+      // check if all expected are in result
+      for (String path : expectedPaths)
+      {
+         assertTrue(path + " is not part of the result set", resultPaths.contains(path));
+      }
+      // check result does not contain more than expected
+      for (String path : resultPaths)
+      {
+         assertTrue(path + " is not expected to be part of the result set", expectedPaths.contains(path));
+      }
+   }
+
+   /**
+    * Checks the query by executing it and matching the result against the
+    * given <code>nodes</code> in the same order.
+    * 
+    * @param query
+    *           the query to check
+    * @param nodes
+    *           the result nodes, rows of {@link #SELECTOR_NAMES}
+    */
+   protected void checkResultOrder(Query query, Node[][] nodes) throws QueryExecutionException,
+      InvalidQueryException
+   {
+      assertEquals("wrong result order", toPaths(nodes), toPaths(searchService.execute(query)));
+   }
+
+   private List<String> toPaths(Node[][] nodes)
+   {
+      List<String> paths = new ArrayList<String>();
+      for (Node[] row : nodes)
+      {
+         StringBuffer aggregatedPaths = new StringBuffer();
+         for (Node node : row)
+         {
+            aggregatedPaths.append(node == null ? "" : node.getPath());
+            aggregatedPaths.append("|");
+         }
+         paths.add(aggregatedPaths.toString());
+      }
+      return paths;
+   }
+
+   private List<String> toPaths(List<ScoredRow> result)
+   {
+      List<String> paths = new ArrayList<String>();
+      for (ScoredRow row : result)
+      {
+         StringBuffer aggregatedPaths = new StringBuffer();
+         for (String selectorName : SELECTOR_NAMES)
+         {
+            aggregatedPaths.append(getPath(row.getNodeIdentifer(selectorName)));
+            aggregatedPaths.append("|");
+         }
+         paths.add(aggregatedPaths.toString());
+      }
+      return paths;
+   }
+
+   /**
+    * Returns the path of the node with given identifier or an empty string if
+    * <code>identifier</code> is <code>null</code>.
+    */
+   private String getPath(String identifier)
+   {
+      if (identifier != null)
+      {
+         for (ContentEntry entry : testRootNode.getTree())
+         {
+            if (entry.getIdentifier().equals(identifier))
+            {
+               return ((Node)entry).getPath();
+            }
+         }
+         return identifier;
+      }
+      return "";
+   }
 }
@@ -177,7 +177,7 @@ public abstract class AbstractQueryTest
 
       //search service configuration
       SearchServiceConfiguration configuration =
-         new SearchServiceConfiguration(schema, tableResolver, mock(ContentReaderInterceptor.class), indexConfuration);
+         new SearchServiceConfiguration(schema, tableResolver, createContentReader(), indexConfuration);
       searchService = new SearchService(configuration);
       searchService.start();
 
@@ -186,6 +186,15 @@ public abstract class AbstractQueryTest
       searchService.update(contentEntries, Collections.EMPTY_SET);
    }
 
+   /**
+    * Create reader of content used by search service. Per default reader is
+    * mock which reads nothing.
+    */
+   protected ContentReaderInterceptor createContentReader()
+   {
+      return mock(ContentReaderInterceptor.class);
+   }
+
    @After
    public void tearDown() throws Exception
    {
@@ -555,6 +564,20 @@ public abstract class AbstractQueryTest
          return properties.values().toArray(new Property[properties.size()]);
       }
 
+      /**
+       * @see org.xcmis.search.content.ContentEntry#getAncestorIdentifiers()
+       */
+      @Override
+      public String[] getAncestorIdentifiers()
+      {
+         List<String> ancestors = new ArrayList<String>();
+         for (Node node = parentNode; node != null; node = node.parentNode)
+         {
+            ancestors.add(node.getIdentifier());
+         }
+         return ancestors.toArray(new String[ancestors.size()]);
+      }
+
       /**
        * @return
        */
@@ -16,57 +16,60 @@
  */
 package org.xcmis.search.query.content;
 
-import org.junit.Ignore;
+import org.junit.Before;
+import org.junit.Test;
+import org.xcmis.search.model.Query;
+import org.xcmis.search.model.source.join.JoinType;
 
 /**
  * <code>ChildNodeJoinConditionTest</code> contains test cases that cover
  * <code>ChildNodeJoinCondition</code>.
  */
-@Ignore
 public class ChildNodeJoinConditionTest extends AbstractJoinTest
 {
-   //
-   //   private Node n1;
-   //
-   //   private Node n2;
-   //
-   //   protected void setUp() throws Exception
-   //   {
-   //      super.setUp();
-   //      n1 = testRootNode.addNode(nodeName1, testNodeType);
-   //      n2 = n1.addNode(nodeName2, testNodeType);
-   //      ensureMixinType(n2, mixReferenceable);
-   //      superuser.save();
-   //   }
-   //
-   //   public void testInnerJoin() throws RepositoryException
-   //   {
-   //      JoinCondition c = qf.childNodeJoinCondition(LEFT, RIGHT);
-   //      QueryObjectModel qom = createQuery(QueryObjectModelConstants.JCR_JOIN_TYPE_INNER, c);
-   //      checkQOM(qom, new Node[][]{{n2, n1}});
-   //   }
-   //
-   //   public void testRightOuterJoin() throws RepositoryException
-   //   {
-   //      JoinCondition c = qf.childNodeJoinCondition(LEFT, RIGHT);
-   //      QueryObjectModel qom = createQuery(QueryObjectModelConstants.JCR_JOIN_TYPE_RIGHT_OUTER, c);
-   //      checkQOM(qom, new Node[][]{{n2, n1}, {null, n2}});
-   //   }
-   //
-   //   public void testLeftOuterJoin() throws RepositoryException
-   //   {
-   //      JoinCondition c = qf.childNodeJoinCondition(LEFT, RIGHT);
-   //      QueryObjectModel qom = createQuery(QueryObjectModelConstants.JCR_JOIN_TYPE_LEFT_OUTER, c);
-   //      List result = new ArrayList();
-   //      result.add(new Node[]{n2, n1});
-   //      if (testRootNode.isNodeType(testNodeType))
-   //      {
-   //         result.add(new Node[]{n1, testRootNode});
-   //      }
-   //      else
-   //      {
-   //         result.add(new Node[]{n1, null});
-   //      }
-   //      checkQOM(qom, (Node[][])result.toArray(new Node[result.size()][]));
-   //   }
+
+   private Node n1;
+
+   private Node n2;
+
+   @Override
+   @Before
+   public void setUp() throws Exception
+   {
+      super.setUp();
+      n1 = testRootNode.addNode(nodeName1, testNodeType);
+      n2 = n1.addNode(nodeName2, testNodeType);
+      save(testRootNode);
+   }
+
+   @Test
+   public void testInnerJoin() throws Exception
+   {
+      Query query = join(JoinType.INNER).onChildNode(RIGHT, LEFT).query();
+      checkQOM(query, new Node[][]{{n2, n1}});
+   }
+
+   @Test
+   public void testRightOuterJoin() throws Exception
+   {
+      Query query = join(JoinType.RIGHT_OUTER).onChildNode(RIGHT, LEFT).query();
+      checkQOM(query, new Node[][]{{n2, n1}, {null, n2}});
+   }
+
+   @Test
+   public void testLeftOuterJoin() throws Exception
+   {
+      // Parent of n1 is root node which is not of testNodeType.
+      Query query = join(JoinType.LEFT_OUTER).onChildNode(RIGHT, LEFT).query();
+      checkQOM(query, new Node[][]{{n2, n1}, {n1, null}});
+   }
+
+   @Test
+   public void testLeftOuterJoinConstraintOnRight() throws Exception
+   {
+      Query query =
+         join(JoinType.LEFT_OUTER).onChildNode(RIGHT, LEFT).where().nodeName(RIGHT).isEqualTo(nodeName1).end()
+            .query();
+      checkQOM(query, new Node[][]{{n2, n1}});
+   }
 }
@@ -16,64 +16,63 @@
  */
 package org.xcmis.search.query.content;
 
-import org.junit.Ignore;
+import org.junit.Before;
+import org.junit.Test;
+import org.xcmis.search.model.Query;
+import org.xcmis.search.model.source.join.JoinType;
 
 /**
  * <code>DescendantNodeJoinConditionTest</code> contains test cases that cover
  * <code>DescendantNodeJoinCondition</code>.
  */
-@Ignore
 public class DescendantNodeJoinConditionTest extends AbstractJoinTest
 {
-   //
-   //    private Node n1;
-   //
-   //    private Node n2;
-   //
-   //    protected void setUp() throws Exception {
-   //        super.setUp();
-   //        n1 = testRootNode.addNode(nodeName1, testNodeType);
-   //        n2 = n1.addNode(nodeName2, testNodeType);
-   //        ensureMixinType(n2, mixReferenceable);
-   //        superuser.save();
-   //    }
-   //
-   //    public void testInnerJoin() throws RepositoryException {
-   //        JoinCondition c = qf.descendantNodeJoinCondition(LEFT, RIGHT);
-   //        QueryObjectModel qom = createQuery(QueryObjectModelConstants.JCR_JOIN_TYPE_INNER, c);
-   //        checkQOM(qom, new Node[][]{{n2, n1}});
-   //    }
-   //
-   //    public void testRightOuterJoin() throws RepositoryException {
-   //        JoinCondition c = qf.descendantNodeJoinCondition(LEFT, RIGHT);
-   //        QueryObjectModel qom = createQuery(QueryObjectModelConstants.JCR_JOIN_TYPE_RIGHT_OUTER, c);
-   //        checkQOM(qom, new Node[][]{{n2, n1}, {null, n2}});
-   //    }
-   //
-   //    public void testLeftOuterJoin() throws RepositoryException {
-   //        JoinCondition c = qf.descendantNodeJoinCondition(LEFT, RIGHT);
-   //        QueryObjectModel qom = createQuery(QueryObjectModelConstants.JCR_JOIN_TYPE_LEFT_OUTER, c);
-   //        List result = new ArrayList();
-   //        result.add(new Node[]{n2, n1});
-   //        // for each ancestor-or-self of testRootNode check
-   //        // whether it is of type testNodeType and add
-   //        // two matches in that case
-   //        Node n = testRootNode;
-   //        for (;;) {
-   //            if (n.isNodeType(testNodeType)) {
-   //                result.add(new Node[]{n1, n});
-   //                result.add(new Node[]{n2, n});
-   //            }
-   //            if (n.getDepth() == 0) {
-   //                break;
-   //            } else {
-   //                n = n.getParent();
-   //            }
-   //        }
-   //        if (result.size() == 1) {
-   //            // n1 not yet covered
-   //            result.add(new Node[]{n1, null});
-   //        }
-   //        checkQOM(qom, (Node[][]) result.toArray(new Node[result.size()][]));
-   //    }
+
+   private Node n1;
+
+   private Node n2;
+
+   private Node n3;
+
+   @Override
+   @Before
+   public void setUp() throws Exception
+   {
+      super.setUp();
+      n1 = testRootNode.addNode(nodeName1, testNodeType);
+      n2 = n1.addNode(nodeName2, testNodeType);
+      n3 = n2.addNode(nodeName3, testNodeType);
+      save(testRootNode);
+   }
+
+   @Test
+   public void testInnerJoin() throws Exception
+   {
+      Query query = join(JoinType.INNER).onDescendant(RIGHT, LEFT).query();
+      checkQOM(query, new Node[][]{{n2, n1}, {n3, n1}, {n3, n2}});
+   }
+
+   @Test
+   public void testRightOuterJoin() throws Exception
+   {
+      Query query = join(JoinType.RIGHT_OUTER).onDescendant(RIGHT, LEFT).query();
+      checkQOM(query, new Node[][]{{n2, n1}, {n3, n1}, {n3, n2}, {null, n3}});
+   }
+
+   @Test
+   public void testLeftOuterJoin() throws Exception
+   {
+      // Only ancestor of n1 is root node which is not of testNodeType.
+      Query query = join(JoinType.LEFT_OUTER).onDescendant(RIGHT, LEFT).query();
+      checkQOM(query, new Node[][]{{n1, null}, {n2, n1}, {n3, n1}, {n3, n2}});
+   }
+
+   @Test
+   public void testRightOuterJoinConstraintOnLeft() throws Exception
+   {
+      Query query =
+         join(JoinType.RIGHT_OUTER).onDescendant(RIGHT, LEFT).where().nodeName(LEFT).isEqualTo(nodeName3).end()
+            .query();
+      checkQOM(query, new Node[][]{{n3, n1}, {n3, n2}});
+   }
 }
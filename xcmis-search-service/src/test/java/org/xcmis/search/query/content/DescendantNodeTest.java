@@ -53,6 +53,24 @@ public class DescendantNodeTest extends AbstractQOMTest
       checkQOM(query, "s", new Node[]{n1, n2, n21});
    }
 
+   @Test
+   public void testDescendantNodesByIdentifier() throws SearchServiceException, InvalidQueryException
+   {
+      Node n1 = testRootNode.addNode(nodeName1, testNodeType);
+      Node n2 = testRootNode.addNode(nodeName2, testNodeType);
+      Node n21 = n2.addNode(nodeName1, testNodeType);
+      Node n211 = n21.addNode(nodeName1, testNodeType);
+      save(testRootNode);
+
+      Query query =
+         qf.from(testNodeType + " AS s").where().isBelowPath("s", "[" + testRootNode.getIdentifier() + "]").end()
+            .query();
+      checkQOM(query, "s", new Node[]{n1, n2, n21, n211});
+
+      query = qf.from(testNodeType + " AS s").where().isBelowPath("s", "[" + n2.getIdentifier() + "]").end().query();
+      checkQOM(query, "s", new Node[]{n21, n211});
+   }
+
    @Test
    public void testPathDoesNotExist() throws SearchServiceException, InvalidQueryException
    {
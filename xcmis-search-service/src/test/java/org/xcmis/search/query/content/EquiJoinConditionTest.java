@@ -16,73 +16,124 @@
  */
 package org.xcmis.search.query.content;
 
-import org.junit.Ignore;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xcmis.search.model.Query;
+import org.xcmis.search.model.source.join.JoinType;
+import org.xcmis.search.result.ScoredRow;
+
+import java.util.List;
 
 /**
  * <code>EquiJoinConditionTest</code> contains test cases that cover
  * <code>EquiJoinCondition</code>.
  */
-@Ignore
 public class EquiJoinConditionTest extends AbstractJoinTest
 {
-   //
-   //   private Node n1;
-   //
-   //   private Node n2;
-   //
-   //   protected void setUp() throws Exception
-   //   {
-   //      super.setUp();
-   //      String value = createRandomString(10);
-   //      n1 = testRootNode.addNode(nodeName1, testNodeType);
-   //      n1.setProperty(propertyName1, value);
-   //
-   //      n2 = n1.addNode(nodeName2, testNodeType);
-   //      n2.setProperty(propertyName1, value);
-   //      n2.setProperty(propertyName2, value);
-   //      ensureMixinType(n2, mixReferenceable);
-   //      superuser.save();
-   //   }
-   //
-   //   public void testInnerJoin1() throws RepositoryException
-   //   {
-   //      JoinCondition c = qf.equiJoinCondition(LEFT, propertyName1, RIGHT, propertyName2);
-   //      QueryObjectModel qom = createQuery(QueryObjectModelConstants.JCR_JOIN_TYPE_INNER, c);
-   //      checkQOM(qom, new Node[][]{{n1, n2}, {n2, n2}});
-   //   }
-   //
-   //   public void testInnerJoin2() throws RepositoryException
-   //   {
-   //      JoinCondition c = qf.equiJoinCondition(LEFT, propertyName2, RIGHT, propertyName1);
-   //      QueryObjectModel qom = createQuery(QueryObjectModelConstants.JCR_JOIN_TYPE_INNER, c);
-   //      checkQOM(qom, new Node[][]{{n2, n1}, {n2, n2}});
-   //   }
-   //
-   //   public void testRightOuterJoin1() throws RepositoryException
-   //   {
-   //      JoinCondition c = qf.equiJoinCondition(LEFT, propertyName1, RIGHT, propertyName2);
-   //      QueryObjectModel qom = createQuery(QueryObjectModelConstants.JCR_JOIN_TYPE_RIGHT_OUTER, c);
-   //      checkQOM(qom, new Node[][]{{null, n1}, {n1, n2}, {n2, n2}});
-   //   }
-   //
-   //   public void testRightOuterJoin2() throws RepositoryException
-   //   {
-   //      JoinCondition c = qf.equiJoinCondition(LEFT, propertyName2, RIGHT, propertyName1);
-   //      QueryObjectModel qom = createQuery(QueryObjectModelConstants.JCR_JOIN_TYPE_RIGHT_OUTER, c);
-   //      checkQOM(qom, new Node[][]{{n2, n1}, {n2, n2}});
-   //   }
-   //
-   //   public void testLeftOuterJoin1() throws RepositoryException
-   //   {
-   //      JoinCondition c = qf.equiJoinCondition(LEFT, propertyName1, RIGHT, propertyName2);
-   //      QueryObjectModel qom = createQuery(QueryObjectModelConstants.JCR_JOIN_TYPE_LEFT_OUTER, c);
-   //      checkQOM(qom, new Node[][]{{n1, n2}, {n2, n2}});
-   //   }
-   //
-   //   public void testLeftOuterJoin2() throws RepositoryException
-   //   {
-   //      JoinCondition c = qf.equiJoinCondition(LEFT, propertyName2, RIGHT, propertyName1);
-   //      QueryObjectModel qom = createQuery(QueryObjectModelConstants.JCR_JOIN_TYPE_LEFT_OUTER, c);
-   //      checkQOM(qom, new Node[][]{{n1, null}, {n2, n1}, {n2, n2}});
-   //   }
+
+   private static final String VALUE = "value";
+
+   private Node n1;
+
+   private Node n2;
+
+   @Override
+   @Before
+   public void setUp() throws Exception
+   {
+      super.setUp();
+      n1 = testRootNode.addNode(nodeName1, testNodeType);
+      n1.setProperty(propertyName1, VALUE);
+
+      n2 = n1.addNode(nodeName2, testNodeType);
+      n2.setProperty(propertyName1, VALUE);
+      n2.setProperty(propertyName2, VALUE);
+      save(testRootNode);
+   }
+
+   @Test
+   public void testInnerJoin1() throws Exception
+   {
+      Query query = join(JoinType.INNER).on(LEFT + "." + propertyName1 + "=" + RIGHT + "." + propertyName2).query();
+      checkQOM(query, new Node[][]{{n1, n2}, {n2, n2}});
+   }
+
+   @Test
+   public void testInnerJoin2() throws Exception
+   {
+      Query query = join(JoinType.INNER).on(LEFT + "." + propertyName2 + "=" + RIGHT + "." + propertyName1).query();
+      checkQOM(query, new Node[][]{{n2, n1}, {n2, n2}});
+   }
+
+   @Test
+   public void testRightOuterJoin1() throws Exception
+   {
+      Query query =
+         join(JoinType.RIGHT_OUTER).on(LEFT + "." + propertyName1 + "=" + RIGHT + "." + propertyName2).query();
+      checkQOM(query, new Node[][]{{null, n1}, {n1, n2}, {n2, n2}});
+   }
+
+   @Test
+   public void testLeftOuterJoin2() throws Exception
+   {
+      Query query =
+         join(JoinType.LEFT_OUTER).on(LEFT + "." + propertyName2 + "=" + RIGHT + "." + propertyName1).query();
+      checkQOM(query, new Node[][]{{n1, null}, {n2, n1}, {n2, n2}});
+   }
+
+   @Test
+   public void testLeftOuterJoinConstraintOnLeft() throws Exception
+   {
+      // Constraint of preserved side is pushed down, join stays outer.
+      Query query =
+         join(JoinType.LEFT_OUTER).on(LEFT + "." + propertyName2 + "=" + RIGHT + "." + propertyName1).where()
+            .nodeName(LEFT).isEqualTo(nodeName1).end().query();
+      checkQOM(query, new Node[][]{{n1, null}});
+   }
+
+   @Test
+   public void testLeftOuterJoinConstraintOnRight() throws Exception
+   {
+      // Comparison on optional side rejects rows without right node.
+      Query query =
+         join(JoinType.LEFT_OUTER).on(LEFT + "." + propertyName2 + "=" + RIGHT + "." + propertyName1).where()
+            .propertyValue(RIGHT, propertyName2).isEqualTo(VALUE).end().query();
+      checkQOM(query, new Node[][]{{n2, n2}});
+   }
+
+   @Test
+   public void testRightOuterJoinConstraintOnLeft() throws Exception
+   {
+      Query query =
+         join(JoinType.RIGHT_OUTER).on(LEFT + "." + propertyName1 + "=" + RIGHT + "." + propertyName2).where()
+            .propertyValue(LEFT, propertyName2).isEqualTo(VALUE).end().query();
+      checkQOM(query, new Node[][]{{n2, n2}});
+   }
+
+   @Test
+   public void testOrderByJoinColumn() throws Exception
+   {
+      Node n3 = testRootNode.addNode(nodeName3, testNodeType);
+      n3.setProperty(propertyName1, "a");
+      n3.setProperty(propertyName2, "a");
+      save(n3);
+
+      // Single ordering on join column lets both sides be merged.
+      Query query =
+         join(JoinType.INNER).on(LEFT + "." + propertyName1 + "=" + RIGHT + "." + propertyName2).orderBy()
+            .ascending().propertyValue(LEFT, propertyName1).end().query();
+      checkQOM(query, new Node[][]{{n3, n3}, {n1, n2}, {n2, n2}});
+      List<ScoredRow> result = searchService.execute(query);
+      assertEquals(n3.getIdentifier(), result.get(0).getNodeIdentifer(LEFT));
+
+      qf.clear();
+      query =
+         join(JoinType.INNER).on(LEFT + "." + propertyName1 + "=" + RIGHT + "." + propertyName2).orderBy()
+            .descending().propertyValue(RIGHT, propertyName2).end().query();
+      result = searchService.execute(query);
+      assertEquals(3, result.size());
+      assertEquals(n3.getIdentifier(), result.get(2).getNodeIdentifer(RIGHT));
+   }
 }
@@ -16,92 +16,64 @@
  */
 package org.xcmis.search.query.content;
 
-import org.junit.Ignore;
+import org.junit.Before;
+import org.junit.Test;
+import org.xcmis.search.model.Query;
+import org.xcmis.search.model.source.join.JoinType;
 
 /**
  * <code>SameNodeJoinConditionTest</code> contains test cases that cover
  * <code>SameNodeJoinCondition</code>.
  */
-@Ignore
 public class SameNodeJoinConditionTest extends AbstractJoinTest
 {
 
-   //    private Node n1;
-   //
-   //    private Node n2;
-   //
-   //    protected void setUp() throws Exception {
-   //        super.setUp();
-   //        n1 = testRootNode.addNode(nodeName1, testNodeType);
-   //        n2 = n1.addNode(nodeName2, testNodeType);
-   //        ensureMixinType(n2, mixReferenceable);
-   //        superuser.save();
-   //    }
-   //
-   //    public void testInnerJoin() throws RepositoryException {
-   //        QueryObjectModel qom = createQomQuery(QueryObjectModelConstants.JCR_JOIN_TYPE_INNER, null);
-   //        checkQOM(qom, new Node[][]{{n1, n1}, {n2, n2}});
-   //    }
-   //
-   //    public void testInnerJoinWithPath() throws RepositoryException {
-   //        QueryObjectModel qom = createQomQuery(QueryObjectModelConstants.JCR_JOIN_TYPE_INNER, nodeName2);
-   //        checkQOM(qom, new Node[][]{{n2, n1}});
-   //    }
-   //
-   //    public void testLeftOuterJoin() throws RepositoryException {
-   //       QueryObjectModel qom = qf.createQuery(
-   //               qf.join(
-   //                       qf.selector(testNodeType, LEFT),
-   //                       qf.selector(mixReferenceable, RIGHT),
-   //                       QueryObjectModelConstants.JCR_JOIN_TYPE_LEFT_OUTER,
-   //                       qf.sameNodeJoinCondition(LEFT, RIGHT, ".")),
-   //               qf.descendantNode(LEFT, testRoot),
-   //               null, null);
-   //
-   //        checkQOM(qom, new Node[][]{{n1, null}, {n2, n2}});
-   //    }
-   //
-   //    public void testLeftOuterJoinWithPath() throws RepositoryException {
-   //        QueryObjectModel qom = createQomQuery(QueryObjectModelConstants.JCR_JOIN_TYPE_LEFT_OUTER, nodeName2);
-   //        checkQOM(qom, new Node[][]{{n1, null}, {n2, n1}});
-   //    }
-   //
-   //    public void testRightOuterJoin() throws RepositoryException {
-   //        QueryObjectModel qom = qf.createQuery(
-   //                qf.join(
-   //                        qf.selector(mixReferenceable, LEFT),
-   //                        qf.selector(testNodeType, RIGHT),
-   //                        QueryObjectModelConstants.JCR_JOIN_TYPE_RIGHT_OUTER,
-   //                        qf.sameNodeJoinCondition(LEFT, RIGHT, ".")),
-   //                qf.descendantNode(RIGHT, testRoot),
-   //                null, null);
-   //
-   //        checkQOM(qom, new Node[][]{{null, n1}, {n2, n2}});
-   //    }
-   //
-   //    public void testRightOuterJoinWithPath() throws RepositoryException {
-   //        QueryObjectModel qom = qf.createQuery(
-   //                qf.join(
-   //                        qf.selector(mixReferenceable, LEFT),
-   //                        qf.selector(testNodeType, RIGHT),
-   //                        QueryObjectModelConstants.JCR_JOIN_TYPE_RIGHT_OUTER,
-   //                        qf.sameNodeJoinCondition(LEFT, RIGHT, nodeName2)),
-   //                qf.descendantNode(RIGHT, testRoot),
-   //                null, null);
-   //
-   //        checkQOM(qom, new Node[][]{{n2, n1}, {null, n2}});
-   //    }
-   //
-   //    //-----------------------------< utilities >--------------------------------
-   //
-   //    private QueryObjectModel createQomQuery(String joinType, String relPath)
-   //            throws RepositoryException {
-   //        JoinCondition c;
-   //        if (relPath != null) {
-   //            c = qf.sameNodeJoinCondition(LEFT, RIGHT, relPath);
-   //        } else {
-   //            c = qf.sameNodeJoinCondition(LEFT, RIGHT, ".");
-   //        }
-   //        return createQuery(joinType, c);
-   //    }
+   private Node n1;
+
+   private Node n2;
+
+   @Override
+   @Before
+   public void setUp() throws Exception
+   {
+      super.setUp();
+      n1 = testRootNode.addNode(nodeName1, testNodeType);
+      n1.setProperty(propertyName1, "a");
+      n2 = n1.addNode(nodeName2, testNodeType);
+      n2.setProperty(propertyName2, "b");
+      save(testRootNode);
+   }
+
+   @Test
+   public void testInnerJoin() throws Exception
+   {
+      Query query = join(JoinType.INNER).onSameNode(LEFT, RIGHT).query();
+      checkQOM(query, new Node[][]{{n1, n1}, {n2, n2}});
+   }
+
+   @Test
+   public void testLeftOuterJoinConstraintOnLeft() throws Exception
+   {
+      Query query =
+         join(JoinType.LEFT_OUTER).onSameNode(LEFT, RIGHT).where().propertyValue(LEFT, propertyName1).isEqualTo("a")
+            .end().query();
+      checkQOM(query, new Node[][]{{n1, n1}});
+   }
+
+   @Test
+   public void testLeftOuterJoinConstraintOnRight() throws Exception
+   {
+      Query query =
+         join(JoinType.LEFT_OUTER).onSameNode(LEFT, RIGHT).where().hasProperty(RIGHT, propertyName2).end().query();
+      checkQOM(query, new Node[][]{{n2, n2}});
+   }
+
+   @Test
+   public void testRightOuterJoinConstraintOnRight() throws Exception
+   {
+      Query query =
+         join(JoinType.RIGHT_OUTER).onSameNode(LEFT, RIGHT).where().propertyValue(RIGHT, propertyName2)
+            .isEqualTo("b").end().query();
+      checkQOM(query, new Node[][]{{n2, n2}});
+   }
 }
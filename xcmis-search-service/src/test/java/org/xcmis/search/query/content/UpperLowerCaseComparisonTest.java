@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.search.query.content;
+
+import org.junit.Test;
+import org.xcmis.search.InvalidQueryException;
+import org.xcmis.search.content.IndexModificationException;
+import org.xcmis.search.model.Query;
+import org.xcmis.search.query.QueryExecutionException;
+
+/**
+ * Test UPPER and LOWER comparisons which are evaluated against uppercased and
+ * lowercased values indexed for each string property and name.
+ */
+public class UpperLowerCaseComparisonTest extends AbstractQOMTest
+{
+   private Node n1;
+
+   private Node n2;
+
+   private Node n3;
+
+   private Node n4;
+
+   private void createNodes() throws IndexModificationException
+   {
+      n1 = testRootNode.addNode(nodeName1, testNodeType);
+      n1.setProperty(propertyName1, "_a");
+      n2 = testRootNode.addNode(nodeName2, testNodeType);
+      n2.setProperty(propertyName1, "Zeta");
+      n3 = testRootNode.addNode(nodeName3, testNodeType);
+      n3.setProperty(propertyName1, "abc");
+      n4 = testRootNode.addNode("nodeName4", testNodeType);
+      n4.setProperty(propertyName1, "ABD");
+      save(testRootNode);
+   }
+
+   @Test
+   public void testEqualTo() throws IndexModificationException, QueryExecutionException, InvalidQueryException
+   {
+      createNodes();
+
+      Query query =
+         qf.from(testNodeType + " AS s").where().upperCaseOf().propertyValue("s", propertyName1).isEqualTo("ABC")
+            .end().query();
+      checkQOM(query, "s", new Node[]{n3});
+
+      // uppercased value never equals to lowercase literal
+      query =
+         qf.from(testNodeType + " AS s").where().upperCaseOf().propertyValue("s", propertyName1).isEqualTo("abc")
+            .end().query();
+      checkQOM(query, "s", new Node[]{});
+
+      query =
+         qf.from(testNodeType + " AS s").where().lowerCaseOf().propertyValue("s", propertyName1).isEqualTo("abd")
+            .end().query();
+      checkQOM(query, "s", new Node[]{n4});
+
+      query =
+         qf.from(testNodeType + " AS s").where().upperCaseOf().nodeName("s").isEqualTo("NODENAME1").end().query();
+      checkQOM(query, "s", new Node[]{n1});
+   }
+
+   @Test
+   public void testRange() throws IndexModificationException, QueryExecutionException, InvalidQueryException
+   {
+      createNodes();
+
+      // '_' is between 'Z' and 'a', so "_A" is greater than "Z" but "_a" is
+      // less than "z"
+      Query query =
+         qf.from(testNodeType + " AS s").where().upperCaseOf().propertyValue("s", propertyName1).isGreaterThan("Z")
+            .end().query();
+      checkQOM(query, "s", new Node[]{n1, n2});
+
+      query =
+         qf.from(testNodeType + " AS s").where().lowerCaseOf().propertyValue("s", propertyName1).isLessThan("b")
+            .end().query();
+      checkQOM(query, "s", new Node[]{n1, n3, n4});
+
+      query =
+         qf.from(testNodeType + " AS s").where().upperCaseOf().propertyValue("s", propertyName1)
+            .isLessThanOrEqualTo("ABD").end().query();
+      checkQOM(query, "s", new Node[]{n3, n4});
+   }
+
+   @Test
+   public void testLike() throws IndexModificationException, QueryExecutionException, InvalidQueryException
+   {
+      createNodes();
+
+      Query query =
+         qf.from(testNodeType + " AS s").where().upperCaseOf().propertyValue("s", propertyName1).isLike("AB%").end()
+            .query();
+      checkQOM(query, "s", new Node[]{n3, n4});
+
+      query =
+         qf.from(testNodeType + " AS s").where().lowerCaseOf().propertyValue("s", propertyName1).isLike("%eta")
+            .end().query();
+      checkQOM(query, "s", new Node[]{n2});
+
+      query =
+         qf.from(testNodeType + " AS s").where().upperCaseOf().propertyValue("s", propertyName1).isLike("ab%").end()
+            .query();
+      checkQOM(query, "s", new Node[]{});
+   }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.search.query.join;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.xcmis.search.model.source.join.JoinType;
+import org.xcmis.search.result.ScoredRow;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test hash join and merge join of rows.
+ */
+public class RowJoinerTest
+{
+   private static final String LEFT = "left";
+
+   private static final String RIGHT = "right";
+
+   @Test
+   public void testInnerHashJoin() throws Exception
+   {
+      SpillableRowBuffer left = buffer(10, LEFT, "l1", 1, "l2", 2, "l3", 3);
+      SpillableRowBuffer right = buffer(10, RIGHT, "r1", 2L, "r2", 3.0, "r3", 4, "r4", 2);
+      List<ScoredRow> rows = new RowJoiner(JoinType.INNER, 10).hashJoin(left, right, true);
+      // Order of probe (right) side is kept.
+      assertRows(rows, "l2/r1", "l3/r2", "l2/r4");
+      assertEquals(2.0f, rows.get(0).getScore(), 0.0f);
+      left.close();
+      right.close();
+   }
+
+   @Test
+   public void testLeftOuterHashJoin() throws Exception
+   {
+      SpillableRowBuffer left = buffer(10, LEFT, "l1", "a", "l2", "b", "l3", null);
+      SpillableRowBuffer right = buffer(10, RIGHT, "r1", "b");
+      assertRows(new RowJoiner(JoinType.LEFT_OUTER, 10).hashJoin(left, right, true), "l2/r1", "l1/", "l3/");
+      assertRows(new RowJoiner(JoinType.LEFT_OUTER, 10).hashJoin(left, right, false), "l1/", "l2/r1", "l3/");
+      left.close();
+      right.close();
+   }
+
+   @Test
+   public void testRightOuterHashJoin() throws Exception
+   {
+      SpillableRowBuffer left = buffer(10, LEFT, "l1", "a");
+      SpillableRowBuffer right = buffer(10, RIGHT, "r1", "b", "r2", "a");
+      assertRows(new RowJoiner(JoinType.RIGHT_OUTER, 10).hashJoin(left, right, true), "/r1", "l1/r2");
+      left.close();
+      right.close();
+   }
+
+   @Test
+   public void testMultiValuedKeys() throws Exception
+   {
+      SpillableRowBuffer left = new SpillableRowBuffer(10, null);
+      left.add(KeyedRow.create(new ScoredRow(LEFT, "l1", 1.0f), Arrays.asList("a", "b")));
+      SpillableRowBuffer right = new SpillableRowBuffer(10, null);
+      right.add(KeyedRow.create(new ScoredRow(RIGHT, "r1", 1.0f), Arrays.asList("b", "a")));
+      right.add(KeyedRow.create(new ScoredRow(RIGHT, "r2", 1.0f), Arrays.asList("c")));
+      // Row must be joined once even if few keys match.
+      assertRows(new RowJoiner(JoinType.INNER, 10).hashJoin(left, right, true), "l1/r1");
+      left.close();
+      right.close();
+   }
+
+   @Test
+   public void testNotNumberKeys() throws Exception
+   {
+      SpillableRowBuffer left = buffer(10, LEFT, "l1", Double.NaN, "l2", Double.POSITIVE_INFINITY, "l3", 1.0d);
+      SpillableRowBuffer right = buffer(10, RIGHT, "r1", Double.NaN, "r2", Float.POSITIVE_INFINITY, "r3", 1L);
+      // NaN and infinity never match, even themselves.
+      assertRows(new RowJoiner(JoinType.LEFT_OUTER, 10).hashJoin(left, right, false), "l1/", "l2/", "l3/r3");
+      left.close();
+      right.close();
+   }
+
+   @Test
+   public void testSpilledHashJoin() throws Exception
+   {
+      Object[] leftRows = new Object[100];
+      Object[] rightRows = new Object[100];
+      for (int i = 0; i < 50; i++)
+      {
+         leftRows[i * 2] = "l" + i;
+         leftRows[i * 2 + 1] = i % 10;
+         rightRows[i * 2] = "r" + i;
+         rightRows[i * 2 + 1] = i;
+      }
+      SpillableRowBuffer left = buffer(7, LEFT, leftRows);
+      SpillableRowBuffer right = buffer(7, RIGHT, rightRows);
+      assertTrue(left.isSpilled());
+      List<ScoredRow> rows = new RowJoiner(JoinType.LEFT_OUTER, 7).hashJoin(left, right, false);
+      assertEquals(50, rows.size());
+      for (int i = 0; i < 50; i++)
+      {
+         assertEquals("l" + i, rows.get(i).getNodeIdentifer(LEFT));
+         assertEquals("r" + (i % 10), rows.get(i).getNodeIdentifer(RIGHT));
+      }
+      rows = new RowJoiner(JoinType.INNER, 7).hashJoin(left, right, true);
+      assertEquals(50, rows.size());
+      // Order of probe side is kept when build side is read by blocks.
+      for (int i = 0; i < 10; i++)
+      {
+         assertEquals("r" + i, rows.get(i * 5).getNodeIdentifer(RIGHT));
+      }
+      left.close();
+      right.close();
+   }
+
+   @Test
+   public void testMergeJoin() throws Exception
+   {
+      List<KeyedRow> left = list(LEFT, "l1", 1, "l2", 2, "l3", 2, "l4", 5);
+      List<KeyedRow> right = list(RIGHT, "r1", 2, "r2", 3, "r3", 5);
+      assertRows(new RowJoiner(JoinType.INNER, 10).mergeJoin(left, right, false), "l2/r1", "l3/r1", "l4/r3");
+      assertRows(new RowJoiner(JoinType.LEFT_OUTER, 10).mergeJoin(left, right, false), "l1/", "l2/r1", "l3/r1",
+         "l4/r3");
+      assertRows(new RowJoiner(JoinType.RIGHT_OUTER, 10).mergeJoin(left, right, false), "l2/r1", "l3/r1", "/r2",
+         "l4/r3");
+   }
+
+   @Test
+   public void testMergeJoinDescending() throws Exception
+   {
+      List<KeyedRow> left = list(LEFT, "l1", "c", "l2", "b");
+      List<KeyedRow> right = list(RIGHT, "r1", "c", "r2", "a");
+      assertRows(new RowJoiner(JoinType.INNER, 10).mergeJoin(left, right, true), "l1/r1");
+   }
+
+   @Test
+   public void testMergeJoinUnsorted() throws Exception
+   {
+      List<KeyedRow> left = list(LEFT, "l1", 2, "l2", 1);
+      List<KeyedRow> right = list(RIGHT, "r1", 1);
+      assertNull(new RowJoiner(JoinType.INNER, 10).mergeJoin(left, right, false));
+   }
+
+   private SpillableRowBuffer buffer(int maxInMemory, String selector, Object... idsAndKeys) throws Exception
+   {
+      SpillableRowBuffer buffer = new SpillableRowBuffer(maxInMemory, null);
+      for (KeyedRow row : list(selector, idsAndKeys))
+      {
+         buffer.add(row);
+      }
+      return buffer;
+   }
+
+   private List<KeyedRow> list(String selector, Object... idsAndKeys)
+   {
+      List<KeyedRow> rows = new ArrayList<KeyedRow>();
+      for (int i = 0; i < idsAndKeys.length; i += 2)
+      {
+         Object key = idsAndKeys[i + 1];
+         rows.add(KeyedRow.create(new ScoredRow(selector, (String)idsAndKeys[i], 1.0f), key == null ? null : Arrays
+            .asList(key)));
+      }
+      return rows;
+   }
+
+   private void assertRows(List<ScoredRow> rows, String... expected)
+   {
+      List<String> actual = new ArrayList<String>();
+      for (ScoredRow row : rows)
+      {
+         String left = row.getNodeIdentifer(LEFT);
+         String right = row.getNodeIdentifer(RIGHT);
+         actual.add((left == null ? "" : left) + "/" + (right == null ? "" : right));
+      }
+      assertEquals(Arrays.asList(expected), actual);
+   }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.search.query.plan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xcmis.search.model.Limit;
+import org.xcmis.search.model.Query;
+import org.xcmis.search.query.QueryBuilder;
+import org.xcmis.search.query.plan.QueryPlanCache.ParameterizedQuery;
+import org.xcmis.search.value.CastSystem;
+
+/**
+ * Test cache of query plans.
+ */
+public class QueryPlanCacheTest
+{
+   private QueryBuilder builder;
+
+   @Before
+   public void beforeEach()
+   {
+      builder = new QueryBuilder(mock(CastSystem.class));
+   }
+
+   @Test
+   public void testParameterize()
+   {
+      Query query1 =
+         builder.selectStar().from("table AS nodes").where().nodeName("nodes").isEqualTo("first").end().limit(10)
+            .query();
+      Query query2 =
+         builder.selectStar().from("table AS nodes").where().nodeName("nodes").isEqualTo("second").end().query();
+
+      ParameterizedQuery parameterized1 = QueryPlanCache.parameterize(query1);
+      ParameterizedQuery parameterized2 = QueryPlanCache.parameterize(query2);
+      assertEquals(parameterized1.getQuery(), parameterized2.getQuery());
+      assertEquals(Limit.NONE, parameterized1.getQuery().getLimits());
+      assertEquals("first", parameterized1.getValues().get(QueryPlanCache.LITERAL_PREFIX + 0));
+      assertEquals("second", parameterized2.getValues().get(QueryPlanCache.LITERAL_PREFIX + 0));
+   }
+
+   @Test
+   public void testInvalidate()
+   {
+      QueryPlanCache cache = new QueryPlanCache(1);
+      Query query1 = builder.selectStar().from("table AS nodes").where().depth("nodes").isEqualTo(1).end().query();
+      Query query2 = builder.selectStar().from("table AS nodes").query();
+      QueryExecutionPlan plan = new QueryExecutionPlan.SelectorExecutionPlan();
+
+      long generation = cache.getGeneration();
+      cache.put(query1, plan, generation);
+      assertSame(plan, cache.get(query1));
+
+      // Least recently used plan is evicted.
+      cache.put(query2, plan, generation);
+      assertNull(cache.get(query1));
+      assertEquals(1, cache.size());
+
+      // Plan created before invalidation is not cached.
+      cache.invalidate();
+      assertEquals(0, cache.size());
+      cache.put(query1, plan, generation);
+      assertNull(cache.get(query1));
+      assertTrue(generation != cache.getGeneration());
+   }
+}
@@ -35,6 +35,7 @@ import org.xcmis.search.model.source.SelectorName;
 import org.xcmis.search.query.QueryBuilder;
 import org.xcmis.search.query.QueryExecutionContext;
 import org.xcmis.search.query.QueryExecutionExceptions;
+import org.xcmis.search.query.plan.QueryExecutionPlan.JoinExecutionPlan;
 import org.xcmis.search.query.plan.QueryExecutionPlan.LimitExecutionPlan;
 import org.xcmis.search.query.plan.QueryExecutionPlan.ProjectExecutionPlan;
 import org.xcmis.search.query.plan.QueryExecutionPlan.SelectorExecutionPlan;
@@ -386,4 +387,42 @@ public class SimpleQueryPlanerTest
       assertThat(executionStep.getLimit().getOffset(), is(10));
 
    }
+
+   @Test
+   public void testShouldProduceHashJoinPlan() throws InvalidQueryException
+   {
+      schema =
+         schemataBuilder.addTable("test:table1", "column1", "column2").addTable("test:table2", "column1", "column2")
+            .build();
+      query =
+         builder.selectStar().from("test:table1 AS t1").join("test:table2 AS t2").on("t1.column1 = t2.column2")
+            .orderBy().ascending().propertyValue("t1", "column2").end().query();
+      queryContext = new QueryExecutionContext(schema, problems, null);
+      plan = planner.createPlan(queryContext, query);
+      assertThat(problems.hasProblems(), is(false));
+
+      JoinExecutionPlan joinPlan = (JoinExecutionPlan)plan.findPlanByType(Type.JOIN);
+      assertThat(joinPlan, notNullValue());
+      assertThat(joinPlan.getJoinAlgorithm(), is(JoinAlgorithm.HASH));
+      assertThat(joinPlan.getSelectors(), is(selectors("t1", "t2")));
+      assertThat(joinPlan.getLeftPlan().getSelectors(), is(selectors("t1")));
+      assertThat(joinPlan.getRightPlan().getSelectors(), is(selectors("t2")));
+   }
+
+   @Test
+   public void testShouldProduceMergeJoinPlanWhenOrderedByJoinColumn() throws InvalidQueryException
+   {
+      schema =
+         schemataBuilder.addTable("test:table1", "column1", "column2").addTable("test:table2", "column1", "column2")
+            .build();
+      query =
+         builder.selectStar().from("test:table1 AS t1").join("test:table2 AS t2").on("t1.column1 = t2.column2")
+            .orderBy().ascending().propertyValue("t2", "column2").end().query();
+      queryContext = new QueryExecutionContext(schema, problems, null);
+      plan = planner.createPlan(queryContext, query);
+      assertThat(problems.hasProblems(), is(false));
+
+      JoinExecutionPlan joinPlan = (JoinExecutionPlan)plan.findPlanByType(Type.JOIN);
+      assertThat(joinPlan.getJoinAlgorithm(), is(JoinAlgorithm.MERGE));
+   }
 }
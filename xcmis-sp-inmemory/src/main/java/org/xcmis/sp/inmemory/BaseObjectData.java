@@ -34,7 +34,6 @@ import org.xcmis.spi.PolicyData;
 import org.xcmis.spi.PropertyFilter;
 import org.xcmis.spi.RelationshipData;
 import org.xcmis.spi.StorageException;
-import org.xcmis.spi.TypeNotFoundException;
 import org.xcmis.spi.UpdateConflictException;
 import org.xcmis.spi.VersioningException;
 import org.xcmis.spi.model.AccessControlEntry;
@@ -390,20 +389,13 @@ abstract class BaseObjectData implements ObjectData
 
       if (includeSubRelationshipTypes)
       {
-         Collection<TypeDefinition> subTypes = null;
-         try
-         {
-            subTypes = storage.getSubTypes(type.getId(), false);
-         }
-         catch (TypeNotFoundException e)
+         List<String> subTypes = storage.typeCache.getSubTypeIds(type.getId());
+         if (subTypes == null)
          {
             // Should never happen.
-            throw new CmisRuntimeException(e.getMessage(), e);
-         }
-         for (TypeDefinition t : subTypes)
-         {
-            typeFilter.add(t.getId());
+            throw new CmisRuntimeException("Type '" + type.getId() + "' does not exist.");
          }
+         typeFilter.addAll(subTypes);
       }
 
       Set<RelationshipData> relationships = new java.util.HashSet<RelationshipData>();
@@ -656,17 +648,16 @@ abstract class BaseObjectData implements ObjectData
                return false;
             }
 
-            for (FolderData parent : getParents())
+            Set<String> parentIds = storage.parents.get(getObjectId());
+            for (String parentId : parentIds)
             {
-               for (ItemsIterator<ObjectData> iterator = parent.getChildren(null); iterator.hasNext();)
+               if (storage.getChildId(parentId, name) != null)
                {
-                  if (name.equals(iterator.next().getName()))
-                  {
-                     throw new NameConstraintViolationException("Object with name " + name
-                        + " already exists in parent folder.");
-                  }
+                  throw new NameConstraintViolationException("Object with name " + name
+                     + " already exists in parent folder.");
                }
             }
+            storage.names.rename(parentIds, getName(), name, getObjectId());
          }
 
          entry.setProperty(property);
@@ -814,6 +805,11 @@ abstract class BaseObjectData implements ObjectData
       entry.setValue(CmisConstants.CHANGE_TOKEN, new StringValue(StorageImpl.generateId()));
 
       storage.entries.put(entry.getId(), entry);
+      Set<String> parentIds = storage.parents.get(entry.getId());
+      if (parentIds != null)
+      {
+         storage.names.modified(parentIds, entry);
+      }
       storage.indexListener.updated(this);
    }
 
@@ -22,39 +22,74 @@ package org.xcmis.sp.inmemory;
 import java.util.List;
 
 /**
+ * Booleans are kept as bytes: 1 is <code>true</code>, 0 is
+ * <code>false</code> and -1 is <code>null</code>.
+ *
  * @author <a href="mailto:andrew00x@gmail.com">Andrey Parfonov</a>
  * @version $Id$
  */
 public class BooleanValue extends Value
 {
 
-   private final Boolean[] values;
+   private static final BooleanValue TRUE = new BooleanValue(true);
+
+   private static final BooleanValue FALSE = new BooleanValue(false);
+
+   /**
+    * Get shared instance of single boolean value.
+    *
+    * @param value boolean value
+    * @return shared instance if <code>value</code> contains exactly one not
+    *         <code>null</code> boolean, otherwise <code>value</code> itself
+    */
+   static BooleanValue valueOf(BooleanValue value)
+   {
+      if (value.values.length == 1 && value.values[0] >= 0)
+      {
+         return value.values[0] == 1 ? TRUE : FALSE;
+      }
+      return value;
+   }
+
+   private final byte[] values;
 
    public BooleanValue()
    {
-      this.values = new Boolean[0];
+      this.values = new byte[0];
    }
 
    public BooleanValue(Boolean value)
    {
-      this.values = new Boolean[]{value};
+      this.values = new byte[]{encode(value)};
    }
 
    public BooleanValue(Boolean[] a)
    {
-      this.values = new Boolean[a.length];
-      System.arraycopy(a, 0, a, 0, a.length);
+      this.values = new byte[a.length];
+      for (int i = 0; i < a.length; i++)
+      {
+         this.values[i] = encode(a[i]);
+      }
    }
 
    public BooleanValue(List<Boolean> l)
    {
-      this.values = l.toArray(new Boolean[l.size()]);
+      this.values = new byte[l.size()];
+      for (int i = 0; i < values.length; i++)
+      {
+         this.values[i] = encode(l.get(i));
+      }
    }
 
    @Override
    public Boolean[] getBooleans()
    {
-      return values;
+      Boolean[] booleans = new Boolean[values.length];
+      for (int i = 0; i < values.length; i++)
+      {
+         booleans[i] = values[i] < 0 ? null : Boolean.valueOf(values[i] == 1);
+      }
+      return booleans;
    }
 
    @Override
@@ -63,4 +98,9 @@ public class BooleanValue extends Value
       return true;
    }
 
+   private static byte encode(Boolean value)
+   {
+      return value == null ? -1 : (byte)(value ? 1 : 0);
+   }
+
 }
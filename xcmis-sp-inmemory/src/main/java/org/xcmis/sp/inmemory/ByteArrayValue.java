@@ -1,4 +1,4 @@
-/**
+/*
  * Copyright (C) 2010 eXo Platform SAS.
  *
  * This is free software; you can redistribute it and/or modify it
@@ -16,10 +16,9 @@
  * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
  * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
  */
-
 package org.xcmis.sp.inmemory;
 
-import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -27,7 +26,7 @@ import java.io.InputStream;
  * @author <a href="mailto:andrew00x@gmail.com">Andrey Parfonov</a>
  * @version $Id$
  */
-public class ByteArrayValue extends Value
+public class ByteArrayValue extends ContentValue
 {
 
    private final byte[] values;
@@ -38,6 +37,22 @@ public class ByteArrayValue extends Value
       System.arraycopy(a, 0, this.values, 0, a.length);
    }
 
+   /**
+    * Wrap array without copying it. Array must not be changed after that.
+    */
+   private ByteArrayValue(byte[] a, int length)
+   {
+      if (a.length == length)
+      {
+         this.values = a;
+      }
+      else
+      {
+         this.values = new byte[length];
+         System.arraycopy(a, 0, this.values, 0, length);
+      }
+   }
+
    @Override
    public byte[] getBytes()
    {
@@ -45,9 +60,15 @@ public class ByteArrayValue extends Value
    }
 
    @Override
-   public boolean isContent()
+   public long getLength()
    {
-      return true;
+      return values.length;
+   }
+
+   @Override
+   public InputStream getStream()
+   {
+      return new ByteArrayInputStream(values);
    }
 
    public static ByteArrayValue fromStream(InputStream stream) throws IOException
@@ -56,16 +77,40 @@ public class ByteArrayValue extends Value
       {
          return new ByteArrayValue(new byte[0]);
       }
-      ByteArrayOutputStream bout = new ByteArrayOutputStream();
-      byte[] buf = new byte[1024];
-      int r = -1;
-      while ((r = stream.read(buf)) != -1)
+      try
+      {
+         // Read directly in array which becomes value, at most one copy is
+         // made to trim it.
+         byte[] buf = new byte[Math.max(stream.available(), 1024)];
+         int length = 0;
+         for (;;)
+         {
+            if (length == buf.length)
+            {
+               // Grow only if there is more data.
+               int b = stream.read();
+               if (b == -1)
+               {
+                  break;
+               }
+               byte[] tmp = new byte[buf.length * 2];
+               System.arraycopy(buf, 0, tmp, 0, length);
+               buf = tmp;
+               buf[length++] = (byte)b;
+            }
+            int r = stream.read(buf, length, buf.length - length);
+            if (r == -1)
+            {
+               break;
+            }
+            length += r;
+         }
+         return new ByteArrayValue(buf, length);
+      }
+      finally
       {
-         bout.write(buf, 0, r);
+         stream.close();
       }
-      stream.close();
-      byte[] bytes = bout.toByteArray();
-      return new ByteArrayValue(bytes);
    }
 
 }
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.sp.inmemory;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads content of byte buffers without copying them. Position of source
+ * buffers is not changed.
+ */
+final class ByteBufferInputStream extends InputStream
+{
+   private final ByteBuffer[] buffers;
+
+   private int current;
+
+   private int mark;
+
+   ByteBufferInputStream(ByteBuffer... buffers)
+   {
+      this.buffers = new ByteBuffer[buffers.length];
+      for (int i = 0; i < buffers.length; i++)
+      {
+         this.buffers[i] = buffers[i].duplicate();
+         this.buffers[i].mark();
+      }
+   }
+
+   @Override
+   public int read()
+   {
+      ByteBuffer buffer = next();
+      return buffer == null ? -1 : buffer.get() & 0xFF;
+   }
+
+   @Override
+   public int read(byte[] b, int off, int len)
+   {
+      if (len == 0)
+      {
+         return 0;
+      }
+      ByteBuffer buffer = next();
+      if (buffer == null)
+      {
+         return -1;
+      }
+      int r = Math.min(len, buffer.remaining());
+      buffer.get(b, off, r);
+      return r;
+   }
+
+   @Override
+   public long skip(long n)
+   {
+      long skipped = 0;
+      ByteBuffer buffer;
+      while (skipped < n && (buffer = next()) != null)
+      {
+         int s = (int)Math.min(n - skipped, buffer.remaining());
+         buffer.position(buffer.position() + s);
+         skipped += s;
+      }
+      return skipped;
+   }
+
+   @Override
+   public int available()
+   {
+      long available = 0;
+      for (int i = current; i < buffers.length; i++)
+      {
+         available += buffers[i].remaining();
+      }
+      return (int)Math.min(available, Integer.MAX_VALUE);
+   }
+
+   @Override
+   public boolean markSupported()
+   {
+      return true;
+   }
+
+   @Override
+   public synchronized void mark(int readlimit)
+   {
+      mark = current;
+      for (int i = current; i < buffers.length; i++)
+      {
+         buffers[i].mark();
+      }
+   }
+
+   @Override
+   public synchronized void reset()
+   {
+      for (int i = mark; i <= current && i < buffers.length; i++)
+      {
+         buffers[i].reset();
+      }
+      current = mark;
+   }
+
+   private ByteBuffer next()
+   {
+      while (current < buffers.length)
+      {
+         ByteBuffer buffer = buffers[current];
+         if (buffer.hasRemaining())
+         {
+            return buffer;
+         }
+         current++;
+      }
+      return null;
+   }
+}
@@ -0,0 +1,799 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.sp.inmemory;
+
+import org.xcmis.spi.ConstraintException;
+import org.xcmis.spi.ItemsIterator;
+import org.xcmis.spi.model.AccessControlEntry;
+import org.xcmis.spi.model.ChangeEvent;
+import org.xcmis.spi.model.ChangeType;
+import org.xcmis.spi.model.Property;
+import org.xcmis.spi.model.PropertyType;
+import org.xcmis.spi.model.impl.BooleanProperty;
+import org.xcmis.spi.model.impl.DateTimeProperty;
+import org.xcmis.spi.model.impl.DecimalProperty;
+import org.xcmis.spi.model.impl.HtmlProperty;
+import org.xcmis.spi.model.impl.IdProperty;
+import org.xcmis.spi.model.impl.IntegerProperty;
+import org.xcmis.spi.model.impl.StringProperty;
+import org.xcmis.spi.model.impl.UriProperty;
+import org.xcmis.spi.utils.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Append-only log of changes of storage objects. Events are kept in segments
+ * of fixed size, each event gets sequence number and log token of event is
+ * mapped to it, so reading of log from known token does not scan preceding
+ * events. Adding of event does not copy existing events. Oldest segments are
+ * dropped when log contains more than configured number of events or when
+ * all events of segment are older than configured age. Events older than
+ * configured age are not read from log even if their segment is not dropped
+ * yet. Log may be kept in file, then tokens obtained from log stay valid
+ * after restart, file must be closed with {@link #close()}.
+ */
+final class ChangeLog
+{
+   private static final Logger LOG = Logger.getLogger(ChangeLog.class);
+
+   /** Number of events in one segment. */
+   static final int SEGMENT_SIZE = 1024;
+
+   static final String FILE_NAME = "changes.log";
+
+   private static final int FILE_MAGIC = 0x78434c47;
+
+   private static final int FILE_VERSION = 1;
+
+   /**
+    * Part of log. Events are added only at the end of the last segment under
+    * lock of log, readers see events up to <code>size</code>.
+    */
+   private static final class Segment
+   {
+      /** Sequence number of first event. */
+      final long first;
+
+      final ChangeEvent[] events = new ChangeEvent[SEGMENT_SIZE];
+
+      volatile int size;
+
+      Segment(long first)
+      {
+         this.first = first;
+      }
+   }
+
+   /**
+    * Iterator over events between two sequence numbers. Iterator keeps
+    * reference to current segment, so it is not affected if segment is
+    * dropped while it is read. If following segments are dropped then
+    * iterator continues from the oldest remaining event.
+    */
+   private final class EventIterator implements ItemsIterator<ChangeEvent>
+   {
+      private final long start;
+
+      private final long end;
+
+      private long position;
+
+      private Segment segment;
+
+      EventIterator(long start, long end)
+      {
+         this.start = start;
+         this.end = end;
+         this.position = start;
+      }
+
+      public boolean hasNext()
+      {
+         return fetch() != null;
+      }
+
+      public ChangeEvent next()
+      {
+         ChangeEvent event = fetch();
+         if (event == null)
+         {
+            throw new NoSuchElementException();
+         }
+         position++;
+         return event;
+      }
+
+      public void remove()
+      {
+         throw new UnsupportedOperationException("remove");
+      }
+
+      public int size()
+      {
+         return (int)Math.min(end - start, Integer.MAX_VALUE);
+      }
+
+      public void skip(int skip) throws NoSuchElementException
+      {
+         if (position + skip > end)
+         {
+            position = end;
+            throw new NoSuchElementException();
+         }
+         position += skip;
+      }
+
+      private ChangeEvent fetch()
+      {
+         if (position >= end)
+         {
+            return null;
+         }
+         if (segment == null || position >= segment.first + SEGMENT_SIZE)
+         {
+            Map.Entry<Long, Segment> e = segments.floorEntry(position);
+            if (e == null)
+            {
+               e = segments.ceilingEntry(position);
+               if (e == null || e.getKey() >= end)
+               {
+                  return null;
+               }
+               position = e.getKey();
+            }
+            segment = e.getValue();
+         }
+         return segment.events[(int)(position - segment.first)];
+      }
+   }
+
+   /** Segments by sequence number of their first event. */
+   private final ConcurrentNavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<Long, Segment>();
+
+   /** Log token to sequence number of event. */
+   private final ConcurrentMap<String, Long> tokens = new ConcurrentHashMap<String, Long>();
+
+   private final int maxSize;
+
+   private final long maxAge;
+
+   private final File file;
+
+   /** Sequence number of next event. Changed under lock of log. */
+   private volatile long next;
+
+   private volatile ChangeEvent latest;
+
+   /** Guarded by log. */
+   private Segment tail;
+
+   /** Guarded by log. */
+   private DataOutputStream out;
+
+   /** Number of events in file. Guarded by log. */
+   private long fileEvents;
+
+   /**
+    * @param maxSize max number of events in log, if not positive then number
+    *        of events is not limited
+    * @param maxAge max age of events in milliseconds, if not positive then age
+    *        of events is not limited
+    * @param directory directory of log file, if <code>null</code> then log is
+    *        kept in memory only
+    */
+   ChangeLog(int maxSize, long maxAge, File directory)
+   {
+      this.maxSize = maxSize;
+      this.maxAge = maxAge;
+      if (directory != null)
+      {
+         if (!directory.exists() && !directory.mkdirs())
+         {
+            throw new IllegalArgumentException("Unable create change log directory " + directory.getAbsolutePath());
+         }
+         this.file = new File(directory, FILE_NAME);
+         synchronized (this)
+         {
+            load();
+            // Rewrite file even if nothing is dropped, it cuts off incomplete
+            // record which may be left at the end of file.
+            rewrite();
+         }
+      }
+      else
+      {
+         this.file = null;
+      }
+   }
+
+   /**
+    * Add event at the end of log.
+    *
+    * @param event event
+    */
+   synchronized void add(ChangeEvent event)
+   {
+      append(event);
+      dropExpired();
+      if (out != null)
+      {
+         try
+         {
+            writeEvent(out, event);
+            out.flush();
+            fileEvents++;
+            // Compact file when most of events in it are dropped.
+            if (fileEvents > SEGMENT_SIZE && fileEvents > 2 * (next - segments.firstKey()))
+            {
+               rewrite();
+            }
+         }
+         catch (IOException e)
+         {
+            LOG.error("Unable write change log " + file.getAbsolutePath() + ". Changes will not be saved. "
+               + e.getMessage());
+            closeFile();
+         }
+      }
+   }
+
+   /**
+    * Get events of log starting from event with specified token. Iterator sees
+    * events added before this method is called only.
+    *
+    * @param token log token of first event, if <code>null</code> then
+    *        iteration starts from the oldest event in log
+    * @return iterator over events
+    * @throws ConstraintException if there is no event with specified token in
+    *         log, e.g. it was dropped or is expired because of retention
+    */
+   ItemsIterator<ChangeEvent> iterator(String token) throws ConstraintException
+   {
+      if (maxAge > 0)
+      {
+         // Log may be read long after last event is added.
+         synchronized (this)
+         {
+            dropExpired();
+         }
+      }
+      long end = next;
+      long oldest = getOldest(end);
+      long start;
+      if (token == null)
+      {
+         start = oldest;
+      }
+      else
+      {
+         Long seq = tokens.get(token);
+         if (seq == null || seq < oldest)
+         {
+            throw new ConstraintException("No event corresponded to change log token " + token);
+         }
+         start = seq;
+      }
+      return new EventIterator(start, end);
+   }
+
+   /**
+    * Stop writing log to file. Events added after this are kept in memory
+    * only.
+    */
+   synchronized void close()
+   {
+      closeFile();
+   }
+
+   /**
+    * @return log token of latest event or <code>null</code> if log is empty
+    */
+   String getLatestToken()
+   {
+      ChangeEvent event = latest;
+      return event != null ? event.getLogToken() : null;
+   }
+
+   /**
+    * @return number of events in log
+    */
+   long size()
+   {
+      Map.Entry<Long, Segment> first = segments.firstEntry();
+      return first != null ? next - first.getKey() : 0;
+   }
+
+   /**
+    * Get sequence number of the oldest event which is not expired.
+    *
+    * @param end sequence number of next event
+    * @return sequence number of the oldest event or <code>end</code> if
+    *         there is no such event
+    */
+   private long getOldest(long end)
+   {
+      Map.Entry<Long, Segment> first = segments.firstEntry();
+      if (first == null)
+      {
+         return end;
+      }
+      if (maxAge <= 0)
+      {
+         return first.getKey();
+      }
+      long now = System.currentTimeMillis();
+      for (Segment segment : segments.tailMap(first.getKey()).values())
+      {
+         int size = (int)Math.min(segment.size, end - segment.first);
+         if (size <= 0)
+         {
+            break;
+         }
+         if (isExpired(segment.events[size - 1], now))
+         {
+            continue;
+         }
+         // Events of segment are in order of their dates.
+         for (int i = 0; i < size; i++)
+         {
+            if (!isExpired(segment.events[i], now))
+            {
+               return segment.first + i;
+            }
+         }
+      }
+      return end;
+   }
+
+   private boolean isExpired(ChangeEvent event, long now)
+   {
+      Calendar date = event.getDate();
+      return date != null && now - date.getTimeInMillis() > maxAge;
+   }
+
+   private void append(ChangeEvent event)
+   {
+      if (tail == null || tail.size == SEGMENT_SIZE)
+      {
+         tail = new Segment(next);
+         segments.put(next, tail);
+      }
+      tail.events[tail.size] = event;
+      // Publish event before its token.
+      tail.size++;
+      tokens.put(event.getLogToken(), next);
+      latest = event;
+      next++;
+   }
+
+   /**
+    * Drop oldest segments which are out of retention limits. The last segment
+    * is never dropped.
+    */
+   private void dropExpired()
+   {
+      long now = System.currentTimeMillis();
+      for (;;)
+      {
+         Map.Entry<Long, Segment> first = segments.firstEntry();
+         if (first == null || first.getValue() == tail)
+         {
+            return;
+         }
+         Segment head = first.getValue();
+         boolean drop = maxSize > 0 && next - (head.first + head.size) >= maxSize;
+         if (!drop && maxAge > 0)
+         {
+            drop = isExpired(head.events[head.size - 1], now);
+         }
+         if (!drop)
+         {
+            return;
+         }
+         segments.remove(head.first);
+         for (int i = 0; i < head.size; i++)
+         {
+            tokens.remove(head.events[i].getLogToken());
+         }
+      }
+   }
+
+   private void load()
+   {
+      if (!file.exists())
+      {
+         return;
+      }
+      DataInputStream in = null;
+      try
+      {
+         in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+         if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION)
+         {
+            LOG.warn("Unknown format of change log " + file.getAbsolutePath() + ". Log is cleared.");
+            return;
+         }
+         for (;;)
+         {
+            ChangeEvent event;
+            try
+            {
+               event = readEvent(in);
+            }
+            catch (EOFException e)
+            {
+               break;
+            }
+            append(event);
+            dropExpired();
+         }
+      }
+      catch (IOException e)
+      {
+         LOG.error("Unable read change log " + file.getAbsolutePath() + ". " + e.getMessage());
+      }
+      finally
+      {
+         if (in != null)
+         {
+            try
+            {
+               in.close();
+            }
+            catch (IOException e)
+            {
+               LOG.error(e.getMessage());
+            }
+         }
+      }
+   }
+
+   /**
+    * Write all events of log to new file and continue appending to it.
+    */
+   private void rewrite()
+   {
+      closeFile();
+      File tmp = new File(file.getParentFile(), FILE_NAME + ".tmp");
+      DataOutputStream tmpOut = null;
+      try
+      {
+         tmpOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+         tmpOut.writeInt(FILE_MAGIC);
+         tmpOut.writeInt(FILE_VERSION);
+         long count = 0;
+         for (ItemsIterator<ChangeEvent> i = iterator(null); i.hasNext(); count++)
+         {
+            writeEvent(tmpOut, i.next());
+         }
+         tmpOut.close();
+         tmpOut = null;
+         if ((file.exists() && !file.delete()) || !tmp.renameTo(file))
+         {
+            throw new IOException("Unable replace " + file.getAbsolutePath());
+         }
+         out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+         fileEvents = count;
+      }
+      catch (ConstraintException e)
+      {
+         // Not expected, iteration from start of log.
+         LOG.error(e.getMessage());
+      }
+      catch (IOException e)
+      {
+         LOG.error("Unable write change log " + file.getAbsolutePath() + ". Changes will not be saved. "
+            + e.getMessage());
+      }
+      finally
+      {
+         if (tmpOut != null)
+         {
+            try
+            {
+               tmpOut.close();
+            }
+            catch (IOException e)
+            {
+               LOG.error(e.getMessage());
+            }
+            tmp.delete();
+         }
+      }
+   }
+
+   private void closeFile()
+   {
+      if (out != null)
+      {
+         try
+         {
+            out.close();
+         }
+         catch (IOException e)
+         {
+            LOG.error(e.getMessage());
+         }
+         out = null;
+      }
+   }
+
+   private static void writeEvent(DataOutputStream out, ChangeEvent event) throws IOException
+   {
+      writeString(out, event.getLogToken());
+      writeString(out, event.getObjectId());
+      writeString(out, event.getType().value());
+      writeCalendar(out, event.getDate());
+
+      List<Property<?>> properties = event.getProperties();
+      out.writeInt(properties != null ? properties.size() : -1);
+      if (properties != null)
+      {
+         for (Property<?> property : properties)
+         {
+            writeProperty(out, property);
+         }
+      }
+
+      Set<String> policyIds = event.getPolicyIds();
+      out.writeInt(policyIds != null ? policyIds.size() : -1);
+      if (policyIds != null)
+      {
+         for (String policyId : policyIds)
+         {
+            writeString(out, policyId);
+         }
+      }
+
+      List<AccessControlEntry> acl = event.getAcl();
+      out.writeInt(acl != null ? acl.size() : -1);
+      if (acl != null)
+      {
+         for (AccessControlEntry ace : acl)
+         {
+            writeString(out, ace.getPrincipal());
+            out.writeInt(ace.getPermissions().size());
+            for (String permission : ace.getPermissions())
+            {
+               writeString(out, permission);
+            }
+         }
+      }
+   }
+
+   private static ChangeEvent readEvent(DataInputStream in) throws IOException
+   {
+      String token = readString(in);
+      // Event which is not written up to the end is the same as missed one.
+      try
+      {
+         String objectId = readString(in);
+         ChangeType type = ChangeType.fromValue(readString(in));
+         Calendar date = readCalendar(in);
+
+         List<Property<?>> properties = null;
+         int count = in.readInt();
+         if (count >= 0)
+         {
+            properties = new ArrayList<Property<?>>(count);
+            for (int i = 0; i < count; i++)
+            {
+               properties.add(readProperty(in));
+            }
+         }
+
+         Set<String> policyIds = null;
+         count = in.readInt();
+         if (count >= 0)
+         {
+            policyIds = new HashSet<String>(count);
+            for (int i = 0; i < count; i++)
+            {
+               policyIds.add(readString(in));
+            }
+         }
+
+         List<AccessControlEntry> acl = null;
+         count = in.readInt();
+         if (count >= 0)
+         {
+            acl = new ArrayList<AccessControlEntry>(count);
+            for (int i = 0; i < count; i++)
+            {
+               String principal = readString(in);
+               int permissionCount = in.readInt();
+               Set<String> permissions = new HashSet<String>(permissionCount);
+               for (int j = 0; j < permissionCount; j++)
+               {
+                  permissions.add(readString(in));
+               }
+               acl.add(new AccessControlEntry(principal, permissions));
+            }
+         }
+         return new ChangeEvent(token, objectId, type, date, properties, policyIds, acl);
+      }
+      catch (EOFException e)
+      {
+         LOG.warn("Incomplete event " + token + " at the end of change log is skipped.");
+         throw e;
+      }
+   }
+
+   private static void writeProperty(DataOutputStream out, Property<?> property) throws IOException
+   {
+      writeString(out, property.getType().value());
+      writeString(out, property.getId());
+      writeString(out, property.getQueryName());
+      writeString(out, property.getLocalName());
+      writeString(out, property.getDisplayName());
+      List<?> values = property.getValues();
+      out.writeInt(values.size());
+      for (Object value : values)
+      {
+         if (value instanceof Calendar)
+         {
+            writeCalendar(out, (Calendar)value);
+         }
+         else
+         {
+            writeString(out, value != null ? value.toString() : null);
+         }
+      }
+   }
+
+   private static Property<?> readProperty(DataInputStream in) throws IOException
+   {
+      PropertyType type = PropertyType.fromValue(readString(in));
+      String id = readString(in);
+      String queryName = readString(in);
+      String localName = readString(in);
+      String displayName = readString(in);
+      int count = in.readInt();
+      if (type == PropertyType.DATETIME)
+      {
+         List<Calendar> values = new ArrayList<Calendar>(count);
+         for (int i = 0; i < count; i++)
+         {
+            values.add(readCalendar(in));
+         }
+         return new DateTimeProperty(id, queryName, localName, displayName, values);
+      }
+
+      List<String> values = new ArrayList<String>(count);
+      for (int i = 0; i < count; i++)
+      {
+         values.add(readString(in));
+      }
+      if (type == PropertyType.BOOLEAN)
+      {
+         List<Boolean> booleans = new ArrayList<Boolean>(count);
+         for (String value : values)
+         {
+            booleans.add(value != null ? Boolean.valueOf(value) : null);
+         }
+         return new BooleanProperty(id, queryName, localName, displayName, booleans);
+      }
+      else if (type == PropertyType.DECIMAL)
+      {
+         List<BigDecimal> decimals = new ArrayList<BigDecimal>(count);
+         for (String value : values)
+         {
+            decimals.add(value != null ? new BigDecimal(value) : null);
+         }
+         return new DecimalProperty(id, queryName, localName, displayName, decimals);
+      }
+      else if (type == PropertyType.INTEGER)
+      {
+         List<BigInteger> integers = new ArrayList<BigInteger>(count);
+         for (String value : values)
+         {
+            integers.add(value != null ? new BigInteger(value) : null);
+         }
+         return new IntegerProperty(id, queryName, localName, displayName, integers);
+      }
+      else if (type == PropertyType.URI)
+      {
+         List<URI> uris = new ArrayList<URI>(count);
+         for (String value : values)
+         {
+            uris.add(value != null ? URI.create(value) : null);
+         }
+         return new UriProperty(id, queryName, localName, displayName, uris);
+      }
+      else if (type == PropertyType.HTML)
+      {
+         return new HtmlProperty(id, queryName, localName, displayName, values);
+      }
+      else if (type == PropertyType.ID)
+      {
+         return new IdProperty(id, queryName, localName, displayName, values);
+      }
+      return new StringProperty(id, queryName, localName, displayName, values);
+   }
+
+   private static void writeCalendar(DataOutputStream out, Calendar date) throws IOException
+   {
+      out.writeBoolean(date != null);
+      if (date != null)
+      {
+         out.writeLong(date.getTimeInMillis());
+         writeString(out, date.getTimeZone().getID());
+      }
+   }
+
+   private static Calendar readCalendar(DataInputStream in) throws IOException
+   {
+      if (!in.readBoolean())
+      {
+         return null;
+      }
+      long time = in.readLong();
+      Calendar date = Calendar.getInstance(TimeZone.getTimeZone(readString(in)));
+      date.setTimeInMillis(time);
+      return date;
+   }
+
+   private static void writeString(DataOutputStream out, String str) throws IOException
+   {
+      if (str == null)
+      {
+         out.writeInt(-1);
+         return;
+      }
+      byte[] bytes = str.getBytes("UTF-8");
+      out.writeInt(bytes.length);
+      out.write(bytes);
+   }
+
+   private static String readString(DataInputStream in) throws IOException
+   {
+      int length = in.readInt();
+      if (length < 0)
+      {
+         return null;
+      }
+      byte[] bytes = new byte[length];
+      in.readFully(bytes);
+      return new String(bytes, "UTF-8");
+   }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.sp.inmemory;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe set which is iterated in order of addition. Membership is kept
+ * in hash map and order in skip list keyed by sequence number of addition, so
+ * <code>add</code>, <code>contains</code> and <code>remove</code> do not
+ * depend on number of elements. Iterators are weakly consistent, they never
+ * throw {@link java.util.ConcurrentModificationException} and see elements in
+ * the same order during whole life of element in set, that makes possible to
+ * continue iteration from known position, see {@link #iterator(long)}.
+ *
+ * @param <E> type of elements
+ */
+final class ConcurrentLinkedHashSet<E> extends AbstractSet<E>
+{
+
+   /** Element to its sequence number. */
+   private final ConcurrentMap<E, Long> members = new ConcurrentHashMap<E, Long>();
+
+   /** Sequence number to element. */
+   private final ConcurrentNavigableMap<Long, E> order = new ConcurrentSkipListMap<Long, E>();
+
+   private final AtomicLong sequence = new AtomicLong();
+
+   ConcurrentLinkedHashSet()
+   {
+   }
+
+   /**
+    * @param c elements to add to set
+    */
+   ConcurrentLinkedHashSet(Collection<? extends E> c)
+   {
+      addAll(c);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean add(E e)
+   {
+      Long seq = sequence.incrementAndGet();
+      if (members.putIfAbsent(e, seq) != null)
+      {
+         return false;
+      }
+      order.put(seq, e);
+      // Element may be removed concurrently before it gets its place in order.
+      if (!seq.equals(members.get(e)))
+      {
+         order.remove(seq, e);
+      }
+      return true;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean contains(Object o)
+   {
+      return members.containsKey(o);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean remove(Object o)
+   {
+      Long seq = members.remove(o);
+      if (seq == null)
+      {
+         return false;
+      }
+      order.remove(seq);
+      return true;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void clear()
+   {
+      for (Iterator<E> i = iterator(); i.hasNext();)
+      {
+         i.next();
+         i.remove();
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int size()
+   {
+      return members.size();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean isEmpty()
+   {
+      return members.isEmpty();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public Iterator<E> iterator()
+   {
+      return iterator(0);
+   }
+
+   /**
+    * Get iterator over elements added after specified position.
+    *
+    * @param position position of element, as returned by
+    *        {@link #position(Object)}, iteration starts from the next
+    *        element. Zero means iterate from start
+    * @return iterator
+    */
+   Iterator<E> iterator(long position)
+   {
+      final Iterator<E> i = order.tailMap(position, false).values().iterator();
+      return new Iterator<E>()
+      {
+         private E last;
+
+         public boolean hasNext()
+         {
+            return i.hasNext();
+         }
+
+         public E next()
+         {
+            return last = i.next();
+         }
+
+         public void remove()
+         {
+            if (last == null)
+            {
+               throw new IllegalStateException();
+            }
+            ConcurrentLinkedHashSet.this.remove(last);
+            last = null;
+         }
+      };
+   }
+
+   /**
+    * Get position of element in order of iteration.
+    *
+    * @param e element
+    * @return position of element or <code>-1</code> if it is not in set
+    */
+   long position(E e)
+   {
+      Long seq = members.get(e);
+      return seq != null ? seq : -1;
+   }
+
+}
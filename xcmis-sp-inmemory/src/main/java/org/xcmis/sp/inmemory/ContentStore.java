@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.sp.inmemory;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Keeps content of documents. Storage creates one store from
+ * {@link StorageConfiguration#getContentStore()}, custom implementation must
+ * have public constructor without parameters.
+ */
+public interface ContentStore
+{
+   /**
+    * Keep content. Stream is read till the end and closed.
+    *
+    * @param stream content
+    * @return stored content
+    * @throws IOException if stream can't be read or content can't be kept
+    */
+   ContentValue write(InputStream stream) throws IOException;
+
+   /**
+    * Release all content kept by store.
+    */
+   void close();
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.sp.inmemory;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Content of document created by {@link ContentStore}. Content is immutable,
+ * new content replaces value instead of changing it.
+ */
+public abstract class ContentValue extends Value
+{
+   /**
+    * @return length of content in bytes
+    */
+   public abstract long getLength();
+
+   /**
+    * Open new stream for reading content. Each call returns independent
+    * stream.
+    *
+    * @return content stream
+    * @throws IOException if content can't be read
+    */
+   public abstract InputStream getStream() throws IOException;
+
+   /**
+    * Free resources of content. Called when value is replaced or its object
+    * is removed from storage. Streams which are already opened may fail
+    * after that.
+    */
+   public void release()
+   {
+   }
+
+   @Override
+   public boolean isContent()
+   {
+      return true;
+   }
+}
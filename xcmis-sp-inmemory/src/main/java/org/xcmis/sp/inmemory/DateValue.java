@@ -21,41 +21,105 @@ package org.xcmis.sp.inmemory;
 
 import java.util.Calendar;
 import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Dates are kept as milliseconds since epoch and time zone. New
+ * {@link Calendar} instances are created for each call of
+ * {@link #getDates()}.
+ *
  * @author <a href="mailto:andrew00x@gmail.com">Andrey Parfonov</a>
  * @version $Id$
  */
 public class DateValue extends Value
 {
 
-   private final Calendar[] values;
+   /**
+    * Time of <code>null</code> date.
+    */
+   private static final long NULL = Long.MIN_VALUE;
+
+   /**
+    * Shared time zones. There are few distinct zones, but each calendar may
+    * have own copy of zone.
+    */
+   private static final ConcurrentHashMap<String, TimeZone> ZONES = new ConcurrentHashMap<String, TimeZone>();
+
+   private final long[] times;
+
+   /**
+    * Time zone of all dates.
+    */
+   private final TimeZone zone;
+
+   /**
+    * Time zones of each date if dates have different zones, otherwise
+    * <code>null</code>.
+    */
+   private final TimeZone[] zones;
 
    public DateValue()
    {
-      this.values = new Calendar[0];
+      this(new Calendar[0]);
    }
 
    public DateValue(Calendar value)
    {
-      this.values = new Calendar[]{value};
+      this(new Calendar[]{value});
    }
 
    public DateValue(List<Calendar> l)
    {
-      this.values = l.toArray(new Calendar[l.size()]);
+      this(l.toArray(new Calendar[l.size()]));
    }
 
    public DateValue(Calendar[] a)
    {
-      this.values = new Calendar[a.length];
-      System.arraycopy(a, 0, this.values, 0, a.length);
+      this.times = new long[a.length];
+      TimeZone[] zs = new TimeZone[a.length];
+      boolean sameZone = true;
+      for (int i = 0; i < a.length; i++)
+      {
+         times[i] = a[i] != null ? a[i].getTimeInMillis() : NULL;
+         zs[i] = a[i] != null ? share(a[i].getTimeZone()) : null;
+         sameZone &= zs[i] == zs[0];
+      }
+      this.zone = a.length > 0 ? zs[0] : null;
+      this.zones = sameZone ? null : zs;
    }
 
    @Override
    public Calendar[] getDates()
    {
-      return values;
+      Calendar[] dates = new Calendar[times.length];
+      for (int i = 0; i < times.length; i++)
+      {
+         if (times[i] != NULL)
+         {
+            dates[i] = Calendar.getInstance(zones != null ? zones[i] : zone);
+            dates[i].setTimeInMillis(times[i]);
+         }
+      }
+      return dates;
+   }
+
+   /**
+    * @param index index of date
+    * @return date as milliseconds since epoch or {@link Long#MIN_VALUE} if
+    *         date is <code>null</code>
+    */
+   long getTime(int index)
+   {
+      return times[index];
+   }
+
+   /**
+    * @return number of dates
+    */
+   int size()
+   {
+      return times.length;
    }
 
    @Override
@@ -64,4 +128,16 @@ public class DateValue extends Value
       return true;
    }
 
+   private static TimeZone share(TimeZone zone)
+   {
+      TimeZone shared = ZONES.get(zone.getID());
+      if (shared == null)
+      {
+         ZONES.putIfAbsent(zone.getID(), (TimeZone)zone.clone());
+         shared = ZONES.get(zone.getID());
+      }
+      // Custom zone may have the same id as other one.
+      return shared.hasSameRules(zone) ? shared : (TimeZone)zone.clone();
+   }
+
 }
@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.sp.inmemory;
+
+import org.xcmis.spi.utils.Logger;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps content in direct byte buffers outside of heap, so big content does
+ * not make garbage collection longer. Content is written in chunks which grow
+ * from {@link #MIN_CHUNK_SIZE} to {@link #MAX_CHUNK_SIZE}, so it is not copied
+ * when it grows. Content is read directly from chunks. Chunks are freed when
+ * content is released and all its streams are closed. Chunks of streams which
+ * are never closed are freed by garbage collector.
+ */
+public class DirectContentStore implements ContentStore
+{
+   private static final Logger LOG = Logger.getLogger(DirectContentStore.class);
+
+   static final int MIN_CHUNK_SIZE = 4 * 1024;
+
+   static final int MAX_CHUNK_SIZE = 1024 * 1024;
+
+   /**
+    * Frees memory of direct buffer or unmaps mapped buffer without waiting for
+    * garbage collector. <code>null</code> if it is not supported by JVM.
+    */
+   static final BufferCleaner CLEANER = createCleaner();
+
+   interface BufferCleaner
+   {
+      void clean(ByteBuffer buffer) throws Exception;
+   }
+
+   private final class DirectContentValue extends ContentValue
+   {
+      private final ByteBuffer[] chunks;
+
+      private final long length;
+
+      private int openStreams;
+
+      private boolean released;
+
+      DirectContentValue(ByteBuffer[] chunks, long length)
+      {
+         this.chunks = chunks;
+         this.length = length;
+      }
+
+      @Override
+      public long getLength()
+      {
+         return length;
+      }
+
+      @Override
+      public synchronized InputStream getStream() throws IOException
+      {
+         if (released)
+         {
+            throw new IOException("Content is released.");
+         }
+         openStreams++;
+         return new FilterInputStream(new ByteBufferInputStream(chunks))
+         {
+            private boolean closed;
+
+            @Override
+            public int read() throws IOException
+            {
+               ensureOpen();
+               return super.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException
+            {
+               ensureOpen();
+               return super.read(b, off, len);
+            }
+
+            @Override
+            public long skip(long n) throws IOException
+            {
+               ensureOpen();
+               return super.skip(n);
+            }
+
+            @Override
+            public int available() throws IOException
+            {
+               ensureOpen();
+               return super.available();
+            }
+
+            @Override
+            public synchronized void reset() throws IOException
+            {
+               ensureOpen();
+               super.reset();
+            }
+
+            @Override
+            public void close() throws IOException
+            {
+               if (!closed)
+               {
+                  closed = true;
+                  streamClosed();
+               }
+            }
+
+            private void ensureOpen() throws IOException
+            {
+               // Chunks may be freed after stream is closed.
+               if (closed)
+               {
+                  throw new IOException("Stream closed.");
+               }
+            }
+         };
+      }
+
+      @Override
+      public synchronized void release()
+      {
+         if (!released)
+         {
+            released = true;
+            values.remove(this);
+            if (openStreams == 0)
+            {
+               free();
+            }
+         }
+      }
+
+      private synchronized void streamClosed()
+      {
+         if (--openStreams == 0 && released)
+         {
+            free();
+         }
+      }
+
+      private void free()
+      {
+         for (ByteBuffer chunk : chunks)
+         {
+            allocated.addAndGet(-chunk.capacity());
+            if (CLEANER != null)
+            {
+               try
+               {
+                  CLEANER.clean(chunk);
+               }
+               catch (Exception e)
+               {
+                  LOG.warn("Unable free direct buffer. " + e.getMessage());
+               }
+            }
+         }
+      }
+   }
+
+   /**
+    * Content which is not released yet.
+    */
+   private final Set<DirectContentValue> values =
+      Collections.newSetFromMap(new ConcurrentHashMap<DirectContentValue, Boolean>());
+
+   /**
+    * Capacity of chunks which are not freed.
+    */
+   private final AtomicLong allocated = new AtomicLong();
+
+   /**
+    * @return number of bytes in direct buffers which are not freed yet
+    */
+   public long getAllocatedBytes()
+   {
+      return allocated.get();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public ContentValue write(InputStream stream) throws IOException
+   {
+      List<ByteBuffer> chunks = new ArrayList<ByteBuffer>();
+      long length = 0;
+      ReadableByteChannel channel = Channels.newChannel(stream);
+      try
+      {
+         int chunkSize = MIN_CHUNK_SIZE;
+         ByteBuffer chunk = ByteBuffer.allocateDirect(chunkSize);
+         for (;;)
+         {
+            int r = channel.read(chunk);
+            if (r == -1)
+            {
+               break;
+            }
+            length += r;
+            if (!chunk.hasRemaining())
+            {
+               chunk.flip();
+               chunks.add(chunk);
+               chunkSize = Math.min(chunkSize * 2, MAX_CHUNK_SIZE);
+               chunk = ByteBuffer.allocateDirect(chunkSize);
+            }
+         }
+         chunk.flip();
+         if (chunk.hasRemaining())
+         {
+            if (chunk.remaining() < chunk.capacity() / 2)
+            {
+               // Do not keep mostly empty chunk.
+               ByteBuffer tail = ByteBuffer.allocateDirect(chunk.remaining());
+               tail.put(chunk);
+               tail.flip();
+               chunk = tail;
+            }
+            chunks.add(chunk);
+         }
+      }
+      finally
+      {
+         channel.close();
+      }
+      for (ByteBuffer c : chunks)
+      {
+         allocated.addAndGet(c.capacity());
+      }
+      DirectContentValue value = new DirectContentValue(chunks.toArray(new ByteBuffer[chunks.size()]), length);
+      values.add(value);
+      return value;
+   }
+
+   /**
+    * Release all content. Content which has open streams is freed when the
+    * streams are closed.
+    */
+   public void close()
+   {
+      for (DirectContentValue value : values)
+      {
+         value.release();
+      }
+   }
+
+   private static BufferCleaner createCleaner()
+   {
+      try
+      {
+         // Java 9 and later.
+         Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+         final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+         Field field = unsafeClass.getDeclaredField("theUnsafe");
+         field.setAccessible(true);
+         final Object unsafe = field.get(null);
+         return new BufferCleaner()
+         {
+            public void clean(ByteBuffer buffer) throws Exception
+            {
+               invokeCleaner.invoke(unsafe, buffer);
+            }
+         };
+      }
+      catch (Exception e)
+      {
+         // Try cleaner of buffer.
+      }
+      try
+      {
+         final Method cleanerMethod = ByteBuffer.allocateDirect(1).getClass().getMethod("cleaner");
+         cleanerMethod.setAccessible(true);
+         final Method cleanMethod = cleanerMethod.getReturnType().getMethod("clean");
+         return new BufferCleaner()
+         {
+            public void clean(ByteBuffer buffer) throws Exception
+            {
+               Object cleaner = cleanerMethod.invoke(buffer);
+               if (cleaner != null)
+               {
+                  cleanMethod.invoke(cleaner);
+               }
+            }
+         };
+      }
+      catch (Exception e)
+      {
+         LOG.warn("Direct buffers are freed by garbage collector only. " + e.getMessage());
+         return null;
+      }
+   }
+}
@@ -44,7 +44,6 @@ import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CopyOnWriteArraySet;
 
 /**
  * @author <a href="mailto:andrew00x@gmail.com">Andrey Parfonov</a>
@@ -81,6 +80,7 @@ class DocumentDataImpl extends BaseObjectData implements DocumentData
          storage.unfiled.remove(pwcId);
          storage.workingCopies.remove(vsId);
          storage.entries.remove(pwcId);
+         invalidateRenditions(pwcId);
 
          for (Iterator<String> iterator = storage.versions.get(getVersionSeriesId()).iterator(); iterator.hasNext();)
          {
@@ -166,7 +166,23 @@ class DocumentDataImpl extends BaseObjectData implements DocumentData
             entry.setValue(CmisConstants.CHECKIN_COMMENT, new StringValue(checkinComment));
          }
          storage.workingCopies.remove(getVersionSeriesId());
-         storage.versions.get(getVersionSeriesId()).add(pwcId);
+         List<String> versions = storage.versions.get(getVersionSeriesId());
+         // Checked in copy replaces previous latest version in folders.
+         String previousId = versions.get(versions.size() - 1);
+         Entry previous = storage.entries.get(previousId);
+         for (String parent : storage.parents.get(pwcId))
+         {
+            if (previous != null)
+            {
+               storage.names.remove(parent, previous.getName(), previousId);
+            }
+            storage.names.add(parent, getName(), entry);
+         }
+         versions.add(pwcId);
+      }
+      if (contentStream != null && storage.renditionManager != null)
+      {
+         storage.renditionManager.generateRenditions(this);
       }
       return this;
    }
@@ -184,7 +200,9 @@ class DocumentDataImpl extends BaseObjectData implements DocumentData
                + "Not allowed have more then one PWC for version series at a time.");
          }
 
-         Entry pwc = new Entry();
+         storage.validateMaxItemsNumber();
+
+         Entry pwc = new Entry(entry.getLayout());
          pwc.setValue(CmisConstants.OBJECT_TYPE_ID, new StringValue(type.getId()));
          pwc.setValue(CmisConstants.BASE_TYPE_ID, new StringValue(type.getBaseId().value()));
          pwc.setValue(CmisConstants.IS_IMMUTABLE, new BooleanValue(false));
@@ -205,16 +223,19 @@ class DocumentDataImpl extends BaseObjectData implements DocumentData
          pwc.setValue(CmisConstants.VERSION_SERIES_CHECKED_OUT_ID, new StringValue(pwcId));
          pwc.setValue(CmisConstants.VERSION_SERIES_CHECKED_OUT_BY, new StringValue(userId));
 
-         ByteArrayValue contentValue = (ByteArrayValue)entry.getValue(PropertyDefinitions.CONTENT);
+         ContentValue contentValue = (ContentValue)entry.getValue(PropertyDefinitions.CONTENT);
          if (contentValue != null)
          {
-            // check is max memory size reached
-            byte[] src = contentValue.getBytes();
-            storage.validateMemSize(src);
-
-            byte[] bytes = new byte[src.length];
-            System.arraycopy(src, 0, bytes, 0, bytes.length);
-            pwc.setValue(PropertyDefinitions.CONTENT, new ByteArrayValue(bytes));
+            ContentValue copy;
+            try
+            {
+               copy = storage.writeContent(contentValue.getStream());
+            }
+            catch (IOException e)
+            {
+               throw new StorageException("Unable copy content to Private Working Copy. " + e.getMessage(), e);
+            }
+            pwc.setValue(PropertyDefinitions.CONTENT, copy);
 
             String mimeType = getContentStreamMimeType();
             if (mimeType != null)
@@ -228,7 +249,7 @@ class DocumentDataImpl extends BaseObjectData implements DocumentData
                pwc.setValue(CmisConstants.CHARSET, new StringValue(charset));
             }
 
-            pwc.setValue(CmisConstants.CONTENT_STREAM_LENGTH, new IntegerValue(BigInteger.valueOf(bytes.length)));
+            pwc.setValue(CmisConstants.CONTENT_STREAM_LENGTH, new IntegerValue(BigInteger.valueOf(copy.getLength())));
             pwc.setValue(CmisConstants.CONTENT_STREAM_ID, new StringValue(pwcId));
             pwc.setValue(CmisConstants.CONTENT_STREAM_FILE_NAME, new StringValue(getName()));
          }
@@ -247,19 +268,11 @@ class DocumentDataImpl extends BaseObjectData implements DocumentData
          {
             storage.children.get(parent).add(pwcId);
          }
-         storage.parents.put(pwcId, new CopyOnWriteArraySet<String>(storage.parents.get(getObjectId())));
+         storage.parents.put(pwcId, new ConcurrentLinkedHashSet<String>(storage.parents.get(getObjectId())));
 
          storage.workingCopies.put(getVersionSeriesId(), pwcId);
 
-         DocumentDataImpl pwcObject =
-            new DocumentDataImpl(pwc, //
-               new TypeDefinition(type.getId(), type.getBaseId(), type.getQueryName(), type.getLocalName(), type
-                  .getLocalNamespace(), type.getParentId(), type.getDisplayName(), type.getDescription(), type
-                  .isCreatable(), type.isFileable(), type.isQueryable(), type.isFulltextIndexed(), type
-                  .isIncludedInSupertypeQuery(), type.isControllablePolicy(), type.isControllableACL(), type
-                  .isVersionable(), type.getAllowedSourceTypes(), type.getAllowedTargetTypes(), type
-                  .getContentStreamAllowed(), PropertyDefinitions.getAll(getTypeId())), //
-               storage);
+         DocumentDataImpl pwcObject = new DocumentDataImpl(pwc, storage.typeCache.get(getTypeId(), true), storage);
 
          return pwcObject;
       }
@@ -268,9 +281,9 @@ class DocumentDataImpl extends BaseObjectData implements DocumentData
    /**
     * {@inheritDoc}
     */
-   public ContentStream getContentStream()
+   public ContentStream getContentStream() throws IOException
    {
-      ByteArrayValue contentValue = (ByteArrayValue)entry.getValue(PropertyDefinitions.CONTENT);
+      ContentValue contentValue = (ContentValue)entry.getValue(PropertyDefinitions.CONTENT);
       if (contentValue != null/* && contentValue.getBytes().length > 0*/)
       {
          MimeType mimeType = MimeType.fromString(getString(CmisConstants.CONTENT_STREAM_MIME_TYPE));
@@ -279,7 +292,8 @@ class DocumentDataImpl extends BaseObjectData implements DocumentData
          {
             mimeType.getParameters().put(CmisConstants.CHARSET, charset);
          }
-         return new BaseContentStream(contentValue.getBytes(), getContentStreamFileName(), mimeType);
+         return new BaseContentStream(contentValue.getStream(), contentValue.getLength(), getContentStreamFileName(),
+            mimeType);
       }
       return null;
    }
@@ -287,7 +301,7 @@ class DocumentDataImpl extends BaseObjectData implements DocumentData
    /**
     * {@inheritDoc}
     */
-   public ContentStream getContentStream(String streamId)
+   public ContentStream getContentStream(String streamId) throws IOException
    {
       if (streamId == null || streamId.equals(getString(CmisConstants.CONTENT_STREAM_ID)))
       {
@@ -365,8 +379,8 @@ class DocumentDataImpl extends BaseObjectData implements DocumentData
     */
    public boolean hasContent()
    {
-      ByteArrayValue cv = (ByteArrayValue)entry.getValue(PropertyDefinitions.CONTENT);
-      return cv != null && cv.getBytes().length > 0;
+      ContentValue cv = (ContentValue)entry.getValue(PropertyDefinitions.CONTENT);
+      return cv != null && cv.getLength() > 0;
    }
 
    /**
@@ -420,10 +434,15 @@ class DocumentDataImpl extends BaseObjectData implements DocumentData
    {
       doSetContentStream(contentStream);
       save();
+      if (storage.renditionManager != null)
+      {
+         storage.renditionManager.generateRenditions(this);
+      }
    }
 
    private void doSetContentStream(ContentStream contentStream) throws IOException, StorageException
    {
+      ContentValue previous = (ContentValue)entry.getValue(PropertyDefinitions.CONTENT);
       if (contentStream == null || contentStream.getStream() == null)
       {
          entry.setValue(PropertyDefinitions.CONTENT, null);
@@ -435,8 +454,7 @@ class DocumentDataImpl extends BaseObjectData implements DocumentData
       }
       else
       {
-         ByteArrayValue cv = ByteArrayValue.fromStream(contentStream.getStream());
-         storage.validateMemSize(cv.getBytes());
+         ContentValue cv = storage.writeContent(contentStream.getStream());
 
          MimeType mimeType = contentStream.getMediaType();
          entry.setValue(PropertyDefinitions.CONTENT, cv);
@@ -446,11 +464,32 @@ class DocumentDataImpl extends BaseObjectData implements DocumentData
          {
             entry.setValue(CmisConstants.CHARSET, new StringValue(charset));
          }
-         entry
-            .setValue(CmisConstants.CONTENT_STREAM_LENGTH, new IntegerValue(BigInteger.valueOf(cv.getBytes().length)));
+         entry.setValue(CmisConstants.CONTENT_STREAM_LENGTH, new IntegerValue(BigInteger.valueOf(cv.getLength())));
          entry.setValue(CmisConstants.CONTENT_STREAM_ID, new StringValue(getObjectId()));
          entry.setValue(CmisConstants.CONTENT_STREAM_FILE_NAME, new StringValue(getName()));
       }
+      // New change token makes renditions of previous content unreachable.
+      entry.setValue(CmisConstants.CHANGE_TOKEN, new StringValue(StorageImpl.generateId()));
+      invalidateRenditions(getObjectId());
+      storage.entries.updated(entry);
+      if (previous != null)
+      {
+         previous.release();
+      }
+   }
+
+   /**
+    * Drop cached renditions of object. Must be called after any changes of
+    * content stream.
+    *
+    * @param objectId object id
+    */
+   private void invalidateRenditions(String objectId)
+   {
+      if (storage.renditionManager != null)
+      {
+         storage.renditionManager.invalidate(objectId);
+      }
    }
 
    protected void delete() throws StorageException, UpdateConflictException, VersioningException
@@ -473,21 +512,25 @@ class DocumentDataImpl extends BaseObjectData implements DocumentData
          String objectId = getObjectId();
          String vsId = getVersionSeriesId();
          storage.entries.remove(objectId);
+         invalidateRenditions(objectId);
          for (String parent : storage.parents.get(objectId))
          {
             storage.children.get(parent).remove(objectId);
+            storage.names.remove(parent, getName(), objectId);
          }
          storage.parents.remove(objectId);
          storage.unfiled.remove(objectId);
          for (String version : storage.versions.get(getVersionSeriesId()))
          {
             storage.entries.remove(version);
+            invalidateRenditions(version);
          }
          storage.versions.remove(vsId);
          String pwcId = storage.workingCopies.remove(vsId);
          if (pwcId != null)
          {
             storage.entries.remove(pwcId);
+            invalidateRenditions(pwcId);
          }
       }
    }
@@ -28,13 +28,15 @@ import org.xcmis.spi.model.PropertyType;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.net.URI;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArraySet;
 
 /**
  * @author <a href="mailto:andrey00x@gmail.com">Andrey Parfonov</a>
@@ -43,20 +45,64 @@ import java.util.concurrent.CopyOnWriteArraySet;
 final class Entry
 {
 
-   private Map<String, Value> values;
+   /**
+    * Properties which usually have few distinct values. Objects share
+    * instances of equal single values of these properties.
+    */
+   private static final Set<String> SHARED_PROPERTIES =
+      new HashSet<String>(Arrays.asList(CmisConstants.OBJECT_TYPE_ID, CmisConstants.BASE_TYPE_ID,
+         CmisConstants.CREATED_BY, CmisConstants.LAST_MODIFIED_BY, CmisConstants.VERSION_LABEL,
+         CmisConstants.VERSION_SERIES_CHECKED_OUT_BY, CmisConstants.CONTENT_STREAM_MIME_TYPE, CmisConstants.CHARSET));
+
+   /**
+    * Max number of shared string values.
+    */
+   private static final int MAX_SHARED_VALUES = 10000;
+
+   private static final ConcurrentHashMap<String, StringValue> SHARED_VALUES =
+      new ConcurrentHashMap<String, StringValue>();
+
+   private static final Value[] EMPTY = new Value[0];
+
+   private final EntryLayout layout;
+
+   /**
+    * Values of properties at slots of {@link #layout}. Array is never changed
+    * after publishing, each update replaces it with new one.
+    */
+   private volatile Value[] values = EMPTY;
 
    private Map<String, Set<String>> permissions;
 
    private Set<String> policies;
 
+   /**
+    * Content size of entry which is counted in {@link StorageUsage}. Guarded
+    * by entry itself.
+    */
+   long accountedContentSize;
+
+   /**
+    * Metadata size of entry which is counted in {@link StorageUsage}. Guarded
+    * by entry itself.
+    */
+   long accountedMetadataSize;
+
    public Entry()
    {
+      this(EntryLayout.DEFAULT);
+   }
+
+   public Entry(EntryLayout layout)
+   {
+      this.layout = layout;
    }
 
    public Entry(Map<String, Value> values, Set<String> policies, Map<String, Set<String>> permissions)
    {
-      this.values = values != null ? new ConcurrentHashMap<String, Value>(values) : null;
-      this.policies = policies != null ? new CopyOnWriteArraySet<String>(policies) : null;
+      this.layout = EntryLayout.DEFAULT;
+      setValues(values);
+      this.policies = policies != null ? new ConcurrentLinkedHashSet<String>(policies) : null;
       this.permissions = permissions != null ? new ConcurrentHashMap<String, Set<String>>(permissions) : null;
    }
 
@@ -67,7 +113,7 @@ final class Entry
 
    public BaseType getBaseTypeId()
    {
-      Value value = getValues().get(CmisConstants.BASE_TYPE_ID);
+      Value value = getValue(CmisConstants.BASE_TYPE_ID);
       if (value != null)
       {
          String[] strs = value.getStrings();
@@ -78,7 +124,18 @@ final class Entry
 
    public String getId()
    {
-      Value value = getValues().get(CmisConstants.OBJECT_ID);
+      Value value = getValue(CmisConstants.OBJECT_ID);
+      if (value != null)
+      {
+         String[] strs = value.getStrings();
+         return strs.length > 0 ? strs[0] : null;
+      }
+      return null;
+   }
+
+   public String getName()
+   {
+      Value value = getValue(CmisConstants.NAME);
       if (value != null)
       {
          String[] strs = value.getStrings();
@@ -100,14 +157,14 @@ final class Entry
    {
       if (policies == null)
       {
-         policies = new CopyOnWriteArraySet<String>();
+         policies = new ConcurrentLinkedHashSet<String>();
       }
       return policies;
    }
 
    public String getTypeId()
    {
-      Value value = getValues().get(CmisConstants.OBJECT_TYPE_ID);
+      Value value = getValue(CmisConstants.OBJECT_TYPE_ID);
       if (value != null)
       {
          String[] strs = value.getStrings();
@@ -116,18 +173,34 @@ final class Entry
       return null;
    }
 
+   public EntryLayout getLayout()
+   {
+      return layout;
+   }
+
    public Value getValue(String id)
    {
-      return getValues().get(id);
+      int slot = layout.getSlot(id);
+      Value[] vs = values;
+      return slot >= 0 && slot < vs.length ? vs[slot] : null;
    }
 
+   /**
+    * @return copy of all values of entry, changes of returned map do not
+    *         affect entry
+    */
    public Map<String, Value> getValues()
    {
-      if (values == null)
+      Value[] vs = values;
+      Map<String, Value> copy = new HashMap<String, Value>();
+      for (int slot = 0; slot < vs.length; slot++)
       {
-         values = new ConcurrentHashMap<String, Value>();
+         if (vs[slot] != null)
+         {
+            copy.put(layout.getId(slot), vs[slot]);
+         }
       }
-      return values;
+      return copy;
    }
 
    public void removePolicy(PolicyData policy)
@@ -180,14 +253,29 @@ final class Entry
 
    public void setValue(String id, Value value)
    {
-      Map<String, Value> vs = getValues();
       if (value == null)
       {
-         vs.remove(id);
+         int slot = layout.getSlot(id);
+         synchronized (this)
+         {
+            if (slot >= 0 && slot < values.length && values[slot] != null)
+            {
+               Value[] vs = values.clone();
+               vs[slot] = null;
+               values = vs;
+            }
+         }
       }
       else
       {
-         vs.put(id, value);
+         int slot = layout.addSlot(id);
+         value = share(id, value);
+         synchronized (this)
+         {
+            Value[] vs = Arrays.copyOf(values, Math.max(values.length, slot + 1));
+            vs[slot] = value;
+            values = vs;
+         }
       }
    }
 
@@ -207,4 +295,30 @@ final class Entry
       return getId();
    }
 
+   private static Value share(String id, Value value)
+   {
+      if (value.isBoolean())
+      {
+         return BooleanValue.valueOf((BooleanValue)value);
+      }
+      if (value.isString() && SHARED_PROPERTIES.contains(id))
+      {
+         String[] strs = value.getStrings();
+         if (strs.length == 1 && strs[0] != null)
+         {
+            StringValue shared = SHARED_VALUES.get(strs[0]);
+            if (shared != null)
+            {
+               return shared;
+            }
+            if (SHARED_VALUES.size() < MAX_SHARED_VALUES)
+            {
+               shared = SHARED_VALUES.putIfAbsent(strs[0], (StringValue)value);
+               return shared != null ? shared : value;
+            }
+         }
+      }
+      return value;
+   }
+
 }
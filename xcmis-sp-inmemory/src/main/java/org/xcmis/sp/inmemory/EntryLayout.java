@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.sp.inmemory;
+
+import org.xcmis.spi.model.PropertyDefinition;
+import org.xcmis.spi.model.TypeDefinition;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Positions of properties in value arrays of {@link Entry}. One layout is
+ * shared by all objects of the same type, so objects do not keep names of
+ * properties. Slots are assigned to properties of type definition first,
+ * other properties (e.g. internal ones or properties of type which is
+ * changed) get next free slot when they are set for the first time.
+ */
+final class EntryLayout
+{
+
+   /**
+    * Layout for objects which type is not known.
+    */
+   static final EntryLayout DEFAULT = new EntryLayout();
+
+   private final ConcurrentHashMap<String, Integer> slots = new ConcurrentHashMap<String, Integer>();
+
+   private volatile String[] ids = new String[0];
+
+   EntryLayout()
+   {
+   }
+
+   EntryLayout(TypeDefinition type)
+   {
+      if (type.getPropertyDefinitions() != null)
+      {
+         for (PropertyDefinition<?> definition : type.getPropertyDefinitions())
+         {
+            addSlot(definition.getId());
+         }
+      }
+   }
+
+   /**
+    * @param id property id
+    * @return slot of property or -1 if property has not slot yet
+    */
+   int getSlot(String id)
+   {
+      Integer slot = slots.get(id);
+      return slot != null ? slot : -1;
+   }
+
+   /**
+    * Get slot of property, new slot is assigned if property has not it yet.
+    *
+    * @param id property id
+    * @return slot of property
+    */
+   int addSlot(String id)
+   {
+      Integer slot = slots.get(id);
+      if (slot != null)
+      {
+         return slot;
+      }
+      synchronized (this)
+      {
+         slot = slots.get(id);
+         if (slot == null)
+         {
+            String[] newIds = Arrays.copyOf(ids, ids.length + 1);
+            newIds[ids.length] = id;
+            slot = ids.length;
+            ids = newIds;
+            slots.put(id, slot);
+         }
+         return slot;
+      }
+   }
+
+   /**
+    * @param slot slot
+    * @return id of property in slot
+    */
+   String getId(int slot)
+   {
+      return ids[slot];
+   }
+
+   /**
+    * @return number of slots
+    */
+   int size()
+   {
+      return ids.length;
+   }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.sp.inmemory;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Map of objects of storage which reports each addition, replacement and
+ * removal to {@link StorageUsage}. Changes of objects which are already in map
+ * must be reported explicitly or by putting object in map once again. Content
+ * of removed object is released.
+ */
+final class EntryMap extends ConcurrentHashMap<String, Entry>
+{
+   // NOTE : Name Entry is fully qualified in this class, otherwise it is resolved to inherited Map.Entry.
+
+   private static final long serialVersionUID = 1L;
+
+   private final transient StorageUsage usage;
+
+   EntryMap(StorageUsage usage)
+   {
+      this.usage = usage;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public org.xcmis.sp.inmemory.Entry put(String id, org.xcmis.sp.inmemory.Entry entry)
+   {
+      org.xcmis.sp.inmemory.Entry previous = super.put(id, entry);
+      if (previous == entry)
+      {
+         usage.updated(entry);
+      }
+      else
+      {
+         if (previous != null)
+         {
+            usage.removed(previous);
+         }
+         usage.added(entry);
+      }
+      return previous;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public org.xcmis.sp.inmemory.Entry remove(Object id)
+   {
+      org.xcmis.sp.inmemory.Entry removed = super.remove(id);
+      if (removed != null)
+      {
+         usage.removed(removed);
+         ContentValue content = (ContentValue)removed.getValue(PropertyDefinitions.CONTENT);
+         if (content != null)
+         {
+            content.release();
+         }
+      }
+      return removed;
+   }
+
+   /**
+    * Report changes of object which is already in map.
+    *
+    * @param entry object
+    */
+   void updated(org.xcmis.sp.inmemory.Entry entry)
+   {
+      if (get(entry.getId()) == entry)
+      {
+         usage.updated(entry);
+      }
+   }
+}
@@ -19,7 +19,6 @@
 
 package org.xcmis.sp.inmemory;
 
-import org.xcmis.spi.BaseItemsIterator;
 import org.xcmis.spi.CmisConstants;
 import org.xcmis.spi.CmisRuntimeException;
 import org.xcmis.spi.ConstraintException;
@@ -38,11 +37,10 @@ import org.xcmis.spi.model.RelationshipDirection;
 import org.xcmis.spi.model.TypeDefinition;
 import org.xcmis.spi.utils.Logger;
 
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.List;
-import java.util.Set;
+import java.util.NoSuchElementException;
 
 /**
  * @author <a href="mailto:andrew00x@gmail.com">Andrey Parfonov</a>
@@ -61,10 +59,29 @@ class FolderDataImpl extends BaseObjectData implements FolderData
 
    /**
     * {@inheritDoc}
+    * 
+    * @throws ConstraintException if folder already has other child with the
+    *         same name
     */
    public void addObject(ObjectData object) throws ConstraintException
    {
+      boolean named = object.getBaseType() != BaseType.DOCUMENT || ((DocumentData)object).isLatestVersion();
+      if (named)
+      {
+         // Children are visible by name only, so name must be unique in
+         // folder. FolderData.addObject may throw ConstraintException only.
+         String id = storage.getChildId(getObjectId(), object.getName());
+         if (id != null && !id.equals(object.getObjectId()))
+         {
+            throw new ConstraintException("Object with name " + object.getName()
+               + " already exists in destination folder.");
+         }
+      }
       storage.children.get(getObjectId()).add(object.getObjectId());
+      if (named)
+      {
+         storage.names.add(getObjectId(), object.getName(), ((BaseObjectData)object).entry);
+      }
       storage.parents.get(object.getObjectId()).add(getObjectId());
       storage.unfiled.remove(object.getObjectId());
       storage.indexListener.updated(object);
@@ -75,29 +92,24 @@ class FolderDataImpl extends BaseObjectData implements FolderData
     */
    public ItemsIterator<ObjectData> getChildren(String orderBy)
    {
-
-      Set<String> childrenIds = storage.children.get(getObjectId());
-      List<ObjectData> children = new ArrayList<ObjectData>(childrenIds.size());
-      for (String ch : childrenIds)
+      Iterator<String> ids = null;
+      if (orderBy != null)
       {
-         ObjectData object = null;
-         try
+         // Only first sort key is used, children may be sorted by name, creation date or last modification date.
+         String sortKey = orderBy.split(",")[0].trim();
+         if (sortKey.length() > 0)
          {
-            object = storage.getObjectById(ch);
+            String[] parts = sortKey.split("\\s+");
+            boolean descending = parts.length > 1 && "DESC".equalsIgnoreCase(parts[1]);
+            ids = storage.names.getChildren(getObjectId(), parts[0], descending);
          }
-         catch (ObjectNotFoundException e)
-         {
-            LOG.warn("Object " + ch + " not found in storage.");
-            continue;
-         }
-         if (object.getBaseType() == BaseType.DOCUMENT && !((DocumentData)object).isLatestVersion())
-         {
-            continue;
-         }
-         children.add(object);
       }
-
-      return new BaseItemsIterator<ObjectData>(children);
+      if (ids != null)
+      {
+         return new ChildrenIterator(ids, false);
+      }
+      // Insertion order. Not latest versions of documents must be skipped.
+      return new ChildrenIterator(storage.children.get(getObjectId()).iterator(), true);
    }
 
    /**
@@ -123,7 +135,7 @@ class FolderDataImpl extends BaseObjectData implements FolderData
     */
    public boolean hasChildren()
    {
-      return storage.children.get(getObjectId()).size() > 0;
+      return storage.names.getChildCount(getObjectId()) > 0;
    }
 
    /**
@@ -153,6 +165,7 @@ class FolderDataImpl extends BaseObjectData implements FolderData
    public void removeObject(ObjectData object)
    {
       storage.children.get(getObjectId()).remove(object.getObjectId());
+      storage.names.remove(getObjectId(), object.getName(), object.getObjectId());
       storage.parents.get(object.getObjectId()).remove(getObjectId());
       if (storage.parents.get(object.getObjectId()).size() == 0)
       {
@@ -161,6 +174,110 @@ class FolderDataImpl extends BaseObjectData implements FolderData
       storage.indexListener.updated(object);
    }
 
+   /**
+    * Iterator over children of folder. Objects are retrieved from storage
+    * only when they are requested, skipped items are never retrieved.
+    */
+   private final class ChildrenIterator implements ItemsIterator<ObjectData>
+   {
+      private final Iterator<String> ids;
+
+      private final boolean checkVisible;
+
+      private ObjectData next;
+
+      ChildrenIterator(Iterator<String> ids, boolean checkVisible)
+      {
+         this.ids = ids;
+         this.checkVisible = checkVisible;
+      }
+
+      public boolean hasNext()
+      {
+         return fetch() != null;
+      }
+
+      public ObjectData next()
+      {
+         ObjectData object = fetch();
+         if (object == null)
+         {
+            throw new NoSuchElementException();
+         }
+         next = null;
+         return object;
+      }
+
+      public void remove()
+      {
+         throw new UnsupportedOperationException("remove");
+      }
+
+      public int size()
+      {
+         return storage.names.getChildCount(getObjectId());
+      }
+
+      public void skip(int skip) throws NoSuchElementException
+      {
+         while (skip-- > 0)
+         {
+            if (next != null)
+            {
+               next = null;
+            }
+            else if (nextId() == null)
+            {
+               throw new NoSuchElementException();
+            }
+         }
+      }
+
+      private ObjectData fetch()
+      {
+         while (next == null)
+         {
+            String id = nextId();
+            if (id == null)
+            {
+               return null;
+            }
+            try
+            {
+               next = storage.getObjectById(id);
+            }
+            catch (ObjectNotFoundException e)
+            {
+               LOG.warn("Object " + id + " not found in storage.");
+            }
+         }
+         return next;
+      }
+
+      private String nextId()
+      {
+         while (ids.hasNext())
+         {
+            String id = ids.next();
+            if (!checkVisible || isVisible(id))
+            {
+               return id;
+            }
+         }
+         return null;
+      }
+
+      /**
+       * Child is visible if it is indexed by name in this folder. Only latest
+       * versions of documents are indexed.
+       */
+      private boolean isVisible(String id)
+      {
+         Entry child = storage.entries.get(id);
+         return child != null && id.equals(storage.names.getChild(getObjectId(), child.getName()));
+      }
+   }
+
    private String calculatePath()
    {
       if (isRoot())
@@ -222,9 +339,11 @@ class FolderDataImpl extends BaseObjectData implements FolderData
       for (String parent : storage.parents.get(objectId))
       {
          storage.children.get(parent).remove(objectId);
+         storage.names.remove(parent, getName(), objectId);
       }
       storage.parents.remove(objectId);
       storage.children.remove(objectId);
+      storage.names.removeFolder(objectId);
    }
 
 }
@@ -21,6 +21,7 @@ package org.xcmis.sp.inmemory;
 
 import org.xcmis.spi.Connection;
 import org.xcmis.spi.ObjectData;
+import org.xcmis.spi.ObjectTreeBuilder;
 import org.xcmis.spi.Storage;
 import org.xcmis.spi.UpdateConflictException;
 
@@ -55,4 +56,21 @@ public class InmemConnection extends Connection
       closed = true;
    }
 
+   /**
+    * @see org.xcmis.spi.Connection#getObjectTreeBuilder()
+    */
+   @Override
+   protected ObjectTreeBuilder getObjectTreeBuilder()
+   {
+      if (storage instanceof StorageImpl)
+      {
+         ObjectTreeBuilder builder = ((StorageImpl)storage).getObjectTreeBuilder();
+         if (builder != null)
+         {
+            return builder;
+         }
+      }
+      return super.getObjectTreeBuilder();
+   }
+
 }
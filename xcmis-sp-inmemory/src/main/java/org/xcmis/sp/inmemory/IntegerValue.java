@@ -23,39 +23,79 @@ import java.math.BigInteger;
 import java.util.List;
 
 /**
+ * Integers are kept as array of <code>long</code> if all of them are not
+ * <code>null</code> and fit to <code>long</code>.
+ *
  * @author <a href="mailto:andrew00x@gmail.com">Andrey Parfonov</a>
  * @version $Id$
  */
 public class IntegerValue extends Value
 {
 
+   private static final BigInteger MIN_LONG = BigInteger.valueOf(Long.MIN_VALUE);
+
+   private static final BigInteger MAX_LONG = BigInteger.valueOf(Long.MAX_VALUE);
+
+   private final long[] longs;
+
+   /**
+    * Values if they can't be kept as <code>long</code>, otherwise
+    * <code>null</code>.
+    */
    private final BigInteger[] values;
 
    public IntegerValue()
    {
-      this.values = new BigInteger[0];
+      this(new BigInteger[0]);
    }
 
    public IntegerValue(BigInteger value)
    {
-      this.values = new BigInteger[]{value};
+      this(new BigInteger[]{value});
    }
 
    public IntegerValue(List<BigInteger> l)
    {
-      this.values = l.toArray(new BigInteger[l.size()]);
+      this(l.toArray(new BigInteger[l.size()]));
    }
 
    public IntegerValue(BigInteger[] a)
    {
-      this.values = new BigInteger[a.length];
-      System.arraycopy(a, 0, this.values, 0, a.length);
+      boolean fit = true;
+      for (int i = 0; i < a.length && fit; i++)
+      {
+         fit = a[i] != null && a[i].compareTo(MIN_LONG) >= 0 && a[i].compareTo(MAX_LONG) <= 0;
+      }
+      if (fit)
+      {
+         this.longs = new long[a.length];
+         for (int i = 0; i < a.length; i++)
+         {
+            this.longs[i] = a[i].longValue();
+         }
+         this.values = null;
+      }
+      else
+      {
+         this.longs = null;
+         this.values = new BigInteger[a.length];
+         System.arraycopy(a, 0, this.values, 0, a.length);
+      }
    }
 
    @Override
    public BigInteger[] getIntegers()
    {
-      return values;
+      if (values != null)
+      {
+         return values.clone();
+      }
+      BigInteger[] integers = new BigInteger[longs.length];
+      for (int i = 0; i < longs.length; i++)
+      {
+         integers[i] = BigInteger.valueOf(longs[i]);
+      }
+      return integers;
    }
 
    @Override
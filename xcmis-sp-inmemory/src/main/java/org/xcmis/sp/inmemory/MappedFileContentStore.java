@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.sp.inmemory;
+
+import org.xcmis.spi.utils.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps content in files of configured directory. Content is written to file
+ * directly from source stream and read through memory mapping of file, so
+ * content does not occupy heap and is paged in by operating system. Each
+ * stream maps file itself and unmaps it when it is closed, so number of
+ * mappings is bounded by number of open streams. File is deleted when content
+ * is released and all its streams are closed.
+ */
+public class MappedFileContentStore implements ContentStore
+{
+   private static final Logger LOG = Logger.getLogger(MappedFileContentStore.class);
+
+   /**
+    * Max number of bytes transfered to file at once.
+    */
+   private static final long TRANSFER_SIZE = 1024 * 1024;
+
+   private static final String FILE_PREFIX = "xcmis";
+
+   private static final String FILE_SUFFIX = ".content";
+
+   private final class MappedFileValue extends ContentValue
+   {
+      private final File file;
+
+      private final long length;
+
+      private int openStreams;
+
+      private boolean released;
+
+      MappedFileValue(File file, long length)
+      {
+         this.file = file;
+         this.length = length;
+      }
+
+      @Override
+      public long getLength()
+      {
+         return length;
+      }
+
+      @Override
+      public synchronized InputStream getStream() throws IOException
+      {
+         if (released)
+         {
+            throw new IOException("Content is released.");
+         }
+         if (length == 0)
+         {
+            return new ByteArrayInputStream(new byte[0]);
+         }
+         InputStream stream;
+         MappedByteBuffer mapped = null;
+         if (length > Integer.MAX_VALUE)
+         {
+            // Too big for one mapping.
+            stream = new FileInputStream(file);
+         }
+         else
+         {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try
+            {
+               // Mapping stays valid after file is closed.
+               mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+            }
+            finally
+            {
+               raf.close();
+            }
+            stream = new ByteBufferInputStream(mapped);
+         }
+         openStreams++;
+         return new ContentInputStream(stream, mapped);
+      }
+
+      @Override
+      public synchronized void release()
+      {
+         if (!released)
+         {
+            released = true;
+            if (openStreams == 0)
+            {
+               delete(file);
+            }
+         }
+      }
+
+      private synchronized void streamClosed()
+      {
+         if (--openStreams == 0 && released)
+         {
+            delete(file);
+         }
+      }
+
+      /**
+       * Stream of content. Mapping of file belongs to stream and is unmapped
+       * when stream is closed, mapping of stream which is never closed is
+       * unmapped by garbage collector.
+       */
+      private final class ContentInputStream extends FilterInputStream
+      {
+         private MappedByteBuffer mapped;
+
+         private boolean closed;
+
+         ContentInputStream(InputStream in, MappedByteBuffer mapped)
+         {
+            super(in);
+            this.mapped = mapped;
+         }
+
+         @Override
+         public int read() throws IOException
+         {
+            ensureOpen();
+            return super.read();
+         }
+
+         @Override
+         public int read(byte[] b, int off, int len) throws IOException
+         {
+            ensureOpen();
+            return super.read(b, off, len);
+         }
+
+         @Override
+         public long skip(long n) throws IOException
+         {
+            ensureOpen();
+            return super.skip(n);
+         }
+
+         @Override
+         public int available() throws IOException
+         {
+            ensureOpen();
+            return super.available();
+         }
+
+         @Override
+         public synchronized void reset() throws IOException
+         {
+            ensureOpen();
+            super.reset();
+         }
+
+         @Override
+         public void close() throws IOException
+         {
+            if (!closed)
+            {
+               closed = true;
+               try
+               {
+                  super.close();
+               }
+               finally
+               {
+                  unmap();
+                  streamClosed();
+               }
+            }
+         }
+
+         private void unmap()
+         {
+            if (mapped != null && DirectContentStore.CLEANER != null)
+            {
+               try
+               {
+                  // File can't be deleted on some platforms while it is mapped.
+                  DirectContentStore.CLEANER.clean(mapped);
+               }
+               catch (Exception e)
+               {
+                  LOG.warn("Unable unmap content file " + file.getAbsolutePath() + ". " + e.getMessage());
+               }
+            }
+            mapped = null;
+         }
+
+         private void ensureOpen() throws IOException
+         {
+            // Mapping is unmapped after stream is closed.
+            if (closed)
+            {
+               throw new IOException("Stream closed.");
+            }
+         }
+      }
+   }
+
+   private final File directory;
+
+   private final Set<File> files = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+
+   /**
+    * Files of released content which could not be deleted yet, e.g. because
+    * they are still mapped by streams which were not closed.
+    */
+   private final Set<File> undeleted = Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+
+   /**
+    * @param directory directory for content files, created if it does not
+    *        exist. Content files left in directory by previous run are
+    *        removed.
+    */
+   public MappedFileContentStore(File directory)
+   {
+      if (!directory.isDirectory() && !directory.mkdirs())
+      {
+         throw new IllegalArgumentException("Unable create content directory " + directory.getAbsolutePath());
+      }
+      this.directory = directory;
+      File[] stale = directory.listFiles(new FilenameFilter()
+      {
+         public boolean accept(File dir, String name)
+         {
+            return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+         }
+      });
+      if (stale != null)
+      {
+         for (File file : stale)
+         {
+            delete(file);
+         }
+      }
+   }
+
+   /**
+    * @return directory of content files
+    */
+   public File getDirectory()
+   {
+      return directory;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public ContentValue write(InputStream stream) throws IOException
+   {
+      for (File file : undeleted)
+      {
+         delete(file);
+      }
+      File file = File.createTempFile(FILE_PREFIX, FILE_SUFFIX, directory);
+      files.add(file);
+      long length = 0;
+      ReadableByteChannel source = Channels.newChannel(stream);
+      FileOutputStream out = null;
+      try
+      {
+         out = new FileOutputStream(file);
+         FileChannel target = out.getChannel();
+         long r;
+         while ((r = target.transferFrom(source, length, TRANSFER_SIZE)) > 0)
+         {
+            length += r;
+         }
+      }
+      catch (IOException e)
+      {
+         if (out != null)
+         {
+            out.close();
+            out = null;
+         }
+         delete(file);
+         throw e;
+      }
+      finally
+      {
+         source.close();
+         if (out != null)
+         {
+            out.close();
+         }
+      }
+      return new MappedFileValue(file, length);
+   }
+
+   /**
+    * Remove all content files. Files which can't be deleted are deleted when
+    * virtual machine exits.
+    */
+   public void close()
+   {
+      for (File file : files)
+      {
+         delete(file);
+      }
+      for (File file : undeleted)
+      {
+         LOG.warn("Unable delete content file " + file.getAbsolutePath());
+         file.deleteOnExit();
+      }
+      undeleted.clear();
+   }
+
+   private void delete(File file)
+   {
+      files.remove(file);
+      if (file.exists() && !file.delete())
+      {
+         // Retried on next write.
+         undeleted.add(file);
+      }
+      else
+      {
+         undeleted.remove(file);
+      }
+   }
+}
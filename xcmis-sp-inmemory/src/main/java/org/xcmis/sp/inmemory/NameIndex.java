@@ -0,0 +1,451 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.sp.inmemory;
+
+import org.xcmis.spi.CmisConstants;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Names of children of each folder and bounded cache of resolved paths. Index
+ * contains children visible in folder, it does not contain not latest versions
+ * and Private Working Copies of documents. Index is maintained together with
+ * <code>children</code> map of storage. Children of each folder are also kept
+ * sorted by name, creation date and last modification date, so ordered pages
+ * of children are read without sorting. Any change which may make path of
+ * object different (rename, move, remove from folder or delete) drops cached
+ * paths.
+ */
+final class NameIndex
+{
+
+   /**
+    * Sort key of child by date. Children with the same date are ordered by
+    * id.
+    */
+   private static final class DateKey implements Comparable<DateKey>
+   {
+      final long time;
+
+      final String id;
+
+      DateKey(long time, String id)
+      {
+         this.time = time;
+         this.id = id;
+      }
+
+      public int compareTo(DateKey other)
+      {
+         if (time != other.time)
+         {
+            return time < other.time ? -1 : 1;
+         }
+         return id.compareTo(other.id);
+      }
+
+      @Override
+      public boolean equals(Object obj)
+      {
+         if (!(obj instanceof DateKey))
+         {
+            return false;
+         }
+         DateKey other = (DateKey)obj;
+         return time == other.time && id.equals(other.id);
+      }
+
+      @Override
+      public int hashCode()
+      {
+         return 31 * id.hashCode() + (int)(time ^ (time >>> 32));
+      }
+   }
+
+   /**
+    * Children of one folder. Changes are made under lock of object, readers
+    * do not lock.
+    */
+   private static final class Children
+   {
+      final ConcurrentNavigableMap<String, String> byName = new ConcurrentSkipListMap<String, String>();
+
+      final ConcurrentSkipListSet<DateKey> byCreationDate = new ConcurrentSkipListSet<DateKey>();
+
+      final ConcurrentSkipListSet<DateKey> byModificationDate = new ConcurrentSkipListSet<DateKey>();
+
+      /** Id of child to its keys in date orderings: creation, modification. */
+      final ConcurrentMap<String, DateKey[]> dates = new ConcurrentHashMap<String, DateKey[]>();
+   }
+
+   /**
+    * Iterator over ids of children in order of date keys.
+    */
+   private static final class DateKeyIterator implements Iterator<String>
+   {
+      private final Iterator<DateKey> keys;
+
+      DateKeyIterator(Iterator<DateKey> keys)
+      {
+         this.keys = keys;
+      }
+
+      public boolean hasNext()
+      {
+         return keys.hasNext();
+      }
+
+      public String next()
+      {
+         return keys.next().id;
+      }
+
+      public void remove()
+      {
+         throw new UnsupportedOperationException("remove");
+      }
+   }
+
+   /** Children of each folder. */
+   private final Map<String, Children> folders = new ConcurrentHashMap<String, Children>();
+
+   /** Path to id of object, least recently used paths are evicted first. */
+   private final Map<String, String> paths;
+
+   /** Incremented each time cached paths are dropped. Guarded by paths. */
+   private long pathGeneration;
+
+   /**
+    * @param pathCacheSize max number of cached paths, if not positive then
+    *        paths are not cached
+    */
+   NameIndex(final int pathCacheSize)
+   {
+      this.paths = pathCacheSize > 0 ? new LinkedHashMap<String, String>(16, 0.75f, true)
+      {
+         private static final long serialVersionUID = 1L;
+
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+         {
+            return size() > pathCacheSize;
+         }
+      } : null;
+   }
+
+   /**
+    * Start index of new folder.
+    *
+    * @param folderId folder id
+    */
+   void addFolder(String folderId)
+   {
+      folders.put(folderId, new Children());
+   }
+
+   /**
+    * Drop index of removed folder.
+    *
+    * @param folderId folder id
+    */
+   void removeFolder(String folderId)
+   {
+      folders.remove(folderId);
+      invalidatePaths();
+   }
+
+   /**
+    * Get child of folder with specified name.
+    *
+    * @param folderId folder id
+    * @param name name of child
+    * @return id of child or <code>null</code> if folder has not child with
+    *         such name or folder does not exist
+    */
+   String getChild(String folderId, String name)
+   {
+      Children children = folders.get(folderId);
+      return children != null && name != null ? children.byName.get(name) : null;
+   }
+
+   /**
+    * @param folderId folder id
+    * @return number of children in folder
+    */
+   int getChildCount(String folderId)
+   {
+      Children children = folders.get(folderId);
+      return children != null ? children.dates.size() : 0;
+   }
+
+   /**
+    * Get ids of children of folder sorted by property.
+    *
+    * @param folderId folder id
+    * @param propertyId property to sort by, one of {@link CmisConstants#NAME},
+    *        {@link CmisConstants#CREATION_DATE} or
+    *        {@link CmisConstants#LAST_MODIFICATION_DATE}
+    * @param descending <code>true</code> for descending order
+    * @return ids of children or <code>null</code> if children can't be sorted
+    *         by property <code>propertyId</code>
+    */
+   Iterator<String> getChildren(String folderId, String propertyId, boolean descending)
+   {
+      Children children = folders.get(folderId);
+      if (children == null)
+      {
+         return null;
+      }
+      if (CmisConstants.NAME.equals(propertyId))
+      {
+         return (descending ? children.byName.descendingMap() : children.byName).values().iterator();
+      }
+      NavigableSet<DateKey> keys = null;
+      if (CmisConstants.CREATION_DATE.equals(propertyId))
+      {
+         keys = children.byCreationDate;
+      }
+      else if (CmisConstants.LAST_MODIFICATION_DATE.equals(propertyId))
+      {
+         keys = children.byModificationDate;
+      }
+      if (keys == null)
+      {
+         return null;
+      }
+      return new DateKeyIterator(descending ? keys.descendingIterator() : keys.iterator());
+   }
+
+   /**
+    * Add child to folder. Child already indexed under the same name is not
+    * replaced.
+    *
+    * @param folderId folder id
+    * @param name name of child
+    * @param entry child
+    */
+   void add(String folderId, String name, Entry entry)
+   {
+      Children children = folders.get(folderId);
+      if (children == null || name == null)
+      {
+         return;
+      }
+      String id = entry.getId();
+      synchronized (children)
+      {
+         if (children.byName.putIfAbsent(name, id) != null)
+         {
+            return;
+         }
+         DateKey created = new DateKey(getTime(entry, CmisConstants.CREATION_DATE), id);
+         DateKey modified = new DateKey(getTime(entry, CmisConstants.LAST_MODIFICATION_DATE), id);
+         children.byCreationDate.add(created);
+         children.byModificationDate.add(modified);
+         children.dates.put(id, new DateKey[]{created, modified});
+      }
+   }
+
+   /**
+    * Remove child from folder if it is indexed under specified name.
+    *
+    * @param folderId folder id
+    * @param name name of child
+    * @param id id of child
+    * @return <code>true</code> if child was removed
+    */
+   boolean remove(String folderId, String name, String id)
+   {
+      Children children = folders.get(folderId);
+      if (children == null || name == null)
+      {
+         return false;
+      }
+      synchronized (children)
+      {
+         if (!children.byName.remove(name, id))
+         {
+            return false;
+         }
+         DateKey[] keys = children.dates.remove(id);
+         if (keys != null)
+         {
+            children.byCreationDate.remove(keys[0]);
+            children.byModificationDate.remove(keys[1]);
+         }
+      }
+      invalidatePaths();
+      return true;
+   }
+
+   /**
+    * Change name of child in all its parents. Nothing is done for parents
+    * which do not have child in index.
+    *
+    * @param parentIds ids of parents
+    * @param oldName current name of child
+    * @param newName new name of child
+    * @param id id of child
+    */
+   void rename(Collection<String> parentIds, String oldName, String newName, String id)
+   {
+      for (String parentId : parentIds)
+      {
+         Children children = folders.get(parentId);
+         if (children == null || oldName == null || newName == null)
+         {
+            continue;
+         }
+         synchronized (children)
+         {
+            if (children.byName.remove(oldName, id))
+            {
+               children.byName.put(newName, id);
+            }
+         }
+      }
+      invalidatePaths();
+   }
+
+   /**
+    * Update last modification date of child in all its parents.
+    *
+    * @param parentIds ids of parents
+    * @param entry child
+    */
+   void modified(Collection<String> parentIds, Entry entry)
+   {
+      String id = entry.getId();
+      DateKey modified = new DateKey(getTime(entry, CmisConstants.LAST_MODIFICATION_DATE), id);
+      for (String parentId : parentIds)
+      {
+         Children children = folders.get(parentId);
+         if (children == null)
+         {
+            continue;
+         }
+         synchronized (children)
+         {
+            DateKey[] keys = children.dates.get(id);
+            if (keys != null && !keys[1].equals(modified))
+            {
+               children.byModificationDate.remove(keys[1]);
+               children.byModificationDate.add(modified);
+               children.dates.put(id, new DateKey[]{keys[0], modified});
+            }
+         }
+      }
+   }
+
+   /**
+    * Get id of object from cache of paths.
+    *
+    * @param path path
+    * @return id of object or <code>null</code> if path is not cached
+    */
+   String getCachedPath(String path)
+   {
+      if (paths == null)
+      {
+         return null;
+      }
+      synchronized (paths)
+      {
+         return paths.get(path);
+      }
+   }
+
+   /**
+    * @return current generation of cached paths, it must be obtained before
+    *         path is resolved and passed to
+    *         {@link #cachePath(String, String, long)}
+    */
+   long getPathGeneration()
+   {
+      if (paths == null)
+      {
+         return 0;
+      }
+      synchronized (paths)
+      {
+         return pathGeneration;
+      }
+   }
+
+   /**
+    * Put resolved path in cache. Path is not cached if cached paths were
+    * dropped while it was resolved.
+    *
+    * @param path path
+    * @param id id of object
+    * @param generation generation of cached paths before path was resolved
+    */
+   void cachePath(String path, String id, long generation)
+   {
+      if (paths != null)
+      {
+         synchronized (paths)
+         {
+            if (generation == pathGeneration)
+            {
+               paths.put(path, id);
+            }
+         }
+      }
+   }
+
+   /**
+    * Drop all cached paths.
+    */
+   void invalidatePaths()
+   {
+      if (paths != null)
+      {
+         synchronized (paths)
+         {
+            paths.clear();
+            pathGeneration++;
+         }
+      }
+   }
+
+   private static long getTime(Entry entry, String propertyId)
+   {
+      Value value = entry.getValue(propertyId);
+      if (value != null && value.isDate())
+      {
+         DateValue dates = (DateValue)value;
+         if (dates.size() > 0 && dates.getTime(0) != Long.MIN_VALUE)
+         {
+            return dates.getTime(0);
+         }
+      }
+      return 0;
+   }
+
+}
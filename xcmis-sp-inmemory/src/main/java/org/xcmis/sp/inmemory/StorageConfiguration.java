@@ -25,6 +25,30 @@ package org.xcmis.sp.inmemory;
  */
 public class StorageConfiguration
 {
+   /** Default max number of objects waiting for indexing. */
+   public static final int DEFAULT_INDEX_QUEUE_SIZE = 1000;
+
+   /** Default max number of objects indexed at once. */
+   public static final int DEFAULT_INDEX_BATCH_SIZE = 100;
+
+   /** Default max number of cached paths of objects. */
+   public static final int DEFAULT_PATH_CACHE_SIZE = 1000;
+
+   /** Default max number of events in change log. */
+   public static final int DEFAULT_CHANGE_LOG_MAX_SIZE = 100000;
+
+   /** Content is kept in heap, see {@link HeapContentStore}. */
+   public static final String CONTENT_STORE_HEAP = "heap";
+
+   /** Content is kept in direct buffers, see {@link DirectContentStore}. */
+   public static final String CONTENT_STORE_DIRECT = "direct";
+
+   /**
+    * Content is kept in memory mapped files, see
+    * {@link MappedFileContentStore}.
+    */
+   public static final String CONTENT_STORE_MAPPED = "mapped";
+
    /** Storage id. */
    private String id;
 
@@ -40,6 +64,45 @@ public class StorageConfiguration
    /** Max number of objects allowed to be added in storage. */
    private long maxItemsNum;
 
+   /**
+    * Max number of objects waiting for indexing. If not positive then objects
+    * are indexed immediately.
+    */
+   private int indexQueueSize = DEFAULT_INDEX_QUEUE_SIZE;
+
+   /** Max number of objects indexed at once. */
+   private int indexBatchSize = DEFAULT_INDEX_BATCH_SIZE;
+
+   /** Wait until each change is visible in index. */
+   private boolean indexWaitForVisibility;
+
+   /** Type of content store or class name of {@link ContentStore}. */
+   private String contentStore = CONTENT_STORE_HEAP;
+
+   /** Directory for content files of mapped content store. */
+   private String contentDirectory;
+
+   /** Max number of cached paths of objects. If not positive then paths are not cached. */
+   private int pathCacheSize = DEFAULT_PATH_CACHE_SIZE;
+
+   /** Max number of events in change log. If not positive then number of events is not limited. */
+   private int changeLogMaxSize = DEFAULT_CHANGE_LOG_MAX_SIZE;
+
+   /** Max age of events in change log in milliseconds. If not positive then age is not limited. */
+   private long changeLogMaxAge;
+
+   /** Directory of change log file. If not set then change log is kept in memory only. */
+   private String changeLogDirectory;
+
+   /** Number of workers which build object trees. If not greater then one then trees are built by caller. */
+   private int objectTreeParallelism;
+
+   /** Max number of objects in one tree. If not positive then number of objects is not limited. */
+   private int objectTreeMaxNodes;
+
+   /** Max time of building one tree in milliseconds. If not positive then time is not limited. */
+   private long objectTreeTimeout;
+
    StorageConfiguration()
    {
    }
@@ -140,4 +203,221 @@ public class StorageConfiguration
       this.description = description;
    }
 
+   /**
+    * @return max number of objects waiting for indexing, if not positive then
+    *         objects are indexed immediately
+    */
+   public int getIndexQueueSize()
+   {
+      return indexQueueSize;
+   }
+
+   /**
+    * @param indexQueueSize max number of objects waiting for indexing, if not
+    *        positive then objects are indexed immediately
+    */
+   public void setIndexQueueSize(int indexQueueSize)
+   {
+      this.indexQueueSize = indexQueueSize;
+   }
+
+   /**
+    * @return max number of objects indexed at once
+    */
+   public int getIndexBatchSize()
+   {
+      return indexBatchSize;
+   }
+
+   /**
+    * @param indexBatchSize max number of objects indexed at once
+    */
+   public void setIndexBatchSize(int indexBatchSize)
+   {
+      this.indexBatchSize = indexBatchSize;
+   }
+
+   /**
+    * @return <code>true</code> if each change waits until it is visible in
+    *         index
+    */
+   public boolean isIndexWaitForVisibility()
+   {
+      return indexWaitForVisibility;
+   }
+
+   /**
+    * @param indexWaitForVisibility <code>true</code> if each change should
+    *        wait until it is visible in index, queries always see changes
+    *        made before them by the same thread
+    */
+   public void setIndexWaitForVisibility(boolean indexWaitForVisibility)
+   {
+      this.indexWaitForVisibility = indexWaitForVisibility;
+   }
+
+   /**
+    * @return type of content store: {@link #CONTENT_STORE_HEAP},
+    *         {@link #CONTENT_STORE_DIRECT}, {@link #CONTENT_STORE_MAPPED} or
+    *         class name of {@link ContentStore} implementation
+    */
+   public String getContentStore()
+   {
+      return contentStore;
+   }
+
+   /**
+    * @param contentStore type of content store: {@link #CONTENT_STORE_HEAP},
+    *        {@link #CONTENT_STORE_DIRECT}, {@link #CONTENT_STORE_MAPPED} or
+    *        class name of {@link ContentStore} implementation
+    */
+   public void setContentStore(String contentStore)
+   {
+      this.contentStore = contentStore;
+   }
+
+   /**
+    * @return directory for content files of mapped content store, if
+    *         <code>null</code> then temporary directory is used
+    */
+   public String getContentDirectory()
+   {
+      return contentDirectory;
+   }
+
+   /**
+    * @param contentDirectory directory for content files of mapped content
+    *        store
+    */
+   public void setContentDirectory(String contentDirectory)
+   {
+      this.contentDirectory = contentDirectory;
+   }
+
+   /**
+    * @return max number of cached paths of objects, if not positive then
+    *         paths are not cached
+    */
+   public int getPathCacheSize()
+   {
+      return pathCacheSize;
+   }
+
+   /**
+    * @param pathCacheSize max number of cached paths of objects, if not
+    *        positive then paths are not cached
+    */
+   public void setPathCacheSize(int pathCacheSize)
+   {
+      this.pathCacheSize = pathCacheSize;
+   }
+
+   /**
+    * @return max number of events in change log, if not positive then number
+    *         of events is not limited
+    */
+   public int getChangeLogMaxSize()
+   {
+      return changeLogMaxSize;
+   }
+
+   /**
+    * @param changeLogMaxSize max number of events in change log, if not
+    *        positive then number of events is not limited
+    */
+   public void setChangeLogMaxSize(int changeLogMaxSize)
+   {
+      this.changeLogMaxSize = changeLogMaxSize;
+   }
+
+   /**
+    * @return max age of events in change log in milliseconds, if not positive
+    *         then age of events is not limited
+    */
+   public long getChangeLogMaxAge()
+   {
+      return changeLogMaxAge;
+   }
+
+   /**
+    * @param changeLogMaxAge max age of events in change log in milliseconds,
+    *        if not positive then age of events is not limited
+    */
+   public void setChangeLogMaxAge(long changeLogMaxAge)
+   {
+      this.changeLogMaxAge = changeLogMaxAge;
+   }
+
+   /**
+    * @return directory of change log file, if <code>null</code> then change
+    *         log is kept in memory only
+    */
+   public String getChangeLogDirectory()
+   {
+      return changeLogDirectory;
+   }
+
+   /**
+    * @param changeLogDirectory directory of change log file, if
+    *        <code>null</code> then change log is kept in memory only
+    */
+   public void setChangeLogDirectory(String changeLogDirectory)
+   {
+      this.changeLogDirectory = changeLogDirectory;
+   }
+
+   /**
+    * @return number of workers which build object trees, if not greater then
+    *         one then trees are built by caller
+    */
+   public int getObjectTreeParallelism()
+   {
+      return objectTreeParallelism;
+   }
+
+   /**
+    * @param objectTreeParallelism number of workers which build object trees,
+    *        if not greater then one then trees are built by caller
+    */
+   public void setObjectTreeParallelism(int objectTreeParallelism)
+   {
+      this.objectTreeParallelism = objectTreeParallelism;
+   }
+
+   /**
+    * @return max number of objects in one tree, if not positive then number
+    *         of objects is not limited
+    */
+   public int getObjectTreeMaxNodes()
+   {
+      return objectTreeMaxNodes;
+   }
+
+   /**
+    * @param objectTreeMaxNodes max number of objects in one tree, if not
+    *        positive then number of objects is not limited
+    */
+   public void setObjectTreeMaxNodes(int objectTreeMaxNodes)
+   {
+      this.objectTreeMaxNodes = objectTreeMaxNodes;
+   }
+
+   /**
+    * @return max time of building one tree in milliseconds, if not positive
+    *         then time is not limited
+    */
+   public long getObjectTreeTimeout()
+   {
+      return objectTreeTimeout;
+   }
+
+   /**
+    * @param objectTreeTimeout max time of building one tree in milliseconds,
+    *        if not positive then time is not limited
+    */
+   public void setObjectTreeTimeout(long objectTreeTimeout)
+   {
+      this.objectTreeTimeout = objectTreeTimeout;
+   }
+
 }
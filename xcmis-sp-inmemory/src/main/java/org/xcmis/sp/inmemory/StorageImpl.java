@@ -29,9 +29,11 @@ import org.xcmis.search.config.IndexConfiguration;
 import org.xcmis.search.config.SearchServiceConfiguration;
 import org.xcmis.search.model.column.Column;
 import org.xcmis.search.model.source.SelectorName;
+import org.xcmis.search.parser.CachingQueryParser;
 import org.xcmis.search.parser.CmisQueryParser;
 import org.xcmis.search.parser.QueryParser;
 import org.xcmis.search.query.QueryExecutionException;
+import org.xcmis.search.result.QueryResultList;
 import org.xcmis.search.result.ScoredRow;
 import org.xcmis.search.value.ToStringNameConverter;
 import org.xcmis.sp.inmemory.query.CmisContentReader;
@@ -52,6 +54,7 @@ import org.xcmis.spi.NameConstraintViolationException;
 import org.xcmis.spi.ObjectData;
 import org.xcmis.spi.ObjectDataVisitor;
 import org.xcmis.spi.ObjectNotFoundException;
+import org.xcmis.spi.ObjectTreeBuilder;
 import org.xcmis.spi.PermissionService;
 import org.xcmis.spi.PolicyData;
 import org.xcmis.spi.QueryNameTypeManager;
@@ -98,7 +101,10 @@ import org.xcmis.spi.utils.CmisUtils;
 import org.xcmis.spi.utils.Logger;
 import org.xcmis.spi.utils.MimeType;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
@@ -106,19 +112,23 @@ import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.CopyOnWriteArraySet;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 /**
  * In-memory implementation of xCMIS storage. This is storage is limited in
@@ -151,12 +161,15 @@ public class StorageImpl implements Storage
       return UUID.randomUUID().toString();
    }
 
-   final Map<String, Entry> entries;
+   final EntryMap entries;
 
    final Map<String, Set<String>> children;
 
    final Map<String, Set<String>> parents;
 
+   /** Names of children of folders and cache of paths. */
+   final NameIndex names;
+
    final Set<String> unfiled;
 
    final Map<String, Set<String>> relationships;
@@ -169,6 +182,12 @@ public class StorageImpl implements Storage
 
    final Map<String, Set<String>> typeChildren;
 
+   /** Shared type definitions. */
+   final TypeDefinitionCache typeCache;
+
+   /** Layouts of properties of objects, by type id. */
+   final ConcurrentHashMap<String, EntryLayout> layouts = new ConcurrentHashMap<String, EntryLayout>();
+
    final IndexListener indexListener;
 
    /** Searche service. */
@@ -177,7 +196,7 @@ public class StorageImpl implements Storage
    /** Cmis query parser. */
    final QueryParser cmisQueryParser;
 
-   final List<ChangeEvent> changes;
+   final ChangeLog changes;
 
    RenditionManager renditionManager;
 
@@ -187,6 +206,18 @@ public class StorageImpl implements Storage
 
    private final StorageConfiguration configuration;
 
+   /** Number of objects and memory used by them. */
+   final StorageUsage usage;
+
+   /** Keeps content of documents. */
+   final ContentStore contentStore;
+
+   /**
+    * Builder of object trees configured for this storage or <code>null</code>
+    * if default builder should be used.
+    */
+   private final ObjectTreeBuilder objectTreeBuilder;
+
    public StorageImpl(StorageConfiguration configuration, RenditionManager manager, 
            PermissionService permissionService) throws TikaException
    {
@@ -199,15 +230,32 @@ public class StorageImpl implements Storage
    {
       this.configuration = configuration;
 
-      this.entries = new ConcurrentHashMap<String, Entry>();
+      this.usage = new StorageUsage(configuration);
+      this.contentStore = createContentStore(configuration);
+      this.entries = new EntryMap(usage);
       this.children = new ConcurrentHashMap<String, Set<String>>();
       this.parents = new ConcurrentHashMap<String, Set<String>>();
+      this.names = new NameIndex(configuration.getPathCacheSize());
       this.versions = new ConcurrentHashMap<String, List<String>>();
       this.workingCopies = new ConcurrentHashMap<String, String>();
-      this.unfiled = new CopyOnWriteArraySet<String>();
+      this.unfiled = new ConcurrentLinkedHashSet<String>();
       this.relationships = new ConcurrentHashMap<String, Set<String>>();
       this.types = new ConcurrentHashMap<String, TypeDefinition>();
-      this.changes = new CopyOnWriteArrayList<ChangeEvent>();
+      String changeLogDirectory = configuration.getChangeLogDirectory();
+      this.changes =
+         new ChangeLog(configuration.getChangeLogMaxSize(), configuration.getChangeLogMaxAge(),
+            changeLogDirectory != null && changeLogDirectory.length() > 0 ? new File(changeLogDirectory) : null);
+      if (configuration.getObjectTreeParallelism() > 1 || configuration.getObjectTreeMaxNodes() > 0
+         || configuration.getObjectTreeTimeout() > 0)
+      {
+         this.objectTreeBuilder =
+            new ObjectTreeBuilder(configuration.getObjectTreeParallelism(), configuration.getObjectTreeMaxNodes(),
+               configuration.getObjectTreeTimeout());
+      }
+      else
+      {
+         this.objectTreeBuilder = null;
+      }
 
       PermissionMapping permissionMapping = new PermissionMapping();
       permissionMapping.put(PermissionMapping.CAN_GET_DESCENDENTS_FOLDER, //
@@ -325,6 +373,8 @@ public class StorageImpl implements Storage
       typeChildren.put("cmis:policy", new HashSet<String>());
       typeChildren.put("cmis:relationship", new HashSet<String>());
 
+      typeCache = new TypeDefinitionCache(types, typeChildren);
+
       Map<String, Value> root = new ConcurrentHashMap<String, Value>();
       root.put(CmisConstants.NAME, new StringValue(""));
       root.put(CmisConstants.OBJECT_ID, new StringValue(ROOT_FOLDER_ID));
@@ -344,11 +394,15 @@ public class StorageImpl implements Storage
 
       entries.put(rootEntry.getId(), rootEntry);
       parents.put(ROOT_FOLDER_ID, EMPTY_PARENTS);
-      children.put(ROOT_FOLDER_ID, new CopyOnWriteArraySet<String>());
+      children.put(ROOT_FOLDER_ID, new ConcurrentLinkedHashSet<String>());
+      names.addFolder(ROOT_FOLDER_ID);
 
       this.searchService = getInitializedSearchService();
-      this.indexListener = new IndexListener(searchService);
-      this.cmisQueryParser = new CmisQueryParser();
+      this.indexListener =
+         new IndexListener(searchService, this, configuration.getIndexQueueSize(), configuration.getIndexBatchSize(),
+            configuration.isIndexWaitForVisibility());
+      this.cmisQueryParser = new CachingQueryParser(new CmisQueryParser(), CachingQueryParser.DEFAULT_SIZE);
+      registerUsage();
    }
 
    /**
@@ -409,6 +463,8 @@ public class StorageImpl implements Storage
       Collection<PolicyData> policies, VersioningState versioningState) throws ConstraintException,
       NameConstraintViolationException, IOException, StorageException
    {
+      validateMaxItemsNumber();
+
       String name = null;
       Property<?> nameProperty = properties.get(CmisConstants.NAME);
       if (nameProperty != null && nameProperty.getValues().size() > 0)
@@ -424,19 +480,12 @@ public class StorageImpl implements Storage
          throw new NameConstraintViolationException("Name for new document must be provided.");
       }
 
-      if (parent != null)
+      if (parent != null && getChildId(parent.getObjectId(), name) != null)
       {
-         for (ItemsIterator<ObjectData> iterator = parent.getChildren(null); iterator.hasNext();)
-         {
-            if (name.equals(iterator.next().getName()))
-            {
-               throw new NameConstraintViolationException("Object with name " + name
-                  + " already exists in parent folder.");
-            }
-         }
+         throw new NameConstraintViolationException("Object with name " + name + " already exists in parent folder.");
       }
 
-      Entry docEntry = new Entry();
+      Entry docEntry = new Entry(getLayout(typeDefinition));
 
       docEntry.setValue(CmisConstants.OBJECT_TYPE_ID, new StringValue(typeDefinition.getId()));
       docEntry.setValue(CmisConstants.BASE_TYPE_ID, new StringValue(typeDefinition.getBaseId().value()));
@@ -464,7 +513,7 @@ public class StorageImpl implements Storage
 
       if (content != null)
       {
-         ByteArrayValue cv = ByteArrayValue.fromStream(content.getStream());
+         ContentValue cv = writeContent(content.getStream());
          docEntry.setValue(PropertyDefinitions.CONTENT, cv);
          MimeType mimeType = content.getMediaType();
          docEntry.setValue(CmisConstants.CONTENT_STREAM_MIME_TYPE, new StringValue(mimeType.getBaseType()));
@@ -474,7 +523,7 @@ public class StorageImpl implements Storage
             docEntry.setValue(CmisConstants.CHARSET, new StringValue(charset));
          }
          docEntry.setValue(CmisConstants.CONTENT_STREAM_LENGTH, new IntegerValue(BigInteger
-            .valueOf(cv.getBytes().length)));
+            .valueOf(cv.getLength())));
          docEntry.setValue(CmisConstants.CONTENT_STREAM_ID, new StringValue(docId));
 
          Property<?> contentFileNameProperty = properties.get(CmisConstants.CONTENT_STREAM_FILE_NAME);
@@ -498,6 +547,11 @@ public class StorageImpl implements Storage
             docEntry.setProperty(property);
          }
       }
+      if (docEntry.getName() == null)
+      {
+         // Name taken from content, keep it in entry to be able find document by name.
+         docEntry.setValue(CmisConstants.NAME, new StringValue(name));
+      }
 
       if (policies != null && policies.size() > 0)
       {
@@ -515,14 +569,15 @@ public class StorageImpl implements Storage
       if (parent != null)
       {
          children.get(parent.getObjectId()).add(docId);
-         Set<String> set = new CopyOnWriteArraySet<String>();
+         names.add(parent.getObjectId(), name, docEntry);
+         Set<String> set = new ConcurrentLinkedHashSet<String>();
          set.add(parent.getObjectId());
          parents.put(docId, set);
       }
       else
       {
          unfiled.add(docId);
-         parents.put(docId, new CopyOnWriteArraySet<String>());
+         parents.put(docId, new ConcurrentLinkedHashSet<String>());
       }
       List<String> set = new CopyOnWriteArrayList<String>();
       set.add(docId);
@@ -534,6 +589,11 @@ public class StorageImpl implements Storage
 
       changes.add(new ChangeEvent(generateId(), docId, ChangeType.CREATED, (Calendar)cal.clone()));
 
+      if (content != null && renditionManager != null)
+      {
+         renditionManager.generateRenditions(document);
+      }
+
       return document;
    }
 
@@ -544,6 +604,8 @@ public class StorageImpl implements Storage
       Map<String, Property<?>> properties, List<AccessControlEntry> acl, Collection<PolicyData> policies)
       throws ConstraintException, NameConstraintViolationException, StorageException
    {
+      validateMaxItemsNumber();
+
       if (parent == null)
       {
          throw new ConstraintException("Parent folder must be provided.");
@@ -560,15 +622,12 @@ public class StorageImpl implements Storage
          throw new NameConstraintViolationException("Name for new folder must be provided.");
       }
 
-      for (ItemsIterator<ObjectData> iterator = parent.getChildren(null); iterator.hasNext();)
+      if (getChildId(parent.getObjectId(), name) != null)
       {
-         if (name.equals(iterator.next().getName()))
-         {
-            throw new NameConstraintViolationException("Object with name " + name + " already exists in parent folder.");
-         }
+         throw new NameConstraintViolationException("Object with name " + name + " already exists in parent folder.");
       }
 
-      Entry folderEntry = new Entry();
+      Entry folderEntry = new Entry(getLayout(typeDefinition));
 
       folderEntry.setValue(CmisConstants.OBJECT_TYPE_ID, new StringValue(typeDefinition.getId()));
       folderEntry.setValue(CmisConstants.BASE_TYPE_ID, new StringValue(typeDefinition.getBaseId().value()));
@@ -605,11 +664,13 @@ public class StorageImpl implements Storage
       }
 
       children.get(parent.getObjectId()).add(folderId);
-      Set<String> set = new CopyOnWriteArraySet<String>();
+      names.add(parent.getObjectId(), name, folderEntry);
+      Set<String> set = new ConcurrentLinkedHashSet<String>();
       set.add(parent.getObjectId());
       parents.put(folderId, set);
       entries.put(folderId, folderEntry);
-      children.put(folderId, new CopyOnWriteArraySet<String>());
+      children.put(folderId, new ConcurrentLinkedHashSet<String>());
+      names.addFolder(folderId);
 
       FolderDataImpl folder = new FolderDataImpl(folderEntry, typeDefinition, this);
       indexListener.created(folder);
@@ -626,6 +687,8 @@ public class StorageImpl implements Storage
       Map<String, Property<?>> properties, List<AccessControlEntry> acl, Collection<PolicyData> policies)
       throws ConstraintException, NameConstraintViolationException, StorageException
    {
+      validateMaxItemsNumber();
+
       String name = null;
       Property<?> nameProperty = properties.get(CmisConstants.NAME);
       if (nameProperty != null && nameProperty.getValues().size() > 0)
@@ -658,7 +721,7 @@ public class StorageImpl implements Storage
          }
       }
 
-      Entry policyEntry = new Entry();
+      Entry policyEntry = new Entry(getLayout(typeDefinition));
 
       policyEntry.setValue(CmisConstants.OBJECT_TYPE_ID, new StringValue(typeDefinition.getId()));
       policyEntry.setValue(CmisConstants.BASE_TYPE_ID, new StringValue(typeDefinition.getBaseId().value()));
@@ -712,6 +775,8 @@ public class StorageImpl implements Storage
       Map<String, Property<?>> properties, List<AccessControlEntry> acl, Collection<PolicyData> policies)
       throws NameConstraintViolationException, StorageException
    {
+      validateMaxItemsNumber();
+
       String name = null;
       Property<?> nameProperty = properties.get(CmisConstants.NAME);
       if (nameProperty != null && nameProperty.getValues().size() > 0)
@@ -744,7 +809,7 @@ public class StorageImpl implements Storage
          }
       }
 
-      Entry relationshipEntry = new Entry();
+      Entry relationshipEntry = new Entry(getLayout(typeDefinition));
 
       relationshipEntry.setValue(CmisConstants.OBJECT_TYPE_ID, new StringValue(typeDefinition.getId()));
       relationshipEntry.setValue(CmisConstants.BASE_TYPE_ID, new StringValue(typeDefinition.getBaseId().value()));
@@ -787,14 +852,14 @@ public class StorageImpl implements Storage
       Set<String> sourceRels = relationships.get(source.getObjectId());
       if (sourceRels == null)
       {
-         sourceRels = new CopyOnWriteArraySet<String>();
+         sourceRels = new ConcurrentLinkedHashSet<String>();
          relationships.put(source.getObjectId(), sourceRels);
       }
       sourceRels.add(relationshipId);
       Set<String> targetRels = relationships.get(target.getObjectId());
       if (targetRels == null)
       {
-         targetRels = new CopyOnWriteArraySet<String>();
+         targetRels = new ConcurrentLinkedHashSet<String>();
          relationships.put(target.getObjectId(), targetRels);
       }
       targetRels.add(relationshipId);
@@ -918,22 +983,7 @@ public class StorageImpl implements Storage
     */
    public ItemsIterator<ChangeEvent> getChangeLog(String changeLogToken) throws ConstraintException
    {
-      if (changeLogToken != null)
-      {
-         int offset = 0;
-         int size = changes.size();
-         for (Iterator<ChangeEvent> iter = changes.iterator(); iter.hasNext()
-            && !changeLogToken.equals(iter.next().getLogToken());)
-         {
-            offset++;
-         }
-         if (offset == size)
-         {
-            throw new ConstraintException("No event corresponded to change log token " + changeLogToken);
-         }
-         return new BaseItemsIterator<ChangeEvent>(changes.subList(offset, size));
-      }
-      return new BaseItemsIterator<ChangeEvent>(changes);
+      return changes.iterator(changeLogToken);
    }
 
    /**
@@ -1026,41 +1076,65 @@ public class StorageImpl implements Storage
       {
          path = "/" + path;
       }
-      StringTokenizer tokenizer = new StringTokenizer(path, "/");
-      String point = StorageImpl.ROOT_FOLDER_ID;
-      while (tokenizer.hasMoreTokens())
+      String point = names.getCachedPath(path);
+      if (point == null)
       {
-         if (point == null)
+         long generation = names.getPathGeneration();
+         point = StorageImpl.ROOT_FOLDER_ID;
+         // Only folders have children in index, so path can't go through document.
+         for (StringTokenizer tokenizer = new StringTokenizer(path, "/"); point != null && tokenizer.hasMoreTokens();)
          {
-            break;
+            point = getChildId(point, tokenizer.nextToken());
          }
-         String segName = tokenizer.nextToken();
-         Set<String> childrenIds = children.get(point);
-         if (childrenIds == null || childrenIds.isEmpty())
+         if (point == null)
          {
-            point = null;
+            throw new ObjectNotFoundException("Path '" + path + "' not found.");
          }
-         else
+         names.cachePath(path, point, generation);
+      }
+      return getObjectById(point);
+   }
+
+   /**
+    * Get layout of properties which is shared by all objects of type.
+    *
+    * @param type type definition
+    * @return layout of properties
+    */
+   EntryLayout getLayout(TypeDefinition type)
+   {
+      EntryLayout layout = layouts.get(type.getId());
+      if (layout == null)
+      {
+         EntryLayout newLayout = new EntryLayout(type);
+         layout = layouts.putIfAbsent(type.getId(), newLayout);
+         if (layout == null)
          {
-            for (String id : childrenIds)
-            {
-               ObjectData seg = getObjectById(id);
-               String name = seg.getName();
-               if ((BaseType.FOLDER == seg.getBaseType() || !tokenizer.hasMoreElements()) && segName.equals(name))
-               {
-                  point = id;
-                  break;
-               }
-               point = null;
-            }
+            layout = newLayout;
          }
       }
+      return layout;
+   }
 
-      if (point == null)
+   /**
+    * Get child of folder with specified name.
+    *
+    * @param folderId folder id
+    * @param name name of child
+    * @return id of child or <code>null</code> if folder has not child with
+    *         such name
+    */
+   String getChildId(String folderId, String name)
+   {
+      String id = names.getChild(folderId, name);
+      if (id != null && !entries.containsKey(id))
       {
-         throw new ObjectNotFoundException("Path '" + path + "' not found.");
+         // Object was removed without updating of index, e.g. one of previous
+         // versions of document was deleted together with version series.
+         names.remove(folderId, name, id);
+         return null;
       }
-      return getObjectById(point);
+      return id;
    }
 
    /**
@@ -1081,11 +1155,10 @@ public class StorageImpl implements Storage
     */
    public RepositoryInfo getRepositoryInfo()
    {
-      int size = changes.size();
-      if (size > 0)
+      String latestToken = changes.getLatestToken();
+      if (latestToken != null)
       {
-         ChangeEvent event = changes.get(size - 1);
-         repositoryInfo.setLatestChangeLogToken(event.getLogToken());
+         repositoryInfo.setLatestChangeLogToken(latestToken);
       }
       // TODO clone repositoryInfo
       return repositoryInfo;
@@ -1098,19 +1171,18 @@ public class StorageImpl implements Storage
       throws UpdateConflictException, VersioningException, NameConstraintViolationException, StorageException
    {
       String name = object.getName();
-      for (ItemsIterator<ObjectData> iterator = target.getChildren(null); iterator.hasNext();)
+      if (getChildId(target.getObjectId(), name) != null)
       {
-         if (name.equals(iterator.next().getName()))
-         {
-            throw new NameConstraintViolationException("Object with name " + name
-               + " already exists in destination folder.");
-         }
+         throw new NameConstraintViolationException("Object with name " + name
+            + " already exists in destination folder.");
       }
       String objectid = object.getObjectId();
       String sourceId = source.getObjectId();
       String targetId = target.getObjectId();
       children.get(sourceId).remove(objectid);
+      names.remove(sourceId, name, objectid);
       children.get(targetId).add(objectid);
+      names.add(targetId, name, ((BaseObjectData)object).entry);
       parents.get(object.getObjectId()).remove(sourceId);
       parents.get(object.getObjectId()).add(targetId);
       try
@@ -1121,7 +1193,17 @@ public class StorageImpl implements Storage
       {
          throw new CmisRuntimeException("Unable get object after moving.");
       }
-      indexListener.updated(object);
+      if (object.getBaseType() == BaseType.FOLDER)
+      {
+         // Ancestors of all descendants are changed.
+         TreeVisitor visitor = new TreeVisitor();
+         object.accept(visitor);
+         indexListener.updated(new ArrayList<ObjectData>(visitor.items));
+      }
+      else
+      {
+         indexListener.updated(object);
+      }
       return object;
    }
 
@@ -1133,13 +1215,24 @@ public class StorageImpl implements Storage
       try
       {
          org.xcmis.search.model.Query qom = cmisQueryParser.parseQuery(query.getStatement());
+         // Query must see changes made before it by the same caller, changes
+         // of other callers which wait in queue don't block it.
+         indexListener.awaitOwnChanges();
+         if (qom.getOrderings().size() > 0 && (query.getMaxItems() >= 0 || query.getSkipCount() > 0))
+         {
+            // Index sorts rows itself, read only requested page and one more
+            // row to know if there are more rows.
+            int window =
+               query.getMaxItems() >= 0 ? (int)Math.min((long)query.getMaxItems() + 1, Integer.MAX_VALUE)
+                  : Integer.MAX_VALUE;
+            return new QueryResultIterator(qom, Math.max(query.getSkipCount(), 0), window);
+         }
          List<ScoredRow> rows = searchService.execute(qom);
          //check if needed default sorting
          if (qom.getOrderings().size() == 0)
          {
             Set<SelectorName> selectorsReferencedBy = Visitors.getSelectorsReferencedBy(qom);
-            Collections.sort(rows, new DocumentOrderResultSorter(selectorsReferencedBy.iterator().next().getName(),
-               this));
+            sortInDocumentOrder(rows, selectorsReferencedBy.iterator().next().getName());
          }
          return new QueryResultIterator(rows, qom);
       }
@@ -1163,6 +1256,7 @@ public class StorageImpl implements Storage
       for (String id : parentIds)
       {
          children.get(id).remove(objectId);
+         names.remove(id, object.getName(), objectId);
       }
       parentIds.clear();
       unfiled.add(objectId);
@@ -1241,10 +1335,18 @@ public class StorageImpl implements Storage
          }
       }
 
-      types.put(type.getId(), type);
-      typeChildren.get(superType.getId()).add(type.getId());
-      typeChildren.put(type.getId(), new HashSet<String>());
-      PropertyDefinitions.putAll(type.getId(), m);
+      synchronized (typeCache)
+      {
+         types.put(type.getId(), type);
+         typeChildren.get(superType.getId()).add(type.getId());
+         typeChildren.put(type.getId(), new HashSet<String>());
+         PropertyDefinitions.putAll(type.getId(), m);
+         typeCache.invalidate();
+      }
+      if (searchService != null)
+      {
+         searchService.invalidateQueryPlans();
+      }
 
       return type.getId();
    }
@@ -1284,36 +1386,27 @@ public class StorageImpl implements Storage
    public TypeDefinition getTypeDefinition(String typeId, boolean includePropertyDefinition)
       throws TypeNotFoundException, CmisRuntimeException
    {
-      TypeDefinition type = types.get(typeId);
+      // Type definitions are shared and read-only, do not create copy for each call.
+      TypeDefinition type = typeCache.get(typeId, includePropertyDefinition);
       if (type == null)
       {
          throw new TypeNotFoundException("Type '" + typeId + "' does not exist.");
       }
-      TypeDefinition copy =
-         new TypeDefinition(type.getId(), type.getBaseId(), type.getQueryName(), type.getLocalName(), type
-            .getLocalNamespace(), type.getParentId(), type.getDisplayName(), type.getDescription(), type.isCreatable(),
-            type.isFileable(), type.isQueryable(), type.isFulltextIndexed(), type.isIncludedInSupertypeQuery(), type
-               .isControllablePolicy(), type.isControllableACL(), type.isVersionable(), type.getAllowedSourceTypes(),
-            type.getAllowedTargetTypes(), type.getContentStreamAllowed(), includePropertyDefinition
-               ? PropertyDefinitions.getAll(typeId) : null);
-
-      return copy;
+      return type;
    }
 
    public Collection<TypeDefinition> getSubTypes(String typeId, boolean includePropertyDefinitions)
       throws TypeNotFoundException
    {
-      List<TypeDefinition> subTypes = new ArrayList<TypeDefinition>();
-      for (ItemsIterator<TypeDefinition> children = getTypeChildren(typeId, includePropertyDefinitions); children
-         .hasNext();)
-      {
-         TypeDefinition type = children.next();
-         subTypes.add(type);
-         Collection<TypeDefinition> cchildren = getSubTypes(type.getId(), includePropertyDefinitions);
-         if (cchildren.size() > 0)
-         {
-            subTypes.addAll(cchildren);
-         }
+      List<String> subTypeIds = typeCache.getSubTypeIds(typeId);
+      if (subTypeIds == null)
+      {
+         throw new TypeNotFoundException("Type '" + typeId + "' does not exist.");
+      }
+      List<TypeDefinition> subTypes = new ArrayList<TypeDefinition>(subTypeIds.size());
+      for (String t : subTypeIds)
+      {
+         subTypes.add(getTypeDefinition(t, includePropertyDefinitions));
       }
       return subTypes;
    }
@@ -1346,10 +1439,18 @@ public class StorageImpl implements Storage
             throw new ConstraintException("Unable remove type definition if at least one object of this type exists.");
          }
       }
-      types.remove(typeId);
-      typeChildren.get(type.getParentId()).remove(typeId);
-
-      PropertyDefinitions.removeAll(typeId);
+      synchronized (typeCache)
+      {
+         types.remove(typeId);
+         typeChildren.get(type.getParentId()).remove(typeId);
+         typeChildren.remove(typeId);
+         PropertyDefinitions.removeAll(typeId);
+         typeCache.invalidate();
+      }
+      if (searchService != null)
+      {
+         searchService.invalidateQueryPlans();
+      }
    }
 
    protected String getCurrentUser()
@@ -1358,10 +1459,89 @@ public class StorageImpl implements Storage
       return ctx != null ? ctx.getUserId() : getRepositoryInfo().getPrincipalAnonymous();
    }
 
-   void validateMaxItemsNumber(ObjectData object) throws StorageException
+   /**
+    * @return number of objects and memory used by them
+    */
+   public StorageUsage getUsage()
+   {
+      return usage;
+   }
+
+   /**
+    * @return builder of object trees configured for this storage or
+    *         <code>null</code> if default builder should be used
+    * @see ObjectTreeBuilder#getInstance()
+    */
+   public ObjectTreeBuilder getObjectTreeBuilder()
+   {
+      return objectTreeBuilder;
+   }
+
+   /**
+    * Release resources of storage. Changes waiting for indexing are indexed
+    * before. Storage must not be used after this call.
+    */
+   public void close()
+   {
+      indexListener.stop();
+      searchService.stop();
+      unregisterUsage();
+      contentStore.close();
+      changes.close();
+      if (objectTreeBuilder != null)
+      {
+         objectTreeBuilder.shutdown();
+      }
+   }
+
+   /**
+    * Register {@link #usage} in platform MBean server. MBean of previous
+    * storage with the same id is replaced.
+    */
+   private void registerUsage()
+   {
+      try
+      {
+         MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+         ObjectName name = getUsageName();
+         if (server.isRegistered(name))
+         {
+            server.unregisterMBean(name);
+         }
+         server.registerMBean(usage, name);
+      }
+      catch (JMException e)
+      {
+         LOG.warn("Unable to register storage usage MBean. " + e.getMessage());
+      }
+   }
+
+   private void unregisterUsage()
+   {
+      try
+      {
+         MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+         ObjectName name = getUsageName();
+         if (server.isRegistered(name))
+         {
+            server.unregisterMBean(name);
+         }
+      }
+      catch (JMException e)
+      {
+         LOG.warn("Unable to unregister storage usage MBean. " + e.getMessage());
+      }
+   }
+
+   private ObjectName getUsageName() throws JMException
+   {
+      return new ObjectName("org.xcmis.inmemory:type=StorageUsage,storage=" + ObjectName.quote(getId()));
+   }
+
+   void validateMaxItemsNumber() throws StorageException
    {
       long maxItemsNum = configuration.getMaxItemsNum();
-      if (maxItemsNum > -1 && entries.size() > maxItemsNum)
+      if (maxItemsNum > -1 && usage.getItemCount() >= maxItemsNum)
       {
          throw new StorageException("Unable add new object in storage. Max number '" + maxItemsNum
             + "' of items is reached."
@@ -1369,29 +1549,71 @@ public class StorageImpl implements Storage
       }
    }
 
-   void validateMemSize(byte[] content) throws StorageException
+   void validateMemSize(long length) throws StorageException
    {
-      if (content == null || content.length == 0)
+      if (length == 0)
       {
          return;
       }
-      long size = 0;
-      for (Entry c : entries.values())
-      {
-         ByteArrayValue contentValue = (ByteArrayValue)c.getValue(PropertyDefinitions.CONTENT);
-         if (contentValue != null)
-         {
-            size += contentValue.getBytes().length;
-         }
-      }
       long maxMem = configuration.getMaxMem();
-      if (maxMem > -1 && size + content.length > maxMem)
+      if (maxMem > -1 && usage.getTotalBytes() + length > maxMem)
       {
          throw new StorageException("Unable add new object in storage. Max allowed memory size '" + maxMem
             + "' bytes is reached." + " Increase or set storage configuration property 'org.xcmis.inmemory.maxmem'.");
       }
    }
 
+   /**
+    * Keep content in {@link #contentStore} and check is max memory size
+    * reached.
+    *
+    * @param stream content
+    * @return stored content
+    * @throws IOException if stream can't be read
+    * @throws StorageException if max memory size is reached
+    */
+   ContentValue writeContent(InputStream stream) throws IOException, StorageException
+   {
+      ContentValue content = contentStore.write(stream);
+      try
+      {
+         validateMemSize(content.getLength());
+      }
+      catch (StorageException e)
+      {
+         content.release();
+         throw e;
+      }
+      return content;
+   }
+
+   private static ContentStore createContentStore(StorageConfiguration configuration)
+   {
+      String type = configuration.getContentStore();
+      if (type == null || type.length() == 0 || StorageConfiguration.CONTENT_STORE_HEAP.equals(type))
+      {
+         return new HeapContentStore();
+      }
+      if (StorageConfiguration.CONTENT_STORE_DIRECT.equals(type))
+      {
+         return new DirectContentStore();
+      }
+      if (StorageConfiguration.CONTENT_STORE_MAPPED.equals(type))
+      {
+         String directory = configuration.getContentDirectory();
+         return new MappedFileContentStore(directory != null && directory.length() > 0 ? new File(directory)
+            : new File(System.getProperty("java.io.tmpdir"), "xcmis-" + configuration.getId()));
+      }
+      try
+      {
+         return (ContentStore)Class.forName(type).newInstance();
+      }
+      catch (Exception e)
+      {
+         throw new CmisRuntimeException("Unable create content store " + type + ". " + e.getMessage(), e);
+      }
+   }
+
    private SearchService getInitializedSearchService() throws TikaException
    {
       try
@@ -1430,77 +1652,118 @@ public class StorageImpl implements Storage
 
    // -------------------------------------------------------
 
-   private class DocumentOrderResultSorter implements Comparator<ScoredRow>
+   /**
+    * Sort rows in document order, order of paths of objects. Key of each row is
+    * calculated once and paths of folders are shared between rows. Rows which
+    * objects are not found anymore go last.
+    *
+    * @param rows rows to sort
+    * @param selectorName name of selector which identifies objects
+    */
+   void sortInDocumentOrder(List<ScoredRow> rows, String selectorName)
    {
+      Map<String, String> folderPaths = new HashMap<String, String>();
+      DocumentOrderKey[] keys = new DocumentOrderKey[rows.size()];
+      int i = 0;
+      for (ScoredRow row : rows)
+      {
+         keys[i++] = new DocumentOrderKey(row, getDocumentOrderPath(row.getNodeIdentifer(selectorName), folderPaths));
+      }
+      Arrays.sort(keys);
+      // Rows may be linked list, do not set them by index.
+      ListIterator<ScoredRow> iterator = rows.listIterator();
+      for (DocumentOrderKey key : keys)
+      {
+         iterator.next();
+         iterator.set(key.row);
+      }
+   }
 
-      /** The selector name. */
-      private final String selectorName;
-
-      private final Map<String, ObjectData> itemCache;
-
-      private final Storage storage;
+   /**
+    * @param id object id
+    * @param folderPaths paths of folders which are already resolved
+    * @return comparable location of the object or <code>null</code> if object
+    *         not found
+    */
+   private String getDocumentOrderPath(String id, Map<String, String> folderPaths)
+   {
+      Entry entry = id != null ? entries.get(id) : null;
+      if (entry == null)
+      {
+         return null;
+      }
+      if (ROOT_FOLDER_ID.equals(id))
+      {
+         return entry.getName();
+      }
+      String parentId = getFirstParent(id);
+      if (parentId == null)
+      {
+         return entry.getName();
+      }
+      return getFolderPath(parentId, folderPaths) + "/" + entry.getName();
+   }
 
-      DocumentOrderResultSorter(final String selectorName, Storage storage)
+   private String getFolderPath(String folderId, Map<String, String> folderPaths)
+   {
+      if (ROOT_FOLDER_ID.equals(folderId))
+      {
+         return "/";
+      }
+      String path = folderPaths.get(folderId);
+      if (path == null)
       {
-         this.selectorName = selectorName;
-         this.storage = storage;
-         this.itemCache = new HashMap<String, ObjectData>();
+         Entry entry = entries.get(folderId);
+         String name = entry != null ? entry.getName() : "";
+         String parentId = getFirstParent(folderId);
+         String parentPath = parentId != null ? getFolderPath(parentId, folderPaths) : "/";
+         path = parentPath.length() > 1 ? parentPath + "/" + name : "/" + name;
+         folderPaths.put(folderId, path);
       }
+      return path;
+   }
 
-      /**
-       * {@inheritDoc}
-       */
-      public int compare(ScoredRow o1, ScoredRow o2)
+   private String getFirstParent(String id)
+   {
+      Set<String> parentIds = parents.get(id);
+      if (parentIds != null)
       {
-         if (o1.equals(o2))
-         {
-            return 0;
-         }
-         final String path1 = getPath(o1.getNodeIdentifer(selectorName));
-         final String path2 = getPath(o2.getNodeIdentifer(selectorName));
-         // TODO should be checked
-         if (path1 == null || path2 == null)
+         Iterator<String> iterator = parentIds.iterator();
+         if (iterator.hasNext())
          {
-            return 0;
+            return iterator.next();
          }
-         return path1.compareTo(path2);
       }
+      return null;
+   }
 
-      /**
-       * Return comparable location of the object
-       *
-       * @param identifer
-       * @return
-       */
-      public String getPath(String identifer)
+   /**
+    * Query row with precalculated document order. Rows without path go last
+    * and keep its order.
+    */
+   private static final class DocumentOrderKey implements Comparable<DocumentOrderKey>
+   {
+      final ScoredRow row;
+
+      final String path;
+
+      DocumentOrderKey(ScoredRow row, String path)
       {
-         ObjectData obj = itemCache.get(identifer);
-         if (obj == null)
-         {
-            try
-            {
-               obj = storage.getObjectById(identifer);
-            }
-            catch (ObjectNotFoundException e)
-            {
-               // XXX : correct ?
-               return null;
-            }
-            itemCache.put(identifer, obj);
-         }
-         if (obj.getBaseType() == BaseType.FOLDER)
+         this.row = row;
+         this.path = path;
+      }
+
+      public int compareTo(DocumentOrderKey other)
+      {
+         if (path == null)
          {
-            if (((FolderData)obj).isRoot())
-            {
-               return obj.getName();
-            }
+            return other.path == null ? 0 : 1;
          }
-         Collection<FolderData> parents = obj.getParents();
-         if (parents.size() == 0)
+         if (other.path == null)
          {
-            return obj.getName();
+            return -1;
          }
-         return parents.iterator().next().getPath() + "/" + obj.getName();
+         return path.compareTo(other.path);
       }
    }
 
@@ -1541,25 +1804,116 @@ public class StorageImpl implements Storage
    }
 
    /**
-    * Iterator over query result's.
+    * Iterator over query result's. Rows may be fetched from index by windows
+    * when they are requested, then rows which are skipped are not read and
+    * size of each next window is doubled.
     */
    private class QueryResultIterator extends LazyIterator<Result>
    {
-      private final Iterator<ScoredRow> rows;
-
       private final Set<SelectorName> selectors;
 
-      private final int size;
-
       private final org.xcmis.search.model.Query qom;
 
+      /** Rows of current window. */
+      private Iterator<ScoredRow> rows;
+
+      /** Position in result of row which is next in {@link #rows}. */
+      private int position;
+
+      /** Position in result of first row after current window. */
+      private int end;
+
+      /** Size of next window, 0 if all rows are fetched at once. */
+      private int window;
+
+      /** <code>true</code> if current window is the last one. */
+      private boolean last;
+
+      private int size;
+
+      /** <code>false</code> until the first result is requested. */
+      private boolean started;
+
       QueryResultIterator(List<ScoredRow> rows, org.xcmis.search.model.Query qom)
       {
-         this.size = rows.size();
+         this.selectors = Visitors.getSelectorsReferencedBy(qom);
+         this.qom = qom;
          this.rows = rows.iterator();
+         this.end = rows.size();
+         this.size = rows.size();
+         this.last = true;
+         this.started = true;
+         fetchNext();
+      }
+
+      /**
+       * @param qom query
+       * @param offset position of first row of the first window, usually
+       *        number of rows which caller is going to skip
+       * @param window size of the first window
+       * @throws InvalidQueryException if query is invalid
+       * @throws QueryExecutionException if query can't be executed
+       */
+      QueryResultIterator(org.xcmis.search.model.Query qom, int offset, int window) throws InvalidQueryException,
+         QueryExecutionException
+      {
          this.selectors = Visitors.getSelectorsReferencedBy(qom);
          this.qom = qom;
+         this.window = window;
+         fetch(offset);
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public boolean hasNext()
+      {
+         start();
+         return super.hasNext();
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public Result next()
+      {
+         start();
+         return super.next();
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public void skip(int skip) throws NoSuchElementException
+      {
+         if (skip <= 0)
+         {
+            return;
+         }
+         int target;
+         if (started)
+         {
+            if (next == null)
+            {
+               throw new NoSuchElementException();
+            }
+            // Item in field next is already taken from rows.
+            target = position - 1 + skip;
+         }
+         else
+         {
+            started = true;
+            target = skip;
+         }
+         seek(target);
          fetchNext();
+         if (next == null)
+         {
+            throw new NoSuchElementException();
+         }
       }
 
       /**
@@ -1576,9 +1930,22 @@ public class StorageImpl implements Storage
       protected void fetchNext()
       {
          next = null;
-         while (next == null && rows.hasNext())
+         while (next == null)
          {
+            if (!rows.hasNext())
+            {
+               if (last)
+               {
+                  return;
+               }
+               fetchWindow(position);
+               if (!rows.hasNext())
+               {
+                  return;
+               }
+            }
             ScoredRow row = rows.next();
+            position++;
             for (SelectorName selectorName : selectors)
             {
                String objectId = row.getNodeIdentifer(selectorName.getName());
@@ -1612,6 +1979,70 @@ public class StorageImpl implements Storage
             }
          }
       }
+
+      private void start()
+      {
+         if (!started)
+         {
+            started = true;
+            seek(0);
+            fetchNext();
+         }
+      }
+
+      /**
+       * Move to row at specified position in result, window is fetched if
+       * row is not in current window.
+       */
+      private void seek(int target)
+      {
+         if (target >= position && target < end)
+         {
+            while (position < target)
+            {
+               rows.next();
+               position++;
+            }
+         }
+         else if (window > 0 && (target < position || !last))
+         {
+            fetchWindow(target);
+         }
+         else
+         {
+            rows = Collections.<ScoredRow> emptyList().iterator();
+            position = end;
+         }
+      }
+
+      private void fetchWindow(int offset)
+      {
+         try
+         {
+            fetch(offset);
+         }
+         catch (InvalidQueryException e)
+         {
+            throw new CmisRuntimeException(e.getLocalizedMessage(), e);
+         }
+         catch (QueryExecutionException e)
+         {
+            throw new CmisRuntimeException(e.getLocalizedMessage(), e);
+         }
+      }
+
+      private void fetch(int offset) throws InvalidQueryException, QueryExecutionException
+      {
+         List<ScoredRow> windowRows = searchService.execute(qom.withOffset(offset).withLimit(window));
+         size =
+            windowRows instanceof QueryResultList ? ((QueryResultList)windowRows).getTotalCount() : Math.max(size,
+               offset + windowRows.size());
+         rows = windowRows.iterator();
+         position = offset;
+         end = offset + windowRows.size();
+         last = windowRows.size() < window;
+         window = (int)Math.min(2L * window, Integer.MAX_VALUE);
+      }
    }
 
    private class TreeVisitor implements ObjectDataVisitor
@@ -55,8 +55,18 @@ public class StorageProviderImpl implements StorageProvider
    public StorageProviderImpl(String repositoryId, String repositoryName, String description, long maxStorageMemSize,
       long maxItemsNumber) throws TikaException
    {
-      this.storageConfig =
-         new StorageConfiguration(repositoryId, repositoryName, description, maxStorageMemSize, maxItemsNumber);
+      this(new StorageConfiguration(repositoryId, repositoryName, description, maxStorageMemSize, maxItemsNumber));
+   }
+
+   /**
+    * Instantiates a new storage provider impl.
+    *
+    * @param storageConfig storage configuration
+    * @throws TikaException
+    */
+   public StorageProviderImpl(StorageConfiguration storageConfig) throws TikaException
+   {
+      this.storageConfig = storageConfig;
       this.renditionManager = RenditionManager.getInstance();
       this.storageImpl =
          new StorageImpl(storageConfig, renditionManager, new PermissionService());
@@ -83,4 +93,17 @@ public class StorageProviderImpl implements StorageProvider
       return storageConfig.getId();
    }
 
+   /**
+    * Close storage. Connections must not be used after this call.
+    *
+    * @see StorageImpl#close()
+    */
+   public void close()
+   {
+      if (storageImpl != null)
+      {
+         storageImpl.close();
+      }
+   }
+
 }
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.sp.inmemory;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps number of objects and amount of memory used by them. Counters are
+ * updated when object is added to storage, removed from it or changed, so
+ * quota checks do not need to walk over all objects. Memory used by
+ * properties is estimated, it does not take into account sharing of
+ * instances.
+ */
+public class StorageUsage implements StorageUsageMBean
+{
+   /**
+    * Estimated overhead of object itself and its maps.
+    */
+   private static final int ENTRY_OVERHEAD = 256;
+
+   /**
+    * Estimated overhead of one map entry or collection element.
+    */
+   private static final int ITEM_OVERHEAD = 48;
+
+   /**
+    * Estimated overhead of one property value: slot in entry, value object
+    * and its array. Names of properties are shared by all entries of type.
+    */
+   private static final int VALUE_OVERHEAD = 40;
+
+   private final StorageConfiguration configuration;
+
+   private final AtomicLong items = new AtomicLong();
+
+   private final AtomicLong contentBytes = new AtomicLong();
+
+   private final AtomicLong metadataBytes = new AtomicLong();
+
+   /**
+    * @param configuration storage configuration which provides limits
+    */
+   public StorageUsage(StorageConfiguration configuration)
+   {
+      this.configuration = configuration;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getItemCount()
+   {
+      return items.get();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getContentBytes()
+   {
+      return contentBytes.get();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getMetadataBytes()
+   {
+      return metadataBytes.get();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getTotalBytes()
+   {
+      return contentBytes.get() + metadataBytes.get();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getMaxItemsNum()
+   {
+      return configuration.getMaxItemsNum();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getMaxMem()
+   {
+      return configuration.getMaxMem();
+   }
+
+   /**
+    * Object is added in storage.
+    *
+    * @param entry object
+    */
+   void added(Entry entry)
+   {
+      items.incrementAndGet();
+      updated(entry);
+   }
+
+   /**
+    * Object in storage is changed.
+    *
+    * @param entry object
+    */
+   void updated(Entry entry)
+   {
+      synchronized (entry)
+      {
+         long content = contentSize(entry);
+         long metadata = metadataSize(entry);
+         contentBytes.addAndGet(content - entry.accountedContentSize);
+         metadataBytes.addAndGet(metadata - entry.accountedMetadataSize);
+         entry.accountedContentSize = content;
+         entry.accountedMetadataSize = metadata;
+      }
+   }
+
+   /**
+    * Object is removed from storage.
+    *
+    * @param entry object
+    */
+   void removed(Entry entry)
+   {
+      items.decrementAndGet();
+      synchronized (entry)
+      {
+         contentBytes.addAndGet(-entry.accountedContentSize);
+         metadataBytes.addAndGet(-entry.accountedMetadataSize);
+         entry.accountedContentSize = 0;
+         entry.accountedMetadataSize = 0;
+      }
+   }
+
+   private static long contentSize(Entry entry)
+   {
+      ContentValue content = (ContentValue)entry.getValue(PropertyDefinitions.CONTENT);
+      return content != null ? content.getLength() : 0;
+   }
+
+   private static long metadataSize(Entry entry)
+   {
+      long size = ENTRY_OVERHEAD;
+      for (Value value : entry.getValues().values())
+      {
+         if (!value.isContent())
+         {
+            size += VALUE_OVERHEAD + valueSize(value);
+         }
+      }
+      for (Map.Entry<String, Set<String>> e : entry.getPermissions().entrySet())
+      {
+         size += ITEM_OVERHEAD + stringSize(e.getKey());
+         for (String permission : e.getValue())
+         {
+            size += ITEM_OVERHEAD + stringSize(permission);
+         }
+      }
+      for (String policy : entry.getPolicies())
+      {
+         size += ITEM_OVERHEAD + stringSize(policy);
+      }
+      return size;
+   }
+
+   private static long valueSize(Value value)
+   {
+      long size = 0;
+      if (value.isString())
+      {
+         for (String s : value.getStrings())
+         {
+            size += stringSize(s);
+         }
+      }
+      else if (value.isURI())
+      {
+         for (URI uri : value.getURI())
+         {
+            size += ITEM_OVERHEAD + stringSize(uri.toString());
+         }
+      }
+      else if (value.isDecimal())
+      {
+         for (BigDecimal d : value.getDecimals())
+         {
+            size += ITEM_OVERHEAD + d.precision() / 2;
+         }
+      }
+      else if (value.isInteger())
+      {
+         for (BigInteger i : value.getIntegers())
+         {
+            // Integers which fit to long are kept as long.
+            size += i.bitLength() < 64 ? 8 : ITEM_OVERHEAD + i.bitLength() / 8;
+         }
+      }
+      else if (value.isDate())
+      {
+         // Time zones are shared.
+         size += ((DateValue)value).size() * 8;
+      }
+      else if (value.isBoolean())
+      {
+         size += value.getBooleans().length;
+      }
+      return size;
+   }
+
+   private static long stringSize(String s)
+   {
+      return s == null ? 0 : ITEM_OVERHEAD + 2 * s.length();
+   }
+}
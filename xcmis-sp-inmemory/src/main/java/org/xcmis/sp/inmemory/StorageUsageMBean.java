@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.sp.inmemory;
+
+/**
+ * JMX view of {@link StorageUsage}.
+ */
+public interface StorageUsageMBean
+{
+   /**
+    * @return number of objects in storage
+    */
+   long getItemCount();
+
+   /**
+    * @return total size of content streams in bytes
+    */
+   long getContentBytes();
+
+   /**
+    * @return estimated size of properties, permissions and policies of
+    *         objects in bytes
+    */
+   long getMetadataBytes();
+
+   /**
+    * @return sum of content and metadata size in bytes
+    */
+   long getTotalBytes();
+
+   /**
+    * @return max number of objects, -1 if not limited
+    */
+   long getMaxItemsNum();
+
+   /**
+    * @return max memory size in bytes, -1 if not limited
+    */
+   long getMaxMem();
+}
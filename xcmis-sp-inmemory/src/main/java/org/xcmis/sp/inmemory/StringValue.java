@@ -51,10 +51,14 @@ public class StringValue extends Value
       System.arraycopy(a, 0, this.values, 0, a.length);
    }
 
+   /**
+    * {@inheritDoc} Returns copy because the same value may be shared by
+    * several entries.
+    */
    @Override
    public String[] getStrings()
    {
-      return values;
+      return values.clone();
    }
 
    @Override
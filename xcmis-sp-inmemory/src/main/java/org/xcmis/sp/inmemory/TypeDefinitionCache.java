@@ -0,0 +1,564 @@
+/**
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.xcmis.sp.inmemory;
+
+import org.xcmis.spi.model.BaseType;
+import org.xcmis.spi.model.Choice;
+import org.xcmis.spi.model.ContentStreamAllowed;
+import org.xcmis.spi.model.DateResolution;
+import org.xcmis.spi.model.Precision;
+import org.xcmis.spi.model.PropertyDefinition;
+import org.xcmis.spi.model.PropertyType;
+import org.xcmis.spi.model.TypeDefinition;
+import org.xcmis.spi.model.Updatability;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cache of type definitions shared between all objects of storage. Type
+ * definitions are created once per version of type system and are read-only,
+ * setters of them and of their property definitions throw
+ * {@link UnsupportedOperationException}. Any change of
+ * type system (add or remove type) must be followed by {@link #invalidate()}.
+ */
+final class TypeDefinitionCache
+{
+
+   /**
+    * Immutable view of type system at some point of time.
+    */
+   private static final class Snapshot
+   {
+      final long version;
+
+      /** Type definitions with property definitions. */
+      final Map<String, TypeDefinition> full;
+
+      /** Type definitions without property definitions. */
+      final Map<String, TypeDefinition> brief;
+
+      /** All descendants of each type in depth-first order. */
+      final Map<String, List<String>> subTypes;
+
+      Snapshot(long version, Map<String, TypeDefinition> full, Map<String, TypeDefinition> brief,
+         Map<String, List<String>> subTypes)
+      {
+         this.version = version;
+         this.full = full;
+         this.brief = brief;
+         this.subTypes = subTypes;
+      }
+   }
+
+   /**
+    * Type definition which may be shared between callers. Setters are
+    * rejected, arrays are copied on the way out.
+    */
+   private static final class ReadOnlyTypeDefinition extends TypeDefinition
+   {
+      ReadOnlyTypeDefinition(TypeDefinition type, Map<String, PropertyDefinition<?>> propertyDefinitions)
+      {
+         super(type.getId(), type.getBaseId(), type.getQueryName(), type.getLocalName(), type.getLocalNamespace(),
+            type.getParentId(), type.getDisplayName(), type.getDescription(), type.isCreatable(), type.isFileable(),
+            type.isQueryable(), type.isFulltextIndexed(), type.isIncludedInSupertypeQuery(), type
+               .isControllablePolicy(), type.isControllableACL(), type.isVersionable(), copy(type
+               .getAllowedSourceTypes()), copy(type.getAllowedTargetTypes()), type.getContentStreamAllowed(),
+            propertyDefinitions);
+      }
+
+      @Override
+      public String[] getAllowedSourceTypes()
+      {
+         return copy(super.getAllowedSourceTypes());
+      }
+
+      @Override
+      public String[] getAllowedTargetTypes()
+      {
+         return copy(super.getAllowedTargetTypes());
+      }
+
+      @Override
+      public void setId(String id)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setBaseId(BaseType baseId)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setQueryName(String queryName)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setLocalName(String localName)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setLocalNamespace(String localNamespace)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setParentId(String parentId)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setDisplayName(String displayName)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setDescription(String description)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setCreatable(boolean creatable)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setFileable(boolean fileable)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setQueryable(boolean queryable)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setFulltextIndexed(boolean fulltextIndexed)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setIncludedInSupertypeQuery(boolean includedInSupertypeQuery)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setControllablePolicy(boolean controllablePolicy)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setControllableACL(boolean controllableACL)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setVersionable(boolean versionable)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setAllowedSourceTypes(String[] allowedSourceTypes)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setAllowedTargetTypes(String[] allowedTargetTypes)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setContentStreamAllowed(ContentStreamAllowed contentStreamAllowed)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setPropertyDefinitions(Map<String, PropertyDefinition<?>> propertyDefinitions)
+      {
+         throw readOnly();
+      }
+
+      private UnsupportedOperationException readOnly()
+      {
+         return new UnsupportedOperationException("Type definition '" + getId() + "' is shared and can't be changed.");
+      }
+
+      private static String[] copy(String[] array)
+      {
+         return array != null ? array.clone() : null;
+      }
+   }
+
+   /**
+    * Property definition which may be shared between callers. Setters are
+    * rejected, arrays and choices are copied on the way out.
+    */
+   private static final class ReadOnlyPropertyDefinition<T> extends PropertyDefinition<T>
+   {
+      ReadOnlyPropertyDefinition(PropertyDefinition<T> definition)
+      {
+         super(definition.getId(), definition.getQueryName(), definition.getLocalName(), definition
+            .getLocalNamespace(), definition.getDisplayName(), definition.getDescription(), definition
+            .getPropertyType(), definition.getUpdatability(), Boolean.TRUE.equals(definition.getInherited()),
+            definition.isRequired(), definition.isQueryable(), definition.isOrderable(), definition.isOpenChoice(),
+            definition.isMultivalued(), copyChoices(definition.getChoices()), copy(definition.getDefaultValue()));
+         super.setDateResolution(definition.getDateResolution());
+         super.setDecimalPrecision(definition.getDecimalPrecision());
+         super.setMaxLength(definition.getMaxLength());
+         super.setMinInteger(definition.getMinInteger());
+         super.setMaxInteger(definition.getMaxInteger());
+         super.setMinDecimal(definition.getMinDecimal());
+         super.setMaxDecimal(definition.getMaxDecimal());
+      }
+
+      @Override
+      public List<Choice<T>> getChoices()
+      {
+         return copyChoices(super.getChoices());
+      }
+
+      @Override
+      public T[] getDefaultValue()
+      {
+         return copy(super.getDefaultValue());
+      }
+
+      @Override
+      public void setId(String id)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setQueryName(String queryName)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setLocalName(String localName)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setLocalNamespace(String localNamespace)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setDisplayName(String displayName)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setDescription(String description)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setPropertyType(PropertyType propertyType)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setUpdatability(Updatability updatability)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setInherited(boolean inherited)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setRequired(boolean required)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setQueryable(boolean queryable)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setOrderable(boolean orderable)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setOpenChoice(Boolean openChoice)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setMultivalued(boolean multivalued)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setChoices(List<Choice<T>> choices)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setDateResolution(DateResolution dateResolution)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setDecimalPrecision(Precision decimalPrecision)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setDefaultValue(T[] defaultValue)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setMaxLength(int maxLength)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setMinInteger(BigInteger minInteger)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setMaxInteger(BigInteger maxInteger)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setMinDecimal(BigDecimal minDecimal)
+      {
+         throw readOnly();
+      }
+
+      @Override
+      public void setMaxDecimal(BigDecimal maxDecimal)
+      {
+         throw readOnly();
+      }
+
+      private UnsupportedOperationException readOnly()
+      {
+         return new UnsupportedOperationException("Property definition '" + getId()
+            + "' is shared and can't be changed.");
+      }
+
+      private static <T> T[] copy(T[] array)
+      {
+         return array != null ? array.clone() : null;
+      }
+
+      private static <T> List<Choice<T>> copyChoices(List<Choice<T>> choices)
+      {
+         List<Choice<T>> copy = new ArrayList<Choice<T>>(choices.size());
+         for (Choice<T> choice : choices)
+         {
+            Choice<T> choiceCopy = new Choice<T>(copy(choice.getValues()), choice.getDisplayName());
+            choiceCopy.getChoices().addAll(copyChoices(choice.getChoices()));
+            copy.add(choiceCopy);
+         }
+         return copy;
+      }
+   }
+
+   private final Map<String, TypeDefinition> types;
+
+   private final Map<String, Set<String>> typeChildren;
+
+   private volatile Snapshot snapshot;
+
+   private long version;
+
+   /**
+    * @param types source of type definitions
+    * @param typeChildren direct children of each type
+    */
+   TypeDefinitionCache(Map<String, TypeDefinition> types, Map<String, Set<String>> typeChildren)
+   {
+      this.types = types;
+      this.typeChildren = typeChildren;
+   }
+
+   /**
+    * Get cached type definition.
+    *
+    * @param typeId type id
+    * @param includePropertyDefinition if <code>true</code> property definition
+    *        should be included
+    * @return type definition or <code>null</code> if type <code>typeId</code>
+    *         does not exist
+    */
+   TypeDefinition get(String typeId, boolean includePropertyDefinition)
+   {
+      Snapshot s = getSnapshot();
+      return includePropertyDefinition ? s.full.get(typeId) : s.brief.get(typeId);
+   }
+
+   /**
+    * Get IDs of all descendants of type <code>typeId</code>.
+    *
+    * @param typeId type id
+    * @return IDs of all descendant types in depth-first order or
+    *         <code>null</code> if type <code>typeId</code> does not exist
+    */
+   List<String> getSubTypeIds(String typeId)
+   {
+      return getSnapshot().subTypes.get(typeId);
+   }
+
+   /**
+    * @return current version of type system
+    */
+   long getVersion()
+   {
+      return getSnapshot().version;
+   }
+
+   /**
+    * Drop cached type definitions. Must be called after any changes of types.
+    */
+   synchronized void invalidate()
+   {
+      version++;
+      snapshot = null;
+   }
+
+   private Snapshot getSnapshot()
+   {
+      Snapshot s = snapshot;
+      if (s == null)
+      {
+         synchronized (this)
+         {
+            s = snapshot;
+            if (s == null)
+            {
+               s = createSnapshot();
+               snapshot = s;
+            }
+         }
+      }
+      return s;
+   }
+
+   private Snapshot createSnapshot()
+   {
+      Map<String, TypeDefinition> full = new HashMap<String, TypeDefinition>(types.size());
+      Map<String, TypeDefinition> brief = new HashMap<String, TypeDefinition>(types.size());
+      for (TypeDefinition type : types.values())
+      {
+         String typeId = type.getId();
+         Map<String, PropertyDefinition<?>> propertyDefinitions = new LinkedHashMap<String, PropertyDefinition<?>>();
+         for (Map.Entry<String, PropertyDefinition<?>> e : PropertyDefinitions.getAll(typeId).entrySet())
+         {
+            propertyDefinitions.put(e.getKey(), copy(e.getValue()));
+         }
+         propertyDefinitions = Collections.unmodifiableMap(propertyDefinitions);
+         full.put(typeId, copy(type, propertyDefinitions));
+         brief.put(typeId, copy(type, null));
+      }
+
+      Map<String, List<String>> subTypes = new HashMap<String, List<String>>(types.size());
+      for (String typeId : types.keySet())
+      {
+         List<String> descendants = new ArrayList<String>();
+         collectSubTypes(typeId, descendants);
+         subTypes.put(typeId, Collections.unmodifiableList(descendants));
+      }
+
+      return new Snapshot(version, Collections.unmodifiableMap(full), Collections.unmodifiableMap(brief), Collections
+         .unmodifiableMap(subTypes));
+   }
+
+   private void collectSubTypes(String typeId, List<String> descendants)
+   {
+      Set<String> children = typeChildren.get(typeId);
+      if (children != null)
+      {
+         for (String child : children)
+         {
+            descendants.add(child);
+            collectSubTypes(child, descendants);
+         }
+      }
+   }
+
+   private static TypeDefinition copy(TypeDefinition type, Map<String, PropertyDefinition<?>> propertyDefinitions)
+   {
+      return new ReadOnlyTypeDefinition(type, propertyDefinitions);
+   }
+
+   private static <T> PropertyDefinition<T> copy(PropertyDefinition<T> definition)
+   {
+      return new ReadOnlyPropertyDefinition<T>(definition);
+   }
+}
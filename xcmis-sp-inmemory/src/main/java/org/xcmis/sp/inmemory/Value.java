@@ -25,6 +25,9 @@ import java.net.URI;
 import java.util.Calendar;
 
 /**
+ * Values of object properties. Values are immutable and may be shared by few
+ * objects, arrays returned by getters must not be changed.
+ *
  * @author <a href="mailto:andrew00x@gmail.com">Andrey Parfonov</a>
  * @version $Id$
  */
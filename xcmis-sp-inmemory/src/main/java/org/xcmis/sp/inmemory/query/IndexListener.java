@@ -28,12 +28,16 @@ import org.xcmis.search.content.Property.ContentValue;
 import org.xcmis.search.content.Property.SimpleValue;
 import org.xcmis.search.value.PropertyType;
 import org.xcmis.spi.CmisConstants;
+import org.xcmis.spi.CmisRuntimeException;
+import org.xcmis.spi.ConstraintException;
 import org.xcmis.spi.ContentStream;
 import org.xcmis.spi.DocumentData;
 import org.xcmis.spi.FolderData;
 import org.xcmis.spi.ObjectData;
+import org.xcmis.spi.ObjectNotFoundException;
 import org.xcmis.spi.PolicyData;
 import org.xcmis.spi.RelationshipData;
+import org.xcmis.spi.Storage;
 import org.xcmis.spi.utils.Logger;
 
 import java.io.IOException;
@@ -41,10 +45,25 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
+ * Passes changes of objects to {@link SearchService}. Changes are put in
+ * bounded queue and indexed by background worker in batches. Changes of the
+ * same object which wait in queue are coalesced, object is read from storage
+ * only when its batch is indexed. If queue size is not positive then each
+ * change is indexed immediately in caller thread. Worker must be stopped with
+ * {@link #stop()}, changes accepted after that are indexed in caller thread.
+ *
  * @author <a href="mailto:andrew00x@gmail.com">Andrey Parfonov</a>
  * @version $Id: IndexListener.java 1261 2010-06-09 09:52:06Z andrew00x $
  */
@@ -53,72 +72,468 @@ public class IndexListener
 
    private static final Logger LOG = Logger.getLogger(IndexListener.class);
 
+   /**
+    * Change of object waiting for indexing.
+    */
+   private static final class PendingChange
+   {
+      /**
+       * Sequence number of first change of object in queue.
+       */
+      final long sequence;
+
+      /**
+       * Object may be in index and must be removed before adding it again.
+       */
+      boolean indexed;
+
+      PendingChange(long sequence, boolean indexed)
+      {
+         this.sequence = sequence;
+         this.indexed = indexed;
+      }
+   }
+
    /**
     * Index storage.
     */
    private final SearchService searchService;
 
+   /**
+    * Storage to read objects at indexing time.
+    */
+   private final Storage storage;
+
    private final ContentEntryAdapter contentEntryAdapter;
 
-   public IndexListener(SearchService searchService)
+   /**
+    * Max number of objects waiting for indexing.
+    */
+   private final int queueSize;
+
+   /**
+    * Max number of objects indexed at once.
+    */
+   private final int batchSize;
+
+   /**
+    * If <code>true</code> then caller waits until its changes are visible in
+    * index.
+    */
+   private final boolean waitForIndex;
+
+   /**
+    * Changes waiting for indexing in order of first change.
+    */
+   private final LinkedHashMap<String, PendingChange> pending = new LinkedHashMap<String, PendingChange>();
+
+   private final Lock lock = new ReentrantLock();
+
+   private final Condition notEmpty = lock.newCondition();
+
+   private final Condition notFull = lock.newCondition();
+
+   private final Condition indexedCondition = lock.newCondition();
+
+   /**
+    * Sequence number of last accepted change.
+    */
+   private long lastSequence;
+
+   /**
+    * All changes with sequence number up to this one are indexed.
+    */
+   private long indexedSequence;
+
+   /**
+    * Sequence number of last change accepted from current thread.
+    */
+   private final ThreadLocal<Long> callerSequence = new ThreadLocal<Long>();
+
+   /**
+    * Set by {@link #stop()}, worker exits when queue is drained.
+    */
+   private boolean stopped;
+
+   /**
+    * Background worker or <code>null</code> if changes are indexed
+    * immediately.
+    */
+   private final Thread worker;
+
+   /**
+    * Create listener which indexes each change immediately.
+    *
+    * @param searchService search service
+    * @param storage storage
+    */
+   public IndexListener(SearchService searchService, Storage storage)
+   {
+      this(searchService, storage, 0, 1, true);
+   }
+
+   /**
+    * @param searchService search service
+    * @param storage storage
+    * @param queueSize max number of objects waiting for indexing, if not
+    *        positive then each change is indexed immediately
+    * @param batchSize max number of objects indexed at once
+    * @param waitForIndex if <code>true</code> then each change waits until it
+    *        is visible in index
+    */
+   public IndexListener(SearchService searchService, Storage storage, int queueSize, int batchSize,
+      boolean waitForIndex)
    {
       if (searchService == null)
          throw new IllegalArgumentException("The searchService argument may not be null");
+      if (storage == null)
+         throw new IllegalArgumentException("The storage argument may not be null");
       this.searchService = searchService;
+      this.storage = storage;
       this.contentEntryAdapter = new ContentEntryAdapter();
+      this.queueSize = queueSize;
+      this.batchSize = batchSize > 0 ? batchSize : 1;
+      this.waitForIndex = waitForIndex;
+      if (queueSize > 0)
+      {
+         worker = new Thread(new Runnable()
+         {
+            public void run()
+            {
+               processQueue();
+            }
+         }, "xcmis-indexer");
+         worker.setDaemon(true);
+         worker.start();
+      }
+      else
+      {
+         worker = null;
+      }
+   }
+
+   /**
+    * Index all changes waiting in queue and stop background worker.
+    */
+   public void stop()
+   {
+      if (worker == null)
+      {
+         return;
+      }
+      lock.lock();
+      try
+      {
+         stopped = true;
+         notEmpty.signalAll();
+         notFull.signalAll();
+      }
+      finally
+      {
+         lock.unlock();
+      }
+      try
+      {
+         worker.join();
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
    }
 
    public void created(ObjectData object)
    {
+      add(Collections.singleton(object.getObjectId()), false);
+   }
+
+   public void removed(Set<String> removed)
+   {
+      add(removed, true);
+   }
+
+   public void updated(ObjectData object)
+   {
+      add(Collections.singleton(object.getObjectId()), true);
+   }
+
+   /**
+    * Update index for set of objects at once. Should be used when change of
+    * one object affects others, e.g. ancestors of all descendants are changed
+    * when folder is moved.
+    *
+    * @param objects updated objects
+    */
+   public void updated(Collection<ObjectData> objects)
+   {
+      Set<String> ids = new LinkedHashSet<String>(objects.size());
+      for (ObjectData object : objects)
+      {
+         ids.add(object.getObjectId());
+      }
+      add(ids, true);
+   }
+
+   /**
+    * Wait until changes accepted from current thread are visible in index.
+    * Changes of other threads which wait in queue are not awaited, so caller
+    * is not blocked by whole queue.
+    */
+   public void awaitOwnChanges()
+   {
+      Long sequence = callerSequence.get();
+      if (queueSize <= 0 || sequence == null)
+      {
+         return;
+      }
+      lock.lock();
       try
       {
-         searchService.update(contentEntryAdapter.createEntry(object), null);
+         awaitIndexed(sequence);
       }
-      catch (IndexModificationException e)
+      finally
       {
-         if (LOG.isDebugEnabled())
-         {
-            LOG.debug(e.getLocalizedMessage());
-         }
+         lock.unlock();
       }
-      catch (IOException e)
+      callerSequence.remove();
+   }
+
+   /**
+    * Wait until all changes accepted before this call are visible in index.
+    */
+   public void flush()
+   {
+      if (queueSize > 0)
       {
-         if (LOG.isDebugEnabled())
+         lock.lock();
+         try
          {
-            LOG.debug(e.getLocalizedMessage());
+            awaitIndexed(lastSequence);
+         }
+         finally
+         {
+            lock.unlock();
          }
       }
    }
 
-   public void removed(Set<String> removed)
+   /**
+    * @return number of objects waiting for indexing
+    */
+   public int getQueueDepth()
    {
+      lock.lock();
       try
       {
-         searchService.update(Collections.EMPTY_LIST, removed);
+         return pending.size();
       }
-      catch (IndexModificationException e)
+      finally
       {
-         if (LOG.isDebugEnabled())
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Accept changes of objects.
+    *
+    * @param ids ids of changed objects
+    * @param indexed <code>true</code> if objects may be in index already
+    */
+   private void add(Set<String> ids, boolean indexed)
+   {
+      if (ids.isEmpty())
+      {
+         return;
+      }
+      if (queueSize <= 0)
+      {
+         Map<String, Boolean> batch = new LinkedHashMap<String, Boolean>(ids.size());
+         for (String id : ids)
          {
-            LOG.debug(e.getLocalizedMessage());
+            batch.put(id, indexed);
          }
+         index(batch);
+         return;
+      }
+      // Changes which can't be queued because worker is stopped.
+      Map<String, Boolean> direct = null;
+      // Changes are visible when change with this sequence number is indexed.
+      long sequence = 0;
+      lock.lock();
+      try
+      {
+         for (String id : ids)
+         {
+            if (!stopped)
+            {
+               PendingChange change = pending.get(id);
+               if (change != null)
+               {
+                  change.indexed |= indexed;
+                  sequence = Math.max(sequence, change.sequence);
+                  continue;
+               }
+               while (pending.size() >= queueSize && !stopped)
+               {
+                  notFull.awaitUninterruptibly();
+               }
+            }
+            if (stopped)
+            {
+               if (direct == null)
+               {
+                  direct = new LinkedHashMap<String, Boolean>();
+               }
+               direct.put(id, indexed);
+               continue;
+            }
+            pending.put(id, new PendingChange(++lastSequence, indexed));
+            sequence = lastSequence;
+         }
+         notEmpty.signal();
+         if (waitForIndex)
+         {
+            awaitIndexed(sequence);
+         }
+         else if (sequence > 0)
+         {
+            Long previous = callerSequence.get();
+            callerSequence.set(previous == null ? sequence : Math.max(previous, sequence));
+         }
+      }
+      finally
+      {
+         lock.unlock();
+      }
+      if (direct != null)
+      {
+         index(direct);
       }
    }
 
-   public void updated(ObjectData object)
+   /**
+    * Wait until changes up to specified sequence number are indexed. Must be
+    * called with lock held.
+    */
+   private void awaitIndexed(long sequence)
    {
-      try
+      while (indexedSequence < sequence)
       {
-         searchService.update(contentEntryAdapter.createEntry(object), object.getObjectId());
+         indexedCondition.awaitUninterruptibly();
       }
-      catch (IndexModificationException e)
+   }
+
+   /**
+    * Loop of background worker.
+    */
+   private void processQueue()
+   {
+      for (;;)
       {
-         if (LOG.isDebugEnabled())
+         Map<String, Boolean> batch = new LinkedHashMap<String, Boolean>();
+         long batchSequence;
+         lock.lock();
+         try
          {
-            LOG.debug(e.getLocalizedMessage());
+            while (pending.isEmpty() && !stopped)
+            {
+               notEmpty.awaitUninterruptibly();
+            }
+            if (pending.isEmpty())
+            {
+               return;
+            }
+            for (Iterator<Map.Entry<String, PendingChange>> it = pending.entrySet().iterator(); it.hasNext()
+               && batch.size() < batchSize;)
+            {
+               Map.Entry<String, PendingChange> e = it.next();
+               batch.put(e.getKey(), e.getValue().indexed);
+               it.remove();
+            }
+            // Changes are coalesced into first change of object, so all
+            // changes before first remaining one are in this batch.
+            batchSequence = pending.isEmpty() ? lastSequence : pending.values().iterator().next().sequence - 1;
+            notFull.signalAll();
+         }
+         finally
+         {
+            lock.unlock();
+         }
+
+         try
+         {
+            index(batch);
          }
+         catch (Throwable e)
+         {
+            // Worker must survive any failure, otherwise callers which wait
+            // for indexing are blocked forever.
+            LOG.error("Unable to index objects " + batch.keySet() + ". " + e.getMessage(), e);
+         }
+         finally
+         {
+            lock.lock();
+            try
+            {
+               indexedSequence = Math.max(indexedSequence, batchSequence);
+               indexedCondition.signalAll();
+            }
+            finally
+            {
+               lock.unlock();
+            }
+         }
+      }
+   }
+
+   /**
+    * Index current state of objects.
+    *
+    * @param batch ids of objects mapped to <code>true</code> if object may be
+    *        in index already
+    */
+   private void index(Map<String, Boolean> batch)
+   {
+      List<ContentEntry> added = new ArrayList<ContentEntry>(batch.size());
+      Set<String> removed = new HashSet<String>();
+      for (Map.Entry<String, Boolean> e : batch.entrySet())
+      {
+         String id = e.getKey();
+         if (e.getValue())
+         {
+            removed.add(id);
+         }
+         ObjectData object;
+         try
+         {
+            object = storage.getObjectById(id);
+         }
+         catch (ObjectNotFoundException onfe)
+         {
+            // Object removed.
+            continue;
+         }
+         try
+         {
+            added.add(contentEntryAdapter.createEntry(object));
+         }
+         catch (IOException ioe)
+         {
+            if (LOG.isDebugEnabled())
+            {
+               LOG.debug(ioe.getLocalizedMessage());
+            }
+         }
+      }
+      if (added.isEmpty() && removed.isEmpty())
+      {
+         return;
       }
-      catch (IOException e)
+      try
+      {
+         searchService.update(added, removed);
+      }
+      catch (IndexModificationException e)
       {
          if (LOG.isDebugEnabled())
          {
@@ -171,8 +586,8 @@ public class IndexListener
          MockContentEntry mockEntry = fillCommonInformation(objectData);
          //mark parent of root as parent
          mockEntry.parentIdentifiers.add("");
-         return new ContentEntry(mockEntry.name, mockEntry.getTableNames(), mockEntry.identifier, mockEntry
-            .getParentIdentifiers(), mockEntry.getProperties());
+         mockEntry.ancestorIdentifiers.add("");
+         return mockEntry.toContentEntry();
       }
 
       /**
@@ -184,8 +599,8 @@ public class IndexListener
          MockContentEntry mockEntry = fillCommonInformation(objectData);
          //mark parent of root as parent
          mockEntry.parentIdentifiers.add("");
-         return new ContentEntry(mockEntry.name, mockEntry.getTableNames(), mockEntry.identifier, mockEntry
-            .getParentIdentifiers(), mockEntry.getProperties());
+         mockEntry.ancestorIdentifiers.add("");
+         return mockEntry.toContentEntry();
       }
 
       private MockContentEntry fillCommonInformation(ObjectData objectData)
@@ -197,6 +612,7 @@ public class IndexListener
          for (FolderData folder : objectData.getParents())
          {
             contentEntry.parentIdentifiers.add(folder.getObjectId());
+            addAncestors(folder, contentEntry.ancestorIdentifiers);
          }
 
          for (org.xcmis.spi.model.Property<?> property : objectData.getProperties().values())
@@ -209,6 +625,28 @@ public class IndexListener
          return contentEntry;
       }
 
+      /**
+       * Add folder and all its ancestors.
+       *
+       * @param folder folder
+       * @param ancestors set of ancestors identifiers
+       */
+      private void addAncestors(FolderData folder, Set<String> ancestors)
+      {
+         for (FolderData current = folder; ancestors.add(current.getObjectId()) && !current.isRoot();)
+         {
+            try
+            {
+               current = current.getParent();
+            }
+            catch (ConstraintException e)
+            {
+               // Should never happen for not root folder.
+               throw new CmisRuntimeException(e.getMessage(), e);
+            }
+         }
+      }
+
       private <G> Property<G> convertProperty(org.xcmis.spi.model.Property<G> property)
       {
          Collection<ContentValue<G>> value = new ArrayList<ContentValue<G>>();
@@ -229,8 +667,7 @@ public class IndexListener
       private ContentEntry createFromFolder(FolderData objectData)
       {
          MockContentEntry mockEntry = fillCommonInformation(objectData);
-         return new ContentEntry(mockEntry.name, mockEntry.getTableNames(), mockEntry.identifier, mockEntry
-            .getParentIdentifiers(), mockEntry.getProperties());
+         return mockEntry.toContentEntry();
       }
 
       /**
@@ -252,8 +689,7 @@ public class IndexListener
             //TODO add constant for property name content
             mockEntry.properties.add(new Property<InputStream>(PropertyType.BINARY, "content", vals));
          }
-         return new ContentEntry(mockEntry.name, mockEntry.getTableNames(), mockEntry.identifier, mockEntry
-            .getParentIdentifiers(), mockEntry.getProperties());
+         return mockEntry.toContentEntry();
       }
    }
 
@@ -274,6 +710,11 @@ public class IndexListener
        */
       List<String> parentIdentifiers;
 
+      /**
+       * Set of all ancestors identifiers.
+       */
+      Set<String> ancestorIdentifiers;
+
       /**
        * Entry identifier.
        */
@@ -291,6 +732,7 @@ public class IndexListener
       {
          tableNames = new ArrayList<String>();
          parentIdentifiers = new ArrayList<String>();
+         ancestorIdentifiers = new LinkedHashSet<String>();
          properties = new ArrayList<Property>();
       }
 
@@ -318,5 +760,19 @@ public class IndexListener
          return properties.toArray(new Property[properties.size()]);
       }
 
+      /**
+       * @return the ancestorIdentifiers
+       */
+      public String[] getAncestorIdentifiers()
+      {
+         return ancestorIdentifiers.toArray(new String[ancestorIdentifiers.size()]);
+      }
+
+      ContentEntry toContentEntry()
+      {
+         return new ContentEntry(name, getTableNames(), identifier, getParentIdentifiers(), getAncestorIdentifiers(),
+            getProperties());
+      }
+
    }
 }
@@ -20,14 +20,18 @@
 package org.xcmis.sp.inmemory.tck;
 
 import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
 import java.util.Properties;
 
 import org.apache.tika.exception.TikaException;
+import org.xcmis.sp.inmemory.StorageConfiguration;
 import org.xcmis.spi.CmisRegistry;
 import org.xcmis.spi.CmisRegistryFactory;
+import org.xcmis.spi.RenditionCache;
+import org.xcmis.spi.RenditionGenerator;
 import org.xcmis.spi.RenditionManager;
 import org.xcmis.spi.utils.Logger;
 
@@ -80,6 +84,33 @@ public class InmemoryCmisRegistryFactory implements CmisRegistryFactory
             renditionManager.addRenditionProviders(Arrays.asList(renditionProvider.split(",")));
          }
 
+         long renditionCacheMaxMem = getLong(properties, "org.xcmis.storage.renditionCache.maxMem");
+         if (renditionCacheMaxMem > 0)
+         {
+            String spoolDir = (String)properties.get("org.xcmis.storage.renditionCache.spoolDir");
+            long renditionCacheMaxDisk = getLong(properties, "org.xcmis.storage.renditionCache.maxDisk");
+            RenditionManager.getInstance().setCache(
+               new RenditionCache(renditionCacheMaxMem, spoolDir != null && spoolDir.length() > 0 ? new File(spoolDir)
+                  : null, renditionCacheMaxDisk));
+            LOG.info("Rendition cache enabled, max memory size " + renditionCacheMaxMem);
+         }
+
+         long renditionWorkers = getLong(properties, "org.xcmis.storage.renditionGenerator.workers");
+         if (renditionWorkers > 0)
+         {
+            long queueSize = getLong(properties, "org.xcmis.storage.renditionGenerator.queueSize");
+            long waitTimeout = getLong(properties, "org.xcmis.storage.renditionGenerator.waitTimeout");
+            RenditionManager.getInstance().setGenerator(
+               new RenditionGenerator((int)renditionWorkers, queueSize > 0 ? (int)queueSize : 100,
+                  waitTimeout >= 0 ? waitTimeout : 5000));
+            LOG.info("Background rendition generation enabled, workers " + renditionWorkers);
+         }
+
+         // Settings of object trees are applied to each storage of this factory.
+         long treeParallelism = getLong(properties, "org.xcmis.storage.objectTree.parallelism");
+         long treeMaxNodes = getLong(properties, "org.xcmis.storage.objectTree.maxNodes");
+         long treeTimeout = getLong(properties, "org.xcmis.storage.objectTree.timeout");
+
          String sids = (String)properties.get("org.xcmis.storage.id");
          if (sids != null)
          {
@@ -116,11 +147,55 @@ public class InmemoryCmisRegistryFactory implements CmisRegistryFactory
                         LOG.error("Unable convert '" + sMaxMem + "' to long. ");
                      }
                   }
-                  reg.addStorage(new org.xcmis.sp.inmemory.StorageProviderImpl(id, //
+                  StorageConfiguration configuration = new StorageConfiguration(id, //
                      name != null && name.length() > 0 ? name : id, //
                      description != null && description.length() > 0 ? description : id, //
                      maxMem, //
-                     maxItemsNum));
+                     maxItemsNum);
+                  String indexQueueSize = (String)properties.get("org.xcmis.storage." + id + ".indexQueueSize");
+                  if (indexQueueSize != null && indexQueueSize.length() > 0)
+                  {
+                     configuration.setIndexQueueSize((int)getLong(properties, "org.xcmis.storage." + id
+                        + ".indexQueueSize"));
+                  }
+                  long indexBatchSize = getLong(properties, "org.xcmis.storage." + id + ".indexBatchSize");
+                  if (indexBatchSize > 0)
+                  {
+                     configuration.setIndexBatchSize((int)indexBatchSize);
+                  }
+                  configuration.setIndexWaitForVisibility(Boolean.parseBoolean((String)properties
+                     .get("org.xcmis.storage." + id + ".indexWaitForVisibility")));
+                  String contentStore = (String)properties.get("org.xcmis.storage." + id + ".contentStore");
+                  if (contentStore != null && contentStore.length() > 0)
+                  {
+                     configuration.setContentStore(contentStore.trim());
+                  }
+                  configuration.setContentDirectory((String)properties.get("org.xcmis.storage." + id
+                     + ".contentDirectory"));
+                  String pathCacheSize = (String)properties.get("org.xcmis.storage." + id + ".pathCacheSize");
+                  if (pathCacheSize != null && pathCacheSize.length() > 0)
+                  {
+                     configuration.setPathCacheSize((int)getLong(properties, "org.xcmis.storage." + id
+                        + ".pathCacheSize"));
+                  }
+                  String changeLogMaxSize = (String)properties.get("org.xcmis.storage." + id + ".changeLogMaxSize");
+                  if (changeLogMaxSize != null && changeLogMaxSize.length() > 0)
+                  {
+                     configuration.setChangeLogMaxSize((int)getLong(properties, "org.xcmis.storage." + id
+                        + ".changeLogMaxSize"));
+                  }
+                  configuration.setChangeLogMaxAge(getLong(properties, "org.xcmis.storage." + id + ".changeLogMaxAge"));
+                  configuration.setChangeLogDirectory((String)properties.get("org.xcmis.storage." + id
+                     + ".changeLogDirectory"));
+                  configuration.setObjectTreeParallelism((int)treeParallelism);
+                  configuration.setObjectTreeMaxNodes((int)treeMaxNodes);
+                  configuration.setObjectTreeTimeout(treeTimeout);
+                  if (treeParallelism > 1 || treeMaxNodes > 0 || treeTimeout > 0)
+                  {
+                     LOG.info("Object tree builder of storage " + id + " parallelism " + treeParallelism
+                        + ", max nodes " + treeMaxNodes + ", timeout " + treeTimeout);
+                  }
+                  reg.addStorage(new org.xcmis.sp.inmemory.StorageProviderImpl(configuration));
                   LOG.info("Register storage " + id);
                }
             }
@@ -138,4 +213,21 @@ public class InmemoryCmisRegistryFactory implements CmisRegistryFactory
       return reg;
    }
 
+   private static long getLong(Properties properties, String key)
+   {
+      String value = (String)properties.get(key);
+      if (value != null && value.length() > 0)
+      {
+         try
+         {
+            return Long.parseLong(value.trim());
+         }
+         catch (NumberFormatException ne)
+         {
+            LOG.error("Unable convert '" + value + "' to long. ");
+         }
+      }
+      return -1;
+   }
+
 }
@@ -71,6 +71,12 @@ public abstract class BaseTest extends TestCase
       documentTypeDefinition = storage.getTypeDefinition("cmis:document", true);
    }
 
+   protected void tearDown() throws Exception
+   {
+      storage.close();
+      super.tearDown();
+   }
+
    protected FolderData createFolder(FolderData parent, String name) throws Exception
    {
       PropertyDefinition<?> def = PropertyDefinitions.getPropertyDefinition("cmis:folder", CmisConstants.NAME);
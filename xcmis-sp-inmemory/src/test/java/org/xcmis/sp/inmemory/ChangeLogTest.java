@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.sp.inmemory;
+
+import junit.framework.TestCase;
+
+import org.xcmis.spi.ConstraintException;
+import org.xcmis.spi.ItemsIterator;
+import org.xcmis.spi.model.ChangeEvent;
+import org.xcmis.spi.model.ChangeType;
+import org.xcmis.spi.model.Property;
+import org.xcmis.spi.model.impl.StringProperty;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Test retention, reading from token and saving of {@link ChangeLog}.
+ */
+public class ChangeLogTest extends TestCase
+{
+   private File directory;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+      directory = new File(System.getProperty("java.io.tmpdir"), "xcmis-changelog-" + System.nanoTime());
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      File[] files = directory.listFiles();
+      if (files != null)
+      {
+         for (File file : files)
+         {
+            file.delete();
+         }
+      }
+      directory.delete();
+      super.tearDown();
+   }
+
+   public void testIterator() throws Exception
+   {
+      ChangeLog log = new ChangeLog(-1, -1, null);
+      assertNull(log.getLatestToken());
+      assertFalse(log.iterator(null).hasNext());
+      int count = ChangeLog.SEGMENT_SIZE * 3 + 7;
+      addEvents(log, 0, count);
+      assertEquals(count, log.size());
+      assertEquals("token" + (count - 1), log.getLatestToken());
+
+      ItemsIterator<ChangeEvent> iterator = log.iterator("token" + ChangeLog.SEGMENT_SIZE);
+      assertEquals(count - ChangeLog.SEGMENT_SIZE, iterator.size());
+      for (int i = ChangeLog.SEGMENT_SIZE; i < count; i++)
+      {
+         assertEquals("token" + i, iterator.next().getLogToken());
+      }
+      assertFalse(iterator.hasNext());
+
+      iterator = log.iterator(null);
+      iterator.skip(10);
+      assertEquals("token10", iterator.next().getLogToken());
+
+      // Events added after iterator is created are not visible for it.
+      iterator = log.iterator("token" + (count - 1));
+      addEvents(log, count, 1);
+      assertEquals("token" + (count - 1), iterator.next().getLogToken());
+      assertFalse(iterator.hasNext());
+
+      try
+      {
+         log.iterator("unknown");
+         fail("ConstraintException expected.");
+      }
+      catch (ConstraintException e)
+      {
+         // OK
+      }
+   }
+
+   public void testRetention() throws Exception
+   {
+      ChangeLog log = new ChangeLog(ChangeLog.SEGMENT_SIZE, -1, null);
+      addEvents(log, 0, ChangeLog.SEGMENT_SIZE * 4);
+      // Whole segments are dropped, at least max number of events is kept.
+      assertTrue(log.size() >= ChangeLog.SEGMENT_SIZE);
+      assertTrue(log.size() < ChangeLog.SEGMENT_SIZE * 2);
+      try
+      {
+         log.iterator("token0");
+         fail("ConstraintException expected.");
+      }
+      catch (ConstraintException e)
+      {
+         // OK
+      }
+      ItemsIterator<ChangeEvent> iterator = log.iterator(null);
+      assertEquals(log.size(), iterator.size());
+      assertEquals("token" + (ChangeLog.SEGMENT_SIZE * 4 - log.size()), iterator.next().getLogToken());
+   }
+
+   public void testRetentionByAge() throws Exception
+   {
+      ChangeLog log = new ChangeLog(-1, 60 * 1000L, null);
+      Calendar old = Calendar.getInstance();
+      old.add(Calendar.HOUR, -1);
+      for (int i = 0; i < ChangeLog.SEGMENT_SIZE; i++)
+      {
+         log.add(new ChangeEvent("old" + i, "object", ChangeType.UPDATED, old));
+      }
+      addEvents(log, 0, 1);
+      assertEquals(1, log.size());
+      assertEquals("token0", log.iterator(null).next().getLogToken());
+   }
+
+   public void testRetentionByAgeOnRead() throws Exception
+   {
+      ChangeLog log = new ChangeLog(-1, 60 * 1000L, null);
+      Calendar old = Calendar.getInstance();
+      old.add(Calendar.HOUR, -1);
+      log.add(new ChangeEvent("old0", "object", ChangeType.UPDATED, old));
+      log.add(new ChangeEvent("old1", "object", ChangeType.UPDATED, old));
+      addEvents(log, 0, 2);
+      // Nothing is dropped on add because all events are in the last segment.
+      assertEquals(4, log.size());
+
+      ItemsIterator<ChangeEvent> iterator = log.iterator(null);
+      assertEquals(2, iterator.size());
+      assertEquals("token0", iterator.next().getLogToken());
+      assertEquals("token1", iterator.next().getLogToken());
+      assertFalse(iterator.hasNext());
+      try
+      {
+         log.iterator("old1");
+         fail("ConstraintException expected.");
+      }
+      catch (ConstraintException e)
+      {
+         // OK
+      }
+   }
+
+   public void testClose() throws Exception
+   {
+      ChangeLog log = new ChangeLog(-1, -1, directory);
+      addEvents(log, 0, 10);
+      log.close();
+      // Log is still readable and accepts events in memory.
+      addEvents(log, 10, 1);
+      assertEquals(11, log.size());
+      assertEquals(10, new ChangeLog(-1, -1, directory).size());
+   }
+
+   public void testSave() throws Exception
+   {
+      ChangeLog log = new ChangeLog(-1, -1, directory);
+      addEvents(log, 0, 100);
+
+      ChangeLog restored = new ChangeLog(-1, -1, directory);
+      assertEquals(100, restored.size());
+      assertEquals("token99", restored.getLatestToken());
+      ChangeEvent event = restored.iterator("token50").next();
+      assertEquals("object50", event.getObjectId());
+      assertEquals(ChangeType.UPDATED, event.getType());
+      assertEquals(Collections.singletonList("name50"), event.getProperties().get(0).getValues());
+
+      // Incomplete record at the end of file is skipped.
+      FileOutputStream out = new FileOutputStream(new File(directory, ChangeLog.FILE_NAME), true);
+      out.write(new byte[]{0, 0, 0, 5, 't'});
+      out.close();
+      restored = new ChangeLog(-1, -1, directory);
+      assertEquals(100, restored.size());
+      addEvents(restored, 100, 1);
+      assertEquals(101, new ChangeLog(-1, -1, directory).size());
+   }
+
+   private static void addEvents(ChangeLog log, int from, int count)
+   {
+      for (int i = from; i < from + count; i++)
+      {
+         List<Property<?>> properties = new ArrayList<Property<?>>(1);
+         properties.add(new StringProperty("cmis:name", "cmis:name", "cmis:name", "cmis:name", "name" + i));
+         log.add(new ChangeEvent("token" + i, "object" + i, ChangeType.UPDATED, Calendar.getInstance(), properties,
+            null, null));
+      }
+   }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.sp.inmemory;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Test order of iteration and consistency of {@link ConcurrentLinkedHashSet}.
+ */
+public class ConcurrentLinkedHashSetTest extends TestCase
+{
+   public void testOrder()
+   {
+      ConcurrentLinkedHashSet<String> set = new ConcurrentLinkedHashSet<String>();
+      assertTrue(set.add("c"));
+      assertTrue(set.add("a"));
+      assertTrue(set.add("b"));
+      assertFalse(set.add("a"));
+      assertEquals(Arrays.asList("c", "a", "b"), new ArrayList<String>(set));
+
+      // Removed and added again element goes to the end.
+      assertTrue(set.remove("c"));
+      assertFalse(set.remove("c"));
+      set.add("c");
+      assertEquals(Arrays.asList("a", "b", "c"), new ArrayList<String>(set));
+
+      Iterator<String> iterator = set.iterator(set.position("a"));
+      assertEquals("b", iterator.next());
+      iterator.remove();
+      assertEquals("c", iterator.next());
+      assertFalse(iterator.hasNext());
+      assertEquals(Arrays.asList("a", "c"), new ArrayList<String>(set));
+      assertEquals(-1, set.position("b"));
+   }
+
+   public void testConcurrentAddRemove() throws Exception
+   {
+      final ConcurrentLinkedHashSet<Integer> set = new ConcurrentLinkedHashSet<Integer>();
+      ExecutorService executor = Executors.newFixedThreadPool(8);
+      List<Future<?>> results = new ArrayList<Future<?>>();
+      for (int t = 0; t < 8; t++)
+      {
+         final int thread = t;
+         results.add(executor.submit(new Runnable()
+         {
+            public void run()
+            {
+               for (int i = 0; i < 50000; i++)
+               {
+                  Integer e = i % 100;
+                  if ((i + thread) % 2 == 0)
+                  {
+                     set.add(e);
+                  }
+                  else
+                  {
+                     set.remove(e);
+                  }
+               }
+            }
+         }));
+      }
+      for (Future<?> result : results)
+      {
+         result.get();
+      }
+      executor.shutdown();
+
+      // Iteration sees exactly the members of set.
+      int count = 0;
+      for (Integer e : set)
+      {
+         assertTrue(set.contains(e));
+         count++;
+      }
+      assertEquals(set.size(), count);
+   }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.sp.inmemory;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+
+/**
+ * Test content stores of in-memory storage.
+ */
+public class ContentStoreTest extends TestCase
+{
+   private File directory;
+
+   public void setUp() throws Exception
+   {
+      super.setUp();
+      directory = new File(System.getProperty("java.io.tmpdir"), "xcmis-content-test-" + System.nanoTime());
+   }
+
+   public void tearDown() throws Exception
+   {
+      File[] files = directory.listFiles();
+      if (files != null)
+      {
+         for (File file : files)
+         {
+            file.delete();
+         }
+      }
+      directory.delete();
+      super.tearDown();
+   }
+
+   public void testHeap() throws Exception
+   {
+      check(new HeapContentStore());
+   }
+
+   public void testDirect() throws Exception
+   {
+      DirectContentStore store = new DirectContentStore();
+      check(store);
+
+      long allocated = store.getAllocatedBytes();
+      ContentValue value = store.write(new ByteArrayInputStream("content".getBytes()));
+      assertTrue(store.getAllocatedBytes() > allocated);
+      value.release();
+      assertEquals(allocated, store.getAllocatedBytes());
+      try
+      {
+         value.getStream();
+         fail("IOException expected.");
+      }
+      catch (IOException e)
+      {
+         // OK
+      }
+
+      // Content is freed when last stream is closed.
+      value = store.write(new ByteArrayInputStream("content".getBytes()));
+      InputStream in = value.getStream();
+      value.release();
+      assertTrue(store.getAllocatedBytes() > allocated);
+      assertEquals('c', in.read());
+      in.close();
+      assertEquals(allocated, store.getAllocatedBytes());
+      try
+      {
+         in.read();
+         fail("IOException expected.");
+      }
+      catch (IOException e)
+      {
+         // OK
+      }
+
+      store.write(new ByteArrayInputStream("content".getBytes()));
+      store.close();
+      assertEquals(0, store.getAllocatedBytes());
+   }
+
+   public void testMapped() throws Exception
+   {
+      MappedFileContentStore store = new MappedFileContentStore(directory);
+      check(store);
+
+      ContentValue value = store.write(new ByteArrayInputStream("content".getBytes()));
+      assertEquals(1, directory.listFiles().length);
+      value.release();
+      assertEquals(0, directory.listFiles().length);
+      try
+      {
+         value.getStream();
+         fail("IOException expected.");
+      }
+      catch (IOException e)
+      {
+         // OK
+      }
+
+      // File is deleted when last stream is closed.
+      value = store.write(new ByteArrayInputStream("content".getBytes()));
+      InputStream in1 = value.getStream();
+      InputStream in2 = value.getStream();
+      value.release();
+      assertEquals(1, directory.listFiles().length);
+      assertEquals('c', in1.read());
+      in1.close();
+      try
+      {
+         in1.read();
+         fail("IOException expected.");
+      }
+      catch (IOException e)
+      {
+         // OK
+      }
+      assertEquals(1, directory.listFiles().length);
+      assertEquals('c', in2.read());
+      in2.close();
+      assertEquals(0, directory.listFiles().length);
+
+      store.write(new ByteArrayInputStream("content".getBytes()));
+      store.close();
+      assertEquals(0, directory.listFiles().length);
+   }
+
+   private void check(ContentStore store) throws IOException
+   {
+      assertContent(new byte[0], store.write(new ByteArrayInputStream(new byte[0])));
+      assertContent("to be or not to be".getBytes(), store.write(new ByteArrayInputStream("to be or not to be"
+         .getBytes())));
+
+      // Several chunks of direct store.
+      byte[] big = new byte[3 * DirectContentStore.MAX_CHUNK_SIZE + 17];
+      new Random(1).nextBytes(big);
+      ContentValue value = store.write(new ByteArrayInputStream(big));
+      assertContent(big, value);
+      // Each stream is independent.
+      assertContent(big, value);
+   }
+
+   private void assertContent(byte[] expected, ContentValue value) throws IOException
+   {
+      assertEquals(expected.length, value.getLength());
+      InputStream in = value.getStream();
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[1000];
+      int r;
+      while ((r = in.read(buf)) != -1)
+      {
+         out.write(buf, 0, r);
+      }
+      in.close();
+      byte[] actual = out.toByteArray();
+      assertEquals(expected.length, actual.length);
+      for (int i = 0; i < expected.length; i++)
+      {
+         assertEquals(expected[i], actual[i]);
+      }
+   }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.sp.inmemory;
+
+import org.xcmis.spi.CmisConstants;
+import org.xcmis.spi.model.BaseType;
+
+import java.math.BigInteger;
+import java.util.Calendar;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reports retained heap of {@link Entry} with properties of typical document.
+ * It is not a test, run it from test classpath:
+ *
+ * <pre>
+ * java -Xmx512m org.xcmis.sp.inmemory.EntryFootprint [entries]
+ * </pre>
+ *
+ * For comparison the same values are also kept in one
+ * <code>ConcurrentHashMap&lt;String, Value&gt;</code> per object, as entries
+ * were kept before slot layout.
+ */
+public final class EntryFootprint
+{
+   private EntryFootprint()
+   {
+   }
+
+   public static void main(String[] args)
+   {
+      int count = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+      final EntryLayout layout = new EntryLayout();
+
+      long bytes = measure(count, new Factory()
+      {
+         public Object create(int i)
+         {
+            Entry entry = new Entry(layout);
+            entry.setValues(createValues(i));
+            return entry;
+         }
+      });
+      System.out.println("Entry: " + bytes + " bytes per object");
+
+      bytes = measure(count, new Factory()
+      {
+         public Object create(int i)
+         {
+            return new ConcurrentHashMap<String, Value>(createValues(i));
+         }
+      });
+      System.out.println("ConcurrentHashMap<String, Value>: " + bytes + " bytes per object");
+   }
+
+   private interface Factory
+   {
+      Object create(int i);
+   }
+
+   /**
+    * @return retained heap per created object
+    */
+   private static long measure(int count, Factory factory)
+   {
+      // Warm up shared values and layout.
+      factory.create(-1);
+      long before = usedMemory();
+      Object[] objects = new Object[count];
+      for (int i = 0; i < count; i++)
+      {
+         objects[i] = factory.create(i);
+      }
+      long after = usedMemory();
+      if (objects[count - 1] == null)
+      {
+         // Keep objects reachable until memory is measured.
+         throw new IllegalStateException();
+      }
+      return (after - before) / count;
+   }
+
+   private static long usedMemory()
+   {
+      Runtime runtime = Runtime.getRuntime();
+      long used = Long.MAX_VALUE;
+      // Repeat until garbage collection does not free anything more.
+      for (int i = 0; i < 10; i++)
+      {
+         System.gc();
+         try
+         {
+            Thread.sleep(100);
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+         }
+         long current = runtime.totalMemory() - runtime.freeMemory();
+         if (current >= used)
+         {
+            break;
+         }
+         used = current;
+      }
+      return used;
+   }
+
+   /**
+    * @return values of typical document, strings which are unique for each
+    *         document are new instances
+    */
+   private static Map<String, Value> createValues(int i)
+   {
+      String id = UUID.randomUUID().toString();
+      Calendar date = Calendar.getInstance();
+      Map<String, Value> values = new ConcurrentHashMap<String, Value>();
+      values.put(CmisConstants.OBJECT_ID, new StringValue(id));
+      values.put(CmisConstants.NAME, new StringValue("document" + i));
+      values.put(CmisConstants.OBJECT_TYPE_ID, new StringValue(new String("cmis:document")));
+      values.put(CmisConstants.BASE_TYPE_ID, new StringValue(new String(BaseType.DOCUMENT.value())));
+      values.put(CmisConstants.CREATED_BY, new StringValue(new String("root")));
+      values.put(CmisConstants.CREATION_DATE, new DateValue(date));
+      values.put(CmisConstants.LAST_MODIFIED_BY, new StringValue(new String("root")));
+      values.put(CmisConstants.LAST_MODIFICATION_DATE, new DateValue(date));
+      values.put(CmisConstants.CHANGE_TOKEN, new StringValue(UUID.randomUUID().toString()));
+      values.put(CmisConstants.IS_IMMUTABLE, new BooleanValue(false));
+      values.put(CmisConstants.IS_LATEST_VERSION, new BooleanValue(true));
+      values.put(CmisConstants.IS_MAJOR_VERSION, new BooleanValue(false));
+      values.put(CmisConstants.IS_LATEST_MAJOR_VERSION, new BooleanValue(false));
+      values.put(CmisConstants.VERSION_LABEL, new StringValue(new String("latest")));
+      values.put(CmisConstants.VERSION_SERIES_ID, new StringValue(UUID.randomUUID().toString()));
+      values.put(CmisConstants.IS_VERSION_SERIES_CHECKED_OUT, new BooleanValue(false));
+      values.put(CmisConstants.CONTENT_STREAM_LENGTH, new IntegerValue(BigInteger.valueOf(i)));
+      values.put(CmisConstants.CONTENT_STREAM_MIME_TYPE, new StringValue(new String("text/plain")));
+      values.put(CmisConstants.CONTENT_STREAM_FILE_NAME, new StringValue("document" + i + ".txt"));
+      return values;
+   }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.sp.inmemory;
+
+import junit.framework.TestCase;
+
+import org.xcmis.spi.CmisConstants;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Test compact representation of properties in {@link Entry}.
+ */
+public class EntryTest extends TestCase
+{
+   public void testLayout()
+   {
+      EntryLayout layout = new EntryLayout();
+      Entry first = new Entry(layout);
+      Entry second = new Entry(layout);
+      first.setValue(CmisConstants.NAME, new StringValue("first"));
+      second.setValue("custom", new StringValue("second"));
+      second.setValue(CmisConstants.NAME, new StringValue("second"));
+      assertEquals(2, layout.size());
+
+      assertEquals("first", first.getName());
+      assertNull(first.getValue("custom"));
+      assertEquals("second", second.getName());
+      Map<String, Value> values = second.getValues();
+      assertEquals(2, values.size());
+      assertEquals("second", values.get("custom").getStrings()[0]);
+
+      second.setValue("custom", null);
+      assertNull(second.getValue("custom"));
+      assertEquals(1, second.getValues().size());
+   }
+
+   public void testDates()
+   {
+      Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+      Calendar kiev = Calendar.getInstance(TimeZone.getTimeZone("Europe/Kiev"));
+      kiev.setTimeInMillis(utc.getTimeInMillis() - 1000);
+
+      Calendar[] dates = new DateValue(new Calendar[]{utc, null, kiev}).getDates();
+      assertEquals(3, dates.length);
+      assertEquals(utc.getTimeInMillis(), dates[0].getTimeInMillis());
+      assertTrue(utc.getTimeZone().hasSameRules(dates[0].getTimeZone()));
+      assertNull(dates[1]);
+      assertEquals(kiev.getTimeInMillis(), dates[2].getTimeInMillis());
+      assertTrue(kiev.getTimeZone().hasSameRules(dates[2].getTimeZone()));
+
+      // Each call gives new calendars, changes of them do not affect value.
+      DateValue value = new DateValue(utc);
+      value.getDates()[0].add(Calendar.YEAR, 1);
+      assertEquals(utc.getTimeInMillis(), value.getDates()[0].getTimeInMillis());
+   }
+
+   public void testIntegers()
+   {
+      BigInteger big = BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE);
+      assertEquals(Arrays.asList(BigInteger.ONE, BigInteger.valueOf(-5)), Arrays.asList(new IntegerValue(
+         new BigInteger[]{BigInteger.ONE, BigInteger.valueOf(-5)}).getIntegers()));
+      assertEquals(Arrays.asList(BigInteger.ONE, big), Arrays.asList(new IntegerValue(new BigInteger[]{
+         BigInteger.ONE, big}).getIntegers()));
+      assertEquals(Arrays.asList(BigInteger.ONE, null), Arrays.asList(new IntegerValue(new BigInteger[]{
+         BigInteger.ONE, null}).getIntegers()));
+   }
+
+   public void testSharedValues()
+   {
+      Entry first = new Entry();
+      Entry second = new Entry();
+      first.setValue(CmisConstants.IS_LATEST_VERSION, new BooleanValue(true));
+      second.setValue(CmisConstants.IS_LATEST_VERSION, new BooleanValue(true));
+      assertSame(first.getValue(CmisConstants.IS_LATEST_VERSION), second.getValue(CmisConstants.IS_LATEST_VERSION));
+      first.setValue(CmisConstants.OBJECT_TYPE_ID, new StringValue("cmis:document"));
+      second.setValue(CmisConstants.OBJECT_TYPE_ID, new StringValue("cmis:document"));
+      assertSame(first.getValue(CmisConstants.OBJECT_TYPE_ID), second.getValue(CmisConstants.OBJECT_TYPE_ID));
+      // Shared value can't be changed through one of entries.
+      first.getValue(CmisConstants.OBJECT_TYPE_ID).getStrings()[0] = "changed";
+      assertEquals("cmis:document", second.getValue(CmisConstants.OBJECT_TYPE_ID).getStrings()[0]);
+
+      // Names are not shared.
+      first.setValue(CmisConstants.NAME, new StringValue("name"));
+      second.setValue(CmisConstants.NAME, new StringValue("name"));
+      assertNotSame(first.getValue(CmisConstants.NAME), second.getValue(CmisConstants.NAME));
+
+      Boolean[] booleans = new BooleanValue(new Boolean[]{true, null, false}).getBooleans();
+      assertEquals(Arrays.asList(true, null, false), Arrays.asList(booleans));
+   }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.sp.inmemory;
+
+import org.xcmis.spi.Connection;
+import org.xcmis.spi.FolderData;
+import org.xcmis.spi.InvalidArgumentException;
+import org.xcmis.spi.ItemsTree;
+import org.xcmis.spi.ObjectData;
+import org.xcmis.spi.ObjectTreeBuilder;
+import org.xcmis.spi.UserContext;
+import org.xcmis.spi.model.CmisObject;
+import org.xcmis.spi.model.IncludeRelationships;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test building of trees for getDescendants and getFolderTree.
+ */
+public class ObjectTreeTest extends BaseTest
+{
+
+   private FolderData testFolder;
+
+   private Connection connection;
+
+   @Override
+   public void setUp() throws Exception
+   {
+      super.setUp();
+      testFolder = createFolder(rootFolder, "treeTest");
+      for (int i = 0; i < 3; i++)
+      {
+         FolderData folder = createFolder(testFolder, "folder" + i);
+         for (int j = 0; j < 5; j++)
+         {
+            createDocument(folder, "document" + j, documentTypeDefinition, null, null);
+         }
+         FolderData subFolder = createFolder(folder, "subFolder");
+         createDocument(subFolder, "document", documentTypeDefinition, null, null);
+      }
+      connection = new InmemConnection(storage);
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      ObjectTreeBuilder.setInstance(new ObjectTreeBuilder(1, -1, -1));
+      super.tearDown();
+   }
+
+   public void testParallelOrder() throws Exception
+   {
+      List<String> expected = getPaths(getDescendants(-1), "");
+      assertEquals(3 * (1 + 5 + 1 + 1), expected.size());
+      assertEquals("/folder0", expected.get(0));
+      assertEquals("/folder0/document0", expected.get(1));
+
+      ObjectTreeBuilder.setInstance(new ObjectTreeBuilder(4, -1, -1));
+      for (int i = 0; i < 10; i++)
+      {
+         assertEquals(expected, getPaths(getDescendants(-1), ""));
+      }
+   }
+
+   public void testDepthAndFilter() throws Exception
+   {
+      ObjectTreeBuilder.setInstance(new ObjectTreeBuilder(4, -1, -1));
+      List<ItemsTree<CmisObject>> tree = getDescendants(1);
+      assertEquals(3, tree.size());
+      assertNull(tree.get(0).getChildren());
+
+      tree =
+         connection.getFolderTree(testFolder.getObjectId(), -1, false, IncludeRelationships.NONE, true, false, null,
+            null);
+      List<String> paths = getPaths(tree, "");
+      assertEquals(6, paths.size());
+      assertEquals("/folder0", paths.get(0));
+      assertEquals("/folder0/subFolder", paths.get(1));
+   }
+
+   public void testMaxNodes() throws Exception
+   {
+      ObjectTreeBuilder.setInstance(new ObjectTreeBuilder(4, 10, -1));
+      getDescendants(1);
+      try
+      {
+         getDescendants(-1);
+         fail("InvalidArgumentException expected.");
+      }
+      catch (InvalidArgumentException e)
+      {
+         // OK
+      }
+   }
+
+   public void testUserContext() throws Exception
+   {
+      ObjectTreeBuilder builder = new ObjectTreeBuilder(4, -1, -1);
+      try
+      {
+         final List<String> users = new ArrayList<String>();
+         builder.build(testFolder, -1, null, false, new ObjectTreeBuilder.Converter()
+         {
+            public CmisObject convert(ObjectData object)
+            {
+               UserContext context = UserContext.getCurrent();
+               synchronized (users)
+               {
+                  users.add(context != null ? context.getUserId() : null);
+               }
+               return new CmisObject();
+            }
+         });
+         assertEquals(24, users.size());
+         for (String user : users)
+         {
+            assertEquals(principal, user);
+         }
+      }
+      finally
+      {
+         builder.shutdown();
+      }
+   }
+
+   private List<ItemsTree<CmisObject>> getDescendants(int depth) throws Exception
+   {
+      return connection.getDescendants(testFolder.getObjectId(), depth, false, IncludeRelationships.NONE, true, false,
+         null, null);
+   }
+
+   private List<String> getPaths(List<ItemsTree<CmisObject>> tree, String parent)
+   {
+      List<String> paths = new ArrayList<String>();
+      for (ItemsTree<CmisObject> node : tree)
+      {
+         String path = parent + "/" + node.getContainer().getPathSegment();
+         paths.add(path);
+         if (node.getChildren() != null)
+         {
+            paths.addAll(getPaths(node.getChildren(), path));
+         }
+      }
+      return paths;
+   }
+}
@@ -18,22 +18,36 @@
  */
 package org.xcmis.sp.inmemory;
 
+import org.xcmis.search.result.ScoredRow;
 import org.xcmis.spi.BaseContentStream;
 import org.xcmis.spi.CmisConstants;
+import org.xcmis.spi.ConstraintException;
 import org.xcmis.spi.ContentStream;
 import org.xcmis.spi.DocumentData;
 import org.xcmis.spi.FolderData;
 import org.xcmis.spi.ItemsIterator;
+import org.xcmis.spi.NameConstraintViolationException;
 import org.xcmis.spi.ObjectData;
+import org.xcmis.spi.ObjectNotFoundException;
+import org.xcmis.spi.PermissionService;
+import org.xcmis.spi.RenditionManager;
+import org.xcmis.spi.StorageException;
+import org.xcmis.spi.TypeNotFoundException;
 import org.xcmis.spi.model.AccessControlEntry;
+import org.xcmis.spi.model.AllowableActions;
+import org.xcmis.spi.model.BaseType;
 import org.xcmis.spi.model.ChangeEvent;
 import org.xcmis.spi.model.ChangeType;
+import org.xcmis.spi.model.ContentStreamAllowed;
 import org.xcmis.spi.model.Property;
 import org.xcmis.spi.model.PropertyDefinition;
+import org.xcmis.spi.model.TypeDefinition;
 import org.xcmis.spi.model.VersioningState;
 import org.xcmis.spi.model.impl.StringProperty;
+import org.xcmis.spi.query.Query;
 import org.xcmis.spi.utils.MimeType;
 
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -41,9 +55,20 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 /**
  * @author <a href="mailto:Sergey.Kabashnyuk@exoplatform.org">Sergey
@@ -108,6 +133,34 @@ public class StorageTest extends BaseTest
       System.out.println(document.getACL(true));
    }
 
+   public void testAllowableActionsAcl() throws Exception
+   {
+      DocumentData document = createDocument(rootFolder, "allowableActionsAclTest", documentTypeDefinition, null, null);
+      AllowableActions actions = storage.calculateAllowableActions(document);
+      assertTrue(actions.isCanGetProperties());
+      assertTrue(actions.isCanUpdateProperties());
+
+      document.setACL(Collections.singletonList(new AccessControlEntry(principal, new HashSet<String>(Arrays
+         .asList("cmis:read")))));
+      actions = storage.calculateAllowableActions(storage.getObjectById(document.getObjectId()));
+      assertTrue(actions.isCanGetProperties());
+      assertTrue(actions.isCanGetContentStream());
+      assertFalse(actions.isCanUpdateProperties());
+      assertFalse(actions.isCanDeleteObject());
+
+      document.setACL(Collections.singletonList(new AccessControlEntry(principal, new HashSet<String>(Arrays
+         .asList("cmis:all")))));
+      actions = storage.calculateAllowableActions(storage.getObjectById(document.getObjectId()));
+      assertTrue(actions.isCanUpdateProperties());
+      assertTrue(actions.isCanDeleteObject());
+
+      document.setACL(Collections.singletonList(new AccessControlEntry("anotherUser", new HashSet<String>(Arrays
+         .asList("cmis:all")))));
+      actions = storage.calculateAllowableActions(storage.getObjectById(document.getObjectId()));
+      assertFalse(actions.isCanGetProperties());
+      assertFalse(actions.isCanUpdateProperties());
+   }
+
    public void testMultifiledChild() throws Exception
    {
       DocumentData document = createDocument(rootFolder, "multifiledChildTest", documentTypeDefinition, null, null);
@@ -132,6 +185,50 @@ public class StorageTest extends BaseTest
       assertEquals(2, chs.size());
    }
 
+   public void testMultifiledChildNameConflict() throws Exception
+   {
+      DocumentData document = createDocument(rootFolder, "multifiledConflictTest", documentTypeDefinition, null, null);
+      FolderData folder = createFolder(rootFolder, "multifiledConflictFolderTest");
+      DocumentData existing = createDocument(folder, "multifiledConflictTest", documentTypeDefinition, null, null);
+      try
+      {
+         folder.addObject(document);
+         fail("ConstraintException expected.");
+      }
+      catch (ConstraintException e)
+      {
+         // OK
+      }
+      assertEquals(1, folder.getChildren(null).size());
+      assertEquals(existing.getObjectId(), folder.getChildren(null).next().getObjectId());
+      assertEquals(1, document.getParents().size());
+
+      // Adding object to folder where it is filed already is not conflict.
+      rootFolder.addObject(document);
+      assertEquals(1, document.getParents().size());
+   }
+
+   public void testDocumentOrderOfRemovedObject() throws Exception
+   {
+      FolderData folder = createFolder(rootFolder, "documentOrderFolderTest");
+      DocumentData document1 = createDocument(folder, "document1", documentTypeDefinition, null, null);
+      DocumentData document2 = createDocument(folder, "document2", documentTypeDefinition, null, null);
+      DocumentData removed = createDocument(rootFolder, "documentOrderRemovedTest", documentTypeDefinition, null, null);
+      storage.deleteObject(removed, true);
+
+      // Row of object removed after query was executed goes last.
+      List<ScoredRow> rows = new LinkedList<ScoredRow>();
+      rows.add(new ScoredRow("s", removed.getObjectId(), 1.0F));
+      rows.add(new ScoredRow("s", document2.getObjectId(), 1.0F));
+      rows.add(new ScoredRow("s", document1.getObjectId(), 1.0F));
+      storage.sortInDocumentOrder(rows, "s");
+
+      assertEquals(3, rows.size());
+      assertEquals(document1.getObjectId(), rows.get(0).getNodeIdentifer("s"));
+      assertEquals(document2.getObjectId(), rows.get(1).getNodeIdentifer("s"));
+      assertEquals(removed.getObjectId(), rows.get(2).getNodeIdentifer("s"));
+   }
+
    public void testMultifiling() throws Exception
    {
       DocumentData document = createDocument(rootFolder, "multifilingDocumentTest", documentTypeDefinition, null, null);
@@ -216,7 +313,433 @@ public class StorageTest extends BaseTest
 
    }
 
-   private int getSize(Iterator<String> iterator)
+   public void testTypeDefinitionCache() throws Exception
+   {
+      TypeDefinition documentType = storage.getTypeDefinition("cmis:document", true);
+      assertSame(documentType, storage.getTypeDefinition("cmis:document", true));
+      assertNotNull(documentType.getPropertyDefinition(CmisConstants.NAME));
+      assertNull(storage.getTypeDefinition("cmis:document", false).getPropertyDefinitions());
+      // Shared definitions can't be changed by caller.
+      try
+      {
+         documentType.setDisplayName("changed");
+         fail("UnsupportedOperationException expected.");
+      }
+      catch (UnsupportedOperationException e)
+      {
+         // OK
+      }
+      assertEquals("cmis:document", storage.getTypeDefinition("cmis:document", true).getDisplayName());
+      try
+      {
+         documentType.getPropertyDefinition(CmisConstants.NAME).setDisplayName("changed");
+         fail("UnsupportedOperationException expected.");
+      }
+      catch (UnsupportedOperationException e)
+      {
+         // OK
+      }
+      assertEquals(CmisConstants.NAME, storage.getTypeDefinition("cmis:document", true).getPropertyDefinition(
+         CmisConstants.NAME).getDisplayName());
+
+      storage.addType(new TypeDefinition("cmis:cache-test", BaseType.DOCUMENT, "cmis:cache-test", "cmis:cache-test",
+         "", "cmis:document", "cmis:cache-test", "Cache test type", true, true, true, true, true, true, true, true,
+         null, null, ContentStreamAllowed.ALLOWED, new HashMap<String, PropertyDefinition<?>>()));
+      storage.addType(new TypeDefinition("cmis:cache-test-child", BaseType.DOCUMENT, "cmis:cache-test-child",
+         "cmis:cache-test-child", "", "cmis:cache-test", "cmis:cache-test-child", "Cache test child type", true,
+         true, true, true, true, true, true, true, null, null, ContentStreamAllowed.ALLOWED,
+         new HashMap<String, PropertyDefinition<?>>()));
+
+      assertNotSame(documentType, storage.getTypeDefinition("cmis:document", true));
+      assertNotNull(storage.getTypeDefinition("cmis:cache-test-child", true).getPropertyDefinition(
+         CmisConstants.NAME));
+
+      List<String> subTypes = new ArrayList<String>();
+      for (TypeDefinition type : storage.getSubTypes("cmis:document", false))
+      {
+         subTypes.add(type.getId());
+      }
+      assertTrue(subTypes.contains("cmis:cache-test"));
+      assertTrue(subTypes.contains("cmis:cache-test-child"));
+      assertTrue(subTypes.indexOf("cmis:cache-test") < subTypes.indexOf("cmis:cache-test-child"));
+
+      storage.removeType("cmis:cache-test-child");
+      storage.removeType("cmis:cache-test");
+      try
+      {
+         storage.getTypeDefinition("cmis:cache-test", true);
+         fail("TypeNotFoundException expected.");
+      }
+      catch (TypeNotFoundException e)
+      {
+         // OK
+      }
+      assertEquals(0, storage.getSubTypes("cmis:document", false).size());
+   }
+
+   public void testUsage() throws Exception
+   {
+      StorageUsage usage = storage.getUsage();
+      long items = usage.getItemCount();
+      long content = usage.getContentBytes();
+      long metadata = usage.getMetadataBytes();
+
+      ContentStream cs = new BaseContentStream("to be or not to be".getBytes(), null, new MimeType("text", "plain"));
+      DocumentData document = createDocument(rootFolder, "usageTest", documentTypeDefinition, cs, null);
+      assertEquals(items + 1, usage.getItemCount());
+      assertEquals(content + 18, usage.getContentBytes());
+      assertTrue(usage.getMetadataBytes() > metadata);
+
+      document.setContentStream(new BaseContentStream("to be".getBytes(), null, new MimeType("text", "plain")));
+      assertEquals(content + 5, usage.getContentBytes());
+
+      document.setContentStream(null);
+      assertEquals(content, usage.getContentBytes());
+
+      storage.deleteObject(document, true);
+      assertEquals(items, usage.getItemCount());
+      assertEquals(content, usage.getContentBytes());
+      assertEquals(metadata, usage.getMetadataBytes());
+   }
+
+   public void testUsageMBean() throws Exception
+   {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName name = new ObjectName("org.xcmis.inmemory:type=StorageUsage,storage=" + ObjectName.quote(storageId));
+      assertTrue(server.isRegistered(name));
+      storage.close();
+      assertFalse(server.isRegistered(name));
+   }
+
+   public void testMaxItemsNumber() throws Exception
+   {
+      StorageConfiguration configuration =
+         new StorageConfiguration("inmem-quota", "inmem-quota", null, -1, storage.getUsage().getItemCount() + 1);
+      storage.close();
+      storage = new StorageImpl(configuration, RenditionManager.getInstance(), new PermissionService());
+      rootFolder = (FolderData)storage.getObjectById(storage.getRepositoryInfo().getRootFolderId());
+      createDocument(rootFolder, "quotaTest1", documentTypeDefinition, null, null);
+      try
+      {
+         createDocument(rootFolder, "quotaTest2", documentTypeDefinition, null, null);
+         fail("StorageException expected.");
+      }
+      catch (StorageException e)
+      {
+         // OK
+      }
+   }
+
+   public void testBackgroundIndexing() throws Exception
+   {
+      IndexingStorage indexingStorage = createIndexingStorage("inmem-index");
+      DocumentData document1 = createDocument(rootFolder, "indexTest1", documentTypeDefinition, null, null);
+      assertTrue(indexingStorage.indexing.await(10, TimeUnit.SECONDS));
+
+      // Worker is busy with first document, other changes wait in queue.
+      DocumentData document2 = createDocument(rootFolder, "indexTest2", documentTypeDefinition, null, null);
+      createDocument(rootFolder, "indexTest3", documentTypeDefinition, null, null);
+      storage.indexListener.updated(document2);
+      storage.indexListener.updated(document1);
+      assertEquals(3, storage.indexListener.getQueueDepth());
+
+      indexingStorage.proceed.countDown();
+      storage.indexListener.flush();
+      assertEquals(0, storage.indexListener.getQueueDepth());
+      assertEquals(3, getSize(storage.query(new Query("SELECT * FROM cmis:document", true))));
+   }
+
+   public void testQueryDoesNotWaitForOtherThreads() throws Exception
+   {
+      IndexingStorage indexingStorage = createIndexingStorage("inmem-index-own");
+      ExecutorService executor = Executors.newSingleThreadExecutor();
+      try
+      {
+         executor.submit(new Callable<DocumentData>()
+         {
+            public DocumentData call() throws Exception
+            {
+               return createDocument(rootFolder, "indexTest1", documentTypeDefinition, null, null);
+            }
+         }).get();
+         assertTrue(indexingStorage.indexing.await(10, TimeUnit.SECONDS));
+
+         // Worker is blocked with change of other thread, query doesn't wait for it.
+         assertEquals(0, getSize(storage.query(new Query("SELECT * FROM cmis:document", true))));
+
+         indexingStorage.proceed.countDown();
+         // Own changes are always visible.
+         createDocument(rootFolder, "indexTest2", documentTypeDefinition, null, null);
+         assertEquals(2, getSize(storage.query(new Query("SELECT * FROM cmis:document", true))));
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+   }
+
+   public void testIndexingFailure() throws Exception
+   {
+      IndexingStorage indexingStorage = createIndexingStorage("inmem-index-failure");
+      indexingStorage.proceed.countDown();
+      indexingStorage.fail = true;
+      createDocument(rootFolder, "indexTest1", documentTypeDefinition, null, null);
+      // Must not block even if worker got Error.
+      storage.indexListener.flush();
+      assertFalse(indexingStorage.fail);
+
+      createDocument(rootFolder, "indexTest2", documentTypeDefinition, null, null);
+      storage.indexListener.flush();
+      assertEquals(1, getSize(storage.query(new Query("SELECT * FROM cmis:document", true))));
+
+      storage.indexListener.stop();
+      // Worker is stopped, changes are indexed in caller thread.
+      createDocument(rootFolder, "indexTest3", documentTypeDefinition, null, null);
+      assertEquals(0, storage.indexListener.getQueueDepth());
+      assertEquals(2, getSize(storage.query(new Query("SELECT * FROM cmis:document", true))));
+   }
+
+   private IndexingStorage createIndexingStorage(String id) throws Exception
+   {
+      StorageConfiguration configuration = new StorageConfiguration(id, id, null, -1, -1);
+      configuration.setIndexQueueSize(10);
+      configuration.setIndexBatchSize(2);
+      configuration.setIndexWaitForVisibility(false);
+      storage.close();
+      IndexingStorage indexingStorage = new IndexingStorage(configuration);
+      storage = indexingStorage;
+      rootFolder = (FolderData)storage.getObjectById(storage.getRepositoryInfo().getRootFolderId());
+      documentTypeDefinition = storage.getTypeDefinition("cmis:document", true);
+      return indexingStorage;
+   }
+
+   /**
+    * Storage which lets test control background indexing worker.
+    */
+   private static class IndexingStorage extends StorageImpl
+   {
+      /** Released when worker reads first object. */
+      final CountDownLatch indexing = new CountDownLatch(1);
+
+      /** Worker waits for it before reading objects. */
+      final CountDownLatch proceed = new CountDownLatch(1);
+
+      /** If <code>true</code> then worker gets Error on next read. */
+      volatile boolean fail;
+
+      IndexingStorage(StorageConfiguration configuration) throws Exception
+      {
+         super(configuration, RenditionManager.getInstance(), new PermissionService());
+      }
+
+      @Override
+      public ObjectData getObjectById(String objectId) throws ObjectNotFoundException
+      {
+         if ("xcmis-indexer".equals(Thread.currentThread().getName()))
+         {
+            indexing.countDown();
+            try
+            {
+               proceed.await();
+            }
+            catch (InterruptedException e)
+            {
+               Thread.currentThread().interrupt();
+            }
+            if (fail)
+            {
+               fail = false;
+               throw new Error("Indexing failure");
+            }
+         }
+         return super.getObjectById(objectId);
+      }
+   }
+
+   public void testObjectByPath() throws Exception
+   {
+      FolderData folder = createFolder(rootFolder, "pathTest");
+      DocumentData document = createDocument(folder, "pathTestDocument", documentTypeDefinition, null, null);
+      assertEquals(document.getObjectId(), storage.getObjectByPath("/pathTest/pathTestDocument").getObjectId());
+      assertEquals(folder.getObjectId(), storage.getObjectByPath("pathTest").getObjectId());
+
+      try
+      {
+         createDocument(folder, "pathTestDocument", documentTypeDefinition, null, null);
+         fail("NameConstraintViolationException expected.");
+      }
+      catch (NameConstraintViolationException e)
+      {
+         // OK
+      }
+
+      // Rename of folder changes path of its children.
+      PropertyDefinition<?> def = PropertyDefinitions.getPropertyDefinition("cmis:folder", CmisConstants.NAME);
+      folder.setProperty(new StringProperty(def.getId(), def.getQueryName(), def.getLocalName(), def
+         .getDisplayName(), "pathTestRenamed"));
+      assertNotFound("/pathTest/pathTestDocument");
+      assertEquals(document.getObjectId(), storage.getObjectByPath("/pathTestRenamed/pathTestDocument")
+         .getObjectId());
+
+      FolderData target = createFolder(rootFolder, "pathTestTarget");
+      storage.moveObject(document, target, folder);
+      assertNotFound("/pathTestRenamed/pathTestDocument");
+      assertEquals(document.getObjectId(), storage.getObjectByPath("/pathTestTarget/pathTestDocument")
+         .getObjectId());
+      // Name is free in source folder after move.
+      createDocument(folder, "pathTestDocument", documentTypeDefinition, null, null);
+
+      // Checked in document replaces previous version.
+      DocumentData pwc = document.checkout();
+      assertEquals(document.getObjectId(), storage.getObjectByPath("/pathTestTarget/pathTestDocument")
+         .getObjectId());
+      pwc.checkin(true, "", null, null, null, null);
+      assertEquals(pwc.getObjectId(), storage.getObjectByPath("/pathTestTarget/pathTestDocument").getObjectId());
+
+      storage.deleteObject(pwc, true);
+      assertNotFound("/pathTestTarget/pathTestDocument");
+      createDocument(target, "pathTestDocument", documentTypeDefinition, null, null);
+   }
+
+   public void testConcurrentCreateDelete() throws Exception
+   {
+      final FolderData folder = createFolder(rootFolder, "concurrentTest");
+      final int threads = 8;
+      final int perThread = 200;
+      ExecutorService executor = Executors.newFixedThreadPool(threads);
+      List<Future<Set<String>>> results = new ArrayList<Future<Set<String>>>();
+      try
+      {
+         for (int t = 0; t < threads; t++)
+         {
+            final int thread = t;
+            results.add(executor.submit(new Callable<Set<String>>()
+            {
+               public Set<String> call() throws Exception
+               {
+                  // Create documents and delete each second one of them.
+                  Set<String> kept = new HashSet<String>();
+                  DocumentData previous = null;
+                  for (int i = 0; i < perThread; i++)
+                  {
+                     DocumentData document =
+                        createDocument(folder, "concurrent-" + thread + "-" + i, documentTypeDefinition, null, null);
+                     if (previous == null)
+                     {
+                        previous = document;
+                     }
+                     else
+                     {
+                        storage.deleteObject(previous, true);
+                        previous = null;
+                        kept.add(document.getObjectId());
+                     }
+                  }
+                  return kept;
+               }
+            }));
+         }
+         Set<String> expected = new HashSet<String>();
+         for (Future<Set<String>> result : results)
+         {
+            expected.addAll(result.get());
+         }
+         executor.shutdown();
+
+         Set<String> actual = new HashSet<String>();
+         for (ItemsIterator<ObjectData> children = folder.getChildren(null); children.hasNext();)
+         {
+            assertTrue(actual.add(children.next().getObjectId()));
+         }
+         assertEquals(expected, actual);
+         for (String id : expected)
+         {
+            ObjectData object = storage.getObjectById(id);
+            assertEquals(id, storage.getObjectByPath("/concurrentTest/" + object.getName()).getObjectId());
+         }
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+   }
+
+   public void testChildrenOrder() throws Exception
+   {
+      FolderData folder = createFolder(rootFolder, "orderTest");
+      DocumentData c = createDocument(folder, "c", documentTypeDefinition, null, null);
+      Thread.sleep(5);
+      DocumentData a = createDocument(folder, "a", documentTypeDefinition, null, null);
+      Thread.sleep(5);
+      DocumentData b = createDocument(folder, "b", documentTypeDefinition, null, null);
+
+      assertEquals(Arrays.asList("a", "b", "c"), getNames(folder.getChildren(CmisConstants.NAME)));
+      assertEquals(Arrays.asList("c", "b", "a"), getNames(folder.getChildren("cmis:name DESC")));
+      assertEquals(Arrays.asList("c", "a", "b"), getNames(folder.getChildren(CmisConstants.CREATION_DATE
+         + " ASC,cmis:name")));
+      // Not supported order, insertion order is used.
+      assertEquals(Arrays.asList("c", "a", "b"), getNames(folder.getChildren("cmis:objectId")));
+
+      Thread.sleep(5);
+      PropertyDefinition<?> def = PropertyDefinitions.getPropertyDefinition("cmis:document", CmisConstants.NAME);
+      c.setProperty(new StringProperty(def.getId(), def.getQueryName(), def.getLocalName(), def.getDisplayName(),
+         "d"));
+      assertEquals(Arrays.asList("a", "b", "d"), getNames(folder.getChildren(CmisConstants.NAME)));
+      assertEquals(Arrays.asList("d", "b", "a"), getNames(folder
+         .getChildren(CmisConstants.LAST_MODIFICATION_DATE + " DESC")));
+
+      // Paging.
+      ItemsIterator<ObjectData> children = folder.getChildren(CmisConstants.NAME);
+      assertEquals(3, children.size());
+      children.skip(1);
+      assertEquals(b.getObjectId(), children.next().getObjectId());
+      try
+      {
+         children.skip(2);
+         fail("NoSuchElementException expected.");
+      }
+      catch (NoSuchElementException e)
+      {
+         // OK
+      }
+
+      // Previous versions of document are not children.
+      DocumentData pwc = a.checkout();
+      pwc.checkin(true, "", null, null, null, null);
+      assertEquals(3, folder.getChildren(null).size());
+      // Checked in copy is added at the end of folder.
+      assertEquals(Arrays.asList("d", "b", "a"), getNames(folder.getChildren(null)));
+      assertEquals(pwc.getObjectId(), folder.getChildren(CmisConstants.NAME).next().getObjectId());
+
+      storage.deleteObject(b, true);
+      assertEquals(Arrays.asList("a", "d"), getNames(folder.getChildren(CmisConstants.NAME)));
+      assertEquals(2, folder.getChildren(null).size());
+   }
+
+   private List<String> getNames(ItemsIterator<ObjectData> children)
+   {
+      List<String> names = new ArrayList<String>();
+      while (children.hasNext())
+      {
+         names.add(children.next().getName());
+      }
+      return names;
+   }
+
+   private void assertNotFound(String path)
+   {
+      try
+      {
+         storage.getObjectByPath(path);
+         fail("ObjectNotFoundException expected for " + path);
+      }
+      catch (ObjectNotFoundException e)
+      {
+         // OK
+      }
+   }
+
+   private int getSize(Iterator<?> iterator)
    {
       int result = 0;
 
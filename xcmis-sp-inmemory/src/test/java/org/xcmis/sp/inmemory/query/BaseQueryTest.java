@@ -69,6 +69,8 @@ public abstract class BaseQueryTest extends BaseTest
 
    protected final static String PROPERTY_STATUS = "cmis:status";
 
+   protected final static String PROPERTY_FLIGHT_NUMBER = "cmis:flight-number";
+
    protected TypeDefinition nasaDocumentTypeDefinition;
 
    protected TypeDefinition folderTypeDefinition;
@@ -112,6 +114,10 @@ public abstract class BaseQueryTest extends BaseTest
          "cmis:status", null, "cmis:status", "cmis:status", PropertyType.BOOLEAN, Updatability.READWRITE, true, false,
          false, false, false, true, null, null));
 
+      propertyDefinitions.put("cmis:flight-number", new PropertyDefinition<String>("cmis:flight-number",
+         "cmis:flight-number", "cmis:flight-number", null, "cmis:flight-number", "cmis:flight-number",
+         PropertyType.INTEGER, Updatability.READWRITE, true, false, false, false, false, true, null, null));
+
       storage.addType(new TypeDefinition("cmis:nasa-mission", BaseType.DOCUMENT, "cmis:nasa-mission",
          "cmis:nasa-mission", "", "cmis:document", "cmis:nasa-mission", "Cmis Document Type", true, true, true, true,
          true, true, true, true, null, null, ContentStreamAllowed.ALLOWED, propertyDefinitions));
@@ -32,16 +32,19 @@ import org.xcmis.spi.model.TypeDefinition;
 import org.xcmis.spi.model.UnfileObject;
 import org.xcmis.spi.model.impl.BooleanProperty;
 import org.xcmis.spi.model.impl.DecimalProperty;
+import org.xcmis.spi.model.impl.IntegerProperty;
 import org.xcmis.spi.model.impl.StringProperty;
 import org.xcmis.spi.query.Query;
 import org.xcmis.spi.query.Result;
 import org.xcmis.spi.utils.MimeType;
 
 import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 
 /**
  * Created by The eXo Platform SAS. <br/>
@@ -451,6 +454,54 @@ public class QueryUsecasesTest extends BaseQueryTest
 
    }
 
+   /**
+    * Test LIKE constraint with leading wildcard.
+    * <p>
+    * Initial data:
+    * <ul>
+    * <li>doc1: <b>Title</b> - node1 <b>prop</b> - ad%min master
+    * <li>doc2: <b>Title</b> - node2 <b>prop</b> - admin operator
+    * <li>doc3: <b>Title</b> - node2 <b>prop</b> - radmin
+    * </ul>
+    * <p>
+    * Query : Select all documents where prop ends with "min" and all documents
+    * where prop contains "min" but does not end with it.
+    * <p>
+    * Expected result: doc3 for first query, doc1 and doc2 for second one
+    *
+    * @throws Exception if an unexpected error occurs
+    */
+   public void testLIKEConstraintLeadingWildcard() throws Exception
+   {
+      DocumentData doc1 =
+         createDocument(testRoot, "node1", nasaDocumentTypeDefinition, "hello world".getBytes(), MimeType
+            .fromString("text/plain"));
+      doc1.setProperty(new StringProperty(PROPERTY_COMMANDER, PROPERTY_COMMANDER, PROPERTY_COMMANDER,
+         PROPERTY_COMMANDER, "ad%min master"));
+
+      DocumentData doc2 =
+         createDocument(testRoot, "node2", nasaDocumentTypeDefinition, "hello world".getBytes(), MimeType
+            .fromString("text/plain"));
+      doc2.setProperty(new StringProperty(PROPERTY_COMMANDER, PROPERTY_COMMANDER, PROPERTY_COMMANDER,
+         PROPERTY_COMMANDER, "admin operator"));
+
+      DocumentData doc3 =
+         createDocument(testRoot, "node3", nasaDocumentTypeDefinition, "hello world".getBytes(), MimeType
+            .fromString("text/plain"));
+      doc3.setProperty(new StringProperty(PROPERTY_COMMANDER, PROPERTY_COMMANDER, PROPERTY_COMMANDER,
+         PROPERTY_COMMANDER, "radmin"));
+
+      String statement = "SELECT * FROM " + NASA_DOCUMENT + " AS doc WHERE " + PROPERTY_COMMANDER + " LIKE '%min'";
+      ItemsIterator<Result> result = storage.query(new Query(statement, true));
+      assertEquals(1, result.size());
+      checkResult(result, new DocumentData[]{doc3});
+
+      statement = "SELECT * FROM " + NASA_DOCUMENT + " AS doc WHERE " + PROPERTY_COMMANDER + " LIKE '%min_%'";
+      result = storage.query(new Query(statement, true));
+      assertEquals(2, result.size());
+      checkResult(result, new DocumentData[]{doc1, doc2});
+   }
+
    /**
     * Test NOT constraint.
     * <p>
@@ -636,6 +687,47 @@ public class QueryUsecasesTest extends BaseQueryTest
 
    }
 
+   /**
+    * Test paging through ordered result when storage fetches only requested
+    * rows.
+    *
+    * @throws Exception if an unexpected error occurs
+    */
+   public void testOrderByPaging() throws Exception
+   {
+
+      List<DocumentData> appolloContent = createNasaContent(testRoot);
+
+      String statement = "SELECT * FROM " + NASA_DOCUMENT + " ORDER BY " + PROPERTY_COMMANDER;
+
+      // Page of one item, second item tells that there are more items.
+      ItemsIterator<Result> result = storage.query(new Query(statement, true, 1, 2));
+      assertEquals(4, result.size());
+      result.skip(2);
+      assertEquals(appolloContent.get(2).getObjectId(), result.next().getObjectId());
+      assertTrue(result.hasNext());
+      assertEquals(appolloContent.get(0).getObjectId(), result.next().getObjectId());
+      assertFalse(result.hasNext());
+
+      // Hint is not obligation, iterator gives all items from the first one.
+      result = storage.query(new Query(statement, true, 1, 2));
+      checkResultOrder(result, new DocumentData[]{appolloContent.get(3), appolloContent.get(1), appolloContent.get(2),
+         appolloContent.get(0)});
+
+      result = storage.query(new Query(statement, true, 1, 0));
+      result.skip(3);
+      assertEquals(appolloContent.get(0).getObjectId(), result.next().getObjectId());
+      try
+      {
+         storage.query(new Query(statement, true, 1, 4)).skip(4);
+         fail("NoSuchElementException expected.");
+      }
+      catch (NoSuchElementException e)
+      {
+         // OK
+      }
+   }
+
    /**
     * Test ORDER BY default.
     * <p>
@@ -828,6 +920,54 @@ public class QueryUsecasesTest extends BaseQueryTest
       checkResult(result, new DocumentData[]{doc1, doc2});
    }
 
+   /**
+    * Test default order of result when query has not ORDER BY clause.
+    * <p>
+    * Initial data:
+    * <p>
+    * - folderB
+    * <p>
+    * -- document a
+    * <p>
+    * - folderA
+    * <p>
+    * -- folder sub
+    * <p>
+    * --- document b
+    * <p>
+    * -- document y (removed)
+    * <p>
+    * -- document z
+    * <p>
+    * - document c
+    * <p>
+    * Query : Select all documents that are in tree of test root.
+    * <p>
+    * Expected result: c, b, z, a - order of paths of documents.
+    *
+    * @throws Exception if an unexpected error occurs
+    */
+   public void testDefaultDocumentOrder() throws Exception
+   {
+      MimeType contentType = MimeType.fromString("text/plain");
+      FolderData folderB = createFolder(testRoot, "folderB");
+      DocumentData a = createDocument(folderB, "a", nasaDocumentTypeDefinition, new byte[0], contentType);
+      FolderData folderA = createFolder(testRoot, "folderA");
+      FolderData sub = createFolder(folderA, "sub");
+      DocumentData b = createDocument(sub, "b", nasaDocumentTypeDefinition, new byte[0], contentType);
+      DocumentData y = createDocument(folderA, "y", nasaDocumentTypeDefinition, new byte[0], contentType);
+      DocumentData z = createDocument(folderA, "z", nasaDocumentTypeDefinition, new byte[0], contentType);
+      DocumentData c = createDocument(testRoot, "c", nasaDocumentTypeDefinition, new byte[0], contentType);
+      storage.deleteObject(y, true);
+
+      String statement = "SELECT * FROM " + NASA_DOCUMENT + " WHERE IN_TREE('" + testRoot.getObjectId() + "')";
+
+      Query query = new Query(statement, true);
+      ItemsIterator<Result> result = storage.query(query);
+
+      checkResultOrder(result, new DocumentData[]{c, b, z, a});
+   }
+
    /**
     * Test not equal comparison (<>).
     * <p>
@@ -908,6 +1048,161 @@ public class QueryUsecasesTest extends BaseQueryTest
       checkResult(result, new DocumentData[]{doc2});
    }
 
+   /**
+    * Test range of decimal values and ordering by decimal property.
+    * <p>
+    * Initial data:
+    * <ul>
+    * <li>doc1: <b>long</b> - 3
+    * <li>doc2: <b>long</b> - 15
+    * <li>doc3: <b>long</b> - -2.5
+    * <li>doc4: <b>long</b> - 7.5
+    * </ul>
+    * <p>
+    * Query : Select all documents property long more than -2.5 and not more
+    * than 15 ordered by property long descending.
+    * <p>
+    * Expected result: doc2, doc4, doc1.
+    *
+    * @throws Exception if an unexpected error occurs
+    */
+   public void testDecimalRangeOrderBy() throws Exception
+   {
+      // create data
+      MimeType contentType = MimeType.fromString("text/plain");
+
+      FolderData folder = createFolder(testRoot, "DecimalRange");
+
+      DocumentData doc1 = createDocument(folder, "doc1", nasaDocumentTypeDefinition, new byte[0], contentType);
+      doc1.setProperty(new DecimalProperty(PROPERTY_BOOSTER_MASS, PROPERTY_BOOSTER_MASS, PROPERTY_BOOSTER_MASS,
+         PROPERTY_BOOSTER_MASS, new BigDecimal(3)));
+
+      DocumentData doc2 = createDocument(folder, "doc2", nasaDocumentTypeDefinition, new byte[0], contentType);
+      doc2.setProperty(new DecimalProperty(PROPERTY_BOOSTER_MASS, PROPERTY_BOOSTER_MASS, PROPERTY_BOOSTER_MASS,
+         PROPERTY_BOOSTER_MASS, new BigDecimal(15)));
+
+      DocumentData doc3 = createDocument(folder, "doc3", nasaDocumentTypeDefinition, new byte[0], contentType);
+      doc3.setProperty(new DecimalProperty(PROPERTY_BOOSTER_MASS, PROPERTY_BOOSTER_MASS, PROPERTY_BOOSTER_MASS,
+         PROPERTY_BOOSTER_MASS, BigDecimal.valueOf(-2.5)));
+
+      DocumentData doc4 = createDocument(folder, "doc4", nasaDocumentTypeDefinition, new byte[0], contentType);
+      doc4.setProperty(new DecimalProperty(PROPERTY_BOOSTER_MASS, PROPERTY_BOOSTER_MASS, PROPERTY_BOOSTER_MASS,
+         PROPERTY_BOOSTER_MASS, BigDecimal.valueOf(7.5)));
+
+      String statement =
+         "SELECT * FROM " + NASA_DOCUMENT + " WHERE " + PROPERTY_BOOSTER_MASS + " > -2.5 AND "
+            + PROPERTY_BOOSTER_MASS + " <= 15 ORDER BY " + PROPERTY_BOOSTER_MASS + " DESC";
+
+      Query query = new Query(statement, true);
+      ItemsIterator<Result> result = storage.query(query);
+
+      checkResultOrder(result, new DocumentData[]{doc2, doc4, doc1});
+   }
+
+   /**
+    * Test comparison of integers which can't be represented as doubles.
+    * <p>
+    * Initial data:
+    * <ul>
+    * <li>doc1: <b>flight-number</b> - 2^53
+    * <li>doc2: <b>flight-number</b> - 2^53 + 1
+    * </ul>
+    * <p>
+    * Query : Select all documents where flight-number is greater than 2^53.
+    * <p>
+    * Expected result: doc2.
+    *
+    * @throws Exception if an unexpected error occurs
+    */
+   public void testLargeIntegerRange() throws Exception
+   {
+      // create data
+      MimeType contentType = MimeType.fromString("text/plain");
+
+      FolderData folder = createFolder(testRoot, "LargeIntegerRange");
+
+      DocumentData doc1 = createDocument(folder, "doc1", nasaDocumentTypeDefinition, new byte[0], contentType);
+      doc1.setProperty(new IntegerProperty(PROPERTY_FLIGHT_NUMBER, PROPERTY_FLIGHT_NUMBER, PROPERTY_FLIGHT_NUMBER,
+         PROPERTY_FLIGHT_NUMBER, BigInteger.valueOf(9007199254740992L)));
+
+      DocumentData doc2 = createDocument(folder, "doc2", nasaDocumentTypeDefinition, new byte[0], contentType);
+      doc2.setProperty(new IntegerProperty(PROPERTY_FLIGHT_NUMBER, PROPERTY_FLIGHT_NUMBER, PROPERTY_FLIGHT_NUMBER,
+         PROPERTY_FLIGHT_NUMBER, BigInteger.valueOf(9007199254740993L)));
+
+      String statement =
+         "SELECT * FROM " + NASA_DOCUMENT + " WHERE " + PROPERTY_FLIGHT_NUMBER + " > 9007199254740992";
+
+      Query query = new Query(statement, true);
+      ItemsIterator<Result> result = storage.query(query);
+
+      checkResult(result, new DocumentData[]{doc2});
+   }
+
+   /**
+    * Test ordering by numeric property when some documents have no value.
+    * <p>
+    * Initial data:
+    * <ul>
+    * <li>doc1: <b>booster-mass</b> - 3
+    * <li>doc2: <b>booster-mass</b> - not set
+    * <li>doc3: <b>booster-mass</b> - -2.5
+    * <li>doc4: <b>flight-number</b> - 7
+    * <li>doc5: <b>flight-number</b> - not set
+    * <li>doc6: <b>flight-number</b> - -3
+    * </ul>
+    * <p>
+    * Query : Select documents ordered by booster-mass and by flight-number.
+    * <p>
+    * Expected result: documents without value go first in ascending order
+    * and last in descending order.
+    *
+    * @throws Exception if an unexpected error occurs
+    */
+   public void testNumericOrderByMissingValue() throws Exception
+   {
+      // create data
+      MimeType contentType = MimeType.fromString("text/plain");
+
+      FolderData folder = createFolder(testRoot, "MissingNumericOrder");
+
+      DocumentData doc1 = createDocument(folder, "doc1", nasaDocumentTypeDefinition, new byte[0], contentType);
+      doc1.setProperty(new DecimalProperty(PROPERTY_BOOSTER_MASS, PROPERTY_BOOSTER_MASS, PROPERTY_BOOSTER_MASS,
+         PROPERTY_BOOSTER_MASS, new BigDecimal(3)));
+
+      DocumentData doc2 = createDocument(folder, "doc2", nasaDocumentTypeDefinition, new byte[0], contentType);
+
+      DocumentData doc3 = createDocument(folder, "doc3", nasaDocumentTypeDefinition, new byte[0], contentType);
+      doc3.setProperty(new DecimalProperty(PROPERTY_BOOSTER_MASS, PROPERTY_BOOSTER_MASS, PROPERTY_BOOSTER_MASS,
+         PROPERTY_BOOSTER_MASS, BigDecimal.valueOf(-2.5)));
+
+      String statement =
+         "SELECT * FROM " + NASA_DOCUMENT + " WHERE IN_FOLDER('" + folder.getObjectId() + "') ORDER BY "
+            + PROPERTY_BOOSTER_MASS;
+      checkResultOrder(storage.query(new Query(statement, true)), new DocumentData[]{doc2, doc3, doc1});
+      checkResultOrder(storage.query(new Query(statement + " DESC", true)), new DocumentData[]{doc1, doc3, doc2});
+
+      FolderData integerFolder = createFolder(testRoot, "MissingIntegerOrder");
+
+      DocumentData doc4 =
+         createDocument(integerFolder, "doc4", nasaDocumentTypeDefinition, new byte[0], contentType);
+      doc4.setProperty(new IntegerProperty(PROPERTY_FLIGHT_NUMBER, PROPERTY_FLIGHT_NUMBER, PROPERTY_FLIGHT_NUMBER,
+         PROPERTY_FLIGHT_NUMBER, BigInteger.valueOf(7)));
+
+      DocumentData doc5 =
+         createDocument(integerFolder, "doc5", nasaDocumentTypeDefinition, new byte[0], contentType);
+
+      DocumentData doc6 =
+         createDocument(integerFolder, "doc6", nasaDocumentTypeDefinition, new byte[0], contentType);
+      doc6.setProperty(new IntegerProperty(PROPERTY_FLIGHT_NUMBER, PROPERTY_FLIGHT_NUMBER, PROPERTY_FLIGHT_NUMBER,
+         PROPERTY_FLIGHT_NUMBER, BigInteger.valueOf(-3)));
+
+      statement =
+         "SELECT * FROM " + NASA_DOCUMENT + " WHERE IN_FOLDER('" + integerFolder.getObjectId() + "') ORDER BY "
+            + PROPERTY_FLIGHT_NUMBER;
+      checkResultOrder(storage.query(new Query(statement, true)), new DocumentData[]{doc5, doc6, doc4});
+      checkResultOrder(storage.query(new Query(statement + " DESC", true)), new DocumentData[]{doc4, doc6, doc5});
+   }
+
    /**
     * Test not equal comparison (<>) string.
     * <p>
@@ -2820,7 +2820,8 @@ public abstract class Connection
          throw new InvalidArgumentException("skipCount parameter is negative.");
       }
 
-      ItemsIterator<Result> iterator = storage.query(new Query(statement, searchAllVersions));
+      // Storage may fetch only requested page, one more item tells if there are more items.
+      ItemsIterator<Result> iterator = storage.query(new Query(statement, searchAllVersions, maxItems, skipCount));
       try
       {
          if (skipCount > 0)
@@ -3148,9 +3149,9 @@ public abstract class Connection
    }
 
    private List<ItemsTree<CmisObject>> getObjectTree(String folderId, int depth, BaseType typeFilter,
-      boolean includeAllowableActions, IncludeRelationships includeRelationships, boolean includePathSegments,
-      boolean includeObjectInfo, String propertyFilter, String renditionFilter) throws ObjectNotFoundException,
-      InvalidArgumentException, FilterNotValidException
+      final boolean includeAllowableActions, final IncludeRelationships includeRelationships,
+      boolean includePathSegments, final boolean includeObjectInfo, String propertyFilter, String renditionFilter)
+      throws ObjectNotFoundException, InvalidArgumentException, FilterNotValidException
    {
       ObjectData folder = storage.getObjectById(folderId);
 
@@ -3159,39 +3160,30 @@ public abstract class Connection
          throw new InvalidArgumentException("Can't get children. Object " + folderId + " is not a Folder.");
       }
 
-      List<ItemsTree<CmisObject>> tree = new ArrayList<ItemsTree<CmisObject>>();
-      PropertyFilter parsedPropertyFilter = new PropertyFilter(propertyFilter);
-      RenditionFilter parsedRenditionFilter = new RenditionFilter(renditionFilter);
-
-      for (ItemsIterator<ObjectData> children = ((FolderData)folder).getChildren(null); children.hasNext();)
-      {
-         ObjectData childData = children.next();
+      final PropertyFilter parsedPropertyFilter = new PropertyFilter(propertyFilter);
+      final RenditionFilter parsedRenditionFilter = new RenditionFilter(renditionFilter);
 
-         if (typeFilter != null && childData.getBaseType() != typeFilter)
+      return getObjectTreeBuilder().build((FolderData)folder, depth, typeFilter, includePathSegments,
+         new ObjectTreeBuilder.Converter()
          {
-            continue;
-         }
-
-         CmisObject container =
-            getCmisObject(childData, includeAllowableActions, includeRelationships, false, false, includeObjectInfo,
-               parsedPropertyFilter, parsedRenditionFilter);
-
-         if (includePathSegments)
-         {
-            container.setPathSegment(childData.getName());
-         }
-
-         List<ItemsTree<CmisObject>> subTree =
-            (childData.getBaseType() == BaseType.FOLDER && (depth > 1 || depth == -1)) //
-               ? getObjectTree(childData.getObjectId(), depth != -1 ? depth - 1 : depth, typeFilter,
-                  includeAllowableActions, includeRelationships, includePathSegments, includeObjectInfo,
-                  propertyFilter, renditionFilter) //
-               : null;
-
-         tree.add(new ItemsTree<CmisObject>(container, subTree));
-      }
+            public CmisObject convert(ObjectData object)
+            {
+               return getCmisObject(object, includeAllowableActions, includeRelationships, false, false,
+                  includeObjectInfo, parsedPropertyFilter, parsedRenditionFilter);
+            }
+         });
+   }
 
-      return tree;
+   /**
+    * Get builder of trees for {@link #getDescendants} and
+    * {@link #getFolderTree}. Storage which may not be used from few threads at
+    * once should override this method and return builder without workers.
+    *
+    * @return builder of object trees
+    */
+   protected ObjectTreeBuilder getObjectTreeBuilder()
+   {
+      return ObjectTreeBuilder.getInstance();
    }
 
    private List<ItemsTree<TypeDefinition>> getTypeTree(String typeId, int depth, boolean includePropertyDefinition)
@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xcmis.spi;
+
+import org.xcmis.spi.model.BaseType;
+import org.xcmis.spi.model.CmisObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds trees of objects for getDescendants and getFolderTree services.
+ * Caller walks through folders and objects are converted to
+ * {@link CmisObject} by worker threads in parallel. Order of children in tree
+ * is the same as order of {@link FolderData#getChildren(String)}. Number of
+ * objects in one tree and time of building may be limited.
+ * <p>
+ * If number of workers is not greater then one then objects are converted by
+ * caller. Parallel conversion requires storage which may be used from few
+ * threads at once.
+ */
+public class ObjectTreeBuilder
+{
+
+   /**
+    * Converts object to its CMIS representation. Called by worker threads with
+    * {@link UserContext} of caller.
+    */
+   public interface Converter
+   {
+      CmisObject convert(ObjectData object);
+   }
+
+   private static final class Node
+   {
+      final FutureTask<CmisObject> object;
+
+      final String pathSegment;
+
+      List<Node> children;
+
+      Node(FutureTask<CmisObject> object, String pathSegment)
+      {
+         this.object = object;
+         this.pathSegment = pathSegment;
+      }
+   }
+
+   private static volatile ObjectTreeBuilder instance = new ObjectTreeBuilder(1, -1, -1);
+
+   /**
+    * @return builder which is used by connections unless connection provides
+    *         own builder, see {@link Connection#getObjectTreeBuilder()}
+    */
+   public static ObjectTreeBuilder getInstance()
+   {
+      return instance;
+   }
+
+   /**
+    * Set builder which is used by connections unless connection provides own
+    * builder. Builder is shared by all storages of process. Workers of
+    * previous builder are stopped after trees which are being built.
+    *
+    * @param builder builder
+    */
+   public static void setInstance(ObjectTreeBuilder builder)
+   {
+      if (builder == null)
+      {
+         throw new NullPointerException("Builder may not be null.");
+      }
+      ObjectTreeBuilder prev = instance;
+      instance = builder;
+      if (prev != builder)
+      {
+         prev.shutdown();
+      }
+   }
+
+   private final ThreadPoolExecutor executor;
+
+   private final int maxNodes;
+
+   private final long timeout;
+
+   /**
+    * @param parallelism number of worker threads. If not greater then one
+    *        objects are converted by caller
+    * @param maxNodes max number of objects in one tree, not positive value
+    *        means no limit
+    * @param timeout max time in milliseconds for building one tree, not
+    *        positive value means no limit
+    */
+   public ObjectTreeBuilder(int parallelism, int maxNodes, long timeout)
+   {
+      this.maxNodes = maxNodes;
+      this.timeout = timeout;
+      if (parallelism > 1)
+      {
+         this.executor =
+            new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+               new LinkedBlockingQueue<Runnable>(), new ThreadFactory()
+               {
+                  private final AtomicInteger counter = new AtomicInteger();
+
+                  public Thread newThread(Runnable r)
+                  {
+                     Thread t = new Thread(r, "xcmis-tree-" + counter.incrementAndGet());
+                     t.setDaemon(true);
+                     return t;
+                  }
+               });
+      }
+      else
+      {
+         this.executor = null;
+      }
+   }
+
+   /**
+    * Build tree of descendants of folder.
+    *
+    * @param folder folder
+    * @param depth depth of tree, -1 for all levels
+    * @param typeFilter if not <code>null</code> then only objects of this base
+    *        type are included in tree
+    * @param includePathSegments if <code>true</code> then path segment is set
+    *        for each object
+    * @param converter converts objects
+    * @return tree of descendants
+    * @throws InvalidArgumentException if tree contains more objects then
+    *         allowed
+    * @throws CmisRuntimeException if tree is not built in time or converter
+    *         failed
+    */
+   public List<ItemsTree<CmisObject>> build(FolderData folder, int depth, BaseType typeFilter,
+      boolean includePathSegments, Converter converter)
+   {
+      long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+      List<Node> nodes = new ArrayList<Node>();
+      try
+      {
+         List<Node> tree =
+            walk(folder, depth, typeFilter, includePathSegments, converter, UserContext.getCurrent(), deadline, nodes);
+         return assemble(tree, deadline);
+      }
+      finally
+      {
+         // Nothing to do if tree is built, otherwise do not waste workers.
+         for (Node node : nodes)
+         {
+            node.object.cancel(false);
+         }
+      }
+   }
+
+   /**
+    * Stop all workers. Objects which are already queued are converted, trees
+    * which are being built are completed by callers.
+    */
+   public void shutdown()
+   {
+      if (executor != null)
+      {
+         executor.shutdown();
+      }
+   }
+
+   /**
+    * @return number of worker threads, 0 if objects are converted by caller
+    */
+   public int getParallelism()
+   {
+      return executor != null ? executor.getCorePoolSize() : 0;
+   }
+
+   /**
+    * @return max number of objects in one tree, not positive value means no
+    *         limit
+    */
+   public int getMaxNodes()
+   {
+      return maxNodes;
+   }
+
+   /**
+    * @return max time in milliseconds for building one tree, not positive
+    *         value means no limit
+    */
+   public long getTimeout()
+   {
+      return timeout;
+   }
+
+   private List<Node> walk(FolderData folder, int depth, BaseType typeFilter, boolean includePathSegments,
+      final Converter converter, final UserContext context, long deadline, List<Node> nodes)
+   {
+      List<Node> tree = new ArrayList<Node>();
+      for (ItemsIterator<ObjectData> children = folder.getChildren(null); children.hasNext();)
+      {
+         final ObjectData child = children.next();
+         if (typeFilter != null && child.getBaseType() != typeFilter)
+         {
+            continue;
+         }
+         if (maxNodes > 0 && nodes.size() >= maxNodes)
+         {
+            throw new InvalidArgumentException("Tree contains more then " + maxNodes
+               + " objects. Use smaller depth.");
+         }
+         checkDeadline(deadline);
+
+         FutureTask<CmisObject> task = new FutureTask<CmisObject>(new Callable<CmisObject>()
+         {
+            public CmisObject call()
+            {
+               UserContext prev = UserContext.getCurrent();
+               if (prev == context)
+               {
+                  return converter.convert(child);
+               }
+               UserContext.setCurrent(context);
+               try
+               {
+                  return converter.convert(child);
+               }
+               finally
+               {
+                  UserContext.setCurrent(prev);
+               }
+            }
+         });
+         Node node = new Node(task, includePathSegments ? child.getName() : null);
+         nodes.add(node);
+         if (executor != null && !executor.isShutdown())
+         {
+            try
+            {
+               executor.execute(task);
+            }
+            catch (RejectedExecutionException e)
+            {
+               // Builder is shut down meanwhile.
+               task.run();
+            }
+         }
+         else
+         {
+            task.run();
+         }
+
+         if (child.getBaseType() == BaseType.FOLDER && (depth > 1 || depth == -1))
+         {
+            node.children =
+               walk((FolderData)child, depth != -1 ? depth - 1 : depth, typeFilter, includePathSegments, converter,
+                  context, deadline, nodes);
+         }
+         tree.add(node);
+      }
+      return tree;
+   }
+
+   private List<ItemsTree<CmisObject>> assemble(List<Node> nodes, long deadline)
+   {
+      List<ItemsTree<CmisObject>> tree = new ArrayList<ItemsTree<CmisObject>>(nodes.size());
+      for (Node node : nodes)
+      {
+         CmisObject object = get(node.object, deadline);
+         if (node.pathSegment != null)
+         {
+            object.setPathSegment(node.pathSegment);
+         }
+         tree.add(new ItemsTree<CmisObject>(object, node.children != null ? assemble(node.children, deadline) : null));
+      }
+      return tree;
+   }
+
+   private CmisObject get(FutureTask<CmisObject> task, long deadline)
+   {
+      try
+      {
+         if (deadline == Long.MAX_VALUE)
+         {
+            return task.get();
+         }
+         return task.get(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+      }
+      catch (TimeoutException e)
+      {
+         throw new CmisRuntimeException("Unable build tree in " + timeout + " ms.");
+      }
+      catch (CancellationException e)
+      {
+         throw new CmisRuntimeException("Building of tree is cancelled.");
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw new CmisRuntimeException("Building of tree is interrupted.");
+      }
+      catch (ExecutionException e)
+      {
+         Throwable cause = e.getCause();
+         if (cause instanceof RuntimeException)
+         {
+            throw (RuntimeException)cause;
+         }
+         if (cause instanceof Error)
+         {
+            throw (Error)cause;
+         }
+         throw new CmisRuntimeException(cause.getMessage(), cause);
+      }
+   }
+
+   private void checkDeadline(long deadline)
+   {
+      if (System.currentTimeMillis() > deadline)
+      {
+         throw new CmisRuntimeException("Unable build tree in " + timeout + " ms.");
+      }
+   }
+}
@@ -45,6 +45,12 @@ import java.util.Set;
 public class PermissionService
 {
 
+   /** All bits set. Used when user has permission 'cmis:all' or object has not ACL at all. */
+   private static final long ALL_PERMISSIONS = -1L;
+
+   /** Compiled permission mapping. Reused while repository provides the same mapping. */
+   private volatile CompiledMapping compiledMapping;
+
    /**
     * Calculate allowable actions for specified object.
     *
@@ -68,6 +74,7 @@ public class PermissionService
       }
 
       PermissionMapping permissionMapping = repositoryInfo.getAclCapability().getMapping();
+      GrantedPermissions granted = getGrantedPermissions(object, userId, permissionMapping, repositoryInfo);
 
       AllowableActions actions = new AllowableActions();
       TypeDefinition type = object.getTypeDefinition();
@@ -78,9 +85,7 @@ public class PermissionService
          if (AllowableActions.CAN_GET_DESCENDENTS.equals(action))
          {
             if (capabilities.isCapabilityGetDescendants()
-               && BaseType.FOLDER == type.getBaseId()
-               && hasPermission(object, permissionMapping.getPermissions(PermissionMapping.CAN_GET_DESCENDENTS_FOLDER),
-                  userId, repositoryInfo))
+               && BaseType.FOLDER == type.getBaseId() && granted.has(PermissionMapping.CAN_GET_DESCENDENTS_FOLDER))
             {
                actions.setCanGetDescendants(true);
             }
@@ -88,54 +93,42 @@ public class PermissionService
          else if (AllowableActions.CAN_GET_FOLDER_TREE.equals(action))
          {
             if (capabilities.isCapabilityGetFolderTree()
-               && BaseType.FOLDER == type.getBaseId()
-               && hasPermission(object, permissionMapping.getPermissions(PermissionMapping.CAN_GET_FOLDER_TREE_FOLDER),
-                  userId, repositoryInfo))
+               && BaseType.FOLDER == type.getBaseId() && granted.has(PermissionMapping.CAN_GET_FOLDER_TREE_FOLDER))
             {
                actions.setCanGetFolderTree(true);
             }
          }
          else if (AllowableActions.CAN_GET_CHILDREN.equals(action))
          {
-            if (BaseType.FOLDER == type.getBaseId()
-               && hasPermission(object, permissionMapping.getPermissions(PermissionMapping.CAN_GET_CHILDREN_FOLDER),
-                  userId, repositoryInfo))
+            if (BaseType.FOLDER == type.getBaseId() && granted.has(PermissionMapping.CAN_GET_CHILDREN_FOLDER))
             {
                actions.setCanGetChildren(true);
             }
          }
          else if (AllowableActions.CAN_GET_OBJECT_PARENTS.equals(action))
          {
-            if (type.isFileable()
-               && hasPermission(object, permissionMapping
-                  .getPermissions(PermissionMapping.CAN_GET_OBJECT_PARENTS_OBJECT), userId, repositoryInfo))
+            if (type.isFileable() && granted.has(PermissionMapping.CAN_GET_OBJECT_PARENTS_OBJECT))
             {
                actions.setCanGetObjectParents(true);
             }
          }
          else if (AllowableActions.CAN_GET_FOLDER_PARENT.equals(action))
          {
-            if (BaseType.FOLDER == type.getBaseId()
-               && hasPermission(object, permissionMapping
-                  .getPermissions(PermissionMapping.CAN_GET_FOLDER_PARENT_FOLDER), userId, repositoryInfo))
+            if (BaseType.FOLDER == type.getBaseId() && granted.has(PermissionMapping.CAN_GET_FOLDER_PARENT_FOLDER))
             {
                actions.setCanGetFolderParent(true);
             }
          }
          else if (AllowableActions.CAN_CREATE_DOCUMENT.equals(action))
          {
-            if (BaseType.FOLDER == type.getBaseId()
-               && hasPermission(object, permissionMapping.getPermissions(PermissionMapping.CAN_CREATE_DOCUMENT_FOLDER),
-                  userId, repositoryInfo))
+            if (BaseType.FOLDER == type.getBaseId() && granted.has(PermissionMapping.CAN_CREATE_DOCUMENT_FOLDER))
             {
                actions.setCanCreateDocument(true);
             }
          }
          else if (AllowableActions.CAN_CREATE_FOLDER.equals(action))
          {
-            if (BaseType.FOLDER == type.getBaseId()
-               && hasPermission(object, permissionMapping.getPermissions(PermissionMapping.CAN_CREATE_FOLDER_FOLDER),
-                  userId, repositoryInfo))
+            if (BaseType.FOLDER == type.getBaseId() && granted.has(PermissionMapping.CAN_CREATE_FOLDER_FOLDER))
             {
                actions.setCanCreateFolder(true);
             }
@@ -143,44 +136,36 @@ public class PermissionService
          else if (AllowableActions.CAN_CREATE_RELATIONSHIP.equals(action))
          {
             if (BaseType.RELATIONSHIP != type.getBaseId()
-               && hasPermission(object, permissionMapping
-                  .getPermissions(PermissionMapping.CAN_CREATE_RELATIONSHIP_SOURCE), userId, repositoryInfo)
-               && hasPermission(object, permissionMapping
-                  .getPermissions(PermissionMapping.CAN_CREATE_RELATIONSHIP_TARGET), userId, repositoryInfo))
+               && granted.has(PermissionMapping.CAN_CREATE_RELATIONSHIP_SOURCE)
+               && granted.has(PermissionMapping.CAN_CREATE_RELATIONSHIP_TARGET))
             {
                actions.setCanCreateRelationship(true);
             }
          }
          else if (AllowableActions.CAN_GET_PROPERTIES.equals(action))
          {
-            if (hasPermission(object, permissionMapping.getPermissions(PermissionMapping.CAN_GET_PROPERTIES_OBJECT),
-               userId, repositoryInfo))
+            if (granted.has(PermissionMapping.CAN_GET_PROPERTIES_OBJECT))
             {
                actions.setCanGetProperties(true);
             }
          }
          else if (AllowableActions.CAN_GET_CONTENT_STREAM.equals(action))
          {
-            if (BaseType.DOCUMENT == type.getBaseId()
-               && hasPermission(object, permissionMapping
-                  .getPermissions(PermissionMapping.CAN_GET_CONTENT_STREAM_OBJECT), userId, repositoryInfo))
+            if (BaseType.DOCUMENT == type.getBaseId() && granted.has(PermissionMapping.CAN_GET_CONTENT_STREAM_OBJECT))
             {
                actions.setCanGetContentStream(true);
             }
          }
          else if (AllowableActions.CAN_UPDATE_PROPERTIES.equals(action))
          {
-            if (hasPermission(object, permissionMapping.getPermissions(PermissionMapping.CAN_UPDATE_PROPERTIES_OBJECT),
-               userId, repositoryInfo))
+            if (granted.has(PermissionMapping.CAN_UPDATE_PROPERTIES_OBJECT))
             {
                actions.setCanUpdateProperties(true);
             }
          }
          else if (AllowableActions.CAN_MOVE_OBJECT.equals(action))
          {
-            if (type.isFileable()
-               && hasPermission(object, permissionMapping.getPermissions(PermissionMapping.CAN_MOVE_OBJECT_OBJECT),
-                  userId, repositoryInfo))
+            if (type.isFileable() && granted.has(PermissionMapping.CAN_MOVE_OBJECT_OBJECT))
             {
                actions.setCanMoveObject(true);
             }
@@ -189,61 +174,47 @@ public class PermissionService
          {
             if (BaseType.FOLDER == type.getBaseId())
             {
-               if (!((FolderData)object).hasChildren()
-                  && hasPermission(object, permissionMapping.getPermissions(PermissionMapping.CAN_DELETE_OBJECT),
-                     userId, repositoryInfo))
+               if (!((FolderData)object).hasChildren() && granted.has(PermissionMapping.CAN_DELETE_OBJECT))
                {
                   actions.setCanDeleteObject(true);
                }
             }
-            else if (hasPermission(object, permissionMapping.getPermissions(PermissionMapping.CAN_DELETE_OBJECT),
-               userId, repositoryInfo))
+            else if (granted.has(PermissionMapping.CAN_DELETE_OBJECT))
             {
                actions.setCanDeleteObject(true);
             }
          }
          else if (AllowableActions.CAN_DELETE_TREE.equals(action))
          {
-            if (BaseType.FOLDER == type.getBaseId()
-               && hasPermission(object, permissionMapping.getPermissions(PermissionMapping.CAN_DELETE_TREE_FOLDER),
-                  userId, repositoryInfo))
+            if (BaseType.FOLDER == type.getBaseId() && granted.has(PermissionMapping.CAN_DELETE_TREE_FOLDER))
             {
                actions.setCanDeleteTree(true);
             }
          }
          else if (AllowableActions.CAN_SET_CONTENT_STREAM.equals(action))
          {
-            if (BaseType.DOCUMENT == type.getBaseId()
-               && hasPermission(object, permissionMapping.getPermissions(PermissionMapping.CAN_SET_CONTENT_DOCUMENT),
-                  userId, repositoryInfo))
+            if (BaseType.DOCUMENT == type.getBaseId() && granted.has(PermissionMapping.CAN_SET_CONTENT_DOCUMENT))
             {
                actions.setCanSetContentStream(true);
             }
          }
          else if (AllowableActions.CAN_DELETE_CONTENT_STREAM.equals(action))
          {
-            if (BaseType.DOCUMENT == type.getBaseId()
-               && hasPermission(object,
-                  permissionMapping.getPermissions(PermissionMapping.CAN_DELETE_CONTENT_DOCUMENT), userId,
-                  repositoryInfo))
+            if (BaseType.DOCUMENT == type.getBaseId() && granted.has(PermissionMapping.CAN_DELETE_CONTENT_DOCUMENT))
             {
                actions.setCanDeleteContentStream(true);
             }
          }
          else if (AllowableActions.CAN_GET_RENDITIONS.equals(action))
          {
-            if (BaseType.DOCUMENT == type.getBaseId()
-               && hasPermission(object, permissionMapping.getPermissions(PermissionMapping.CAN_GET_RENDITIONS_OBJECT),
-                  userId, repositoryInfo))
+            if (BaseType.DOCUMENT == type.getBaseId() && granted.has(PermissionMapping.CAN_GET_RENDITIONS_OBJECT))
             {
                actions.setCanGetRenditions(true);
             }
          }
          else if (AllowableActions.CAN_ADD_TO_FOLDER.equals(action))
          {
-            if (type.isFileable()
-               && hasPermission(object, permissionMapping.getPermissions(PermissionMapping.CAN_ADD_TO_FOLDER_OBJECT),
-                  userId, repositoryInfo))
+            if (type.isFileable() && granted.has(PermissionMapping.CAN_ADD_TO_FOLDER_OBJECT))
             {
                actions.setCanAddObjectToFolder(true);
             }
@@ -252,8 +223,7 @@ public class PermissionService
          {
             if (type.isFileable() //
                && type.getBaseId() != BaseType.FOLDER //
-               && hasPermission(object, permissionMapping
-                  .getPermissions(PermissionMapping.CAN_REMOVE_OBJECT_FROM_FOLDER_OBJECT), userId, repositoryInfo) //
+               && granted.has(PermissionMapping.CAN_REMOVE_OBJECT_FROM_FOLDER_OBJECT) //
                && (repositoryInfo.getCapabilities().isCapabilityUnfiling() || object.getParents().size() > 1))
             {
                actions.setCanRemoveObjectFromFolder(true);
@@ -261,9 +231,7 @@ public class PermissionService
          }
          else if (AllowableActions.CAN_CHECKOUT.equals(action))
          {
-            if (type.isVersionable()
-               && hasPermission(object, permissionMapping.getPermissions(PermissionMapping.CAN_CHECKOUT_DOCUMENT),
-                  userId, repositoryInfo))
+            if (type.isVersionable() && granted.has(PermissionMapping.CAN_CHECKOUT_DOCUMENT))
             {
                actions.setCanCheckOut(true);
             }
@@ -272,8 +240,7 @@ public class PermissionService
          {
             if (type.isVersionable()
                && ((DocumentData)object).isVersionSeriesCheckedOut()
-               && hasPermission(object, permissionMapping
-                  .getPermissions(PermissionMapping.CAN_CANCEL_CHECKOUT_DOCUMENT), userId, repositoryInfo))
+               && granted.has(PermissionMapping.CAN_CANCEL_CHECKOUT_DOCUMENT))
             {
                actions.setCanCancelCheckOut(true);
             }
@@ -281,18 +248,14 @@ public class PermissionService
          else if (AllowableActions.CAN_CHECKIN.equals(action))
          {
             if (type.isVersionable()
-               && ((DocumentData)object).isPWC()
-               && hasPermission(object, permissionMapping.getPermissions(PermissionMapping.CAN_CHECKIN_DOCUMENT),
-                  userId, repositoryInfo))
+               && ((DocumentData)object).isPWC() && granted.has(PermissionMapping.CAN_CHECKIN_DOCUMENT))
             {
                actions.setCanCancelCheckOut(true);
             }
          }
          else if (AllowableActions.CAN_GET_ALL_VERSIONS.equals(action))
          {
-            if (BaseType.DOCUMENT == type.getBaseId()
-               && hasPermission(object, permissionMapping
-                  .getPermissions(PermissionMapping.CAN_GET_ALL_VERSIONS_DOCUMENT), userId, repositoryInfo))
+            if (BaseType.DOCUMENT == type.getBaseId() && granted.has(PermissionMapping.CAN_GET_ALL_VERSIONS_DOCUMENT))
             {
                actions.setCanGetAllVersions(true);
             }
@@ -300,53 +263,42 @@ public class PermissionService
          else if (AllowableActions.CAN_GET_OBJECT_RELATIONSHIPS.equals(action))
          {
             if (BaseType.RELATIONSHIP != type.getBaseId()
-               && hasPermission(object, permissionMapping
-                  .getPermissions(PermissionMapping.CAN_GET_OBJECT_RELATIONSHIPS_OBJECT), userId, repositoryInfo))
+               && granted.has(PermissionMapping.CAN_GET_OBJECT_RELATIONSHIPS_OBJECT))
             {
                actions.setCanGetObjectRelationships(true);
             }
          }
          else if (AllowableActions.CAN_ADD_POLICY.equals(action))
          {
-            if (type.isControllablePolicy()
-               && hasPermission(object, permissionMapping.getPermissions(PermissionMapping.CAN_ADD_POLICY_OBJECT),
-                  userId, repositoryInfo))
+            if (type.isControllablePolicy() && granted.has(PermissionMapping.CAN_ADD_POLICY_OBJECT))
             {
                actions.setCanApplyPolicy(true);
             }
          }
          else if (AllowableActions.CAN_REMOVE_POLICY.equals(action))
          {
-            if (type.isControllablePolicy()
-               && hasPermission(object, permissionMapping.getPermissions(PermissionMapping.CAN_REMOVE_POLICY_OBJECT),
-                  userId, repositoryInfo))
+            if (type.isControllablePolicy() && granted.has(PermissionMapping.CAN_REMOVE_POLICY_OBJECT))
             {
                actions.setCanRemovePolicy(true);
             }
          }
          else if (AllowableActions.CAN_GET_APPLIED_POLICIES.equals(action))
          {
-            if (type.isControllablePolicy()
-               && hasPermission(object, permissionMapping
-                  .getPermissions(PermissionMapping.CAN_GET_APPLIED_POLICIES_OBJECT), userId, repositoryInfo))
+            if (type.isControllablePolicy() && granted.has(PermissionMapping.CAN_GET_APPLIED_POLICIES_OBJECT))
             {
                actions.setCanGetAppliedPolicies(true);
             }
          }
          else if (AllowableActions.CAN_GET_ACL.equals(action))
          {
-            if (type.isControllableACL()
-               && hasPermission(object, permissionMapping.getPermissions(PermissionMapping.CAN_GET_ACL_OBJECT), userId,
-                  repositoryInfo))
+            if (type.isControllableACL() && granted.has(PermissionMapping.CAN_GET_ACL_OBJECT))
             {
                actions.setCanGetACL(true);
             }
          }
          else if (AllowableActions.CAN_APPLY_ACL.equals(action))
          {
-            if (type.isControllableACL()
-               && hasPermission(object, permissionMapping.getPermissions(PermissionMapping.CAN_APPLY_ACL_OBJECT),
-                  userId, repositoryInfo))
+            if (type.isControllableACL() && granted.has(PermissionMapping.CAN_APPLY_ACL_OBJECT))
             {
                actions.setCanApplyACL(true);
             }
@@ -399,4 +351,214 @@ public class PermissionService
       }
       return false;
    }
+
+   /**
+    * Resolve permissions granted to user on specified object. ACL of object is
+    * read once and all subsequent checks are bitwise tests against masks of
+    * compiled permission mapping.
+    *
+    * @param object object
+    * @param userId user's id
+    * @param permissionMapping permission mapping
+    * @param repositoryInfo repository info
+    * @return permissions granted to user
+    */
+   private GrantedPermissions getGrantedPermissions(ObjectData object, String userId,
+      PermissionMapping permissionMapping, RepositoryInfo repositoryInfo)
+   {
+      CompiledMapping compiled = getCompiledMapping(permissionMapping);
+      if (compiled.masks == null)
+      {
+         // Too many permissions to be represented as bit mask.
+         return new GrantedPermissions(object, userId, permissionMapping, repositoryInfo);
+      }
+
+      List<AccessControlEntry> acl = object.getACL(false);
+      if (acl.size() == 0)
+      {
+         return new GrantedPermissions(compiled, ALL_PERMISSIONS);
+      }
+
+      String anyone = repositoryInfo.getPrincipalAnyone();
+      String all = BasicPermissions.CMIS_ALL.value();
+      long anyoneMask = 0;
+      long userMask = 0;
+      boolean anyoneFound = false;
+      boolean userFound = false;
+      for (AccessControlEntry ace : acl)
+      {
+         String principal = ace.getPrincipal();
+         if (principal == null)
+         {
+            continue;
+         }
+         boolean isAnyone = principal.equals(anyone);
+         boolean isUser = principal.equals(userId);
+         if (!isAnyone && !isUser)
+         {
+            continue;
+         }
+         long mask = 0;
+         for (String permission : ace.getPermissions())
+         {
+            if (all.equals(permission))
+            {
+               mask = ALL_PERMISSIONS;
+               break;
+            }
+            Long bit = compiled.bits.get(permission);
+            if (bit != null)
+            {
+               mask |= bit;
+            }
+         }
+         if (isAnyone)
+         {
+            anyoneFound = true;
+            anyoneMask |= mask;
+         }
+         if (isUser)
+         {
+            userFound = true;
+            userMask |= mask;
+         }
+      }
+
+      // The same order as in hasPermission: 'any principal' first then current principal.
+      long granted = anyoneFound ? anyoneMask : userFound ? userMask : 0;
+      return new GrantedPermissions(compiled, granted);
+   }
+
+   private CompiledMapping getCompiledMapping(PermissionMapping permissionMapping)
+   {
+      CompiledMapping compiled = compiledMapping;
+      if (compiled == null || compiled.mapping != permissionMapping)
+      {
+         compiled = new CompiledMapping(permissionMapping);
+         compiledMapping = compiled;
+      }
+      return compiled;
+   }
+
+   /**
+    * Permission mapping represented as bit masks. Each permission used in
+    * mapping has own bit and each permission key has mask of all required
+    * permissions.
+    */
+   private static final class CompiledMapping
+   {
+      final PermissionMapping mapping;
+
+      /** Bit for each known permission. */
+      final Map<String, Long> bits;
+
+      /**
+       * Mask of required permissions for each key. May be <code>null</code> if
+       * mapping uses too many permissions to be compiled.
+       */
+      final Map<String, Long> masks;
+
+      CompiledMapping(PermissionMapping mapping)
+      {
+         this.mapping = mapping;
+         Map<String, Long> bits = new HashMap<String, Long>();
+         Map<String, Long> masks = new HashMap<String, Long>();
+         for (Map.Entry<String, Collection<String>> e : mapping.getAll().entrySet())
+         {
+            Collection<String> permissions = e.getValue();
+            if (permissions == null || permissions.size() == 0)
+            {
+               continue;
+            }
+            long mask = 0;
+            for (String permission : permissions)
+            {
+               Long bit = bits.get(permission);
+               if (bit == null)
+               {
+                  if (bits.size() == Long.SIZE)
+                  {
+                     bits = null;
+                     masks = null;
+                     break;
+                  }
+                  bit = 1L << bits.size();
+                  bits.put(permission, bit);
+               }
+               mask |= bit;
+            }
+            if (masks == null)
+            {
+               break;
+            }
+            masks.put(e.getKey(), mask);
+         }
+         this.bits = bits;
+         this.masks = masks;
+      }
+   }
+
+   /**
+    * Permissions granted to user on particular object.
+    */
+   private final class GrantedPermissions
+   {
+      private final CompiledMapping compiled;
+
+      private final long granted;
+
+      private final ObjectData object;
+
+      private final String userId;
+
+      private final PermissionMapping permissionMapping;
+
+      private final RepositoryInfo repositoryInfo;
+
+      GrantedPermissions(CompiledMapping compiled, long granted)
+      {
+         this.compiled = compiled;
+         this.granted = granted;
+         this.object = null;
+         this.userId = null;
+         this.permissionMapping = null;
+         this.repositoryInfo = null;
+      }
+
+      /**
+       * Fallback when permission mapping can't be compiled. Each check
+       * delegates to
+       * {@link PermissionService#hasPermission(ObjectData, Collection, String, RepositoryInfo)}
+       * .
+       */
+      GrantedPermissions(ObjectData object, String userId, PermissionMapping permissionMapping,
+         RepositoryInfo repositoryInfo)
+      {
+         this.compiled = null;
+         this.granted = 0;
+         this.object = object;
+         this.userId = userId;
+         this.permissionMapping = permissionMapping;
+         this.repositoryInfo = repositoryInfo;
+      }
+
+      /**
+       * @param key permission key, see {@link PermissionMapping}
+       * @return <code>true</code> if user has all permissions required by
+       *         <code>key</code> and <code>false</code> otherwise
+       */
+      boolean has(String key)
+      {
+         if (compiled == null)
+         {
+            return hasPermission(object, permissionMapping.getPermissions(key), userId, repositoryInfo);
+         }
+         Long required = compiled.masks.get(key);
+         if (required == null)
+         {
+            throw new CmisRuntimeException("Permissions set may not be null or empty.");
+         }
+         return (granted & required) == required;
+      }
+   }
 }
@@ -0,0 +1,561 @@
+/**
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.xcmis.spi;
+
+import org.xcmis.spi.utils.Logger;
+import org.xcmis.spi.utils.MimeType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of generated renditions. Renditions are identified by object id,
+ * change token of object and stream id so any change of object's content
+ * which updates change token makes previously cached renditions unreachable.
+ * Cache has two tiers:
+ * <ul>
+ * <li>in-heap tier bounded by total size of cached renditions in bytes</li>
+ * <li>optional disk tier where renditions evicted from heap are spooled.
+ * Disk tier is bounded by total size of files in bytes</li>
+ * </ul>
+ * Both tiers are evicted in least-recently-used order.
+ */
+public class RenditionCache
+{
+
+   private static final Logger LOG = Logger.getLogger(RenditionCache.class);
+
+   private static final class Key
+   {
+      final String objectId;
+
+      final String changeToken;
+
+      final String streamId;
+
+      Key(String objectId, String changeToken, String streamId)
+      {
+         this.objectId = objectId;
+         this.changeToken = changeToken;
+         this.streamId = streamId;
+      }
+
+      @Override
+      public boolean equals(Object obj)
+      {
+         if (this == obj)
+         {
+            return true;
+         }
+         if (!(obj instanceof Key))
+         {
+            return false;
+         }
+         Key other = (Key)obj;
+         return objectId.equals(other.objectId) && streamId.equals(other.streamId)
+            && (changeToken == null ? other.changeToken == null : changeToken.equals(other.changeToken));
+      }
+
+      @Override
+      public int hashCode()
+      {
+         int hash = 7;
+         hash = hash * 31 + objectId.hashCode();
+         hash = hash * 31 + (changeToken == null ? 0 : changeToken.hashCode());
+         hash = hash * 31 + streamId.hashCode();
+         return hash;
+      }
+   }
+
+   private static final class Entry
+   {
+      final Key key;
+
+      final String fileName;
+
+      final MimeType mediaType;
+
+      final String kind;
+
+      final int height;
+
+      final int width;
+
+      final long length;
+
+      /** Content of rendition if entry is in heap tier. */
+      byte[] bytes;
+
+      /** Spool file if entry is in disk tier. */
+      File file;
+
+      Entry(Key key, byte[] bytes, String fileName, MimeType mediaType, String kind, int height, int width)
+      {
+         this.key = key;
+         this.bytes = bytes;
+         this.length = bytes.length;
+         this.fileName = fileName;
+         this.mediaType = mediaType;
+         this.kind = kind;
+         this.height = height;
+         this.width = width;
+      }
+
+      RenditionContentStream toStream(byte[] content)
+      {
+         return new RenditionContentStream(content, fileName, mediaType, kind, height, width);
+      }
+   }
+
+   private final long maxMemSize;
+
+   private final File spoolDirectory;
+
+   private final long maxDiskSize;
+
+   private final Map<Key, Entry> memory = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+   private final Map<Key, Entry> disk = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+   /**
+    * Entries evicted from heap which are being written to disk. Entry is
+    * removed from here if it is invalidated meanwhile and then it is not put
+    * in disk tier.
+    */
+   private final Map<Key, Entry> spooling = new HashMap<Key, Entry>();
+
+   /**
+    * Entries removed from disk tier which are being read back. Entry is
+    * removed from here if it is invalidated meanwhile and then it is not put
+    * in heap tier.
+    */
+   private final Map<Key, Entry> loading = new HashMap<Key, Entry>();
+
+   private long memSize;
+
+   private long diskSize;
+
+   private final AtomicLong hits = new AtomicLong();
+
+   private final AtomicLong misses = new AtomicLong();
+
+   /**
+    * Create cache without disk tier.
+    *
+    * @param maxMemSize max total size of renditions kept in heap, in bytes
+    */
+   public RenditionCache(long maxMemSize)
+   {
+      this(maxMemSize, null, 0);
+   }
+
+   /**
+    * @param maxMemSize max total size of renditions kept in heap, in bytes
+    * @param spoolDirectory directory for renditions evicted from heap. If
+    *        <code>null</code> then evicted renditions are discarded
+    * @param maxDiskSize max total size of renditions kept in
+    *        <code>spoolDirectory</code>, in bytes
+    */
+   public RenditionCache(long maxMemSize, File spoolDirectory, long maxDiskSize)
+   {
+      if (maxMemSize < 0)
+      {
+         throw new IllegalArgumentException("Max memory size may not be negative.");
+      }
+      this.maxMemSize = maxMemSize;
+      this.maxDiskSize = maxDiskSize;
+      if (spoolDirectory != null && maxDiskSize > 0)
+      {
+         if (!spoolDirectory.exists() && !spoolDirectory.mkdirs())
+         {
+            throw new CmisRuntimeException("Unable create rendition spool directory "
+               + spoolDirectory.getAbsolutePath());
+         }
+         this.spoolDirectory = spoolDirectory;
+      }
+      else
+      {
+         this.spoolDirectory = null;
+      }
+   }
+
+   /**
+    * Get cached rendition.
+    *
+    * @param objectId object id
+    * @param changeToken object's change token, may be <code>null</code>
+    * @param streamId rendition stream id
+    * @return new stream for cached rendition or <code>null</code> if there is
+    *         no such rendition in cache
+    */
+   public RenditionContentStream get(String objectId, String changeToken, String streamId)
+   {
+      Key key = new Key(objectId, changeToken, streamId);
+      File file;
+      Entry entry;
+      synchronized (this)
+      {
+         entry = memory.get(key);
+         if (entry != null)
+         {
+            hits.incrementAndGet();
+            return entry.toStream(entry.bytes);
+         }
+         entry = disk.remove(key);
+         if (entry == null)
+         {
+            misses.incrementAndGet();
+            return null;
+         }
+         diskSize -= entry.length;
+         file = entry.file;
+         loading.put(key, entry);
+      }
+
+      // Read spooled rendition outside of lock and move it back to heap.
+      byte[] content;
+      try
+      {
+         content = readFile(file);
+      }
+      catch (IOException e)
+      {
+         synchronized (this)
+         {
+            if (loading.get(key) == entry)
+            {
+               loading.remove(key);
+            }
+         }
+         misses.incrementAndGet();
+         LOG.warn("Unable read spooled rendition " + file.getAbsolutePath() + ". " + e.getMessage());
+         return null;
+      }
+      finally
+      {
+         delete(file);
+      }
+      hits.incrementAndGet();
+      entry.file = null;
+      entry.bytes = content;
+      store(entry, true);
+      return entry.toStream(content);
+   }
+
+   /**
+    * Add rendition in cache. Specified stream is consumed by this method so
+    * caller must use returned stream instead.
+    *
+    * @param objectId object id
+    * @param changeToken object's change token, may be <code>null</code>
+    * @param streamId rendition stream id
+    * @param rendition rendition
+    * @return new stream which contains the same data as <code>rendition</code>
+    * @throws IOException if any I/O error occurs when read
+    *         <code>rendition</code>
+    */
+   public RenditionContentStream put(String objectId, String changeToken, String streamId,
+      RenditionContentStream rendition) throws IOException
+   {
+      byte[] content = readStream(rendition.getStream());
+      Entry entry =
+         new Entry(new Key(objectId, changeToken, streamId), content, rendition.getFileName(), rendition
+            .getMediaType(), rendition.getKind(), rendition.getHeight(), rendition.getWidth());
+      store(entry, false);
+      return entry.toStream(content);
+   }
+
+   /**
+    * Remove all cached renditions of object.
+    *
+    * @param objectId object id
+    */
+   public void invalidate(String objectId)
+   {
+      List<File> remove = new ArrayList<File>();
+      synchronized (this)
+      {
+         for (Iterator<Map.Entry<Key, Entry>> i = memory.entrySet().iterator(); i.hasNext();)
+         {
+            Map.Entry<Key, Entry> e = i.next();
+            if (e.getKey().objectId.equals(objectId))
+            {
+               memSize -= e.getValue().length;
+               i.remove();
+            }
+         }
+         for (Iterator<Key> i = spooling.keySet().iterator(); i.hasNext();)
+         {
+            if (i.next().objectId.equals(objectId))
+            {
+               i.remove();
+            }
+         }
+         for (Iterator<Key> i = loading.keySet().iterator(); i.hasNext();)
+         {
+            if (i.next().objectId.equals(objectId))
+            {
+               i.remove();
+            }
+         }
+         for (Iterator<Map.Entry<Key, Entry>> i = disk.entrySet().iterator(); i.hasNext();)
+         {
+            Map.Entry<Key, Entry> e = i.next();
+            if (e.getKey().objectId.equals(objectId))
+            {
+               diskSize -= e.getValue().length;
+               remove.add(e.getValue().file);
+               i.remove();
+            }
+         }
+      }
+      for (File file : remove)
+      {
+         delete(file);
+      }
+   }
+
+   /**
+    * Remove all cached renditions.
+    */
+   public void clear()
+   {
+      List<File> remove = new ArrayList<File>();
+      synchronized (this)
+      {
+         for (Entry entry : disk.values())
+         {
+            remove.add(entry.file);
+         }
+         memory.clear();
+         spooling.clear();
+         loading.clear();
+         disk.clear();
+         memSize = 0;
+         diskSize = 0;
+      }
+      for (File file : remove)
+      {
+         delete(file);
+      }
+   }
+
+   /**
+    * @return total size of renditions in heap tier, in bytes
+    */
+   public synchronized long getMemSize()
+   {
+      return memSize;
+   }
+
+   /**
+    * @return total size of renditions in disk tier, in bytes
+    */
+   public synchronized long getDiskSize()
+   {
+      return diskSize;
+   }
+
+   /**
+    * @return number of cached renditions in both tiers
+    */
+   public synchronized int size()
+   {
+      return memory.size() + disk.size();
+   }
+
+   /**
+    * @return number of requests served from cache
+    */
+   public long getHits()
+   {
+      return hits.get();
+   }
+
+   /**
+    * @return number of requests which were not found in cache
+    */
+   public long getMisses()
+   {
+      return misses.get();
+   }
+
+   /**
+    * @param entry entry to put in heap tier
+    * @param reload <code>true</code> if entry is read back from disk tier, it
+    *        is not stored if it was invalidated or replaced while it was read
+    */
+   private void store(Entry entry, boolean reload)
+   {
+      List<Entry> evicted = new ArrayList<Entry>();
+      synchronized (this)
+      {
+         if (reload && loading.get(entry.key) != entry)
+         {
+            // Invalidated or replaced while it was read.
+            return;
+         }
+         Entry prev = memory.put(entry.key, entry);
+         if (prev != null)
+         {
+            memSize -= prev.length;
+         }
+         // Newer entry replaces one which is being spooled or read back.
+         spooling.remove(entry.key);
+         loading.remove(entry.key);
+         memSize += entry.length;
+         for (Iterator<Entry> i = memory.values().iterator(); memSize > maxMemSize && i.hasNext();)
+         {
+            Entry e = i.next();
+            memSize -= e.length;
+            i.remove();
+            evicted.add(e);
+         }
+         if (spoolDirectory == null || evicted.isEmpty())
+         {
+            return;
+         }
+         for (Entry e : evicted)
+         {
+            spooling.put(e.key, e);
+         }
+      }
+      spool(evicted);
+   }
+
+   private void spool(List<Entry> evicted)
+   {
+      for (Entry entry : evicted)
+      {
+         if (entry.length > maxDiskSize)
+         {
+            synchronized (this)
+            {
+               spooling.remove(entry.key);
+            }
+            continue;
+         }
+         File file;
+         try
+         {
+            file = File.createTempFile("rendition", null, spoolDirectory);
+            OutputStream out = new FileOutputStream(file);
+            try
+            {
+               out.write(entry.bytes);
+            }
+            finally
+            {
+               out.close();
+            }
+         }
+         catch (IOException e)
+         {
+            LOG.warn("Unable spool rendition to disk. " + e.getMessage());
+            synchronized (this)
+            {
+               spooling.remove(entry.key);
+            }
+            continue;
+         }
+         List<File> remove = new ArrayList<File>();
+         synchronized (this)
+         {
+            if (spooling.get(entry.key) != entry)
+            {
+               // Invalidated or replaced while it was written.
+               remove.add(file);
+            }
+            else
+            {
+               spooling.remove(entry.key);
+               entry.bytes = null;
+               entry.file = file;
+               Entry prev = disk.put(entry.key, entry);
+               if (prev != null)
+               {
+                  diskSize -= prev.length;
+                  remove.add(prev.file);
+               }
+               diskSize += entry.length;
+               for (Iterator<Entry> i = disk.values().iterator(); diskSize > maxDiskSize && i.hasNext();)
+               {
+                  Entry e = i.next();
+                  diskSize -= e.length;
+                  remove.add(e.file);
+                  i.remove();
+               }
+            }
+         }
+         for (File f : remove)
+         {
+            delete(f);
+         }
+      }
+   }
+
+   private static byte[] readFile(File file) throws IOException
+   {
+      return readStream(new FileInputStream(file));
+   }
+
+   private static byte[] readStream(InputStream in) throws IOException
+   {
+      if (in == null)
+      {
+         return new byte[0];
+      }
+      try
+      {
+         ByteArrayOutputStream out = new ByteArrayOutputStream();
+         byte[] buf = new byte[8192];
+         int r;
+         while ((r = in.read(buf)) != -1)
+         {
+            out.write(buf, 0, r);
+         }
+         return out.toByteArray();
+      }
+      finally
+      {
+         in.close();
+      }
+   }
+
+   private static void delete(File file)
+   {
+      if (file != null && file.exists() && !file.delete())
+      {
+         file.deleteOnExit();
+      }
+   }
+}
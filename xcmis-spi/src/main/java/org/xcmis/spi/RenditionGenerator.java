@@ -0,0 +1,314 @@
+/**
+ * Copyright (C) 2010 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.xcmis.spi;
+
+import org.xcmis.spi.utils.Logger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates renditions in background. Tasks are executed by fixed number of
+ * worker threads and wait for execution in bounded queue. If queue is full
+ * then new task is rejected and rendition will be generated at first read.
+ * Readers may wait for pending task with {@link #await(String, String, String)}
+ * instead of generating the same rendition once again.
+ */
+public class RenditionGenerator
+{
+
+   private static final Logger LOG = Logger.getLogger(RenditionGenerator.class);
+
+   private final class Task extends FutureTask<Object>
+   {
+      final String key;
+
+      final long submitted;
+
+      Task(String key, Runnable runnable)
+      {
+         super(runnable, null);
+         this.key = key;
+         this.submitted = System.currentTimeMillis();
+      }
+
+      @Override
+      protected void done()
+      {
+         pending.remove(key, this);
+         if (!isCancelled())
+         {
+            long latency = System.currentTimeMillis() - submitted;
+            completed.incrementAndGet();
+            totalLatency.addAndGet(latency);
+            for (;;)
+            {
+               long max = maxLatency.get();
+               if (latency <= max || maxLatency.compareAndSet(max, latency))
+               {
+                  break;
+               }
+            }
+         }
+      }
+   }
+
+   private final ThreadPoolExecutor executor;
+
+   private final long waitTimeout;
+
+   private final ConcurrentMap<String, Task> pending = new ConcurrentHashMap<String, Task>();
+
+   private final AtomicLong submitted = new AtomicLong();
+
+   private final AtomicLong completed = new AtomicLong();
+
+   private final AtomicLong failed = new AtomicLong();
+
+   private final AtomicLong rejected = new AtomicLong();
+
+   private final AtomicLong timeouts = new AtomicLong();
+
+   private final AtomicLong totalLatency = new AtomicLong();
+
+   private final AtomicLong maxLatency = new AtomicLong();
+
+   /**
+    * @param workers number of worker threads
+    * @param queueSize max number of tasks waiting for execution
+    * @param waitTimeout max time in milliseconds which reader waits for
+    *        pending rendition
+    */
+   public RenditionGenerator(int workers, int queueSize, long waitTimeout)
+   {
+      if (workers <= 0)
+      {
+         throw new IllegalArgumentException("Number of workers must be positive.");
+      }
+      if (queueSize <= 0)
+      {
+         throw new IllegalArgumentException("Queue size must be positive.");
+      }
+      this.waitTimeout = waitTimeout;
+      this.executor =
+         new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+            queueSize), new ThreadFactory()
+         {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            public Thread newThread(Runnable r)
+            {
+               Thread t = new Thread(r, "xcmis-rendition-" + counter.incrementAndGet());
+               t.setDaemon(true);
+               return t;
+            }
+         });
+   }
+
+   /**
+    * Schedule rendition generation. If the same rendition is already
+    * scheduled then this method does nothing.
+    *
+    * @param objectId object id
+    * @param changeToken object's change token
+    * @param streamId rendition stream id
+    * @param generator generates rendition and saves it for further use
+    * @return <code>true</code> if task is scheduled and <code>false</code> if
+    *         it is rejected because of queue overflow
+    */
+   public boolean submit(String objectId, String changeToken, String streamId, final Runnable generator)
+   {
+      final String key = key(objectId, changeToken, streamId);
+      Task task = new Task(key, new Runnable()
+      {
+         public void run()
+         {
+            try
+            {
+               generator.run();
+            }
+            catch (RuntimeException e)
+            {
+               failed.incrementAndGet();
+               LOG.error("Unable generate rendition " + key + ". " + e.getMessage(), e);
+            }
+         }
+      });
+      if (pending.putIfAbsent(key, task) != null)
+      {
+         return true;
+      }
+      try
+      {
+         executor.execute(task);
+         submitted.incrementAndGet();
+         return true;
+      }
+      catch (RejectedExecutionException e)
+      {
+         pending.remove(key, task);
+         rejected.incrementAndGet();
+         return false;
+      }
+   }
+
+   /**
+    * Wait for pending rendition generation.
+    *
+    * @param objectId object id
+    * @param changeToken object's change token
+    * @param streamId rendition stream id
+    * @return <code>true</code> if rendition was scheduled and is done now and
+    *         <code>false</code> if there is no such task or it is not done
+    *         before timeout
+    */
+   public boolean await(String objectId, String changeToken, String streamId)
+   {
+      Task task = pending.get(key(objectId, changeToken, streamId));
+      if (task == null)
+      {
+         return false;
+      }
+      try
+      {
+         task.get(waitTimeout, TimeUnit.MILLISECONDS);
+         return true;
+      }
+      catch (TimeoutException e)
+      {
+         timeouts.incrementAndGet();
+         return false;
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         return false;
+      }
+      catch (ExecutionException e)
+      {
+         return false;
+      }
+   }
+
+   /**
+    * Stop all workers. Tasks which are waiting in queue are discarded.
+    */
+   public void shutdown()
+   {
+      executor.shutdownNow();
+      pending.clear();
+   }
+
+   /**
+    * @return number of tasks waiting for execution
+    */
+   public int getQueueDepth()
+   {
+      return executor.getQueue().size();
+   }
+
+   /**
+    * @return number of workers which generate renditions at the moment
+    */
+   public int getActiveWorkers()
+   {
+      return executor.getActiveCount();
+   }
+
+   /**
+    * @return number of workers
+    */
+   public int getWorkers()
+   {
+      return executor.getCorePoolSize();
+   }
+
+   /**
+    * @return number of accepted tasks
+    */
+   public long getSubmittedCount()
+   {
+      return submitted.get();
+   }
+
+   /**
+    * @return number of done tasks include failed
+    */
+   public long getCompletedCount()
+   {
+      return completed.get();
+   }
+
+   /**
+    * @return number of tasks failed with error
+    */
+   public long getFailedCount()
+   {
+      return failed.get();
+   }
+
+   /**
+    * @return number of tasks rejected because of queue overflow
+    */
+   public long getRejectedCount()
+   {
+      return rejected.get();
+   }
+
+   /**
+    * @return number of readers which did not get rendition in time
+    */
+   public long getTimeoutCount()
+   {
+      return timeouts.get();
+   }
+
+   /**
+    * @return average time in milliseconds from task submission to its end
+    */
+   public long getAverageLatency()
+   {
+      long c = completed.get();
+      return c == 0 ? 0 : totalLatency.get() / c;
+   }
+
+   /**
+    * @return max time in milliseconds from task submission to its end
+    */
+   public long getMaxLatency()
+   {
+      return maxLatency.get();
+   }
+
+   private static String key(String objectId, String changeToken, String streamId)
+   {
+      return objectId + '/' + changeToken + '/' + streamId;
+   }
+}
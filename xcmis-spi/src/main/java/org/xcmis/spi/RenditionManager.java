@@ -122,10 +122,132 @@ public class RenditionManager
          }
       });
 
+   /** Cache of generated renditions. May be <code>null</code> if caching is disabled. */
+   private volatile RenditionCache cache;
+
+   /** Background generator of renditions. May be <code>null</code>. */
+   private volatile RenditionGenerator generator;
+
    protected RenditionManager()
    {
    }
 
+   /**
+    * @return cache of generated renditions or <code>null</code> if renditions
+    *         are not cached
+    */
+   public RenditionCache getCache()
+   {
+      return cache;
+   }
+
+   /**
+    * Set cache of generated renditions.
+    *
+    * @param cache cache of renditions. If <code>null</code> then renditions
+    *        will be generated for each request
+    */
+   public void setCache(RenditionCache cache)
+   {
+      RenditionCache prev = this.cache;
+      this.cache = cache;
+      if (prev != null && prev != cache)
+      {
+         prev.clear();
+      }
+   }
+
+   /**
+    * @return background generator of renditions or <code>null</code> if
+    *         renditions are generated only at read
+    */
+   public RenditionGenerator getGenerator()
+   {
+      return generator;
+   }
+
+   /**
+    * Set background generator of renditions. Generator has effect only if
+    * cache of renditions is set, see {@link #setCache(RenditionCache)}.
+    *
+    * @param generator generator of renditions. If <code>null</code> then
+    *        renditions are generated at first read
+    */
+   public void setGenerator(RenditionGenerator generator)
+   {
+      RenditionGenerator prev = this.generator;
+      this.generator = generator;
+      if (prev != null && prev != generator)
+      {
+         prev.shutdown();
+      }
+   }
+
+   /**
+    * Schedule generation of all renditions of object in background. Should be
+    * called when document with content is created or content of document is
+    * updated. Does nothing if background generator or cache of renditions is
+    * not set.
+    *
+    * @param object object
+    */
+   public void generateRenditions(final ObjectData object)
+   {
+      final RenditionGenerator g = generator;
+      final RenditionCache c = cache;
+      if (g == null || c == null || object.getBaseType() != BaseType.DOCUMENT
+         || !((DocumentData)object).hasContent())
+      {
+         return;
+      }
+      final String objectId = object.getObjectId();
+      final String changeToken = object.getChangeToken();
+      for (ItemsIterator<Rendition> i = getRenditions(object); i.hasNext();)
+      {
+         final String streamId = i.next().getStreamId();
+         g.submit(objectId, changeToken, streamId, new Runnable()
+         {
+            public void run()
+            {
+               String current = object.getChangeToken();
+               if (changeToken == null ? current != null : !changeToken.equals(current))
+               {
+                  // Content changed after task was scheduled.
+                  return;
+               }
+               try
+               {
+                  RenditionContentStream rendition =
+                     getStream(((DocumentData)object).getContentStream(), MimeType.fromString(decode(streamId)));
+                  if (rendition != null)
+                  {
+                     c.put(objectId, changeToken, streamId, rendition);
+                  }
+               }
+               catch (IOException e)
+               {
+                  throw new CmisRuntimeException(e.getMessage(), e);
+               }
+            }
+         });
+      }
+   }
+
+   /**
+    * Remove all cached renditions of object. Must be called when content of
+    * object is updated or removed.
+    *
+    * @param objectId object id
+    */
+   public void invalidate(String objectId)
+   {
+      RenditionCache c = cache;
+      if (c != null)
+      {
+         c.invalidate(objectId);
+      }
+   }
+
    public void addRenditionProviders(List<String> provs)
    {
       if (provs != null && !provs.isEmpty())
@@ -231,7 +353,12 @@ public class RenditionManager
    }
 
    /**
-    * Get rendition stream for objects with specified stream id.
+    * Get rendition stream for objects with specified stream id. If cache of
+    * renditions is set then rendition is taken from cache if possible and
+    * newly generated rendition is added in cache. If rendition is generated
+    * in background at the moment then this method waits for it during timeout
+    * of {@link RenditionGenerator} and generates rendition itself after
+    * timeout.
     *
     * @param streamId stream id
     * @param obj ObjectData
@@ -245,8 +372,33 @@ public class RenditionManager
       // Not support other than document objects
       if (object.getBaseType() == BaseType.DOCUMENT && ((DocumentData)object).hasContent())
       {
+         RenditionCache c = cache;
+         String objectId = object.getObjectId();
+         String changeToken = object.getChangeToken();
+         if (c != null)
+         {
+            RenditionContentStream cached = c.get(objectId, changeToken, streamId);
+            if (cached == null)
+            {
+               // Rendition may be generated in background at the moment.
+               RenditionGenerator g = generator;
+               if (g != null && g.await(objectId, changeToken, streamId))
+               {
+                  cached = c.get(objectId, changeToken, streamId);
+               }
+            }
+            if (cached != null)
+            {
+               return cached;
+            }
+         }
          MimeType mime = MimeType.fromString(decode(streamId));
-         return getStream(((DocumentData)object).getContentStream(), mime);
+         RenditionContentStream rendition = getStream(((DocumentData)object).getContentStream(), mime);
+         if (c != null && rendition != null)
+         {
+            rendition = c.put(objectId, changeToken, streamId, rendition);
+         }
+         return rendition;
       }
       return null;
    }
@@ -32,10 +32,28 @@ public class Query
 
    private final String statement;
 
+   private final int maxItems;
+
+   private final int skipCount;
+
    public Query(String statement, boolean searchAllVersion)
+   {
+      this(statement, searchAllVersion, -1, 0);
+   }
+
+   /**
+    * @param statement SQL statement
+    * @param searchAllVersion if TRUE then all versions must be searched
+    * @param maxItems max number of items which caller is going to read, -1
+    *        if all items will be read
+    * @param skipCount number of items which caller is going to skip
+    */
+   public Query(String statement, boolean searchAllVersion, int maxItems, int skipCount)
    {
       this.statement = statement;
       this.searchAllVersions = searchAllVersion;
+      this.maxItems = maxItems;
+      this.skipCount = skipCount;
    }
 
    /**
@@ -54,5 +72,30 @@ public class Query
    {
       return searchAllVersions;
    }
+
+   /**
+    * Max number of items which caller is going to read after skipping
+    * {@link #getSkipCount()} items. It is hint for storage which may avoid
+    * fetching of items which will be never read. Iterator returned by
+    * {@link org.xcmis.spi.Storage#query(Query)} must still start from the
+    * first item.
+    *
+    * @return max number of items or -1 if all items will be read
+    */
+   public int getMaxItems()
+   {
+      return maxItems;
+   }
+
+   /**
+    * Number of items which caller is going to skip. It is hint for storage,
+    * see {@link #getMaxItems()}.
+    *
+    * @return number of items to skip
+    */
+   public int getSkipCount()
+   {
+      return skipCount;
+   }
    
 }